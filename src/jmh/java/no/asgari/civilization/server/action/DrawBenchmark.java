@@ -0,0 +1,72 @@
+/*
+ * Copyright (c) 2015 Shervin Asgari
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package no.asgari.civilization.server.action;
+
+import no.asgari.civilization.server.SheetName;
+import no.asgari.civilization.server.benchmark.SyntheticGames;
+import no.asgari.civilization.server.model.Item;
+import no.asgari.civilization.server.model.PBF;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The deck scan in DrawAction.draw
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DrawBenchmark {
+    private static final SheetName[] DRAWN_SHEETS = {SheetName.CIV, SheetName.CULTURE_1, SheetName.GREAT_PERSON,
+            SheetName.INFANTRY, SheetName.HUTS, SheetName.VILLAGES, SheetName.TILES, SheetName.AIRCRAFT};
+
+    @Param({"2", "5", "12"})
+    public int players;
+
+    private PBF pbf;
+    private int nextSheet;
+
+    @Setup(Level.Trial)
+    public void createGame() throws Exception {
+        pbf = SyntheticGames.create(players);
+    }
+
+    /**
+     * Draws an item and puts it back at the bottom of the deck, so the deck keeps its size
+     */
+    @Benchmark
+    public Optional<Item> drawFromDeck() {
+        SheetName sheetName = DRAWN_SHEETS[nextSheet++ % DRAWN_SHEETS.length];
+        Optional<Item> item = DrawAction.removeFirstFromDeck(pbf.getItems(), sheetName);
+        item.ifPresent(pbf.getItems()::add);
+        return item;
+    }
+}
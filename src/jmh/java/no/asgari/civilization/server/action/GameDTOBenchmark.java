@@ -0,0 +1,78 @@
+/*
+ * Copyright (c) 2015 Shervin Asgari
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package no.asgari.civilization.server.action;
+
+import no.asgari.civilization.server.benchmark.SyntheticGames;
+import no.asgari.civilization.server.dto.GameDTO;
+import no.asgari.civilization.server.dto.PbfDTO;
+import no.asgari.civilization.server.model.GameLog;
+import no.asgari.civilization.server.model.PBF;
+import no.asgari.civilization.server.model.Player;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static java.util.stream.Collectors.groupingBy;
+
+/**
+ * Mapping of a game to the DTOs returned by GET /game and GET /game/{pbfId}, without the database lookups
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GameDTOBenchmark {
+    @Param({"2", "5", "12"})
+    public int players;
+
+    private PBF pbf;
+    private Player player;
+    private List<GameLog> publicLogs;
+    private Map<String, List<GameLog>> privateLogs;
+
+    @Setup(Level.Trial)
+    public void createGame() throws Exception {
+        pbf = SyntheticGames.create(players);
+        player = SyntheticGames.player(pbf.getPlayers().get(0));
+        publicLogs = SyntheticGames.logs(pbf);
+        privateLogs = publicLogs.stream().collect(groupingBy(GameLog::getUsername));
+    }
+
+    @Benchmark
+    public GameDTO mapGameDTO() {
+        return GameAction.mapGameDTO(pbf, player, publicLogs, privateLogs::get);
+    }
+
+    @Benchmark
+    public PbfDTO createPbfDTO() {
+        return GameAction.createPbfDTO(pbf);
+    }
+}
@@ -0,0 +1,92 @@
+/*
+ * Copyright (c) 2015 Shervin Asgari
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package no.asgari.civilization.server.action;
+
+import no.asgari.civilization.server.SheetName;
+import no.asgari.civilization.server.benchmark.SyntheticGames;
+import no.asgari.civilization.server.model.Item;
+import no.asgari.civilization.server.model.PBF;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import static java.util.stream.Collectors.counting;
+import static java.util.stream.Collectors.groupingBy;
+
+/**
+ * Shuffling the discard pile back into the deck, as DrawAction does when a sheet runs out
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ReshuffleBenchmark {
+    @Param({"2", "5", "12"})
+    public int players;
+
+    private PBF pbf;
+    private List<Item> deck;
+    private List<Item> discarded;
+    private SheetName mostDiscarded;
+    private final Random random = new Random(42);
+
+    @Setup(Level.Trial)
+    public void createGame() throws Exception {
+        pbf = SyntheticGames.create(players);
+        deck = new ArrayList<>(pbf.getItems());
+        discarded = new ArrayList<>(pbf.getDiscardedItems());
+        Map<SheetName, Long> discardedBySheet = discarded.stream()
+                .filter(item -> SheetName.SHUFFLABLE_ITEMS.contains(item.getSheetName()))
+                .collect(groupingBy(Item::getSheetName, counting()));
+        mostDiscarded = discardedBySheet.entrySet().stream()
+                .max(Comparator.comparing(Map.Entry::getValue))
+                .map(Map.Entry::getKey)
+                .orElseThrow(IllegalStateException::new);
+    }
+
+    /**
+     * The reshuffle changes both lists, so they are put back before every invocation
+     */
+    @Setup(Level.Invocation)
+    public void resetDeck() {
+        pbf.setItems(new ArrayList<>(deck));
+        pbf.setDiscardedItems(new ArrayList<>(discarded));
+    }
+
+    @Benchmark
+    public PBF reshuffle() throws Exception {
+        DrawAction.putDiscardedBackInDeck(mostDiscarded, pbf, random);
+        return pbf;
+    }
+}
@@ -0,0 +1,148 @@
+/*
+ * Copyright (c) 2015 Shervin Asgari
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package no.asgari.civilization.server.benchmark;
+
+import no.asgari.civilization.server.excel.ItemReader;
+import no.asgari.civilization.server.model.Civ;
+import no.asgari.civilization.server.model.Draw;
+import no.asgari.civilization.server.model.GameLog;
+import no.asgari.civilization.server.model.GameType;
+import no.asgari.civilization.server.model.Item;
+import no.asgari.civilization.server.model.PBF;
+import no.asgari.civilization.server.model.Player;
+import no.asgari.civilization.server.model.Playerhand;
+import org.bson.types.ObjectId;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Builds games the way GameAction.createNewGame does, then plays them forward
+ * so that hands, chosen techs, discard pile and logs are sized like a game in progress.
+ * Uses a fixed seed so every run benchmarks the same games
+ */
+public final class SyntheticGames {
+    public static final int ITEMS_PER_PLAYER = 12;
+    public static final int TECHS_PER_PLAYER = 10;
+    public static final int DISCARDED_PER_PLAYER = 4;
+    public static final int LOGS_PER_PLAYER = 60;
+
+    private static final String[] COLORS = {Playerhand.green(), Playerhand.purple(), Playerhand.blue(), Playerhand.yellow(), Playerhand.red()};
+
+    private SyntheticGames() {
+    }
+
+    public static PBF create(int numOfPlayers) throws IOException {
+        Random random = new Random(numOfPlayers);
+        ItemReader itemReader = new ItemReader();
+        itemReader.readItemsFromExcel(GameType.WAW);
+
+        PBF pbf = new PBF();
+        pbf.setId(new ObjectId().toHexString());
+        pbf.setName(numOfPlayers + " player game");
+        pbf.setType(GameType.WAW);
+        pbf.setNumOfPlayers(numOfPlayers);
+        pbf.getItems().addAll(itemReader.shuffledCivs);
+        pbf.getItems().addAll(itemReader.shuffledCultureI);
+        pbf.getItems().addAll(itemReader.shuffledCultureII);
+        pbf.getItems().addAll(itemReader.shuffledCultureIII);
+        pbf.getItems().addAll(itemReader.shuffledGPs);
+        pbf.getItems().addAll(itemReader.shuffledHuts);
+        pbf.getItems().addAll(itemReader.shuffledVillages);
+        pbf.getItems().addAll(itemReader.shuffledTiles);
+        pbf.getItems().addAll(itemReader.shuffledCityStates);
+        pbf.getItems().addAll(itemReader.ancientWonders);
+        pbf.getItems().addAll(itemReader.medievalWonders);
+        pbf.getItems().addAll(itemReader.modernWonders);
+        pbf.getItems().addAll(itemReader.mountedList);
+        pbf.getItems().addAll(itemReader.aircraftList);
+        pbf.getItems().addAll(itemReader.artilleryList);
+        pbf.getItems().addAll(itemReader.infantryList);
+        pbf.getTechs().addAll(itemReader.allTechs);
+        pbf.getSocialPolicies().addAll(itemReader.socialPolicies);
+        Collections.shuffle(pbf.getItems(), random);
+
+        Iterator<Item> deck = pbf.getItems().iterator();
+        for (int i = 0; i < numOfPlayers; i++) {
+            Playerhand playerhand = new Playerhand();
+            playerhand.setUsername("player" + i);
+            playerhand.setPlayerId(new ObjectId().toHexString());
+            playerhand.setEmail("player" + i + "@playciv.com");
+            playerhand.setColor(COLORS[i % COLORS.length]);
+            playerhand.setPlayernumber(i + 1);
+            playerhand.setGameCreator(i == 0);
+            playerhand.setYourTurn(i == 0);
+
+            for (int j = 0; j < ITEMS_PER_PLAYER && deck.hasNext(); j++) {
+                Item item = deck.next();
+                deck.remove();
+                item.setOwnerId(playerhand.getPlayerId());
+                item.setHidden(random.nextBoolean());
+                if (item instanceof Civ && playerhand.getCivilization() == null) {
+                    playerhand.setCivilization((Civ) item);
+                }
+                playerhand.getItems().add(item);
+            }
+            for (int j = 0; j < DISCARDED_PER_PLAYER && deck.hasNext(); j++) {
+                Item item = deck.next();
+                deck.remove();
+                item.setHidden(false);
+                pbf.getDiscardedItems().add(item);
+            }
+            for (int j = 0; j < TECHS_PER_PLAYER; j++) {
+                playerhand.getTechsChosen().add(pbf.getTechs().get(random.nextInt(pbf.getTechs().size())));
+            }
+            pbf.getPlayers().add(playerhand);
+        }
+        return pbf;
+    }
+
+    /**
+     * Public and private logs of draws for every player in the game
+     */
+    public static List<GameLog> logs(PBF pbf) {
+        List<GameLog> logs = new ArrayList<>();
+        for (Playerhand playerhand : pbf.getPlayers()) {
+            for (int i = 0; i < LOGS_PER_PLAYER; i++) {
+                Item item = playerhand.getItems().get(i % playerhand.getItems().size());
+                Draw<Item> draw = new Draw<>(pbf.getId(), playerhand.getPlayerId());
+                draw.setItem(item);
+
+                GameLog gameLog = new GameLog();
+                gameLog.setId(new ObjectId().toHexString());
+                gameLog.setPbfId(pbf.getId());
+                gameLog.setUsername(playerhand.getUsername());
+                gameLog.setDraw(draw);
+                gameLog.setPublicLog(playerhand.getUsername() + " drew " + item.getSheetName().getName());
+                gameLog.setPrivateLog(playerhand.getUsername() + " drew " + item.revealAll());
+                logs.add(gameLog);
+            }
+        }
+        return logs;
+    }
+
+    public static Player player(Playerhand playerhand) {
+        Player player = new Player();
+        player.setId(playerhand.getPlayerId());
+        player.setUsername(playerhand.getUsername());
+        player.setEmail(playerhand.getEmail());
+        return player;
+    }
+}
@@ -1,56 +1,165 @@
 package no.asgari.civilization.server.action;
 
-import com.google.common.base.Strings;
-import com.mongodb.DB;
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.base.Preconditions;
 import lombok.extern.log4j.Log4j;
+import no.asgari.civilization.server.application.CivSingleton;
 import no.asgari.civilization.server.model.Chat;
 import no.asgari.civilization.server.model.GameLog;
 import no.asgari.civilization.server.model.PBF;
-import org.mongojack.DBQuery;
-import org.mongojack.JacksonDBCollection;
+import no.asgari.civilization.server.model.PlayerTurn;
+import no.asgari.civilization.server.repository.ArchiveRepository;
+import no.asgari.civilization.server.repository.ChatRepository;
+import no.asgari.civilization.server.repository.GameEventRepository;
+import no.asgari.civilization.server.repository.GameLogRepository;
+import no.asgari.civilization.server.repository.GameSnapshotRepository;
+import no.asgari.civilization.server.repository.PBFRepository;
+import no.asgari.civilization.server.repository.Repositories;
+import no.asgari.civilization.server.repository.TurnRepository;
 
 import java.util.List;
+import java.util.Objects;
+import java.util.function.BooleanSupplier;
 
 import static java.util.stream.Collectors.toList;
 
 @Log4j
 public class AdminAction extends BaseAction {
 
-    private final JacksonDBCollection<Chat, String> chatCollection;
-    private final JacksonDBCollection<GameLog, String> gameLogCollection;
-    private final JacksonDBCollection<PBF, String> pbfCollection;
+    private final ChatRepository chatRepository;
+    private final GameLogRepository gameLogRepository;
+    private final GameEventRepository gameEventRepository;
+    private final GameSnapshotRepository snapshotRepository;
+    private final PBFRepository pbfRepository;
+    private final TurnRepository turnRepository;
+    private final ArchiveRepository archiveRepository;
 
-    public AdminAction(DB db) {
-        super(db);
-        this.pbfCollection = JacksonDBCollection.wrap(db.getCollection(PBF.COL_NAME), PBF.class, String.class);
-        this.chatCollection = JacksonDBCollection.wrap(db.getCollection(Chat.COL_NAME), Chat.class, String.class);
-        this.gameLogCollection = JacksonDBCollection.wrap(db.getCollection(GameLog.COL_NAME), GameLog.class, String.class);
+    public AdminAction(Repositories repositories) {
+        super(repositories);
+        this.pbfRepository = repositories.getPbfs();
+        this.chatRepository = repositories.getChats();
+        this.gameLogRepository = repositories.getGameLogs();
+        this.gameEventRepository = repositories.getGameEvents();
+        this.snapshotRepository = repositories.getSnapshots();
+        this.turnRepository = repositories.getTurns();
+        this.archiveRepository = repositories.getArchive();
     }
 
-    public void cleanup() {
-        log.info("Running cleanup. Finding all aborted games, chat and gamelogs from old deleted games");
+    /**
+     * Deletes the aborted games with their logs, chat, events, snapshots and turns, batchSize games at a time.
+     * A game is deleted after everything belonging to it, so a cleanup that is stopped halfway
+     * finds the rest of its games again the next time it runs
+     *
+     * @param stopped - checked between each batch
+     * @return the number of games deleted
+     */
+    public int cleanup(int batchSize, BooleanSupplier stopped) {
+        Preconditions.checkArgument(batchSize > 0);
+        log.info("Running cleanup. Deleting aborted games " + batchSize + " at a time, with their chat and gamelogs");
+        MetricRegistry metrics = CivSingleton.instance().metrics();
 
-        List<String> abortedGames = pbfCollection.find(DBQuery.is("active", false).is("winner", null)).toArray().stream().map(PBF::getId).collect(toList());
-        log.info("Found " + abortedGames.size() + " aborted games. Deleting those.");
-        abortedGames.forEach(pbfId -> pbfCollection.removeById(pbfId));
+        int deletedGames = 0;
+        while (!stopped.getAsBoolean()) {
+            List<String> abortedGames = pbfRepository.findAbortedIds(batchSize);
+            if (abortedGames.isEmpty()) {
+                break;
+            }
+            int deletedLogs = gameLogRepository.deleteByPbfIds(abortedGames);
+            int deletedChats = chatRepository.deleteByPbfIds(abortedGames);
+            gameEventRepository.deleteByPbfIds(abortedGames);
+            snapshotRepository.deleteByPbfIds(abortedGames);
+            turnRepository.deleteByPbfIds(abortedGames);
+            int deleted = pbfRepository.deleteAll(abortedGames);
 
-        List<GameLog> allLogs = gameLogCollection.find().toArray();
-        List<Chat> allChats = chatCollection.find().toArray();
+            metrics.counter(MetricRegistry.name(AdminAction.class, "cleanup", "games")).inc(deleted);
+            metrics.counter(MetricRegistry.name(AdminAction.class, "cleanup", "gamelogs")).inc(deletedLogs);
+            metrics.counter(MetricRegistry.name(AdminAction.class, "cleanup", "chats")).inc(deletedChats);
+            deletedGames += deleted;
+            log.info("Deleted " + deleted + " aborted games, " + deletedLogs + " gamelogs and " + deletedChats + " chats");
+            if (deleted == 0) {
+                log.error("Could not delete the aborted games " + abortedGames + ". Stopping the cleanup");
+                return deletedGames;
+            }
+        }
 
-        log.info("Before deleting, size of all game logs is " + allLogs.size());
-        allLogs.parallelStream()
-                .filter(gl -> abortedGames.contains(gl.getPbfId()))
-                .forEach(gamelog -> gameLogCollection.removeById(gamelog.getId()));
-        log.info("After deleting, size of gamelog is " + gameLogCollection.find().length());
+        log.info("Cleanup deleted " + deletedGames + " aborted games");
+        return deletedGames;
+    }
 
+    /**
+     * Deletes all of the public chat. Only done when an admin asks for it, since public chat otherwise expires by itself
+     *
+     * @return the number of chats deleted
+     */
+    public int deletePublicChat() {
+        int deletedChats = chatRepository.deletePublic();
+        CivSingleton.instance().publicChat().clear();
+        CivSingleton.instance().metrics().counter(MetricRegistry.name(AdminAction.class, "cleanup", "chats")).inc(deletedChats);
+        log.info("Deleted " + deletedChats + " chats not belonging to any game");
+        return deletedChats;
+    }
 
-        log.info("Before deleting chat size is " + allChats.size());
+    /**
+     * Moves the finished games with their logs, chat and turns to the archive, batchSize games at a time.
+     * Their events and snapshots are only needed to replay running games, and are deleted.
+     * A game is copied before anything is deleted, and deleted after everything belonging to it,
+     * so an archiving that is stopped halfway copies the rest of its games again the next time it runs
+     *
+     * @param stopped - checked between each batch
+     * @return the number of games archived
+     */
+    public int archiveFinishedGames(int batchSize, BooleanSupplier stopped) {
+        Preconditions.checkArgument(batchSize > 0);
+        log.info("Archiving finished games " + batchSize + " at a time, with their chat, gamelogs and turns");
+        MetricRegistry metrics = CivSingleton.instance().metrics();
 
-        allChats.parallelStream()
-                .filter(chat -> abortedGames.contains(chat.getPbfId()) || Strings.isNullOrEmpty(chat.getPbfId()))
-                .forEach(c -> chatCollection.removeById(c.getId()));
+        int archivedGames = 0;
+        while (!stopped.getAsBoolean()) {
+            List<String> finishedGames = pbfRepository.findFinishedIds(batchSize);
+            if (finishedGames.isEmpty()) {
+                break;
+            }
+            List<PBF> pbfs = finishedGames.stream()
+                    .map(pbfRepository::findById)
+                    .filter(Objects::nonNull)
+                    .collect(toList());
+            pbfs.forEach(pbf -> archive(pbf, metrics));
+            gameEventRepository.deleteByPbfIds(finishedGames);
+            snapshotRepository.deleteByPbfIds(finishedGames);
+            int deleted = pbfRepository.deleteAll(finishedGames);
+            //Chat written while the game was deleted
+            pbfs.forEach(pbf -> archive(pbf, metrics));
 
-        log.info("After deleting, size of chat is " + chatCollection.find().length());
+            metrics.counter(MetricRegistry.name(AdminAction.class, "archive", "games")).inc(deleted);
+            archivedGames += deleted;
+            log.info("Archived " + deleted + " finished games");
+            if (deleted == 0) {
+                log.error("Could not delete the archived games " + finishedGames + ". Stopping the archiving");
+                return archivedGames;
+            }
+        }
+        log.info("Archived " + archivedGames + " finished games");
+        return archivedGames;
+    }
 
+    /**
+     * Copies the logs, chat and turns of the game to the archive, and deletes only what was copied.
+     * Anything written to the game in the meantime is found by the next round, until a round finds nothing
+     */
+    private void archive(PBF pbf, MetricRegistry metrics) {
+        while (true) {
+            List<GameLog> gameLogs = gameLogRepository.findByPbfId(pbf.getId());
+            List<Chat> chats = chatRepository.findByPbfId(pbf.getId());
+            List<PlayerTurn> turns = turnRepository.findByPbfId(pbf.getId());
+            archiveRepository.archive(pbf, gameLogs, chats, turns);
+            if (gameLogs.isEmpty() && chats.isEmpty() && turns.isEmpty()) {
+                return;
+            }
+            int deletedLogs = gameLogRepository.deleteByIds(gameLogs.stream().map(GameLog::getId).collect(toList()));
+            int deletedChats = chatRepository.deleteByIds(chats.stream().map(Chat::getId).collect(toList()));
+            turnRepository.deleteByIds(turns.stream().map(PlayerTurn::getId).collect(toList()));
+            metrics.counter(MetricRegistry.name(AdminAction.class, "archive", "gamelogs")).inc(deletedLogs);
+            metrics.counter(MetricRegistry.name(AdminAction.class, "archive", "chats")).inc(deletedChats);
+        }
     }
 }
@@ -15,32 +15,40 @@
 
 package no.asgari.civilization.server.action;
 
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
 import com.google.common.base.Preconditions;
-import com.mongodb.DB;
 import lombok.extern.log4j.Log4j;
+import no.asgari.civilization.server.application.CivSingleton;
 import no.asgari.civilization.server.dto.MessageDTO;
 import no.asgari.civilization.server.model.Draw;
 import no.asgari.civilization.server.model.GameLog;
 import no.asgari.civilization.server.model.Item;
 import no.asgari.civilization.server.model.PBF;
+import no.asgari.civilization.server.model.PBFPart;
 import no.asgari.civilization.server.model.Playerhand;
 import no.asgari.civilization.server.model.SocialPolicy;
 import no.asgari.civilization.server.model.Spreadsheet;
 import no.asgari.civilization.server.model.Tech;
-import org.mongojack.JacksonDBCollection;
+import no.asgari.civilization.server.repository.ArchiveRepository;
+import no.asgari.civilization.server.repository.PBFRepository;
+import no.asgari.civilization.server.repository.Repositories;
 
 import javax.ws.rs.WebApplicationException;
 import javax.ws.rs.client.Entity;
 import javax.ws.rs.core.Response;
+import java.util.function.Supplier;
 
 @Log4j
 public abstract class BaseAction {
     protected final GameLogAction logAction;
-    private final JacksonDBCollection<PBF, String> pbfCollection;
+    private final PBFRepository pbfRepository;
+    private final ArchiveRepository archiveRepository;
 
-    protected BaseAction(DB db) {
-        this.pbfCollection = JacksonDBCollection.wrap(db.getCollection(PBF.COL_NAME), PBF.class, String.class);
-        this.logAction = new GameLogAction(db);
+    protected BaseAction(Repositories repositories) {
+        this.pbfRepository = repositories.getPbfs();
+        this.archiveRepository = repositories.getArchive();
+        this.logAction = new GameLogAction(repositories);
     }
 
     public static WebApplicationException cannotFindItem() {
@@ -49,12 +57,37 @@ public abstract class BaseAction {
                 .build());
     }
 
+    /**
+     * The game was written by someone else between loading and writing it
+     */
+    static WebApplicationException writtenConcurrently() {
+        throw new WebApplicationException(Response.status(Response.Status.CONFLICT)
+                .entity(Entity.json(new MessageDTO("The game was changed at the same time, please try again")))
+                .build());
+    }
+
+    /**
+     * Finished games are moved to the archive, where they are only read
+     */
+    static WebApplicationException gameIsArchived() {
+        throw new WebApplicationException(Response.status(Response.Status.CONFLICT)
+                .entity(Entity.json(new MessageDTO("The game is finished and archived, and can no longer be changed")))
+                .build());
+    }
+
     static WebApplicationException cannotFindPlayer() {
         throw new WebApplicationException(Response.status(Response.Status.NOT_FOUND)
                 .entity(Entity.json(new MessageDTO("Could not find player")))
                 .build());
     }
 
+    /**
+     * Starts the timer of loading or writing the game. Timers are named after the concrete action, ie DrawAction.updatePBF
+     */
+    private Timer.Context time(String method) {
+        return CivSingleton.instance().metrics().timer(MetricRegistry.name(getClass(), method)).time();
+    }
+
     /**
      * Creates public and private logs of draws *
      */
@@ -96,14 +129,62 @@ public abstract class BaseAction {
         log.setPublicLog("System: " + message);
         log.setUsername("System");
         log.setPbfId(pbfId);
-        logAction.save(log);
+        logAction.save(log, GameLog.LogType.INFO);
     }
 
+    /**
+     * Finished games are looked up in the archive when they have been moved there, and can then not be written back
+     */
     public PBF findPBFById(String pbfId) {
-        try {
-            return pbfCollection.findOneById(pbfId);
-        } catch (Exception ex) {
-            log.error("Couldn't find pbf");
+        return findPBFById(pbfId, false, "findPBFById");
+    }
+
+    /**
+     * For queries that only read the game. May be served by a secondary unless the game was recently written to
+     */
+    protected PBF findPBFByIdReadOnly(String pbfId) {
+        return findPBFById(pbfId, true, "findPBFByIdReadOnly");
+    }
+
+    /**
+     * Loads only the given parts of the game, which must be written back with {@link #updatePBFParts(PBF, PBFPart...)}
+     */
+    protected PBF findPBFParts(String pbfId, PBFPart... parts) {
+        return findPBF(() -> pbfRepository.findParts(pbfId, parts), "findPBFParts");
+    }
+
+    /**
+     * Loads the given parts of the game and only the playerhand of the player.
+     * Must be written back with {@link #updatePBFPlayer(PBF, String, PBFPart...)}
+     *
+     * @throws WebApplicationException(Response) - Throws Response.CONFLICT if the game is archived
+     */
+    protected PBF findPBFWithPlayer(String pbfId, String playerId, PBFPart... parts) {
+        PBF pbf = findPBF(() -> pbfRepository.findWithPlayer(pbfId, playerId, parts), "findPBFWithPlayer");
+        if (pbf == null) {
+            checkNotArchived(pbfId);
+        }
+        return pbf;
+    }
+
+    private PBF findPBFById(String pbfId, boolean readOnly, String timerName) {
+        return findPBF(() -> {
+            PBF pbf = readOnly ? pbfRepository.findByIdReadOnly(pbfId) : pbfRepository.findById(pbfId);
+            if (pbf == null && (pbf = archiveRepository.findById(pbfId)) != null) {
+                pbf.setArchived(true);
+            }
+            return pbf;
+        }, timerName);
+    }
+
+    /**
+     * An id that is not an ObjectId is a bad request. Anything else that goes wrong is an internal error
+     */
+    private PBF findPBF(Supplier<PBF> find, String timerName) {
+        try (Timer.Context ignored = time(timerName)) {
+            return find.get();
+        } catch (IllegalArgumentException ex) {
+            log.error("Couldn't find pbf: " + ex.getMessage());
             Response badReq = Response.status(Response.Status.BAD_REQUEST)
                     .entity(Entity.json(new MessageDTO("Could not find game by id")))
                     .build();
@@ -111,6 +192,76 @@ public abstract class BaseAction {
         }
     }
 
+    /**
+     * Writes the whole PBF document back. The revealed items are collected again only if they were out of date
+     *
+     * @throws WebApplicationException(Response) - Throws Response.CONFLICT if the game is archived
+     */
+    protected void updatePBF(PBF pbf) {
+        Preconditions.checkNotNull(pbf.getId());
+        checkNotArchived(pbf);
+        try (Timer.Context ignored = time("updatePBF")) {
+            if (pbf.getRevealedItems() == null) {
+                pbf.revealedItemsChanged();
+            }
+            if (!pbfRepository.update(pbf)) {
+                checkNotArchived(pbf.getId());
+                log.warn("Could not write pbf " + pbf.getId() + ", it no longer exists");
+            }
+        }
+    }
+
+    void checkNotArchived(PBF pbf) {
+        if (pbf.isArchived()) {
+            throw gameIsArchived();
+        }
+    }
+
+    /**
+     * For a game that could not be found in the running games, because it may have been archived since it was loaded
+     */
+    private void checkNotArchived(String pbfId) {
+        if (archiveRepository.findById(pbfId) != null) {
+            throw gameIsArchived();
+        }
+    }
+
+    /**
+     * Writes the given parts of the game, unless the game was written since it was loaded
+     *
+     * @return false if nothing was written because the game was written by someone else
+     * @throws WebApplicationException(Response) - Throws Response.CONFLICT if the game is archived
+     */
+    protected boolean updatePBFParts(PBF pbf, PBFPart... parts) {
+        Preconditions.checkNotNull(pbf.getId());
+        checkNotArchived(pbf);
+        try (Timer.Context ignored = time("updatePBFParts")) {
+            boolean written = pbfRepository.updateParts(pbf, parts);
+            if (!written) {
+                checkNotArchived(pbf.getId());
+            }
+            return written;
+        }
+    }
+
+    /**
+     * Writes the playerhand of the player and the given parts of the game, unless the game was written since it was loaded
+     *
+     * @return false if nothing was written because the game was written by someone else
+     * @throws WebApplicationException(Response) - Throws Response.CONFLICT if the game is archived
+     */
+    protected boolean updatePBFPlayer(PBF pbf, String playerId, PBFPart... parts) {
+        Preconditions.checkNotNull(pbf.getId());
+        checkNotArchived(pbf);
+        try (Timer.Context ignored = time("updatePBFPlayer")) {
+            boolean written = pbfRepository.updatePlayer(pbf, playerId, parts);
+            if (!written) {
+                checkNotArchived(pbf.getId());
+            }
+            return written;
+        }
+    }
+
     /**
      * Checks whether is the players turn. If not FORBIDDEN exception is thrown
      *
@@ -120,7 +271,7 @@ public abstract class BaseAction {
      */
     //TODO Perhaps its best to have this in a filter, but its not always intended to be run
     void checkYourTurn(String pbfId, String playerId) {
-        PBF pbf = pbfCollection.findOneById(pbfId);
+        PBF pbf = findPBFWithPlayer(pbfId, playerId);
         Playerhand playerhand = getPlayerhandByPlayerId(playerId, pbf);
         checkYourTurn(playerhand);
     }
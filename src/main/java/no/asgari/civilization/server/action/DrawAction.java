@@ -16,7 +16,6 @@
 package no.asgari.civilization.server.action;
 
 import com.google.common.base.Preconditions;
-import com.mongodb.DB;
 import lombok.extern.log4j.Log4j;
 import no.asgari.civilization.server.SheetName;
 import no.asgari.civilization.server.dto.MessageDTO;
@@ -24,11 +23,13 @@ import no.asgari.civilization.server.exception.NoMoreItemsException;
 import no.asgari.civilization.server.model.Draw;
 import no.asgari.civilization.server.model.GameLog;
 import no.asgari.civilization.server.model.Item;
+import no.asgari.civilization.server.model.Move;
 import no.asgari.civilization.server.model.PBF;
+import no.asgari.civilization.server.model.PBFPart;
 import no.asgari.civilization.server.model.Playerhand;
 import no.asgari.civilization.server.model.Tradable;
 import no.asgari.civilization.server.model.Unit;
-import org.mongojack.JacksonDBCollection;
+import no.asgari.civilization.server.repository.Repositories;
 
 import javax.ws.rs.WebApplicationException;
 import javax.ws.rs.client.Entity;
@@ -38,6 +39,8 @@ import java.util.EnumSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Optional;
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.function.Consumer;
 
 import static java.util.stream.Collectors.toList;
@@ -51,16 +54,15 @@ import static no.asgari.civilization.server.SheetName.MOUNTED;
  */
 @Log4j
 public class DrawAction extends BaseAction {
-    private final JacksonDBCollection<PBF, String> pbfCollection;
+    private static final int MAX_WRITE_ATTEMPTS = 5;
     private final GameLogAction gameLogAction;
 
     private final StringBuilder sb = new StringBuilder();
     private final Consumer<Unit> revealUnitConsumer = unit -> sb.append(unit.revealAll()).append(", ");
 
-    public DrawAction(DB db) {
-        super(db);
-        this.pbfCollection = JacksonDBCollection.wrap(db.getCollection(PBF.COL_NAME), PBF.class, String.class);
-        gameLogAction = new GameLogAction(db);
+    public DrawAction(Repositories repositories) {
+        super(repositories);
+        gameLogAction = new GameLogAction(repositories);
     }
 
     private static Draw<Item> createDraw(String pbfId, String playerId, Item item) {
@@ -75,67 +77,101 @@ public class DrawAction extends BaseAction {
         Preconditions.checkNotNull(playerId);
         Preconditions.checkNotNull(sheetName);
 
-        checkYourTurn(pbfId, playerId);
-        PBF pbf = pbfCollection.findOneById(pbfId);
-
         if (SheetName.TECHS.contains(sheetName)) {
             log.warn("Drawing of techs is not possible. Techs are supposed to be chosen, not drawn.");
             return Optional.empty();
-        } else {
-            //Java 8 streamFromIterable doesn't support remove very well
-            Iterator<Item> iterator = pbf.getItems().iterator();
-            while (iterator.hasNext()) {
-                Item item = iterator.next();
-                if (item.getSheetName() == sheetName) {
-                    putItemToPlayer(item, pbf, playerId);
-                    iterator.remove();
-                    item.setOwnerId(playerId);
-                    pbfCollection.updateById(pbf.getId(), pbf);
-                    log.debug("Drew item " + item + " and updated pbf");
-                    Draw<Item> draw = createDraw(pbfId, playerId, item);
-                    GameLog gamelog = createLog(draw, GameLog.LogType.ITEM);
-                    return Optional.of(gamelog);
-                }
-            }
         }
 
-        log.warn("No more " + sheetName.getName() + " to draw. Possibly no more items left to draw in the deck. Will try to reshuffle");
+        //The deck and the hand are written only if nobody wrote the game since it was loaded, otherwise it is loaded again
+        for (int attempt = 0; attempt < MAX_WRITE_ATTEMPTS; attempt++) {
+            PBF pbf = findPBFWithPlayer(pbfId, playerId, PBFPart.ITEMS, PBFPart.DISCARDED_ITEMS, PBFPart.REVEALED_ITEMS);
+            checkYourTurn(getPlayerhandByPlayerId(playerId, pbf));
+
+            Optional<Item> drawn = removeFirstFromDeck(pbf.getItems(), sheetName);
+            if (!drawn.isPresent()) {
+                log.warn("No more " + sheetName.getName() + " to draw. Possibly no more items left to draw in the deck. Will try to reshuffle");
+                reshuffleItems(sheetName, pbf);
+                continue;
+            }
 
-        reshuffleItems(sheetName, pbf);
-        //Recursion call (should only be called once, because shuffle is made)
-        return draw(pbfId, playerId, sheetName);
+            Item item = drawn.get();
+            putItemToPlayer(item, pbf, playerId);
+            item.setOwnerId(playerId);
+            if (updatePBFPlayer(pbf, playerId, PBFPart.ITEMS)) {
+                log.debug("Drew item " + item + " and updated pbf");
+                Draw<Item> draw = createDraw(pbfId, playerId, item);
+                GameLog gamelog = createLog(draw, GameLog.LogType.ITEM);
+                return Optional.of(gamelog);
+            }
+            log.debug("Game " + pbfId + " was written while drawing, will draw again");
+        }
+        throw writtenConcurrently();
     }
 
-    private void reshuffleItems(SheetName sheetName, PBF pbf) throws NoMoreItemsException {
+    /**
+     * Puts the discarded items back in the deck. Nothing is written, and nothing logged, if the game was written since it was loaded
+     */
+    private boolean reshuffleItems(SheetName sheetName, PBF pbf) throws NoMoreItemsException {
         if (!SheetName.SHUFFLABLE_ITEMS.contains(sheetName)) {
             log.warn("Tried to reshuffle " + sheetName.getName() + " but not a shufflable type");
             throw new IllegalArgumentException();
         }
 
-        List<Item> itemsToPutBackInDeck = pbf.getDiscardedItems().stream()
-                .filter(s -> s.getSheetName() == sheetName)
-                .collect(toList());
+        long seed = newSeed();
+        putDiscardedBackInDeck(sheetName, pbf, new Random(seed));
+
+        if (!updatePBFParts(pbf, PBFPart.ITEMS, PBFPart.DISCARDED_ITEMS, PBFPart.REVEALED_ITEMS)) {
+            return false;
+        }
+        logShuffle(sheetName, pbf, seed);
+        return true;
+    }
+
+    /**
+     * Removes the first item of the given sheet from the deck
+     */
+    static Optional<Item> removeFirstFromDeck(List<Item> deck, SheetName sheetName) {
+        //Java 8 streamFromIterable doesn't support remove very well
+        Iterator<Item> iterator = deck.iterator();
+        while (iterator.hasNext()) {
+            Item item = iterator.next();
+            if (item.getSheetName() == sheetName) {
+                iterator.remove();
+                return Optional.of(item);
+            }
+        }
+        return Optional.empty();
+    }
+
+    /**
+     * A seed for a shuffle, kept in the move so that replaying the move shuffles the same way
+     */
+    static long newSeed() {
+        return ThreadLocalRandom.current().nextLong();
+    }
+
+    static void shuffleDeck(PBF pbf, long seed) {
+        Collections.shuffle(pbf.getItems(), new Random(seed));
+    }
+
+    /**
+     * Shuffles the discarded items of the given sheet back into the deck
+     */
+    static void putDiscardedBackInDeck(SheetName sheetName, PBF pbf, Random random) throws NoMoreItemsException {
+        List<Item> itemsToPutBackInDeck = pbf.takeDiscarded(sheetName);
 
         if (itemsToPutBackInDeck.isEmpty()) {
             log.warn("All items are still in use, cannot make a shuffle. Nothing to draw!");
             throw new NoMoreItemsException(sheetName.getName());
         }
 
-        List<Item> itemsToKeep = pbf.getDiscardedItems().stream()
-                .filter(s -> s.getSheetName() != sheetName)
-                .collect(toList());
-
         log.debug("Shuffling, and adding items back in the pbf");
-        Collections.shuffle(itemsToPutBackInDeck);
+        Collections.shuffle(itemsToPutBackInDeck, random);
         pbf.getItems().addAll(itemsToPutBackInDeck);
-        pbf.setDiscardedItems(itemsToKeep);
-
-        pbfCollection.updateById(pbf.getId(), pbf);
-        logShuffle(sheetName, pbf);
     }
 
     public List<Unit> drawUnitsFromBattlehandForBattle(String pbfId, String playerId, int numberOfDraws) {
-        PBF pbf = pbfCollection.findOneById(pbfId);
+        PBF pbf = findPBFById(pbfId);
         Playerhand playerhand = getPlayerhandByPlayerId(playerId, pbf);
         playerhand.getBattlehand().clear();
         List<Unit> unitsInHand = playerhand.getItems().stream()
@@ -150,7 +186,7 @@ public class DrawAction extends BaseAction {
         if (unitsInHand.size() <= numberOfDraws) {
             //username has drawn X units from his battlehand
             playerhand.setBattlehand(unitsInHand);
-            pbfCollection.updateById(pbfId, pbf);
+            updatePBF(pbf);
             createCommonPublicLog("has drawn " + unitsInHand.size() + " units his battlehand", pbfId, playerId);
             return unitsInHand;
         }
@@ -159,7 +195,7 @@ public class DrawAction extends BaseAction {
         List<Unit> drawnUnitsList = unitsInHand.stream().limit(numberOfDraws).collect(toList());
 
         playerhand.setBattlehand(drawnUnitsList);
-        pbfCollection.updateById(pbfId, pbf);
+        updatePBF(pbf);
         createCommonPublicLog("has drawn " + drawnUnitsList.size() + " units from his battlehand", pbfId, playerId);
         return drawnUnitsList;
     }
@@ -173,7 +209,7 @@ public class DrawAction extends BaseAction {
      * @return
      */
     public List<Unit> drawBarbarians(String pbfId, String playerId) {
-        PBF pbf = pbfCollection.findOneById(pbfId);
+        PBF pbf = findPBFById(pbfId);
         Playerhand playerhand = getPlayerhandByPlayerId(playerId, pbf);
         if (!playerhand.getBarbarians().isEmpty()) {
             log.warn("Cannot draw more barbarians until they are discarded");
@@ -185,7 +221,7 @@ public class DrawAction extends BaseAction {
         drawBarbarianArtillery(pbf, playerhand);
         drawBarbarianMounted(pbf, playerhand);
 
-        pbf = pbfCollection.findOneById(pbfId);
+        pbf = findPBFById(pbfId);
         playerhand = getPlayerhandByPlayerId(playerId, pbf);
         gameLogAction.createCommonPrivatePublicLog("has drawn " + playerhand.getBarbarians().size() + " barbarian units", pbfId, playerId);
         return playerhand.getBarbarians();
@@ -195,7 +231,9 @@ public class DrawAction extends BaseAction {
         boolean anyInfantry = pbf.getItems().stream().anyMatch(p -> p.getSheetName() == INFANTRY);
         if (!anyInfantry) {
             try {
-                reshuffleItems(INFANTRY, pbf);
+                if (!reshuffleItems(INFANTRY, pbf)) {
+                    throw writtenConcurrently();
+                }
                 drawBarbarianInfantry(pbf, playerhand);
             } catch (NoMoreItemsException e) {
                 StringBuilder stringBuilder = new StringBuilder();
@@ -223,7 +261,9 @@ public class DrawAction extends BaseAction {
 
         if (!any) {
             try {
-                reshuffleItems(MOUNTED, pbf);
+                if (!reshuffleItems(MOUNTED, pbf)) {
+                    throw writtenConcurrently();
+                }
                 drawBarbarianMounted(pbf, playerhand);
             } catch (NoMoreItemsException e) {
                 StringBuilder stringBuilder = new StringBuilder();
@@ -251,7 +291,9 @@ public class DrawAction extends BaseAction {
 
         if (!any) {
             try {
-                reshuffleItems(ARTILLERY, pbf);
+                if (!reshuffleItems(ARTILLERY, pbf)) {
+                    throw writtenConcurrently();
+                }
                 drawBarbarianArtillery(pbf, playerhand);
             } catch (NoMoreItemsException e) {
                 StringBuilder stringBuilder = new StringBuilder();
@@ -294,19 +336,19 @@ public class DrawAction extends BaseAction {
     }
 
     public void discardBarbarians(String pbfId, String playerId) {
-        PBF pbf = pbfCollection.findOneById(pbfId);
+        PBF pbf = findPBFById(pbfId);
         Playerhand playerhand = getPlayerhandByPlayerId(playerId, pbf);
         if (playerhand.getBarbarians().isEmpty()) {
             return;
         }
         playerhand.getBarbarians().forEach(unit -> unit.setOwnerId(null));
-        pbf.getDiscardedItems().addAll(playerhand.getBarbarians());
+        playerhand.getBarbarians().forEach(pbf::discard);
         revealAndDiscardUnits(" as barbarians", playerhand.getBarbarians(), pbfId, playerId);
-        pbfCollection.updateById(pbf.getId(), pbf);
+        updatePBF(pbf);
     }
 
     public void revealAndDiscardBattlehand(String pbfId, String playerId) {
-        PBF pbf = pbfCollection.findOneById(pbfId);
+        PBF pbf = findPBFById(pbfId);
         Playerhand playerhand = getPlayerhandByPlayerId(playerId, pbf);
         if (playerhand.getBattlehand().isEmpty()) {
             log.warn("Tried to reveal playerhand, but was empty");
@@ -314,7 +356,7 @@ public class DrawAction extends BaseAction {
         }
 
         revealAndDiscardUnits(" from their battlehand", playerhand.getBattlehand(), pbfId, playerId);
-        pbfCollection.updateById(pbfId, pbf);
+        updatePBF(pbf);
     }
 
     private void revealAndDiscardUnits(String message, List<Unit> units, String pbfId, String playerId) {
@@ -337,7 +379,7 @@ public class DrawAction extends BaseAction {
      * @param playerId
      */
     public void endBattle(String pbfId, String playerId) {
-        PBF pbf = pbfCollection.findOneById(pbfId);
+        PBF pbf = findPBFById(pbfId);
         Playerhand playerhand = getPlayerhandByPlayerId(playerId, pbf);
 
         playerhand.getItems().stream()
@@ -345,9 +387,12 @@ public class DrawAction extends BaseAction {
                 .forEach(item -> {
                     Unit unit = (Unit) item;
                     unit.setInBattle(false);
+                    if (!unit.isHidden()) {
+                        pbf.revealedItemChanged(unit);
+                    }
                 });
 
-        pbfCollection.updateById(pbfId, pbf);
+        updatePBF(pbf);
     }
 
     /**
@@ -391,7 +436,7 @@ public class DrawAction extends BaseAction {
         Collections.shuffle(itemToShuffle);
         Item itemToGive = itemToShuffle.get(0);
         log.debug(playerFrom.getUsername() + " gives " + itemToGive + " to " + playerTo.getUsername());
-        boolean removed = playerFrom.getItems().remove(itemToGive);
+        boolean removed = playerFrom.getItems().removeItem(itemToGive);
         if (removed) {
             //Give to the other player
             playerTo.getItems().add(itemToGive);
@@ -401,7 +446,7 @@ public class DrawAction extends BaseAction {
             createCommonPublicLog(" is randomly looted " + itemToGive.revealPublic() + " and gives to " + playerTo.getUsername(), pbfId, playerFrom.getPlayerId());
             createCommonPublicLog(" receives as loot " + itemToGive.revealPublic() + " from " + playerFrom.getUsername(), pbfId, playerTo.getPlayerId());
 
-            pbfCollection.updateById(pbf.getId(), pbf);
+            updatePBF(pbf);
             return itemToGive;
         } else {
             throw cannotFindItem();
@@ -413,15 +458,15 @@ public class DrawAction extends BaseAction {
         playerhand.getBarbarians().add((Unit) item);
         iterator.remove();
         item.setOwnerId(playerhand.getPlayerId());
-        pbfCollection.updateById(pbf.getId(), pbf);
+        updatePBF(pbf);
     }
 
-    private void logShuffle(SheetName sheetName, PBF pbf) {
+    private void logShuffle(SheetName sheetName, PBF pbf, long seed) {
         GameLog log = new GameLog();
         log.setUsername("System");
         log.setPbfId(pbf.getId());
         log.setPublicLog(sheetName.getName() + " reshuffled and put back in the deck");
-        gameLogAction.save(log);
+        gameLogAction.save(log, GameLog.LogType.SHUFFLE, Move.reshuffle(sheetName, seed));
     }
 
     private void putItemToPlayer(Item item, PBF pbf, String playerId) {
@@ -17,10 +17,10 @@ package no.asgari.civilization.server.action;
 
 import com.google.common.base.Preconditions;
 import com.google.common.base.Strings;
+import com.google.common.cache.Cache;
 import com.google.common.collect.ArrayListMultimap;
 import com.google.common.collect.ListMultimap;
 import com.google.common.collect.Sets;
-import com.mongodb.DB;
 import lombok.SneakyThrows;
 import lombok.extern.log4j.Log4j;
 import no.asgari.civilization.server.application.CivSingleton;
@@ -43,32 +43,38 @@ import no.asgari.civilization.server.model.Chat;
 import no.asgari.civilization.server.model.Civ;
 import no.asgari.civilization.server.model.GameLog;
 import no.asgari.civilization.server.model.GameType;
-import no.asgari.civilization.server.model.Item;
 import no.asgari.civilization.server.model.PBF;
+import no.asgari.civilization.server.model.PBFPart;
 import no.asgari.civilization.server.model.Player;
 import no.asgari.civilization.server.model.Playerhand;
+import no.asgari.civilization.server.repository.ArchiveRepository;
+import no.asgari.civilization.server.repository.ChatRepository;
+import no.asgari.civilization.server.repository.PBFRepository;
+import no.asgari.civilization.server.repository.PlayerRepository;
+import no.asgari.civilization.server.repository.Repositories;
+import no.asgari.civilization.server.repository.TurnRepository;
 import org.apache.commons.lang3.StringUtils;
-import org.mongojack.DBQuery;
-import org.mongojack.DBSort;
-import org.mongojack.JacksonDBCollection;
-import org.mongojack.WriteResult;
+import org.bson.types.ObjectId;
 
 import javax.ws.rs.BadRequestException;
 import javax.ws.rs.WebApplicationException;
 import javax.ws.rs.core.Response;
 import java.io.IOException;
 import java.net.URLDecoder;
-import java.time.LocalDateTime;
+import java.time.Instant;
 import java.time.ZoneId;
+import java.time.temporal.ChronoUnit;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.Date;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Random;
 import java.util.Set;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
@@ -76,17 +82,27 @@ import static java.util.stream.Collectors.toList;
 
 @Log4j
 public class GameAction extends BaseAction {
-    private final JacksonDBCollection<PBF, String> pbfCollection;
-    private final JacksonDBCollection<Player, String> playerCollection;
+    /**
+     * Chat messages in a page, unless another limit is asked for
+     */
+    public static final int CHAT_PAGE = 50;
+    public static final int MAX_CHAT_PAGE = 500;
+
+    private final PBFRepository pbfRepository;
+    private final PlayerRepository playerRepository;
     private final GameLogAction gameLogAction;
-    private final JacksonDBCollection<Chat, String> chatCollection;
+    private final ChatRepository chatRepository;
+    private final TurnRepository turnRepository;
+    private final ArchiveRepository archiveRepository;
 
-    public GameAction(DB db) {
-        super(db);
-        this.playerCollection = JacksonDBCollection.wrap(db.getCollection(Player.COL_NAME), Player.class, String.class);
-        this.pbfCollection = JacksonDBCollection.wrap(db.getCollection(PBF.COL_NAME), PBF.class, String.class);
-        this.chatCollection = JacksonDBCollection.wrap(db.getCollection(Chat.COL_NAME), Chat.class, String.class);
-        this.gameLogAction = new GameLogAction(db);
+    public GameAction(Repositories repositories) {
+        super(repositories);
+        this.playerRepository = repositories.getPlayers();
+        this.pbfRepository = repositories.getPbfs();
+        this.chatRepository = repositories.getChats();
+        this.turnRepository = repositories.getTurns();
+        this.archiveRepository = repositories.getArchive();
+        this.gameLogAction = new GameLogAction(repositories);
     }
 
     /**
@@ -95,7 +111,7 @@ public class GameAction extends BaseAction {
      * @param pbf - the PBF
      * @return PbfDto
      */
-    private static PbfDTO createPbfDTO(PBF pbf) {
+    static PbfDTO createPbfDTO(PBF pbf) {
         PbfDTO dto = new PbfDTO();
         dto.setType(pbf.getType());
         dto.setId(pbf.getId());
@@ -161,24 +177,21 @@ public class GameAction extends BaseAction {
         Collections.shuffle(pbf.getTechs(), new Random(System.nanoTime()));
         Collections.shuffle(pbf.getSocialPolicies(), new Random(System.nanoTime()));
 
-        pbf.getItems().forEach(it -> it.setItemNumber(ItemReader.itemCounter.incrementAndGet()));
-        pbf.getTechs().forEach(it -> it.setItemNumber(ItemReader.itemCounter.incrementAndGet()));
-        pbf.getSocialPolicies().forEach(it -> it.setItemNumber(ItemReader.itemCounter.incrementAndGet()));
+        pbf.numberItems();
 
-        WriteResult<PBF, String> pbfInsert = pbfCollection.insert(pbf);
-        pbf.setId(pbfInsert.getSavedId());
-        log.info("PBF game created with id " + pbfInsert.getSavedId());
+        pbf.setId(pbfRepository.insert(pbf));
+        log.info("PBF game created with id " + pbf.getId());
         joinGame(pbf, playerId, Optional.of(dto.getColor()), true);
 
         //Do this in a new thread
         Thread thread = new Thread(() -> {
-            playerCollection.find().toArray().stream()
+            playerRepository.findAll().stream()
                     .filter(p -> !p.isDisableEmail())
                     .filter(CivUtil::shouldSendEmail)
                     .forEach(p -> {
                         SendEmail.sendMessage(p.getEmail(), "New Civilization game created",
                                 "A new game by the name " + pbf.getName() + " was just created! Visit " + SendEmail.URL + " to join the game.", p.getId());
-                        playerCollection.updateById(p.getId(), p);
+                        playerRepository.update(p);
                     });
         });
         thread.start();
@@ -199,11 +212,14 @@ public class GameAction extends BaseAction {
     /**
      * Returns all games sorted on active first
      *
-     * @return
+     * @param includeArchived - whether the finished games that are moved to the archive are included
      */
-    public List<PbfDTO> getAllGames() {
-        List<PBF> pbfs = pbfCollection.find().toArray();
-        return pbfs.stream()
+    public List<PbfDTO> getAllGames(boolean includeArchived) {
+        Stream<PBF> games = pbfRepository.findAllReadOnly().stream();
+        if (includeArchived) {
+            games = Stream.concat(games, archiveRepository.findAll().stream());
+        }
+        return games
                 .map(GameAction::createPbfDTO)
                 .sorted((o1, o2) -> {
                     int v = Boolean.valueOf(o1.isActive()).compareTo(o2.isActive());
@@ -213,8 +229,23 @@ public class GameAction extends BaseAction {
                 .collect(toList());
     }
 
+    /**
+     * The running games together with the archived games that have a winner. Only the winners of the archive
+     * are read, and only when more games have been archived since they were last read
+     */
+    private Stream<PBF> findAllGamesReadOnly() {
+        long archivedGames = archiveRepository.count();
+        Cache<Long, List<PBF>> archivedWinnersCache = CivSingleton.instance().archivedWinnersCache();
+        List<PBF> archivedWinners = archivedWinnersCache.getIfPresent(archivedGames);
+        if (archivedWinners == null) {
+            archivedWinners = archiveRepository.findWinners();
+            archivedWinnersCache.put(archivedGames, archivedWinners);
+        }
+        return Stream.concat(pbfRepository.findAllReadOnly().stream(), archivedWinners.stream());
+    }
+
     public void joinGame(String pbfId, Player player, Optional<String> colorOpt) {
-        PBF pbf = pbfCollection.findOneById(pbfId);
+        PBF pbf = findPBFById(pbfId);
 
         joinGame(pbf, player.getId(), colorOpt, false);
 
@@ -238,7 +269,7 @@ public class GameAction extends BaseAction {
             throw new WebApplicationException(badReq);
         }
 
-        Player player = playerCollection.findOneById(playerId);
+        Player player = playerRepository.findById(playerId);
 
         boolean playerAlreadyJoined = pbf.getPlayers().stream()
                 .anyMatch(p -> p.getPlayerId().equals(player.getId()));
@@ -251,12 +282,13 @@ public class GameAction extends BaseAction {
         }
 
         player.getGameIds().add(pbf.getId());
-        playerCollection.updateById(player.getId(), player);
+        playerRepository.update(player);
         Playerhand playerhand;
         if (!pbf.getWithdrawnPlayers().isEmpty()) {
             playerhand = pbf.getWithdrawnPlayers().remove(0);
             boolean updated = gameLogAction.updateGameLog(pbf.getId(), playerhand.getUsername(), player.getUsername());
             log.info("Managed to update gameLog: " + updated);
+            turnRepository.rename(pbf.getId(), playerhand.getUsername(), player.getUsername());
             playerhand.setEmail(player.getEmail());
             playerhand.setPlayerId(player.getId());
             playerhand.setUsername(player.getUsername());
@@ -267,9 +299,18 @@ public class GameAction extends BaseAction {
         if (!pbf.getPlayers().contains(playerhand)) {
             createInfoLog(pbf.getId(), playerhand.getUsername() + " joined the game and is playing color " + playerhand.getColor());
             pbf.getPlayers().add(playerhand);
+            if (!playerhand.getItems().isEmpty()) {
+                pbf.revealedItemsChanged();
+            }
         }
+        boolean started = pbf.getPlayers().stream().anyMatch(Playerhand::isYourTurn);
         pbf = startIfAllPlayers(pbf);
-        pbfCollection.updateById(pbf.getId(), pbf);
+        updatePBF(pbf);
+        CivSingleton.instance().chatColorCache().invalidate(pbf.getId());
+        if (!started && pbf.getPlayers().stream().anyMatch(Playerhand::isYourTurn)) {
+            //The state every replay of the game starts from
+            gameLogAction.takeSnapshot(pbf.getId());
+        }
     }
 
     private String chooseColorForPlayer(PBF pbf) {
@@ -289,7 +330,7 @@ public class GameAction extends BaseAction {
 
     public List<PlayerDTO> getAllPlayers(String pbfId) {
         Preconditions.checkNotNull(pbfId);
-        PBF pbf = pbfCollection.findOneById(pbfId);
+        PBF pbf = findPBFParts(pbfId, PBFPart.PLAYER_NAMES);
         return pbf.getPlayers().stream()
                 .map(p -> createPlayerDTO(p, pbf.getId()))
                 .sorted((o1, o2) -> o1.getUsername().compareTo(o2.getUsername()))
@@ -322,6 +363,20 @@ public class GameAction extends BaseAction {
 
     public GameDTO mapGameDTO(PBF pbf, Player player) {
         Preconditions.checkNotNull(pbf);
+        GameDTO dto = mapGameDTO(pbf, player, gameLogAction.getGameLogs(pbf.getId()),
+                username -> gameLogAction.getGameLogsBelongingToPlayer(pbf.getId(), username));
+        //Turns are stored in their own collection, unless the game still has them embedded
+        Playerhand playerhand = dto.getPlayer();
+        if (playerhand != null && playerhand.getPlayerTurns().isEmpty()) {
+            playerhand.getPlayerTurns().addAll(turnRepository.findByPbfIdAndUsername(pbf.getId(), playerhand.getUsername()));
+        }
+        return dto;
+    }
+
+    /**
+     * @param privateLogs - looks up the private logs of the given username
+     */
+    static GameDTO mapGameDTO(PBF pbf, Player player, List<GameLog> allPublicLogs, Function<String, List<GameLog>> privateLogs) {
         //Set common stuff
         GameDTO dto = new GameDTO();
         long created = pbf.getCreated().atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
@@ -335,7 +390,6 @@ public class GameAction extends BaseAction {
         dto.setAssetLink(pbf.getAssetLink());
 
         //Set logs
-        List<GameLog> allPublicLogs = gameLogAction.getGameLogs(pbf.getId());
         List<GameLogDTO> publicGamelogDTOs = allPublicLogs.stream()
                 .filter(log -> !Strings.isNullOrEmpty(log.getPublicLog()))
                 .map(log -> new GameLogDTO(log.getId(), log.getPublicLog(), log.getCreatedInMillis(), new DrawDTO(log.getDraw())))
@@ -352,7 +406,7 @@ public class GameAction extends BaseAction {
                     .findFirst();
 
             if (playerhand.isPresent()) {
-                List<GameLog> allPrivateLogs = gameLogAction.getGameLogsBelongingToPlayer(pbf.getId(), playerhand.get().getUsername());
+                List<GameLog> allPrivateLogs = privateLogs.apply(playerhand.get().getUsername());
                 List<GameLogDTO> privateGamelogDTOs = allPrivateLogs.stream()
                         .filter(log -> !Strings.isNullOrEmpty(log.getPrivateLog()))
                         .map(log -> new GameLogDTO(log.getId(), log.getPrivateLog(), log.getCreatedInMillis(), new DrawDTO(log.getDraw())))
@@ -363,12 +417,38 @@ public class GameAction extends BaseAction {
                 dto.setPrivateLogs(privateGamelogDTOs);
             }
         }
-        dto.setRevealedItems(getAllRevealedItems(pbf));
+        dto.setRevealedItems(pbf.getRevealedItems() != null ? pbf.getRevealedItems() : pbf.collectRevealedItems());
         return dto;
     }
 
+    /**
+     * The game with only its revealed items and their tag, which are brought up to date if a partial write left them out of date
+     */
+    public PBF getRevealedItems(String pbfId) {
+        PBF pbf = findPBFParts(pbfId, PBFPart.REVEALED_ITEMS);
+        if (pbf == null || pbf.getRevealedItems() == null) {
+            PBF wholeGame = findPBFByIdReadOnly(pbfId);
+            if (wholeGame == null) {
+                throw new WebApplicationException(Response.status(Response.Status.NOT_FOUND)
+                        .entity(new MessageDTO("Could not find game by id"))
+                        .build());
+            }
+            //Games from before the revealed items were kept get them, with a new tag like every other change of them
+            wholeGame.revealedItemsChanged();
+            if (!wholeGame.isArchived() && !updatePBFParts(wholeGame, PBFPart.REVEALED_ITEMS)) {
+                //Someone else wrote the game first, so their revealed items are the ones kept
+                PBF written = findPBFParts(pbfId, PBFPart.REVEALED_ITEMS);
+                if (written != null && written.getRevealedItems() != null) {
+                    return written;
+                }
+            }
+            return wholeGame;
+        }
+        return pbf;
+    }
+
     public boolean withdrawFromGame(String pbfId, String playerId) {
-        PBF pbf = pbfCollection.findOneById(pbfId);
+        PBF pbf = findPBFById(pbfId);
 
         if (!SecurityCheck.hasUserAccess(pbf, playerId)) {
             log.warn("User with id " + playerId + " is not player of this game, and cannot withdraw");
@@ -397,9 +477,12 @@ public class GameAction extends BaseAction {
                 }
                 pbf.getWithdrawnPlayers().add(playerhand);
                 iterator.remove();
+                pbf.techsChanged();
+                pbf.revealedItemsChanged();
                 gameLogAction.createCommonPublicLog("withdrew from game", pbfId, playerId);
                 //TODO remove from PlayerCollection also
-                pbfCollection.updateById(pbf.getId(), pbf);
+                updatePBF(pbf);
+                CivSingleton.instance().chatColorCache().invalidate(pbfId);
                 return true;
             }
         }
@@ -417,23 +500,20 @@ public class GameAction extends BaseAction {
         chat.setPbfId(pbfId);
         chat.setMessage(URLDecoder.decode(message, "UTF-8"));
         chat.setUsername(username);
-        String id = chatCollection.insert(chat).getSavedId();
-        chat.setId(id);
-
-        if (pbfId != null) {
-            PBF pbf = findPBFById(pbfId);
+        if (pbfId == null) {
+            chat.setExpireAt(Date.from(Instant.now().plus(Chat.PUBLIC_CHAT_DAYS, ChronoUnit.DAYS)));
+        }
+        chat.setId(chatRepository.insert(chat));
 
+        if (pbfId == null) {
+            CivSingleton.instance().publicChat().add(chat);
+        } else {
             if (StringUtils.isNotBlank(message)) {
+                PBF pbf = findPBFParts(pbfId, PBFPart.PLAYER_NAMES);
                 pbf.getPlayers()
                         .stream()
                         .filter(p -> !p.getUsername().equals(username))
-                        .filter(CivUtil::shouldSendEmailInGame)
-                        .forEach(p -> {
-                                    SendEmail.sendMessage(p.getEmail(), "New Chat", username + " wrote in the chat: " + chat.getMessage()
-                                            + ".\nLogin to " + SendEmail.gamelink(pbfId) + " to see the chat", p.getPlayerId());
-                                    pbfCollection.updateById(pbfId, pbf);
-                                }
-                        );
+                        .forEach(p -> CivSingleton.instance().notifications().chat(pbfId, p, username, chat.getMessage()));
             }
         }
 
@@ -441,29 +521,62 @@ public class GameAction extends BaseAction {
     }
 
     public List<ChatDTO> getChat(String pbfId) {
+        return getChat(pbfId, 0, null);
+    }
+
+    /**
+     * A page of the chat of the game, newest first
+     *
+     * @param limit  - at most this many, 0 for all
+     * @param before - only chat written before the chat with this id, null to start with the newest
+     */
+    public List<ChatDTO> getChat(String pbfId, int limit, String before) {
         Preconditions.checkNotNull(pbfId);
-        List<Chat> chats = chatCollection.find(DBQuery.is("pbfId", pbfId)).sort(DBSort.desc("created")).toArray();
-        if (chats == null) {
-            return new ArrayList<>();
+        if (limit < 0 || (before != null && !ObjectId.isValid(before))) {
+            throw new WebApplicationException(Response.status(Response.Status.BAD_REQUEST)
+                    .entity(new MessageDTO("limit can not be negative, and before must be the id of a chat"))
+                    .build());
         }
-        PBF pbf = findPBFById(pbfId);
-        Map<String, String> colorMap = pbf.getPlayers().stream()
-                .collect(Collectors.toMap(Playerhand::getUsername, (playerhand) -> {
-                    return (playerhand.getColor() != null) ? playerhand.getColor() : "";
-                }));
+        List<Chat> chats = chatRepository.findByPbfId(pbfId, limit, before);
+        if (chats.isEmpty() && before == null) {
+            chats = archiveRepository.findChats(pbfId).stream()
+                    .sorted(Comparator.comparing(Chat::getId).reversed())
+                    .limit(limit > 0 ? limit : Long.MAX_VALUE)
+                    .collect(toList());
+        }
+        Map<String, String> colorMap = getChatColors(pbfId);
 
         List<ChatDTO> chatDTOs = new ArrayList<>(chats.size());
         for (Chat c : chats) {
             chatDTOs.add(new ChatDTO(c.getId(), c.getPbfId(), c.getUsername(), c.getMessage(), colorMap.get(c.getUsername()), c.getCreatedInMillis()));
         }
-
-        //Sort newest date first
-        chatDTOs.sort((o1, o2) -> -Long.valueOf(o1.getCreated()).compareTo(o2.getCreated()));
         return chatDTOs;
     }
 
+    /**
+     * The color of each username in the game, cached so that polling the chat doesn't load the game
+     */
+    private Map<String, String> getChatColors(String pbfId) {
+        Cache<String, Map<String, String>> chatColorCache = CivSingleton.instance().chatColorCache();
+        Map<String, String> colorMap = chatColorCache.getIfPresent(pbfId);
+        if (colorMap != null) {
+            return colorMap;
+        }
+        PBF pbf = findPBFParts(pbfId, PBFPart.PLAYER_NAMES);
+        if (pbf == null) {
+            pbf = findPBFByIdReadOnly(pbfId);
+        }
+        colorMap = pbf.getPlayers().stream()
+                .collect(Collectors.toMap(Playerhand::getUsername, (playerhand) -> {
+                    return (playerhand.getColor() != null) ? playerhand.getColor() : "";
+                }));
+        chatColorCache.put(pbfId, colorMap);
+        return colorMap;
+    }
+
     public void endGame(String pbfId, Player player, String winner) {
-        PBF pbf = pbfCollection.findOneById(pbfId);
+        PBF pbf = findPBFById(pbfId);
+        checkNotArchived(pbf);
         if (!"admin".equals(player.getUsername())) {
             Playerhand playerhand = getPlayerhandByPlayerId(player.getId(), pbf);
             //Only game creator can end game
@@ -487,7 +600,7 @@ public class GameAction extends BaseAction {
         pbf.setActive(false);
         createInfoLog(pbfId, player.getUsername() + " Ended this game");
         createInfoLog(pbfId, "Thank you for playing! Please donate if you liked this game!");
-        pbfCollection.updateById(pbfId, pbf);
+        updatePBF(pbf);
 
         Thread thread = new Thread(() -> {
             pbf.getPlayers().forEach(p -> SendEmail.sendMessage(p.getEmail(), "Game ended", pbf.getName() + " has ended. I hope you enjoyed playing.\n" +
@@ -508,10 +621,10 @@ public class GameAction extends BaseAction {
             String id = removedPart.split("/")[0];
             log.info("Id from google presentation is: " + id);
 
-            PBF pbf = pbfCollection.findOneById(pbfId);
+            PBF pbf = findPBFById(pbfId);
 
             pbf.setMapLink(id);
-            pbfCollection.updateById(pbfId, pbf);
+            updatePBF(pbf);
             Playerhand playerhand = getPlayerhandByPlayerId(playerId, pbf);
             createInfoLog(pbfId, playerhand.getUsername() + " Added map link");
             return id;
@@ -530,9 +643,9 @@ public class GameAction extends BaseAction {
             String id = removedPart.split("/")[0];
             log.info("Id from google presentation is: " + id);
 
-            PBF pbf = pbfCollection.findOneById(pbfId);
+            PBF pbf = findPBFById(pbfId);
             pbf.setAssetLink(id);
-            pbfCollection.updateById(pbfId, pbf);
+            updatePBF(pbf);
             Playerhand playerhand = getPlayerhandByPlayerId(playerId, pbf);
             createInfoLog(pbfId, playerhand.getUsername() + " Added asset link");
             return id;
@@ -545,8 +658,8 @@ public class GameAction extends BaseAction {
         Preconditions.checkNotNull(oldUsername);
         Preconditions.checkNotNull(newUsername);
 
-        PBF pbf = pbfCollection.findOneById(gameid);
-        Player toPlayer = playerCollection.find(DBQuery.is("username", newUsername)).toArray(1).get(0);
+        PBF pbf = findPBFById(gameid);
+        Player toPlayer = playerRepository.findByUsername(newUsername);
 
         //Find all instance of ownerid, and replace with newUsername
         Playerhand playerhandToReplace = pbf.getPlayers().stream().filter(p -> p.getUsername().equals(oldUsername)).findFirst().orElseThrow(PlayerAction::cannotFindPlayer);
@@ -559,8 +672,11 @@ public class GameAction extends BaseAction {
         playerhandToReplace.getBattlehand().forEach(b -> b.setOwnerId(toPlayer.getId()));
         playerhandToReplace.getTechsChosen().forEach(b -> b.setOwnerId(toPlayer.getId()));
         playerhandToReplace.getItems().forEach(b -> b.setOwnerId(toPlayer.getId()));
+        pbf.revealedItemsChanged();
 
-        pbfCollection.updateById(pbf.getId(), pbf);
+        updatePBF(pbf);
+        CivSingleton.instance().chatColorCache().invalidate(pbf.getId());
+        turnRepository.rename(pbf.getId(), oldUsername, newUsername);
         createInfoLog(pbf.getId(), newUsername + " is now playing instead of " + oldUsername);
         SendEmail.sendMessage(playerhandToReplace.getEmail(), "You are now playing in " + pbf.getName(), "Please log in to http://playciv.com and start playing!", playerhandToReplace.getPlayerId());
     }
@@ -569,10 +685,10 @@ public class GameAction extends BaseAction {
         Preconditions.checkNotNull(gameid);
 
         final PBF pbf = findPBFById(gameid);
-        WriteResult<PBF, String> writeResult = pbfCollection.removeById(gameid);
-        log.warn("Managed to delete game: " + Strings.isNullOrEmpty(writeResult.getWriteResult().toString()));
+        log.warn("Managed to delete game: " + pbfRepository.delete(gameid));
+        turnRepository.deleteByPbfId(gameid);
 
-        List<Player> playerList = playerCollection.find().toArray().stream()
+        List<Player> playerList = playerRepository.findAll().stream()
                 .filter(p -> p.getGameIds().contains(gameid))
                 .collect(toList());
 
@@ -581,14 +697,14 @@ public class GameAction extends BaseAction {
             player.getGameIds().remove(gameid);
             SendEmail.sendMessage(player.getEmail(), "Game deleted", "Your game " + pbf.getName() + " was deleted by the admin. " +
                     "If this was incorrect, please contact the admin.", player.getId());
-            playerCollection.save(player);
+            playerRepository.update(player);
         });
 
         return true;
     }
 
     public void sendMailToAll(String msg) {
-        playerCollection.find().toArray()
+        playerRepository.findAll()
                 .parallelStream()
                 .filter(p -> !p.isDisableEmail())
                 .forEach(player -> {
@@ -599,25 +715,19 @@ public class GameAction extends BaseAction {
     }
 
     /**
-     * Gets public chat which is 1 week old and maximum 50 entries, sorted on created
+     * Gets the newest public chat that is at most two weeks old, oldest first. Served from memory
      */
     public List<ChatDTO> getPublicChat() {
-        return chatCollection.find(DBQuery.notExists("pbfId")).sort(DBSort.desc("created")).toArray()
-                .stream()
-                .filter(c -> c.getCreated().isAfter(LocalDateTime.now().minusWeeks(2)))
-                .sorted((a, b) -> a.getCreated().compareTo(b.getCreated()))
-                .map(c -> new ChatDTO(c.getUsername(), c.getMessage(), c.getCreatedInMillis()))
-                .limit(50)
-                .collect(toList());
+        return CivSingleton.instance().publicChat().newest();
     }
 
     public boolean disableEmailForPlayer(String playerId) {
         Preconditions.checkNotNull(playerId);
-        Player player = playerCollection.findOneById(playerId);
+        Player player = playerRepository.findById(playerId);
         if (player != null) {
             log.warn("Player " + player.getEmail() + " no longer wants email");
             player.setDisableEmail(true);
-            playerCollection.updateById(playerId, player);
+            playerRepository.update(player);
             return true;
         }
         return false;
@@ -625,11 +735,11 @@ public class GameAction extends BaseAction {
 
     public boolean startEmailForPlayer(String playerId) {
         Preconditions.checkNotNull(playerId);
-        Player player = playerCollection.findOneById(playerId);
+        Player player = playerRepository.findById(playerId);
         if (player != null) {
             log.warn("Player " + player.getEmail() + " no longer wants email");
             player.setDisableEmail(false);
-            playerCollection.updateById(playerId, player);
+            playerRepository.update(player);
             return true;
         }
         return false;
@@ -645,7 +755,7 @@ public class GameAction extends BaseAction {
                 playerTurn.setYourTurn(false);
 
                 player.get().setYourTurn(true);
-                pbfCollection.updateById(gameid, pbf);
+                updatePBF(pbf);
                 return;
             }
             throw new BadRequestException("Player not found");
@@ -661,10 +771,10 @@ public class GameAction extends BaseAction {
         ListMultimap<String, Integer> threePlayerWinner = ArrayListMultimap.create();
         ListMultimap<String, Integer> fourPlayerWinner = ArrayListMultimap.create();
         ListMultimap<String, Integer> fivePlayerWinner = ArrayListMultimap.create();
-        List<Player> allPlayers = playerCollection.find().toArray();
+        List<Player> allPlayers = playerRepository.findAllReadOnly();
         dto.setTotalNumberOfPlayers(allPlayers.size());
 
-        List<PBF> finishedGames = pbfCollection.find().toArray().stream()
+        List<PBF> finishedGames = findAllGamesReadOnly()
                 .filter(pbf -> !pbf.isActive())
                 .filter(pbf -> !Strings.isNullOrEmpty(pbf.getWinner()))
                 .filter(pbf -> pbf.getPlayers().stream()
@@ -714,11 +824,11 @@ public class GameAction extends BaseAction {
     public PlayerHighscoreDTO getPlayerHighScore() {
         ListMultimap<String, Integer> winnersByNumOfPlayers = ArrayListMultimap.create();
         PlayerHighscoreDTO dto = new PlayerHighscoreDTO();
-        List<Player> allPlayers = playerCollection.find().toArray();
+        List<Player> allPlayers = playerRepository.findAllReadOnly();
         dto.setTotalNumberOfPlayers(allPlayers.size());
         //key == username, value = num of players
 
-        List<PBF> finishedGames = pbfCollection.find().toArray().stream()
+        List<PBF> finishedGames = findAllGamesReadOnly()
                 .filter(pbf -> !pbf.isActive())
                 .filter(pbf -> !Strings.isNullOrEmpty(pbf.getWinner()))
                 .collect(toList());
@@ -849,20 +959,6 @@ public class GameAction extends BaseAction {
     }
 
 
-    private List<Item> getAllRevealedItems(PBF pbf) {
-        //Had to have comparator inside sort, otherwise weird exception
-        Stream<Item> discardedStream = pbf.getDiscardedItems().stream()
-                .sorted((o1, o2) -> o1.getSheetName().compareTo(o2.getSheetName()));
-
-        Stream<Item> playerStream = pbf.getPlayers().stream()
-                .flatMap(p -> p.getItems().stream())
-                .filter(it -> !it.isHidden())
-                .sorted((o1, o2) -> o1.getSheetName().compareTo(o2.getSheetName()));
-
-        Stream<Item> concatedStream = Stream.concat(discardedStream, playerStream);
-        return concatedStream.collect(toList());
-    }
-
     private String getNameForPlayerNumber(int nr) {
         switch (nr) {
             case 0:
@@ -16,55 +16,129 @@
 package no.asgari.civilization.server.action;
 
 import com.google.common.base.Preconditions;
-import com.mongodb.DB;
 import lombok.extern.log4j.Log4j;
 import no.asgari.civilization.server.application.CivSingleton;
 import no.asgari.civilization.server.model.Draw;
+import no.asgari.civilization.server.model.GameEvent;
 import no.asgari.civilization.server.model.GameLog;
+import no.asgari.civilization.server.model.GameSnapshot;
 import no.asgari.civilization.server.model.Item;
-import no.asgari.civilization.server.model.Player;
-import org.mongojack.DBQuery;
-import org.mongojack.JacksonDBCollection;
-import org.mongojack.WriteResult;
+import no.asgari.civilization.server.model.Move;
+import no.asgari.civilization.server.model.PBF;
+import no.asgari.civilization.server.model.Playerhand;
+import no.asgari.civilization.server.repository.GameEventRepository;
+import no.asgari.civilization.server.repository.ArchiveRepository;
+import no.asgari.civilization.server.repository.GameLogRepository;
+import no.asgari.civilization.server.repository.GameSnapshotRepository;
+import no.asgari.civilization.server.repository.PBFRepository;
+import no.asgari.civilization.server.repository.PlayerRepository;
+import no.asgari.civilization.server.repository.Repositories;
 
 import javax.validation.Valid;
 import javax.validation.constraints.NotNull;
 import java.util.List;
-import java.util.concurrent.ExecutionException;
+
+import static java.util.stream.Collectors.toList;
 
 /**
  * Action class responsible for logging private and public logs
  */
 @Log4j
 public class GameLogAction {
-    private final JacksonDBCollection<GameLog, String> gameLogCollection;
-    private final JacksonDBCollection<Player, String> playerCollection;
+    private static final int MAX_EVENTS = 500;
+
+    private final GameLogRepository gameLogRepository;
+    private final GameEventRepository gameEventRepository;
+    private final GameSnapshotRepository snapshotRepository;
+    private final PBFRepository pbfRepository;
+    private final PlayerRepository playerRepository;
+    private final ArchiveRepository archiveRepository;
+
+    public GameLogAction(Repositories repositories) {
+        this.gameLogRepository = repositories.getGameLogs();
+        this.gameEventRepository = repositories.getGameEvents();
+        this.snapshotRepository = repositories.getSnapshots();
+        this.pbfRepository = repositories.getPbfs();
+        this.playerRepository = repositories.getPlayers();
+        this.archiveRepository = repositories.getArchive();
+    }
 
-    public GameLogAction(DB db) {
-        this.gameLogCollection = JacksonDBCollection.wrap(db.getCollection(GameLog.COL_NAME), GameLog.class, String.class);
-        this.playerCollection = JacksonDBCollection.wrap(db.getCollection(Player.COL_NAME), Player.class, String.class);
+    String save(@NotNull @Valid GameLog gameLog, @NotNull GameLog.LogType type) {
+        return save(gameLog, type, moveOf(type, gameLog.getDraw()));
     }
 
-    String save(@NotNull @Valid GameLog gameLog) {
+    /**
+     * Saves the log and appends it as an event of the given type to the event stream of the game.
+     * The game must already be updated with the move, since a snapshot may be taken right after the event
+     */
+    String save(@NotNull @Valid GameLog gameLog, @NotNull GameLog.LogType type, Move move) {
         Preconditions.checkNotNull(gameLog);
 
-        WriteResult<GameLog, String> insert = this.gameLogCollection.insert(gameLog);
-        log.debug("Saved Gamelog with _id " + insert.getSavedId());
-        return insert.getSavedId();
+        String id = gameLogRepository.insert(gameLog);
+        gameLog.setId(id);
+        log.debug("Saved Gamelog with _id " + id);
+        append(GameEvent.of(gameLog, type, move));
+        return id;
+    }
+
+    private GameEvent append(GameEvent event) {
+        gameEventRepository.append(event);
+        int snapshotInterval = CivSingleton.instance().snapshotInterval();
+        if (snapshotInterval > 0 && event.getSequence() % snapshotInterval == 0) {
+            takeSnapshot(event.getPbfId());
+        }
+        return event;
+    }
+
+    /**
+     * The moves of logs that are made through createGameLog
+     */
+    private static Move moveOf(GameLog.LogType type, Draw draw) {
+        if (draw == null) {
+            return null;
+        }
+        switch (type) {
+            case ITEM:
+                return Move.draw(draw.getPlayerId());
+            case TECH:
+                return Move.chooseTech(draw.getPlayerId());
+            case REMOVED_TECH:
+                return Move.removeTech(draw.getPlayerId());
+            case DISCARD:
+                return Move.discard(draw.getPlayerId());
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * Stores the game as it is now, as the state after the last event
+     */
+    public void takeSnapshot(String pbfId) {
+        long sequence = gameEventRepository.lastSequence(pbfId);
+        PBF pbf = pbfRepository.findById(pbfId);
+        if (pbf != null) {
+            snapshotRepository.save(new GameSnapshot(pbf, sequence));
+            log.debug("Took snapshot of " + pbfId + " at sequence " + sequence);
+        }
+    }
+
+    public void createEndTurnEvent(String pbfId, Playerhand playerhand, Playerhand nextPlayer) {
+        GameEvent event = new GameEvent();
+        event.setPbfId(pbfId);
+        event.setType(GameLog.LogType.END_TURN);
+        event.setUsername(playerhand.getUsername());
+        event.setMove(Move.endTurn(playerhand.getPlayerId(), nextPlayer.getPlayerId()));
+        append(event);
     }
 
     public GameLog createGameLog(Draw draw, GameLog.LogType logType) {
         GameLog pl = new GameLog();
         pl.setDraw(draw);
         pl.setPbfId(draw.getPbfId());
-        try {
-            pl.setUsername(CivSingleton.instance().playerCache().get(draw.getPlayerId()));
-        } catch (ExecutionException e) {
-            log.error("Couldn't retrieve username from cache");
-            pl.setUsername(getUsernameFromPlayerId(draw.getPlayerId()));
-        }
+        pl.setUsername(getUsername(draw.getPlayerId()));
         pl.createAndSetLog(logType, draw.getItem() != null ? draw.getItem().getItemNumber() : 0);
-        pl.setId(save(pl));
+        pl.setId(save(pl, logType));
         return pl;
     }
 
@@ -78,14 +152,9 @@ public class GameLogAction {
         draw.setItem(item);
         pl.setDraw(draw);
         pl.setPbfId(pbfId);
-        try {
-            pl.setUsername(CivSingleton.instance().playerCache().get(playerId));
-        } catch (ExecutionException e) {
-            log.error("Couldn't retrieve username from cache");
-            pl.setUsername(getUsernameFromPlayerId(playerId));
-        }
+        pl.setUsername(getUsername(playerId));
         pl.createAndSetLog(logType, item.getItemNumber());
-        pl.setId(save(pl));
+        pl.setId(save(pl, logType));
         return pl;
     }
 
@@ -95,7 +164,7 @@ public class GameLogAction {
         pl.setUsername(username);
         pl.setPublicLog(username + " has voted " + (vote ? "yes" : "no") + " to undo "
                 + draw.getItem().revealPublic() + " with item number " + draw.getItem().getItemNumber());
-        pl.setId(save(pl));
+        pl.setId(save(pl, GameLog.LogType.VOTE));
         return pl;
     }
 
@@ -106,7 +175,7 @@ public class GameLogAction {
         GameLog pl = createCommonGameLog(pbfId, playerId);
         pl.setPublicLog(pl.getUsername() + " " + publicMessage);
         pl.setPrivateLog("");
-        pl.setId(save(pl));
+        pl.setId(save(pl, GameLog.LogType.MESSAGE));
         return pl;
     }
 
@@ -114,7 +183,7 @@ public class GameLogAction {
         GameLog pl = createCommonGameLog(pbfId, playerId);
         pl.setPrivateLog(pl.getUsername() + " " + privateMessage);
         pl.setPublicLog("");
-        pl.setId(save(pl));
+        pl.setId(save(pl, GameLog.LogType.MESSAGE));
         return pl;
     }
 
@@ -122,95 +191,121 @@ public class GameLogAction {
         GameLog pl = createCommonGameLog(pbfId, playerId);
         pl.setPrivateLog(pl.getUsername() + " " + message);
         pl.setPublicLog(pl.getUsername() + " " + message);
-        pl.setId(save(pl));
+        pl.setId(save(pl, GameLog.LogType.MESSAGE));
         return pl;
     }
 
     private GameLog createCommonGameLog(String pbfId, String playerId) {
         GameLog pl = new GameLog();
         pl.setPbfId(pbfId);
-        try {
-            pl.setUsername(CivSingleton.instance().playerCache().get(playerId));
-        } catch (Exception e) {
-            log.error("Couldn't retrieve username from cache");
-            pl.setUsername(getUsernameFromPlayerId(playerId));
-        }
+        pl.setUsername(getUsername(playerId));
         return pl;
     }
 
     public GameLog findGameLogById(String id) {
-        return gameLogCollection.findOneById(id);
+        return gameLogRepository.findById(id);
     }
 
-    public WriteResult<GameLog, String> updateGameLogById(GameLog gameLog) {
-        return gameLogCollection.updateById(gameLog.getId(), gameLog);
+    public void updateGameLogById(GameLog gameLog) {
+        gameLogRepository.update(gameLog);
     }
 
-    private String getUsernameFromPlayerId(String playerId) {
-        return playerCollection.findOneById(playerId).getUsername();
+    /**
+     * The usernameCache is preloaded with all players on startup, so the database is only used as a last resort
+     */
+    private String getUsername(String playerId) {
+        try {
+            return CivSingleton.instance().playerCache().get(playerId);
+        } catch (Exception e) {
+            log.error("Couldn't retrieve username from cache");
+            return playerRepository.findUsernameById(playerId);
+        }
     }
 
+    /**
+     * The logs of a finished game are read from the archive once the game has been moved there.
+     * Read from the logs rather than the events, since the logs carry the current state of their undo
+     */
     public List<GameLog> getGameLogs(String pbfId) {
-        return gameLogCollection.find(DBQuery.is("pbfId", pbfId)).toArray();
+        List<GameLog> gameLogs = gameLogRepository.findByPbfIdReadOnly(pbfId);
+        return gameLogs.isEmpty() ? archiveRepository.findGameLogs(pbfId) : gameLogs;
     }
 
     public List<GameLog> getGameLogsBelongingToPlayer(String pbfId, String username) {
-        return gameLogCollection.find(DBQuery.is("pbfId", pbfId).is("username", username)).toArray();
+        List<GameLog> gameLogs = gameLogRepository.findByPbfIdAndUsername(pbfId, username);
+        if (!gameLogs.isEmpty()) {
+            return gameLogs;
+        }
+        return archiveRepository.findGameLogs(pbfId).stream()
+                .filter(gameLog -> username.equals(gameLog.getUsername()))
+                .collect(toList());
     }
 
-    public void createTradeGameLog(Item item, String pbfId, GameLog.LogType logType, String username) {
+    public void createTradeGameLog(Item item, String pbfId, GameLog.LogType logType, Playerhand fromPlayer) {
+        String username = fromPlayer.getUsername();
         GameLog gl = new GameLog();
         Draw<Item> draw = new Draw<>(pbfId, item.getOwnerId());
         draw.setItem(item);
         gl.setDraw(draw);
         gl.setPbfId(pbfId);
-        try {
-            gl.setUsername(CivSingleton.instance().playerCache().get(item.getOwnerId()));
-        } catch (ExecutionException e) {
-            log.error("Couldn't retrieve username from cache");
-            gl.setUsername(getUsernameFromPlayerId(item.getOwnerId()));
-        }
+        gl.setUsername(getUsername(item.getOwnerId()));
         gl.createAndSetLog(logType, item.getItemNumber());
-        gl.setId(save(gl));
+        gl.setId(save(gl, logType, Move.trade(fromPlayer.getPlayerId(), item.getOwnerId())));
 
         GameLog gl2 = new GameLog();
         gl2.setPbfId(pbfId);
         gl2.setUsername(username);
         gl2.setPrivateLog(gl.getUsername() + " has received - " + draw.getItem().revealAll());
         gl2.setPublicLog("");
-        gl2.setId(save(gl2));
+        gl2.setId(save(gl2, GameLog.LogType.MESSAGE));
     }
 
     public GameLog createGameLog(String pbfId, GameLog.LogType logType, String playerId) {
         GameLog pl = new GameLog();
         pl.setPbfId(pbfId);
-        try {
-            pl.setUsername(CivSingleton.instance().playerCache().get(playerId));
-        } catch (ExecutionException e) {
-            log.error("Couldn't retrieve username from cache");
-            pl.setUsername(getUsernameFromPlayerId(playerId));
-        }
+        pl.setUsername(getUsername(playerId));
         pl.createAndSetLog(logType, 0);
-        pl.setId(save(pl));
+        pl.setId(save(pl, logType));
         return pl;
     }
 
     public boolean updateGameLog(String pbfId, String oldUsername, String newUsername) {
-        List<GameLog> gameLogs = gameLogCollection.find(DBQuery.is("pbfId", pbfId).is("username", oldUsername)).toArray();
+        List<GameLog> gameLogs = gameLogRepository.findByPbfIdAndUsername(pbfId, oldUsername);
         for (GameLog gl : gameLogs) {
             gl.setUsername(newUsername);
-            gameLogCollection.updateById(gl.getId(), gl);
+            gameLogRepository.update(gl);
         }
         return !gameLogs.isEmpty();
     }
 
     public void createUndoLog(String pbfId, String message, Item item) {
+        createUndoLog(pbfId, message, item, null);
+    }
+
+    /**
+     * @param move - the move that takes back the undone event, if it had one
+     */
+    public void createUndoLog(String pbfId, String message, Item item, Move move) {
         Preconditions.checkNotNull(message);
         GameLog log = new GameLog();
         log.setPublicLog("System: " + message + ". Item number #" + item.getItemNumber());
         log.setPrivateLog("System: " + message + ". Item number #" + item.getItemNumber());
         log.setUsername("System");
         log.setPbfId(pbfId);
-        save(log);
+        String id = gameLogRepository.insert(log);
+        log.setId(id);
+
+        GameEvent event = GameEvent.of(log, move != null ? GameLog.LogType.UNDO : GameLog.LogType.INFO, move);
+        Draw<Item> draw = new Draw<>(pbfId, item.getOwnerId());
+        draw.setItem(item);
+        event.setDraw(draw);
+        append(event);
+    }
+
+    /**
+     * The events of the game after the given sequence, oldest first
+     */
+    public List<GameEvent> getEvents(String pbfId, long afterSequence, int limit) {
+        return gameEventRepository.findByPbfId(pbfId, Math.max(0, afterSequence), Math.max(1, Math.min(limit, MAX_EVENTS)));
     }
 }
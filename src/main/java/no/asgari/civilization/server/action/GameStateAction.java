@@ -0,0 +1,181 @@
+/*
+ * Copyright (c) 2015 Shervin Asgari
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package no.asgari.civilization.server.action;
+
+import lombok.extern.log4j.Log4j;
+import no.asgari.civilization.server.exception.NoMoreItemsException;
+import no.asgari.civilization.server.model.GameEvent;
+import no.asgari.civilization.server.model.GameSnapshot;
+import no.asgari.civilization.server.model.Item;
+import no.asgari.civilization.server.model.Move;
+import no.asgari.civilization.server.model.PBF;
+import no.asgari.civilization.server.model.Playerhand;
+import no.asgari.civilization.server.model.Tech;
+import no.asgari.civilization.server.repository.GameEventRepository;
+import no.asgari.civilization.server.repository.GameSnapshotRepository;
+import no.asgari.civilization.server.repository.Repositories;
+
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.Response;
+import java.util.List;
+import java.util.Optional;
+import java.util.Random;
+
+/**
+ * Rebuilds the game from its latest snapshot and the moves of the events after it
+ */
+@Log4j
+public class GameStateAction extends BaseAction {
+    private static final int EVENTS_PER_READ = 500;
+
+    private final GameEventRepository gameEventRepository;
+    private final GameSnapshotRepository snapshotRepository;
+
+    public GameStateAction(Repositories repositories) {
+        super(repositories);
+        this.gameEventRepository = repositories.getGameEvents();
+        this.snapshotRepository = repositories.getSnapshots();
+    }
+
+    /**
+     * The game as it was after the event with the given sequence.
+     * Only the moves are replayed, so anything else that changed after the snapshot is not included
+     */
+    public PBF stateAt(String pbfId, long sequence) {
+        GameSnapshot snapshot = snapshotRepository.findLatest(pbfId, sequence)
+                .orElseThrow(() -> new WebApplicationException(Response.Status.NOT_FOUND));
+        PBF pbf = snapshot.getPbf();
+
+        long after = snapshot.getSequence();
+        while (after < sequence) {
+            List<GameEvent> events = gameEventRepository.findByPbfId(pbfId, after, EVENTS_PER_READ);
+            if (events.isEmpty()) {
+                break;
+            }
+            for (GameEvent event : events) {
+                if (event.getSequence() > sequence) {
+                    return pbf;
+                }
+                if (event.getMove() != null) {
+                    Item item = event.getDraw() != null ? event.getDraw().getItem() : null;
+                    if (!apply(pbf, event.getMove(), item)) {
+                        log.warn("Couldn't replay " + event + " of game " + pbfId);
+                    }
+                }
+                after = event.getSequence();
+            }
+        }
+        return pbf;
+    }
+
+    /**
+     * Makes the move on the game
+     *
+     * @return false if the item wasn't where the move takes it from
+     */
+    static boolean apply(PBF pbf, Move move, Item item) {
+        if (move.getFrom() == Move.Location.TURN) {
+            Optional<Playerhand> playerhand = findPlayerhand(pbf, move.getFromPlayerId());
+            Optional<Playerhand> nextPlayer = findPlayerhand(pbf, move.getToPlayerId());
+            if (!playerhand.isPresent() || !nextPlayer.isPresent()) {
+                return false;
+            }
+            playerhand.get().setYourTurn(false);
+            nextPlayer.get().setYourTurn(true);
+            return true;
+        }
+        if (move.getSheetName() != null) {
+            try {
+                //Reshuffles from before the seed was kept can't be replayed in the same order
+                Random random = move.getSeed() != null ? new Random(move.getSeed()) : new Random();
+                DrawAction.putDiscardedBackInDeck(move.getSheetName(), pbf, random);
+                return true;
+            } catch (NoMoreItemsException e) {
+                return false;
+            }
+        }
+        if (item == null) {
+            return false;
+        }
+        Item moved = item;
+        if (move.getFrom() != null) {
+            Optional<Item> removed = remove(pbf, move.getFrom(), move.getFromPlayerId(), item);
+            if (!removed.isPresent()) {
+                return false;
+            }
+            moved = removed.get();
+        }
+        if (move.getTo() != null && !add(pbf, move.getTo(), move.getToPlayerId(), moved)) {
+            return false;
+        }
+        if (move.getFrom() == Move.Location.TECHS || move.getTo() == Move.Location.TECHS) {
+            pbf.techsChanged();
+        }
+        if (move.getTo() == Move.Location.DECK && move.getSeed() != null) {
+            DrawAction.shuffleDeck(pbf, move.getSeed());
+        }
+        return true;
+    }
+
+    /**
+     * The item of the move is a copy from its event, so the item in the game is found by its number
+     *
+     * @return the item in the game that was removed
+     */
+    private static Optional<Item> remove(PBF pbf, Move.Location location, String playerId, Item item) {
+        switch (location) {
+            case DECK:
+                return pbf.getItems().removeCopyOf(item);
+            case DISCARD:
+                return pbf.getDiscardedItems().removeCopyOf(item);
+            case HAND:
+                return findPlayerhand(pbf, playerId).flatMap(p -> p.getItems().removeCopyOf(item));
+            case TECHS:
+                return findPlayerhand(pbf, playerId).filter(p -> p.getTechsChosen().remove(item)).map(p -> item);
+            default:
+                return Optional.empty();
+        }
+    }
+
+    /**
+     * Items in the deck, a hand or the techs are hidden. A discarded item keeps its own flag
+     */
+    private static boolean add(PBF pbf, Move.Location location, String playerId, Item item) {
+        switch (location) {
+            case DECK:
+                item.setHidden(true);
+                return pbf.getItems().add(item);
+            case DISCARD:
+                return pbf.getDiscardedItems().add(item);
+            case HAND:
+                item.setHidden(true);
+                item.setOwnerId(playerId);
+                return findPlayerhand(pbf, playerId).map(p -> p.getItems().add(item)).orElse(false);
+            case TECHS:
+                item.setHidden(true);
+                item.setOwnerId(playerId);
+                return item instanceof Tech && findPlayerhand(pbf, playerId).map(p -> p.getTechsChosen().add((Tech) item)).orElse(false);
+            default:
+                return false;
+        }
+    }
+
+    private static Optional<Playerhand> findPlayerhand(PBF pbf, String playerId) {
+        return pbf.getPlayers().stream()
+                .filter(p -> p.getPlayerId().equals(playerId))
+                .findFirst();
+    }
+}
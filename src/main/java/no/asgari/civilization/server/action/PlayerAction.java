@@ -17,16 +17,15 @@ package no.asgari.civilization.server.action;
 
 import com.google.common.base.Preconditions;
 import com.google.common.base.Strings;
-import com.mongodb.DB;
+import com.google.common.cache.Cache;
 import lombok.SneakyThrows;
 import lombok.extern.log4j.Log4j;
 import no.asgari.civilization.server.SheetName;
 import no.asgari.civilization.server.application.CivSingleton;
-import no.asgari.civilization.server.dto.AllTechsDTO;
+import no.asgari.civilization.server.application.TechBoard;
 import no.asgari.civilization.server.dto.ForgotpassDTO;
 import no.asgari.civilization.server.dto.ItemDTO;
 import no.asgari.civilization.server.dto.MessageDTO;
-import no.asgari.civilization.server.dto.TechDTO;
 import no.asgari.civilization.server.email.SendEmail;
 import no.asgari.civilization.server.exception.PlayerExistException;
 import no.asgari.civilization.server.misc.SecurityCheck;
@@ -34,24 +33,30 @@ import no.asgari.civilization.server.model.Civ;
 import no.asgari.civilization.server.model.Draw;
 import no.asgari.civilization.server.model.GameLog;
 import no.asgari.civilization.server.model.Item;
+import no.asgari.civilization.server.model.ItemList;
 import no.asgari.civilization.server.model.PBF;
+import no.asgari.civilization.server.model.PBFPart;
 import no.asgari.civilization.server.model.Player;
 import no.asgari.civilization.server.model.Playerhand;
 import no.asgari.civilization.server.model.SocialPolicy;
 import no.asgari.civilization.server.model.Tech;
+import no.asgari.civilization.server.model.TechCatalog;
 import no.asgari.civilization.server.model.Tradable;
 import no.asgari.civilization.server.model.Unit;
+import no.asgari.civilization.server.repository.GameLogRepository;
+import no.asgari.civilization.server.repository.PlayerRepository;
+import no.asgari.civilization.server.repository.Repositories;
 import org.apache.commons.codec.digest.DigestUtils;
-import org.mongojack.DBQuery;
-import org.mongojack.JacksonDBCollection;
-import org.mongojack.WriteResult;
 
 import javax.ws.rs.WebApplicationException;
 import javax.ws.rs.client.Entity;
 import javax.ws.rs.core.Response;
 import java.io.UnsupportedEncodingException;
 import java.net.URLDecoder;
+import java.util.ArrayList;
 import java.util.Base64;
+import java.util.BitSet;
+import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Optional;
@@ -61,18 +66,16 @@ import java.util.stream.Collectors;
 @Log4j
 public class PlayerAction extends BaseAction {
 
-    private final JacksonDBCollection<Player, String> playerCollection;
-    private final JacksonDBCollection<PBF, String> pbfCollection;
-    private final JacksonDBCollection<GameLog, String> gameLogCollection;
+    private final PlayerRepository playerRepository;
+    private final GameLogRepository gameLogRepository;
 
     private final DrawAction drawAction;
 
-    public PlayerAction(DB db) {
-        super(db);
-        this.playerCollection = JacksonDBCollection.wrap(db.getCollection(Player.COL_NAME), Player.class, String.class);
-        this.pbfCollection = JacksonDBCollection.wrap(db.getCollection(PBF.COL_NAME), PBF.class, String.class);
-        this.gameLogCollection = JacksonDBCollection.wrap(db.getCollection(GameLog.COL_NAME), GameLog.class, String.class);
-        this.drawAction = new DrawAction(db);
+    public PlayerAction(Repositories repositories) {
+        super(repositories);
+        this.playerRepository = repositories.getPlayers();
+        this.gameLogRepository = repositories.getGameLogs();
+        this.drawAction = new DrawAction(repositories);
     }
 
     /**
@@ -95,7 +98,7 @@ public class PlayerAction extends BaseAction {
         Preconditions.checkNotNull(pbfId);
         Preconditions.checkNotNull(techName);
 
-        PBF pbf = pbfCollection.findOneById(pbfId);
+        PBF pbf = findPBFWithPlayer(pbfId, playerId, PBFPart.NAME, PBFPart.TECHS);
         if (!SecurityCheck.hasUserAccess(pbf, playerId)) {
             log.error("User with id " + playerId + " has no access to pbf " + pbf.getName());
             throw new WebApplicationException(Response.Status.FORBIDDEN);
@@ -115,8 +118,11 @@ public class PlayerAction extends BaseAction {
             return null;
         }
         playerhand.getTechsChosen().add(chosenTech);
+        pbf.techsChanged();
 
-        pbfCollection.updateById(pbf.getId(), pbf);
+        if (!updatePBFPlayer(pbf, playerId, PBFPart.TECHS, PBFPart.TECHS_TAG)) {
+            throw writtenConcurrently();
+        }
         log.debug("Player " + playerId + " chose tech " + chosenTech.getName());
 
         return super.createLog(chosenTech, pbfId, GameLog.LogType.TECH);
@@ -127,7 +133,7 @@ public class PlayerAction extends BaseAction {
         Preconditions.checkNotNull(pbfId);
         Preconditions.checkNotNull(playerId);
 
-        PBF pbf = pbfCollection.findOneById(pbfId);
+        PBF pbf = findPBFWithPlayer(pbfId, playerId, PBFPart.NAME);
         if (!SecurityCheck.hasUserAccess(pbf, playerId)) {
             log.error("User with id " + playerId + " has no access to pbf " + pbf.getName());
             throw new WebApplicationException(Response.Status.FORBIDDEN);
@@ -142,7 +148,10 @@ public class PlayerAction extends BaseAction {
             log.error("Could not remove tech " + techName + " from player with id " + playerId + " in pbf " + pbf.getName());
             return false;
         }
-        pbfCollection.updateById(pbf.getId(), pbf);
+        pbf.techsChanged();
+        if (!updatePBFPlayer(pbf, playerId, PBFPart.TECHS_TAG)) {
+            throw writtenConcurrently();
+        }
 
         super.createLog(techToRemove, pbfId, GameLog.LogType.REMOVED_TECH);
         return true;
@@ -152,7 +161,7 @@ public class PlayerAction extends BaseAction {
         Preconditions.checkNotNull(pbfId);
         Preconditions.checkNotNull(player.getUsername());
 
-        PBF pbf = pbfCollection.findOneById(pbfId);
+        PBF pbf = findPBFById(pbfId);
 
         if (pbf.getPlayers().get(0).getPlayernumber() > 0) {
             Playerhand playerhand = pbf.getPlayers().stream().filter(Playerhand::isYourTurn).findFirst().get();
@@ -164,7 +173,8 @@ public class PlayerAction extends BaseAction {
             nextPlayer.setYourTurn(true);
             SendEmail.sendYourTurn(pbf.getName(), nextPlayer.getEmail(), pbf.getId());
 
-            pbfCollection.updateById(pbf.getId(), pbf);
+            updatePBF(pbf);
+            logAction.createEndTurnEvent(pbfId, playerhand, nextPlayer);
             return true;
 
         } else {
@@ -186,7 +196,8 @@ public class PlayerAction extends BaseAction {
                     nextPlayer.setYourTurn(true);
                     SendEmail.sendYourTurn(pbf.getName(), nextPlayer.getEmail(), pbf.getId());
 
-                    pbfCollection.updateById(pbf.getId(), pbf);
+                    updatePBF(pbf);
+                    logAction.createEndTurnEvent(pbfId, playerhand, nextPlayer);
                     return true;
                 }
             }
@@ -209,7 +220,7 @@ public class PlayerAction extends BaseAction {
         Preconditions.checkNotNull(playerId);
 
         //Check if item can be found on the player
-        PBF pbf = pbfCollection.findOneById(pbfId);
+        PBF pbf = findPBFById(pbfId);
         Playerhand playerhand = getPlayerhandByPlayerId(playerId, pbf);
 
         if (!SecurityCheck.hasUserAccess(pbf, playerId)) {
@@ -217,7 +228,7 @@ public class PlayerAction extends BaseAction {
             throw new WebApplicationException(Response.Status.FORBIDDEN);
         }
 
-        List<Item> items = playerhand.getItems();
+        ItemList items = playerhand.getItems();
 
         Optional<SheetName> sheetName = SheetName.find(itemDTO.getSheetName());
         if (!sheetName.isPresent()) {
@@ -227,11 +238,8 @@ public class PlayerAction extends BaseAction {
                     .build());
         }
 
-        Optional<Item> itemToRevealOptional = items.stream()
-                .filter(it -> it.getItemNumber() == itemDTO.getItemNumber())
-                .filter(it -> it.getSheetName() == sheetName.get())
-                .filter(Item::isHidden)
-                .findFirst();
+        Optional<Item> itemToRevealOptional = items.findByItemNumber(itemDTO.getItemNumber(),
+                it -> it.getSheetName() == sheetName.get() && it.isHidden());
 
         if (!itemToRevealOptional.isPresent()) {
             itemToRevealOptional = items.stream()
@@ -251,10 +259,11 @@ public class PlayerAction extends BaseAction {
         boolean isCiv = isCivilization(playerhand, sheetName);
 
         Item itemToReveal = itemToRevealOptional.get();
-        itemToReveal.setHidden(false);
+        pbf.reveal(itemToReveal);
         if (isCiv) {
             Civ civ = setStartingTech(playerId, playerhand, (Civ) itemToReveal);
-            pbfCollection.updateById(pbf.getId(), pbf);
+            pbf.techsChanged();
+            updatePBF(pbf);
             //Create a new log entry
             logAction.createGameLog(itemToReveal, pbf.getId(), GameLog.LogType.REVEAL);
             log.debug("item to be reveal " + itemToReveal);
@@ -271,7 +280,7 @@ public class PlayerAction extends BaseAction {
             }
 
         } else {
-            pbfCollection.updateById(pbf.getId(), pbf);
+            updatePBF(pbf);
             //Create a new log entry
             logAction.createGameLog(itemToReveal, pbf.getId(), GameLog.LogType.REVEAL);
             log.debug("item to be reveal " + itemToReveal);
@@ -302,23 +311,23 @@ public class PlayerAction extends BaseAction {
     }
 
     private void deleteTheOtherCivs(String pbfId, String playerId, Civ civ) {
-        PBF pbf = pbfCollection.findOneById(pbfId);
+        PBF pbf = findPBFById(pbfId);
         Playerhand playerhand = getPlayerhandByPlayerId(playerId, pbf);
         Iterator<Item> iterator = playerhand.getItems().iterator();
-        boolean deleted = false;
+        List<Item> deleted = new ArrayList<>();
         while (iterator.hasNext()) {
             Item item = iterator.next();
             if (item instanceof Civ && !item.equals(civ)) {
                 item.setHidden(true);
-                pbf.getDiscardedItems().add(item);
+                pbf.discard(item);
                 iterator.remove();
-                deleted = true;
-                createLog(item, pbf.getId(), GameLog.LogType.DISCARD, playerId);
+                deleted.add(item);
             }
         }
 
-        if (deleted) {
-            pbfCollection.updateById(pbf.getId(), pbf);
+        if (!deleted.isEmpty()) {
+            updatePBF(pbf);
+            deleted.forEach(item -> createLog(item, pbf.getId(), GameLog.LogType.DISCARD, playerId));
         }
     }
 
@@ -396,7 +405,7 @@ public class PlayerAction extends BaseAction {
         Preconditions.checkNotNull(pbfId);
         Preconditions.checkNotNull(playerId);
 
-        PBF pbf = pbfCollection.findOneById(pbfId);
+        PBF pbf = findPBFById(pbfId);
 
         if (!SecurityCheck.hasUserAccess(pbf, playerId)) {
             log.error("User with id " + playerId + " has no access to pbf " + pbf.getName());
@@ -415,9 +424,10 @@ public class PlayerAction extends BaseAction {
         Playerhand playerhand = getPlayerhandByPlayerId(playerId, pbf);
         Tech tech = playerhand.getTechsChosen().stream().filter(t -> t.getName().equals(item.getName())).findFirst().orElseThrow(PlayerAction::cannotFindItem);
         tech.setHidden(false);
+        pbf.techsChanged();
 
-        gameLogCollection.updateById(gameLog.getId(), gameLog);
-        pbfCollection.updateById(pbfId, pbf);
+        gameLogRepository.update(gameLog);
+        updatePBF(pbf);
 
         createLog(item, pbf.getId(), GameLog.LogType.REVEAL, playerId);
     }
@@ -430,25 +440,19 @@ public class PlayerAction extends BaseAction {
      * @return
      */
     public List<Tech> getRemaingTechsForPlayer(String playerId, String pbfId) {
-        PBF pbf = pbfCollection.findOneById(pbfId);
+        PBF pbf = findPBFByIdReadOnly(pbfId);
 
-        Optional<Playerhand> playerhandOptional = pbf.getPlayers().stream()
+        Playerhand playerhand = pbf.getPlayers().stream()
                 .filter(p -> p.getPlayerId().equals(playerId))
-                .findFirst();
-
-        Set<Tech> techsChosen = playerhandOptional.orElseThrow(PlayerAction::cannotFindPlayer)
-                .getTechsChosen();
-
-        Playerhand playerhand = playerhandOptional.get();
+                .findFirst()
+                .orElseThrow(PlayerAction::cannotFindPlayer);
 
+        TechCatalog catalog = new TechCatalog(pbf.getTechs());
+        BitSet techsChosen = catalog.bitsOf(playerhand.getTechsChosen());
         if (playerhand.getCivilization() != null && playerhand.getCivilization().getStartingTech() != null) {
-            techsChosen.add(playerhandOptional.get().getCivilization().getStartingTech());
+            techsChosen.or(catalog.bitsOf(Collections.singleton(playerhand.getCivilization().getStartingTech())));
         }
-        List<Tech> techs = pbf.getTechs();
-        techs.removeAll(techsChosen);
-
-        techs.sort(((o1, o2) -> Integer.valueOf(o1.getLevel()).compareTo(o2.getLevel())));
-        return techs;
+        return catalog.remaining(techsChosen);
     }
 
     /**
@@ -461,7 +465,7 @@ public class PlayerAction extends BaseAction {
      * @see #checkYourTurn(String, String)
      */
     public boolean isYourTurn(String pbfId, String playerId) {
-        PBF pbf = pbfCollection.findOneById(pbfId);
+        PBF pbf = findPBFWithPlayer(pbfId, playerId);
         Playerhand playerhand = getPlayerhandByPlayerId(playerId, pbf);
         return playerhand.isYourTurn();
     }
@@ -478,7 +482,7 @@ public class PlayerAction extends BaseAction {
         Preconditions.checkNotNull(item.getPbfId());
         Preconditions.checkNotNull(item.getOwnerId());
 
-        PBF pbf = pbfCollection.findOneById(item.getPbfId());
+        PBF pbf = findPBFById(item.getPbfId());
         Playerhand fromPlayer = getPlayerhandByPlayerId(playerId, pbf);
         Playerhand toPlayer = getPlayerhandByPlayerId(item.getOwnerId(), pbf);
         Optional<SheetName> dtoSheet = SheetName.find(item.getSheetName());
@@ -487,11 +491,8 @@ public class PlayerAction extends BaseAction {
             throw cannotFindItem();
         }
 
-        Optional<Item> tradableItem = fromPlayer.getItems().stream()
-                .filter(it -> it instanceof Tradable)
-                .filter(it -> it.getItemNumber() == item.getItemNumber())
-                .filter(it -> it.getName().equalsIgnoreCase(item.getName()))
-                .findFirst();
+        Optional<Item> tradableItem = fromPlayer.getItems().findByItemNumber(item.getItemNumber(),
+                it -> it instanceof Tradable && it.getName().equalsIgnoreCase(item.getName()));
 
         if (!tradableItem.isPresent()) {
             tradableItem = fromPlayer.getItems().stream()
@@ -507,7 +508,7 @@ public class PlayerAction extends BaseAction {
 
         Item itemToTrade = tradableItem.get();
 
-        boolean remove = fromPlayer.getItems().remove(itemToTrade);
+        boolean remove = fromPlayer.getItems().removeItem(itemToTrade);
         if (!remove) {
             log.error("Didn't find item from playerhand: " + item);
             return false;
@@ -515,21 +516,22 @@ public class PlayerAction extends BaseAction {
         toPlayer.getItems().add(itemToTrade);
 
         itemToTrade.setOwnerId(toPlayer.getPlayerId());
-        pbfCollection.updateById(pbf.getId(), pbf);
-        logAction.createTradeGameLog(itemToTrade, pbf.getId(), GameLog.LogType.TRADE_BETWEEN_PLAYERS, fromPlayer.getUsername());
+        if (!itemToTrade.isHidden()) {
+            pbf.revealedItemChanged(itemToTrade);
+        }
+        updatePBF(pbf);
+        logAction.createTradeGameLog(itemToTrade, pbf.getId(), GameLog.LogType.TRADE_BETWEEN_PLAYERS, fromPlayer);
         return true;
     }
 
     public void discardItem(String pbfId, String playerId, ItemDTO itemdto) {
-        PBF pbf = pbfCollection.findOneById(pbfId);
+        PBF pbf = findPBFById(pbfId);
 
         Playerhand playerhand = getPlayerhandByPlayerId(playerId, pbf);
 
         //Find the item, then delete it
-        Optional<Item> itemToDeleteOptional = playerhand.getItems().stream()
-                .filter(item -> item.getItemNumber() == itemdto.getItemNumber())
-                .filter(item -> item.getName().equalsIgnoreCase(itemdto.getName()))
-                .findFirst();
+        Optional<Item> itemToDeleteOptional = playerhand.getItems().findByItemNumber(itemdto.getItemNumber(),
+                item -> item.getName().equalsIgnoreCase(itemdto.getName()));
 
         if (!itemToDeleteOptional.isPresent()) {
             Optional<SheetName> dtoSheet = SheetName.find(itemdto.getSheetName());
@@ -549,10 +551,10 @@ public class PlayerAction extends BaseAction {
         itemToDelete.setHidden(true);
         //itemToDelete.setOwnerId(null); //I think I need this in case of undo
 
-        if (playerhand.getItems().remove(itemToDeleteOptional.get())) {
-            pbf.getDiscardedItems().add(itemToDeleteOptional.get());
+        if (playerhand.getItems().removeItem(itemToDelete)) {
+            pbf.discard(itemToDelete);
+            updatePBF(pbf);
             createLog(itemToDelete, pbf.getId(), GameLog.LogType.DISCARD, playerId);
-            pbfCollection.updateById(pbf.getId(), pbf);
             return;
         }
         log.error("Found the item " + itemToDelete + " , but couldn't delete it for some reason");
@@ -560,14 +562,14 @@ public class PlayerAction extends BaseAction {
     }
 
     public Player getPlayerById(String playerId) {
-        return playerCollection.findOneById(playerId);
+        return playerRepository.findById(playerId);
     }
 
     public Set<Tech> getPlayersTechs(String pbfId, String playerId) {
         Preconditions.checkNotNull(pbfId);
         Preconditions.checkNotNull(playerId);
 
-        PBF pbf = pbfCollection.findOneById(pbfId);
+        PBF pbf = findPBFById(pbfId);
         return pbf.getPlayers().stream().filter(p -> p.getPlayerId().equals(playerId))
                 .findFirst().orElseThrow(PlayerAction::cannotFindPlayer)
                 .getTechsChosen();
@@ -600,34 +602,35 @@ public class PlayerAction extends BaseAction {
 
         player.setPassword(DigestUtils.sha1Hex(decodedPassword));
         player.setEmail(email);
-        WriteResult<Player, String> insert = playerCollection.insert(player);
-        log.info(String.format("Saving player with id %s", insert.getSavedId()));
-        return insert.getSavedId();
+        String playerId = playerRepository.insert(player);
+        log.info(String.format("Saving player with id %s", playerId));
+        CivSingleton.instance().playerCache().put(playerId, username);
+        return playerId;
     }
 
     public void newPassword(String username, String newPass) throws Exception {
-        Player player = playerCollection.findOne(DBQuery.is(Player.USERNAME, username));
+        Player player = playerRepository.findByUsername(username);
         if (player == null) {
             throw new WebApplicationException(Response.Status.BAD_REQUEST);
         }
 
         String password = URLDecoder.decode(newPass, "UTF-8");
         player.setPassword(DigestUtils.sha1Hex(password));
-        playerCollection.updateById(player.getId(), player);
+        playerRepository.update(player);
     }
 
     public boolean newPassword(ForgotpassDTO forgotpassDTO) {
         Preconditions.checkNotNull(forgotpassDTO.getEmail());
         Preconditions.checkNotNull(forgotpassDTO.getNewpassword());
 
-        Player player = playerCollection.findOne(DBQuery.is(Player.EMAIL, forgotpassDTO.getEmail()));
+        Player player = playerRepository.findByEmail(forgotpassDTO.getEmail());
         if (player == null) {
             log.error("Couldn't find user by email " + forgotpassDTO.getEmail());
             throw new WebApplicationException(Response.Status.NOT_FOUND);
         }
 
         player.setNewPassword(forgotpassDTO.getNewpassword());
-        playerCollection.updateById(player.getId(), player);
+        playerRepository.update(player);
         return SendEmail.sendMessage(player.getEmail(),
                 "Please verify your email",
                 "Your password was requested to be changed. If you want to change your password then please press this link: "
@@ -635,13 +638,13 @@ public class PlayerAction extends BaseAction {
     }
 
     public boolean verifyPassword(String playerId) {
-        Player player = playerCollection.findOneById(playerId);
+        Player player = playerRepository.findById(playerId);
         if (player != null && !Strings.isNullOrEmpty(player.getNewPassword())) {
             try {
                 String password = URLDecoder.decode(player.getNewPassword(), "UTF-8");
                 player.setPassword(DigestUtils.sha1Hex(password));
                 player.setNewPassword(null);
-                playerCollection.updateById(player.getId(), player);
+                playerRepository.update(player);
                 return true;
             } catch (UnsupportedEncodingException e) {
                 log.error("Couldn't write password ", e);
@@ -656,7 +659,7 @@ public class PlayerAction extends BaseAction {
         Preconditions.checkNotNull(pbfId);
         Preconditions.checkNotNull(socialPolicyName);
 
-        PBF pbf = pbfCollection.findOneById(pbfId);
+        PBF pbf = findPBFById(pbfId);
         if (!SecurityCheck.hasUserAccess(pbf, playerId)) {
             log.error("User with id " + playerId + " has no access to pbf " + pbf.getName());
             throw new WebApplicationException(Response.Status.FORBIDDEN);
@@ -686,40 +689,46 @@ public class PlayerAction extends BaseAction {
 
         playerhand.getSocialPolicies().add(sp);
 
-        pbfCollection.updateById(pbf.getId(), pbf);
+        updatePBF(pbf);
         log.debug("Player " + playerId + " chose social policy " + sp.getName());
 
         return super.createLog(sp, pbfId, GameLog.LogType.SOCIAL_POLICY, playerId);
     }
 
-    public List<AllTechsDTO> getTechsForAllPlayers(String pbfId) {
+    /**
+     * The tech board of the game. Only the tag of the game is read while the cached board is still up to date
+     */
+    public TechBoard getTechsForAllPlayers(String pbfId) {
         Preconditions.checkNotNull(pbfId);
 
-        PBF pbf = pbfCollection.findOneById(pbfId);
-        return pbf.getPlayers().stream()
-                .filter(p -> p.getCivilization() != null)
-                .map(p -> new AllTechsDTO(p.getCivilization().getName(), p.getColor(),
-                        p.getTechsChosen().stream().filter(t -> !t.isHidden())
-                                .map(t -> new TechDTO(t.getName(), t.getLevel()))
-                                .collect(Collectors.toList())))
-                .collect(Collectors.toList());
+        Cache<String, TechBoard> techBoardCache = CivSingleton.instance().techBoardCache();
+        TechBoard techBoard = techBoardCache.getIfPresent(pbfId);
+        if (techBoard != null) {
+            PBF version = findPBFParts(pbfId, PBFPart.TECHS_TAG);
+            if (version != null && techBoard.getTag().equals(TechBoard.tagOf(version))) {
+                return techBoard;
+            }
+        }
 
+        techBoard = TechBoard.of(findPBFById(pbfId));
+        techBoardCache.put(pbfId, techBoard);
+        return techBoard;
     }
 
     public void saveNote(String pbfId, String playerId, MessageDTO messageDTO) {
         Preconditions.checkNotNull(pbfId);
         Preconditions.checkNotNull(playerId);
 
-        PBF pbf = pbfCollection.findOneById(pbfId);
+        PBF pbf = findPBFById(pbfId);
         Playerhand playerhand = getPlayerhandByPlayerId(playerId, pbf);
         playerhand.setGamenote(messageDTO.getMessage());
-        pbfCollection.updateById(pbfId, pbf);
+        updatePBF(pbf);
     }
 
     public void takeTurnButton(String pbfId, String playerId) {
         Preconditions.checkNotNull(pbfId);
         Preconditions.checkNotNull(playerId);
-        PBF pbf = pbfCollection.findOneById(pbfId);
+        PBF pbf = findPBFById(pbfId);
 
         pbf.getPlayers().stream()
                 .filter(p -> p.isYourTurn())
@@ -728,7 +737,7 @@ public class PlayerAction extends BaseAction {
         Playerhand playerhand = getPlayerhandByPlayerId(playerId, pbf);
         playerhand.setYourTurn(true);
 
-        pbfCollection.updateById(pbfId, pbf);
+        updatePBF(pbf);
 
         super.createCommonPublicLog("took turn button", pbfId, playerId);
     }
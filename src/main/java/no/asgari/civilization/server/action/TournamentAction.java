@@ -1,27 +1,24 @@
 package no.asgari.civilization.server.action;
 
-import com.mongodb.DB;
 import no.asgari.civilization.server.email.SendEmail;
 import no.asgari.civilization.server.model.Player;
 import no.asgari.civilization.server.model.tournament.Tournament;
 import no.asgari.civilization.server.model.tournament.TournamentPlayer;
-import org.mongojack.JacksonDBCollection;
+import no.asgari.civilization.server.repository.Repositories;
+import no.asgari.civilization.server.repository.TournamentRepository;
 
 import java.util.List;
 
 public class TournamentAction extends BaseAction {
-    private final JacksonDBCollection<Player, String> playerCollection;
-    private final JacksonDBCollection<Tournament, String> tournamentCol;
-
-    public TournamentAction(DB db) {
-        super(db);
-        this.playerCollection = JacksonDBCollection.wrap(db.getCollection(Player.COL_NAME), Player.class, String.class);
-        this.tournamentCol = JacksonDBCollection.wrap(db.getCollection(Tournament.COL_NAME), Tournament.class, String.class);
+    private final TournamentRepository tournamentRepository;
 
+    public TournamentAction(Repositories repositories) {
+        super(repositories);
+        this.tournamentRepository = repositories.getTournaments();
     }
 
     public boolean signup(Player player, int tournamentNumber) {
-        List<Tournament> tournaments = tournamentCol.find().toArray();
+        List<Tournament> tournaments = tournamentRepository.findAll();
         if (tournaments == null || tournaments.isEmpty()) {
             Tournament tournament = createTournament(tournamentNumber);
             tournament.getPlayers().add(new TournamentPlayer(player));
@@ -34,7 +31,7 @@ public class TournamentAction extends BaseAction {
         }
 
         tournament.getPlayers().add(new TournamentPlayer(player));
-        tournamentCol.save(tournament);
+        tournamentRepository.save(tournament);
 
         return SendEmail.someoneJoinedTournament(player);
     }
@@ -43,11 +40,11 @@ public class TournamentAction extends BaseAction {
         Tournament t = new Tournament();
         t.setName("First tournament");
         t.setTournamentNumber(nr);
-        tournamentCol.save(t);
+        tournamentRepository.save(t);
         return t;
     }
 
     public List<Tournament> getTournaments() {
-        return tournamentCol.find().toArray();
+        return tournamentRepository.findAll();
     }
 }
@@ -1,6 +1,5 @@
 package no.asgari.civilization.server.action;
 
-import com.mongodb.DB;
 import lombok.extern.log4j.Log4j;
 import no.asgari.civilization.server.dto.TurnDTO;
 import no.asgari.civilization.server.email.SendEmail;
@@ -10,24 +9,33 @@ import no.asgari.civilization.server.model.GameLog;
 import no.asgari.civilization.server.model.PBF;
 import no.asgari.civilization.server.model.PlayerTurn;
 import no.asgari.civilization.server.model.Playerhand;
-import org.mongojack.JacksonDBCollection;
+import no.asgari.civilization.server.repository.ArchiveRepository;
+import no.asgari.civilization.server.repository.Repositories;
+import no.asgari.civilization.server.repository.TurnRepository;
+import no.asgari.civilization.server.repository.memory.InMemoryTurnRepository;
 
 import javax.ws.rs.WebApplicationException;
 import javax.ws.rs.core.Response;
+import java.util.ArrayList;
 import java.util.List;
-import java.util.Optional;
 import java.util.Set;
+import java.util.TreeSet;
 
 import static java.util.stream.Collectors.toList;
 
+/**
+ * Turns are stored in their own collection, not in the game. Games that still have their turns inside
+ * are moved over the first time their turns are used. The turns of archived games are only read.
+ */
 @Log4j
 public class TurnAction extends BaseAction {
+    private final TurnRepository turnRepository;
+    private final ArchiveRepository archiveRepository;
 
-    private final JacksonDBCollection<PBF, String> pbfCollection;
-
-    public TurnAction(DB db) {
-        super(db);
-        this.pbfCollection = JacksonDBCollection.wrap(db.getCollection(PBF.COL_NAME), PBF.class, String.class);
+    public TurnAction(Repositories repositories) {
+        super(repositories);
+        this.turnRepository = repositories.getTurns();
+        this.archiveRepository = repositories.getArchive();
     }
 
     public void updateSOT(String pbfId, String playerId, TurnDTO turnDTO) {
@@ -47,7 +55,6 @@ public class TurnAction extends BaseAction {
         });
         thread.start();
 
-        pbfCollection.updateById(pbfId, pbf);
         super.createLog(pbfId, GameLog.LogType.SOT, playerId);
     }
 
@@ -68,7 +75,6 @@ public class TurnAction extends BaseAction {
         });
         thread.start();
 
-        pbfCollection.updateById(pbfId, pbf);
         super.createLog(pbfId, GameLog.LogType.TRADE, playerId);
     }
 
@@ -91,7 +97,6 @@ public class TurnAction extends BaseAction {
         });
         thread.start();
 
-        pbfCollection.updateById(pbfId, pbf);
         super.createLog(pbfId, GameLog.LogType.CM, playerId);
     }
 
@@ -113,7 +118,6 @@ public class TurnAction extends BaseAction {
         });
         thread.start();
 
-        pbfCollection.updateById(pbfId, pbf);
         super.createLog(pbfId, GameLog.LogType.MOVEMENT, playerId);
     }
 
@@ -134,7 +138,6 @@ public class TurnAction extends BaseAction {
         });
         thread.start();
 
-        pbfCollection.updateById(pbfId, pbf);
         super.createLog(pbfId, GameLog.LogType.RESEARCH, playerId);
     }
 
@@ -144,30 +147,51 @@ public class TurnAction extends BaseAction {
     public void addNewTurn(String pbfId, String playerId, int turnNumber) {
         PBF pbf = findPBFById(pbfId);
         Playerhand playerhand = getPlayerhandByPlayerId(playerId, pbf);
+        checkNotArchived(pbf);
+        moveTurnsOutOfPBF(pbf);
 
-        Optional<PlayerTurn> turnOptional = playerhand.getPlayerTurns().stream()
-                .filter(p -> p.getTurnNumber() == turnNumber)
-                .findAny();
-
-        if (!turnOptional.isPresent()) {
-            playerhand.getPlayerTurns().add(new PlayerTurn(playerhand.getUsername(), turnNumber));
+        if (!turnRepository.find(pbfId, playerhand.getUsername(), turnNumber).isPresent()) {
+            turnRepository.save(newTurn(pbfId, playerhand.getUsername(), turnNumber));
         }
     }
 
-    private PlayerTurn getPlayerTurn(TurnDTO turnDTO, Set<PlayerTurn> playerturns, String username) {
-        PlayerTurn playerTurn = playerturns.stream()
-                .filter(t -> t.getTurnNumber() == turnDTO.getTurnNumber())
-                .findFirst()
-                .orElse(new PlayerTurn(username, turnDTO.getTurnNumber()));
-        playerTurn.setUsername(username);
+    private static PlayerTurn newTurn(String pbfId, String username, int turnNumber) {
+        PlayerTurn playerTurn = new PlayerTurn(username, turnNumber);
+        playerTurn.setPbfId(pbfId);
         return playerTurn;
     }
 
+    /**
+     * The turns of all players, sorted by turn and then player
+     */
     public List<PlayerTurn> getAllPublicTurns(String pbfId) {
         PBF pbf = findPBFById(pbfId);
 
-        return pbf.getPublicTurns().values().stream()
-                .sorted()
+        return publicTurns(turnsOf(pbf).findByPbfId(pbfId));
+    }
+
+    /**
+     * The given turn of all players, sorted by player
+     */
+    public List<PlayerTurn> getPublicTurns(String pbfId, int turnNumber) {
+        PBF pbf = findPBFById(pbfId);
+
+        return publicTurns(turnsOf(pbf).findByPbfIdAndTurnNumber(pbfId, turnNumber));
+    }
+
+    /**
+     * The latest turn any player has started, of all players
+     */
+    public List<PlayerTurn> getLatestPublicTurns(String pbfId) {
+        PBF pbf = findPBFById(pbfId);
+        TurnRepository turns = turnsOf(pbf);
+
+        int latestTurnNumber = turns.findLatestTurnNumber(pbfId);
+        return publicTurns(turns.findByPbfIdAndTurnNumber(pbfId, latestTurnNumber));
+    }
+
+    private static List<PlayerTurn> publicTurns(List<PlayerTurn> turns) {
+        return turns.stream()
                 .map(p -> {
                     //Remove the last order in the history
                     p.getSotHistory().remove(p.getSot());
@@ -178,16 +202,17 @@ public class TurnAction extends BaseAction {
                     return p;
                 })
                 .collect(toList());
-
     }
 
     public Set<PlayerTurn> getPlayersTurns(String pbfId, String playerId) {
         PBF pbf = findPBFById(pbfId);
         Playerhand playerhand = getPlayerhandByPlayerId(playerId, pbf);
-        Set<PlayerTurn> playerTurns = playerhand.getPlayerTurns();
-        if (playerTurns.isEmpty()) {
-            playerhand.getPlayerTurns().add(new PlayerTurn(playerhand.getUsername(), 1));
-            pbfCollection.updateById(pbfId, pbf);
+
+        Set<PlayerTurn> playerTurns = new TreeSet<>(turnsOf(pbf).findByPbfIdAndUsername(pbfId, playerhand.getUsername()));
+        if (playerTurns.isEmpty() && !pbf.isArchived()) {
+            PlayerTurn firstTurn = newTurn(pbfId, playerhand.getUsername(), 1);
+            turnRepository.save(firstTurn);
+            playerTurns.add(firstTurn);
         }
 
         return playerTurns;
@@ -198,53 +223,108 @@ public class TurnAction extends BaseAction {
             log.error("User with id " + playerId + " has no access to pbf " + pbf.getName());
             throw new WebApplicationException(Response.Status.FORBIDDEN);
         }
-        Set<PlayerTurn> playerturns = playerhand.getPlayerTurns();
-        PlayerTurn playerTurn = updatePrivatePlayerturn(turnDTO, playerhand, playerturns);
-
-        addTurnInPBF(pbf, playerTurn);
-    }
-
-    private void addTurnInPBF(PBF pbf, PlayerTurn playerTurn) {
-        // Cant get map serialization to work in jackson
-        //final TurnKey turnKey = new TurnKey(playerTurn.getTurnNumber(), playerTurn.getUsername());
-        pbf.getPublicTurns().put(playerTurn.getTurnNumber() + playerTurn.getUsername(), playerTurn);
-        pbfCollection.updateById(pbf.getId(), pbf);
-    }
+        checkNotArchived(pbf);
+        moveTurnsOutOfPBF(pbf);
 
-    private PlayerTurn updatePrivatePlayerturn(TurnDTO turnDTO, Playerhand playerhand, Set<PlayerTurn> playerturns) {
-        PlayerTurn pt = getPlayerTurn(turnDTO, playerturns, playerhand.getUsername());
+        PlayerTurn pt = turnRepository.find(pbf.getId(), playerhand.getUsername(), turnDTO.getTurnNumber())
+                .orElse(newTurn(pbf.getId(), playerhand.getUsername(), turnDTO.getTurnNumber()));
 
         if ("SOT".equalsIgnoreCase(turnDTO.getPhase())) {
             pt.setSot(turnDTO.getOrder());
-            pt.getSotHistory().add(turnDTO.getOrder());
+            PlayerTurn.addToHistory(pt.getSotHistory(), turnDTO.getOrder());
         } else if ("Trade".equalsIgnoreCase(turnDTO.getPhase())) {
             pt.setTrade(turnDTO.getOrder());
-            pt.getTradeHistory().add(turnDTO.getOrder());
+            PlayerTurn.addToHistory(pt.getTradeHistory(), turnDTO.getOrder());
         } else if ("CM".equalsIgnoreCase(turnDTO.getPhase())) {
             pt.setCm(turnDTO.getOrder());
-            pt.getCmHistory().add(turnDTO.getOrder());
+            PlayerTurn.addToHistory(pt.getCmHistory(), turnDTO.getOrder());
         } else if ("Movement".equalsIgnoreCase(turnDTO.getPhase())) {
             pt.setMovement(turnDTO.getOrder());
-            pt.getMovementHistory().add(turnDTO.getOrder());
+            PlayerTurn.addToHistory(pt.getMovementHistory(), turnDTO.getOrder());
         } else if ("Research".equalsIgnoreCase(turnDTO.getPhase())) {
             pt.setResearch(turnDTO.getOrder());
-            pt.getResearchHistory().add(turnDTO.getOrder());
+            PlayerTurn.addToHistory(pt.getResearchHistory(), turnDTO.getOrder());
+        }
+        turnRepository.save(pt);
+    }
+
+    /**
+     * The turns of an archived game are read into memory from the archive, together with the turns it still has inside
+     */
+    private TurnRepository turnsOf(PBF pbf) {
+        if (!pbf.isArchived()) {
+            moveTurnsOutOfPBF(pbf);
+            return turnRepository;
+        }
+        TurnRepository archivedTurns = new InMemoryTurnRepository();
+        archiveRepository.findTurns(pbf.getId()).forEach(archivedTurns::save);
+        copyTurnsOutOfPBF(pbf, archivedTurns);
+        return archivedTurns;
+    }
+
+    /**
+     * Games from before turns got their own collection have them in the game, both in publicTurns
+     * and in the playerhands. Those are saved in the turn collection and removed from the game
+     */
+    private void moveTurnsOutOfPBF(PBF pbf) {
+        int moved = copyTurnsOutOfPBF(pbf, turnRepository);
+        if (moved == 0) {
+            return;
+        }
+
+        pbf.getPublicTurns().clear();
+        pbf.getPlayers().forEach(p -> p.getPlayerTurns().clear());
+        updatePBF(pbf);
+        log.info("Moved " + moved + " turns out of game " + pbf.getId());
+    }
+
+    /**
+     * Saves the turns inside the game that are not already in turnRepository
+     *
+     * @return the number of turns inside the game
+     */
+    private static int copyTurnsOutOfPBF(PBF pbf, TurnRepository turnRepository) {
+        boolean playerhandsHaveTurns = pbf.getPlayers().stream().anyMatch(p -> !p.getPlayerTurns().isEmpty());
+        if (pbf.getPublicTurns().isEmpty() && !playerhandsHaveTurns) {
+            return 0;
+        }
+
+        List<PlayerTurn> turns = new ArrayList<>();
+        pbf.getPlayers().forEach(p -> turns.addAll(p.getPlayerTurns()));
+        pbf.getPublicTurns().values().stream()
+                .filter(turn -> !turns.contains(turn))
+                .forEach(turns::add);
+        for (PlayerTurn turn : turns) {
+            if (!turnRepository.find(pbf.getId(), turn.getUsername(), turn.getTurnNumber()).isPresent()) {
+                PlayerTurn compacted = newTurn(pbf.getId(), turn.getUsername(), turn.getTurnNumber());
+                compacted.setDisabled(turn.isDisabled());
+                compacted.setSot(turn.getSot());
+                compacted.setTrade(turn.getTrade());
+                compacted.setCm(turn.getCm());
+                compacted.setMovement(turn.getMovement());
+                compacted.setResearch(turn.getResearch());
+                turn.getSotHistory().forEach(order -> PlayerTurn.addToHistory(compacted.getSotHistory(), order));
+                turn.getTradeHistory().forEach(order -> PlayerTurn.addToHistory(compacted.getTradeHistory(), order));
+                turn.getCmHistory().forEach(order -> PlayerTurn.addToHistory(compacted.getCmHistory(), order));
+                turn.getMovementHistory().forEach(order -> PlayerTurn.addToHistory(compacted.getMovementHistory(), order));
+                turn.getResearchHistory().forEach(order -> PlayerTurn.addToHistory(compacted.getResearchHistory(), order));
+                turnRepository.save(compacted);
+            }
         }
-        playerhand.getPlayerTurns().add(pt);
-        return pt;
+        return turns.size();
     }
 
     public void lockOrUnlockTurn(String pbfId, String playerId, TurnDTO turnDTO) {
         PBF pbf = findPBFById(pbfId);
         Playerhand playerhand = getPlayerhandByPlayerId(playerId, pbf);
-        PlayerTurn playerTurn = playerhand.getPlayerTurns().stream()
-                .filter(p -> p.getTurnNumber() == turnDTO.getTurnNumber())
-                .findFirst()
+        checkNotArchived(pbf);
+        moveTurnsOutOfPBF(pbf);
+        PlayerTurn playerTurn = turnRepository.find(pbfId, playerhand.getUsername(), turnDTO.getTurnNumber())
                 .orElseThrow(PlayerAction::cannotFindItem);
 
         playerTurn.setDisabled(turnDTO.isLocked());
+        turnRepository.save(playerTurn);
         String message = turnDTO.isLocked() ? " has locked in turn " + turnDTO.getTurnNumber() : " has re-opened turn " + turnDTO.getTurnNumber();
         createCommonPublicLog(message, pbfId, playerId);
-        pbfCollection.updateById(pbfId, pbf);
     }
 }
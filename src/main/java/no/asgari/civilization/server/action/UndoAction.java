@@ -17,77 +17,79 @@ package no.asgari.civilization.server.action;
 
 import com.google.common.base.Preconditions;
 import com.google.common.base.Strings;
-import com.mongodb.BasicDBObject;
-import com.mongodb.DB;
 import lombok.extern.log4j.Log4j;
 import no.asgari.civilization.server.SheetName;
 import no.asgari.civilization.server.dto.ItemDTO;
+import no.asgari.civilization.server.dto.MessageDTO;
 import no.asgari.civilization.server.model.Draw;
+import no.asgari.civilization.server.model.GameEvent;
 import no.asgari.civilization.server.model.GameLog;
 import no.asgari.civilization.server.model.Item;
+import no.asgari.civilization.server.model.Move;
 import no.asgari.civilization.server.model.PBF;
 import no.asgari.civilization.server.model.Playerhand;
 import no.asgari.civilization.server.model.Tech;
 import no.asgari.civilization.server.model.Undo;
-import org.mongojack.DBQuery;
-import org.mongojack.JacksonDBCollection;
+import no.asgari.civilization.server.repository.GameEventRepository;
+import no.asgari.civilization.server.repository.GameLogRepository;
+import no.asgari.civilization.server.repository.Repositories;
 
 import javax.ws.rs.WebApplicationException;
 import javax.ws.rs.core.Response;
-import java.util.Collections;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
-import java.util.Random;
 import java.util.stream.Collectors;
 
 @Log4j
 public class UndoAction extends BaseAction {
-    private final JacksonDBCollection<PBF, String> pbfCollection;
-    private final JacksonDBCollection<GameLog, String> gameLogCollection;
+    private final GameLogRepository gameLogRepository;
+    private final GameEventRepository gameEventRepository;
 
-    public UndoAction(DB db) {
-        super(db);
-        this.pbfCollection = JacksonDBCollection.wrap(db.getCollection(PBF.COL_NAME), PBF.class, String.class);
-        this.gameLogCollection = JacksonDBCollection.wrap(db.getCollection(GameLog.COL_NAME), GameLog.class, String.class);
+    public UndoAction(Repositories repositories) {
+        super(repositories);
+        this.gameLogRepository = repositories.getGameLogs();
+        this.gameEventRepository = repositories.getGameEvents();
     }
 
     private boolean putDrawnItemBackInPBF(PBF pbf, String playerId, Item item) {
         Playerhand playerhand = getPlayerhandByPlayerId(playerId, pbf);
+        //Written after the game, since a snapshot taken by the log must include the undo
+        List<Runnable> undoLogs = new ArrayList<>();
         if (item instanceof Tech) {
             //Remove from tech
             if (playerhand.getTechsChosen().remove(item)) {
-                logAction.createUndoLog(pbf.getId(), "has removed " + item.getName() + " from " + playerhand.getUsername(), item);
+                pbf.techsChanged();
+                undoLogs.add(() -> logAction.createUndoLog(pbf.getId(), "has removed " + item.getName() + " from " + playerhand.getUsername(), item));
                 log.debug("Successfully undoed tech");
-            } else if (pbf.getDiscardedItems().remove(item)) {
+            } else if (pbf.getDiscardedItems().removeCopyOf(item).isPresent()) {
                 playerhand.getTechsChosen().add((Tech) item);
-                logAction.createUndoLog(pbf.getId(), "has added back " + item.getName() + " to " + playerhand.getUsername(), item);
+                pbf.techsChanged();
+                undoLogs.add(() -> logAction.createUndoLog(pbf.getId(), "has added back " + item.getName() + " to " + playerhand.getUsername(), item));
             } else {
                 log.error("Didn't find tech to remove from playerhand: " + item);
                 return false;
             }
         } else {
-            if (playerhand.getItems().remove(item)) {
-                item.setHidden(true);
-                logAction.createUndoLog(pbf.getId(), "has removed " + item.getName() + " from " + playerhand.getUsername() + " and put back in the deck. Deck is reshuffled", item);
-                pbf.getItems().add(item);
-                shufflePBFTwice(pbf);
+            //The item is from the log, so the one in the game is found by its number
+            Optional<Item> found;
+            if ((found = playerhand.getItems().removeCopyOf(item)).isPresent()) {
+                putBackInDeck(pbf, playerhand, found.get(), Move.Location.HAND, undoLogs);
                 log.debug("Successfully undoed item");
-            } else if (pbf.getDiscardedItems().remove(item)) {
-                item.setHidden(true);
-                playerhand.getItems().add(item);
-                logAction.createUndoLog(pbf.getId(), "has added back " + item.getName() + " to " + playerhand.getUsername(), item);
-            } else if (pbf.getItems().remove(item)) {
+            } else if ((found = pbf.getDiscardedItems().removeCopyOf(item)).isPresent()) {
+                giveBack(pbf, playerhand, found.get(), Move.Location.DISCARD, undoLogs);
+            } else if ((found = pbf.getItems().removeCopyOf(item)).isPresent()) {
                 //In rare cases the item is put back to the player
-                item.setHidden(true);
-                playerhand.getItems().add(item);
-                logAction.createUndoLog(pbf.getId(), "has added back " + item.getName() + " to " + playerhand.getUsername(), item);
+                giveBack(pbf, playerhand, found.get(), Move.Location.DECK, undoLogs);
             } else {
                 log.error("Didn't find item to remove from playerhand: " + item);
                 return false;
             }
         }
 
-        pbfCollection.updateById(pbf.getId(), pbf);
+        pbf.revealedItemsChanged();
+        updatePBF(pbf);
+        undoLogs.forEach(Runnable::run);
         return true;
     }
 
@@ -96,72 +98,109 @@ public class UndoAction extends BaseAction {
         Preconditions.checkNotNull(draw);
         Preconditions.checkNotNull(draw.getItem());
 
+        if (!Strings.isNullOrEmpty(draw.getGameLogId())) {
+            Optional<GameEvent> event = gameEventRepository.findByGameLogId(pbf.getId(), draw.getGameLogId());
+            if (event.isPresent() && event.get().getMove() != null && event.get().getMove().isUndoable()) {
+                return undoMove(pbf, event.get().getMove(), draw.getItem());
+            }
+        }
+
+        //Logs from before the event stream, or without a move
         Item item = draw.getItem();
         return putDrawnItemBackInPBF(pbf, item.getOwnerId(), draw);
     }
 
+    /**
+     * Takes back the move of the event, so there is no need to find out where the item went
+     */
+    private boolean undoMove(PBF pbf, Move move, Item item) {
+        Move inverse = move.inverse();
+        if (!GameStateAction.apply(pbf, inverse, item)) {
+            log.error("Didn't find item to undo " + item + " in " + inverse.getFrom());
+            return false;
+        }
+        String message;
+        if (inverse.getTo() == Move.Location.DECK) {
+            long seed = DrawAction.newSeed();
+            DrawAction.shuffleDeck(pbf, seed);
+            inverse.setSeed(seed);
+            message = "has removed " + item.getName() + " from " + getPlayerhandByPlayerId(inverse.getFromPlayerId(), pbf).getUsername()
+                    + " and put back in the deck. Deck is reshuffled";
+        } else if (inverse.getTo() == null || inverse.getToPlayerId() == null) {
+            message = "has removed " + item.getName() + " from " + getPlayerhandByPlayerId(inverse.getFromPlayerId(), pbf).getUsername();
+        } else {
+            message = "has added back " + item.getName() + " to " + getPlayerhandByPlayerId(inverse.getToPlayerId(), pbf).getUsername();
+        }
+
+        pbf.revealedItemsChanged();
+        updatePBF(pbf);
+        logAction.createUndoLog(pbf.getId(), message, item, inverse);
+        return true;
+    }
+
     private boolean putDrawnItemBackInPBF(PBF pbf, String playerId, Draw draw) {
         Playerhand playerhand = getPlayerhandByPlayerId(playerId, pbf);
         Item item = draw.getItem();
+        List<Runnable> undoLogs = new ArrayList<>();
         if (item instanceof Tech) {
             //Remove from tech
             if (playerhand.getTechsChosen().remove(item)) {
-                logAction.createUndoLog(pbf.getId(), "has removed " + item.getName() + " from " + playerhand.getUsername(), item);
+                pbf.techsChanged();
+                undoLogs.add(() -> logAction.createUndoLog(pbf.getId(), "has removed " + item.getName() + " from " + playerhand.getUsername(), item));
                 log.debug("Successfully undoed tech");
-            } else if (pbf.getDiscardedItems().remove(item)) {
+            } else if (pbf.getDiscardedItems().removeCopyOf(item).isPresent()) {
                 playerhand.getTechsChosen().add((Tech) item);
-                logAction.createUndoLog(pbf.getId(), "has added back " + item.getName() + " to " + playerhand.getUsername(), item);
+                pbf.techsChanged();
+                undoLogs.add(() -> logAction.createUndoLog(pbf.getId(), "has added back " + item.getName() + " to " + playerhand.getUsername(), item));
             } else {
                 log.error("Didn't find tech to remove from playerhand: " + item);
                 return false;
             }
         } else {
+            //The item is from the log, so the one in the game is found by its number
+            Optional<Item> found;
             if (!Strings.isNullOrEmpty(draw.getGameLogId())) {
-                GameLog gamelog = gameLogCollection.findOneById(draw.getGameLogId());
+                GameLog gamelog = gameLogRepository.findById(draw.getGameLogId());
                 if (gamelog.getPrivateLog().contains("discarded")) {
-                    if (pbf.getDiscardedItems().remove(item)) {
-                        item.setHidden(true);
-                        playerhand.getItems().add(item);
-                        logAction.createUndoLog(pbf.getId(), "has added back " + item.getName() + " to " + playerhand.getUsername(), item);
+                    if ((found = pbf.getDiscardedItems().removeCopyOf(item)).isPresent()) {
+                        giveBack(pbf, playerhand, found.get(), Move.Location.DISCARD, undoLogs);
+                    } else {
+                        log.error("Didn't find discarded item to give back: " + item);
+                        return false;
                     }
                 } else if (gamelog.getPrivateLog().contains("drew") && !gamelog.getPrivateLog().contains("barbarian")) {
-                    if (playerhand.getItems().remove(item) || pbf.getDiscardedItems().remove(item)) {
-                        item.setHidden(true);
-                        logAction.createUndoLog(pbf.getId(), "has removed " + item.getName() + " from " + playerhand.getUsername() + " and put back in the deck. Deck is reshuffled", item);
-                        pbf.getItems().add(item);
-                        shufflePBFTwice(pbf);
+                    if ((found = playerhand.getItems().removeCopyOf(item)).isPresent()) {
+                        putBackInDeck(pbf, playerhand, found.get(), Move.Location.HAND, undoLogs);
+                    } else if ((found = pbf.getDiscardedItems().removeCopyOf(item)).isPresent()) {
+                        putBackInDeck(pbf, playerhand, found.get(), Move.Location.DISCARD, undoLogs);
+                    } else {
+                        log.error("Didn't find drawn item to put back in the deck: " + item);
+                        return false;
                     }
                 } else if (gamelog.getPrivateLog().contains("drew") && gamelog.getPrivateLog().contains("barbarian")) {
+                    //Several items are moved at once, which a move can't describe, so this can't be replayed
                     pbf.getItems().addAll(playerhand.getBarbarians());
                     playerhand.getBarbarians().clear();
-                    logAction.createUndoLog(pbf.getId(), "has removed barbarians from " + playerhand.getUsername() + " and put back in the deck. Deck is reshuffled", item);
-                    shufflePBFTwice(pbf);
-                } else if (pbf.getItems().remove(item)) {
+                    undoLogs.add(() -> logAction.createUndoLog(pbf.getId(), "has removed barbarians from " + playerhand.getUsername()
+                            + " and put back in the deck. Deck is reshuffled", item));
+                    DrawAction.shuffleDeck(pbf, DrawAction.newSeed());
+                } else if ((found = pbf.getItems().removeCopyOf(item)).isPresent()) {
                     //In rare cases the item is put back to the player (Not sure if I need this)
-                    item.setHidden(true);
-                    playerhand.getItems().add(item);
-                    logAction.createUndoLog(pbf.getId(), "has added back " + item.getName() + " to " + playerhand.getUsername(), item);
+                    giveBack(pbf, playerhand, found.get(), Move.Location.DECK, undoLogs);
                 } else {
                     log.error("Didn't find item to remove from playerhand: " + item);
                     return false;
                 }
             } else {
                 //Backward compability
-                if (playerhand.getItems().remove(item)) {
-                    item.setHidden(true);
-                    logAction.createUndoLog(pbf.getId(), "has removed " + item.getName() + " from " + playerhand.getUsername() + " and put back in the deck. Deck is reshuffled", item);
-                    pbf.getItems().add(item);
-                    shufflePBFTwice(pbf);
+                if ((found = playerhand.getItems().removeCopyOf(item)).isPresent()) {
+                    putBackInDeck(pbf, playerhand, found.get(), Move.Location.HAND, undoLogs);
                     log.debug("Successfully undoed item");
-                } else if (pbf.getDiscardedItems().remove(item)) {
-                    item.setHidden(true);
-                    playerhand.getItems().add(item);
-                    logAction.createUndoLog(pbf.getId(), "has added back " + item.getName() + " to " + playerhand.getUsername(), item);
-                } else if (pbf.getItems().remove(item)) {
+                } else if ((found = pbf.getDiscardedItems().removeCopyOf(item)).isPresent()) {
+                    giveBack(pbf, playerhand, found.get(), Move.Location.DISCARD, undoLogs);
+                } else if ((found = pbf.getItems().removeCopyOf(item)).isPresent()) {
                     //In rare cases the item is put back to the player
-                    item.setHidden(true);
-                    playerhand.getItems().add(item);
-                    logAction.createUndoLog(pbf.getId(), "has added back " + item.getName() + " to " + playerhand.getUsername(), item);
+                    giveBack(pbf, playerhand, found.get(), Move.Location.DECK, undoLogs);
                 } else {
                     log.error("Didn't find item to remove from playerhand: " + item);
                     return false;
@@ -169,19 +208,39 @@ public class UndoAction extends BaseAction {
             }
         }
 
-        pbfCollection.updateById(pbf.getId(), pbf);
+        pbf.revealedItemsChanged();
+        updatePBF(pbf);
+        undoLogs.forEach(Runnable::run);
         return true;
     }
 
-    private void shufflePBFTwice(PBF pbf) {
-        Collections.shuffle(pbf.getItems(), new Random(System.nanoTime()));
-        Collections.shuffle(pbf.getItems(), new Random(System.nanoTime()));
+    /**
+     * Puts the item in the deck and shuffles it. The seed of the shuffle is kept in the move of the undo log,
+     * so replaying the game gives the same deck
+     */
+    private void putBackInDeck(PBF pbf, Playerhand playerhand, Item item, Move.Location from, List<Runnable> undoLogs) {
+        item.setHidden(true);
+        pbf.getItems().add(item);
+        long seed = DrawAction.newSeed();
+        DrawAction.shuffleDeck(pbf, seed);
+        Move move = Move.putBackInDeck(from, playerhand.getPlayerId(), seed);
+        undoLogs.add(() -> logAction.createUndoLog(pbf.getId(), "has removed " + item.getName() + " from " + playerhand.getUsername()
+                + " and put back in the deck. Deck is reshuffled", item, move));
+    }
+
+    private void giveBack(PBF pbf, Playerhand playerhand, Item item, Move.Location from, List<Runnable> undoLogs) {
+        item.setHidden(true);
+        item.setOwnerId(playerhand.getPlayerId());
+        playerhand.getItems().add(item);
+        Move move = Move.giveBack(from, playerhand.getPlayerId());
+        undoLogs.add(() -> logAction.createUndoLog(pbf.getId(), "has added back " + item.getName() + " to " + playerhand.getUsername(), item, move));
     }
 
     /**
      * Will perform vote, and if all votes are successfull, item is put back in the deck
      * <p>
-     * A vote must have already been initiated
+     * A vote must have already been initiated. The vote is recorded atomically, and the result is
+     * read from the log as it was right after, so simultaneous votes don't overwrite each other
      *
      * @param gameLog
      * @param playerId
@@ -193,7 +252,7 @@ public class UndoAction extends BaseAction {
         Preconditions.checkNotNull(gameLog.getDraw());
         Preconditions.checkNotNull(gameLog.getDraw().getUndo());
 
-        PBF pbf = pbfCollection.findOneById(gameLog.getPbfId());
+        PBF pbf = findPBFById(gameLog.getPbfId());
         Playerhand playerhand = getPlayerhandByPlayerId(playerId, pbf);
 
         if (gameLog.getDraw() == null || gameLog.getDraw().getUndo() == null) {
@@ -202,18 +261,37 @@ public class UndoAction extends BaseAction {
                     .build());
         }
 
-        gameLog.getDraw().getUndo().vote(playerId, vote);
-        gameLog.getDraw().setGameLogId(gameLog.getId());
-        createLog(gameLog.getDraw(), pbf.getId(), playerhand.getUsername(), vote);
+        GameLog voted = gameLogRepository.vote(gameLog.getId(), playerId, vote);
+        if (voted == null) {
+            log.error("Undo of " + gameLog.getId() + " is already done");
+            throw new WebApplicationException(Response.status(Response.Status.PRECONDITION_FAILED)
+                    .build());
+        }
+        voted.getDraw().setGameLogId(voted.getId());
+        createLog(voted.getDraw(), pbf.getId(), playerhand.getUsername(), vote);
 
-        Optional<Boolean> resultOfVotes = gameLog.getDraw().getUndo().getResultOfVotes();
-        if (resultOfVotes.isPresent() && resultOfVotes.get()) {
+        Optional<Boolean> resultOfVotes = voted.getDraw().getUndo().getResultOfVotes();
+        //Only the vote that finishes the undo puts the item back
+        if (resultOfVotes.isPresent() && resultOfVotes.get() && gameLogRepository.finishUndo(voted.getId())) {
             log.info("Everyone has performed a vote, so we put item back in the deck");
-            gameLog.getDraw().getUndo().setDone(true);
-            putDrawnItemBackInPBF(pbf, gameLog.getDraw());
+            //If nothing was put back, the undo is opened again so that it can be finished by voting again
+            boolean putBack;
+            try {
+                putBack = putDrawnItemBackInPBF(findPBFById(voted.getPbfId()), voted.getDraw());
+            } catch (RuntimeException e) {
+                gameLogRepository.reopenUndo(voted.getId());
+                throw e;
+            }
+            if (!putBack) {
+                gameLogRepository.reopenUndo(voted.getId());
+                log.error("Could not put back the item of " + voted.getId() + ", the undo is open for voting again");
+                throw new WebApplicationException(Response.status(Response.Status.CONFLICT)
+                        .entity(new MessageDTO("Could not undo, since the item is no longer where it was"))
+                        .build());
+            }
+            voted.getDraw().getUndo().setDone(true);
         }
-        gameLogCollection.updateById(gameLog.getId(), gameLog);
-        return gameLog;
+        return voted;
     }
 
     /**
@@ -233,44 +311,43 @@ public class UndoAction extends BaseAction {
             throw new WebApplicationException(Response.status(Response.Status.BAD_REQUEST)
                     .build());
         }
-        PBF pbf = pbfCollection.findOneById(logContainingItemToUndo.getPbfId());
+        PBF pbf = findPBFById(logContainingItemToUndo.getPbfId());
         if (!pbf.getPlayers().stream().anyMatch(p -> p.getPlayerId().equals(playerId))) {
             log.error("Couldn't find playerId " + playerId + " in PBF's players");
             throw PlayerAction.cannotFindPlayer();
         }
 
         draw.setUndo(new Undo(pbf.getNumOfPlayers(), playerId));
-        gameLogCollection.updateById(logContainingItemToUndo.getId(), logContainingItemToUndo);
+        gameLogRepository.update(logContainingItemToUndo);
 
         createLog(draw.getItem(), pbf.getId(), GameLog.LogType.UNDO, playerId);
     }
 
     public List<GameLog> getAllActiveUndos(String pbfId) {
-        List<GameLog> gameLogs = gameLogCollection.find(DBQuery.is("pbfId", pbfId), new BasicDBObject()).toArray();
-
-        return gameLogs.stream()
-                .filter(GameLog::hasActiveUndo)
-                .collect(Collectors.toList());
+        return gameLogRepository.findByPbfIdAndUndoState(pbfId, GameLog.UndoState.ACTIVE);
     }
 
     public List<GameLog> getPlayersActiveUndoes(String pbfId, String username) {
-        List<GameLog> gamelogs = gameLogCollection.find(DBQuery.is("pbfId", pbfId).is("username", username), new BasicDBObject()).toArray();
+        return getAllActiveUndos(pbfId).stream()
+                .filter(log -> username.equals(log.getUsername()))
+                .collect(Collectors.toList());
+    }
 
-        return gamelogs.stream()
-                .filter(GameLog::hasActiveUndo)
+    /**
+     * Active undos the player hasn't voted on yet
+     */
+    public List<GameLog> getUndosNeedingVote(String pbfId, String playerId) {
+        return getAllActiveUndos(pbfId).stream()
+                .filter(log -> !log.getDraw().getUndo().getVotes().containsKey(playerId))
                 .collect(Collectors.toList());
     }
 
     public List<GameLog> getAllFinishedUndos(String pbfId) {
-        List<GameLog> gameLogs = gameLogCollection.find(DBQuery.is("pbfId", pbfId), new BasicDBObject()).toArray();
-
-        return gameLogs.stream()
-                .filter(log -> log.getDraw() != null && log.getDraw().getUndo() != null && log.getDraw().getUndo().isDone())
-                .collect(Collectors.toList());
+        return gameLogRepository.findByPbfIdAndUndoState(pbfId, GameLog.UndoState.FINISHED);
     }
 
     public void playerPutsItemBackInDeck(String pbfId, String playerId, ItemDTO itemdto) {
-        PBF pbf = pbfCollection.findOneById(pbfId);
+        PBF pbf = findPBFById(pbfId);
 
         Playerhand playerhand = getPlayerhandByPlayerId(playerId, pbf);
         Optional<SheetName> dtoSheet = SheetName.find(itemdto.getSheetName());
@@ -280,9 +357,13 @@ public class UndoAction extends BaseAction {
         }
 
         //Find the item, then putback to deck
-        Optional<Item> itemToPutBack = playerhand.getItems().stream()
-                .filter(item -> item.getSheetName() == dtoSheet.get() && item.getName().equals(itemdto.getName()))
-                .findAny();
+        Optional<Item> itemToPutBack = playerhand.getItems().findByItemNumber(itemdto.getItemNumber(),
+                item -> item.getSheetName() == dtoSheet.get() && item.getName().equals(itemdto.getName()));
+        if (!itemToPutBack.isPresent()) {
+            itemToPutBack = playerhand.getItems().stream()
+                    .filter(item -> item.getSheetName() == dtoSheet.get() && item.getName().equals(itemdto.getName()))
+                    .findAny();
+        }
 
         if (!itemToPutBack.isPresent()) {
             throw cannotFindItem();
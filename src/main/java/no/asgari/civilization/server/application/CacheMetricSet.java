@@ -0,0 +1,51 @@
+/*
+ * Copyright (c) 2015 Shervin Asgari
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package no.asgari.civilization.server.application;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Metric;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.MetricSet;
+import com.google.common.cache.Cache;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Exposes the stats of a guava cache as gauges.
+ * The cache must be built with recordStats(), otherwise all the counters will be zero
+ */
+public class CacheMetricSet implements MetricSet {
+    private final String name;
+    private final Cache<?, ?> cache;
+
+    public CacheMetricSet(String name, Cache<?, ?> cache) {
+        this.name = name;
+        this.cache = cache;
+    }
+
+    @Override
+    public Map<String, Metric> getMetrics() {
+        Map<String, Metric> gauges = new HashMap<>();
+        gauges.put(MetricRegistry.name(name, "size"), (Gauge<Long>) cache::size);
+        gauges.put(MetricRegistry.name(name, "hits"), (Gauge<Long>) () -> cache.stats().hitCount());
+        gauges.put(MetricRegistry.name(name, "misses"), (Gauge<Long>) () -> cache.stats().missCount());
+        gauges.put(MetricRegistry.name(name, "hitRate"), (Gauge<Double>) () -> cache.stats().hitRate());
+        gauges.put(MetricRegistry.name(name, "evictions"), (Gauge<Long>) () -> cache.stats().evictionCount());
+        gauges.put(MetricRegistry.name(name, "loadExceptions"), (Gauge<Long>) () -> cache.stats().loadExceptionCount());
+        return gauges;
+    }
+}
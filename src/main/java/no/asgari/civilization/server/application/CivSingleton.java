@@ -15,13 +15,19 @@
 
 package no.asgari.civilization.server.application;
 
+import com.codahale.metrics.MetricRegistry;
 import com.google.common.cache.Cache;
 import com.google.common.cache.CacheBuilder;
 import com.google.common.cache.LoadingCache;
 import lombok.extern.log4j.Log4j;
+import no.asgari.civilization.server.email.Notifications;
 import no.asgari.civilization.server.excel.ItemReader;
 import no.asgari.civilization.server.model.GameType;
+import no.asgari.civilization.server.model.PBF;
+import no.asgari.civilization.server.repository.memory.InMemoryNotificationRepository;
 
+import java.time.Duration;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
@@ -42,8 +48,33 @@ public final class CivSingleton {
 
     private Cache<String, String> chatCache;
 
+    //Key is pbfId and value is the color of each username in the game
+    private Cache<String, Map<String, String>> chatColorCache;
+
+    //Key is pbfId and value is the tech board of the game
+    private Cache<String, TechBoard> techBoardCache;
+
+    //Key is the number of archived games and value is the archived games with a winner
+    private Cache<Long, List<PBF>> archivedWinnersCache;
+
+    //Replaced with the environment registry on startup
+    private MetricRegistry metrics = new MetricRegistry();
+
+    private ReadRouting readRouting = ReadRouting.primaryOnly();
+
+    private int snapshotInterval = 50;
+
+    //Replaced with a buffer warmed from the database on startup
+    private PublicChatBuffer publicChat = new PublicChatBuffer(50);
+
+    //Replaced with notifications remembered in the database on startup
+    private Notifications notifications = new Notifications(new InMemoryNotificationRepository(), Duration.ofMinutes(30));
+
     private CivSingleton() {
-        this.chatCache = CacheBuilder.<String, String>newBuilder().expireAfterWrite(30, TimeUnit.MINUTES).build();
+        this.chatCache = CacheBuilder.<String, String>newBuilder().expireAfterWrite(30, TimeUnit.MINUTES).recordStats().build();
+        this.chatColorCache = CacheBuilder.newBuilder().maximumSize(10000).expireAfterWrite(5, TimeUnit.MINUTES).recordStats().build();
+        this.techBoardCache = CacheBuilder.newBuilder().maximumSize(10000).expireAfterAccess(30, TimeUnit.MINUTES).recordStats().build();
+        this.archivedWinnersCache = CacheBuilder.newBuilder().maximumSize(1).recordStats().build();
     }
 
     public static CivSingleton instance() {
@@ -74,4 +105,76 @@ public final class CivSingleton {
         return chatCache;
     }
 
+    /**
+     * Key is pbfId and value is the color of each username in the game. Invalidated when the players of a game change
+     */
+    public Cache<String, Map<String, String>> chatColorCache() {
+        return chatColorCache;
+    }
+
+    /**
+     * Key is pbfId and value is the tech board of the game. An entry is only used while its tag is the tag of the game
+     */
+    public Cache<String, TechBoard> techBoardCache() {
+        return techBoardCache;
+    }
+
+    /**
+     * Key is the number of archived games and value is the archived games with a winner, used for the highscores.
+     * Archived games don't change, so the entry is only replaced when more games are archived
+     */
+    public Cache<Long, List<PBF>> archivedWinnersCache() {
+        return archivedWinnersCache;
+    }
+
+    /**
+     * Also registers the hits and misses of the caches kept here in the registry
+     */
+    public void setMetrics(MetricRegistry metrics) {
+        this.metrics = metrics;
+        metrics.registerAll(new CacheMetricSet(MetricRegistry.name(CivSingleton.class, "chatCache"), chatCache));
+        metrics.registerAll(new CacheMetricSet(MetricRegistry.name(CivSingleton.class, "chatColorCache"), chatColorCache));
+        metrics.registerAll(new CacheMetricSet(MetricRegistry.name(CivSingleton.class, "techBoardCache"), techBoardCache));
+        metrics.registerAll(new CacheMetricSet(MetricRegistry.name(CivSingleton.class, "archivedWinnersCache"), archivedWinnersCache));
+    }
+
+    public MetricRegistry metrics() {
+        return metrics;
+    }
+
+    public void setReadRouting(ReadRouting readRouting) {
+        this.readRouting = readRouting;
+    }
+
+    public ReadRouting readRouting() {
+        return readRouting;
+    }
+
+    public void setSnapshotInterval(int snapshotInterval) {
+        this.snapshotInterval = snapshotInterval;
+    }
+
+    /**
+     * A snapshot of the game is taken every this many events
+     */
+    public int snapshotInterval() {
+        return snapshotInterval;
+    }
+
+    public void setPublicChat(PublicChatBuffer publicChat) {
+        this.publicChat = publicChat;
+    }
+
+    public PublicChatBuffer publicChat() {
+        return publicChat;
+    }
+
+    public void setNotifications(Notifications notifications) {
+        this.notifications = notifications;
+    }
+
+    public Notifications notifications() {
+        return notifications;
+    }
+
 }
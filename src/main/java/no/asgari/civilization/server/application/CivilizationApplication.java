@@ -32,19 +32,22 @@ import io.dropwizard.java8.auth.basic.BasicAuthFactory;
 import io.dropwizard.setup.Bootstrap;
 import io.dropwizard.setup.Environment;
 import lombok.extern.log4j.Log4j;
-import no.asgari.civilization.server.model.Chat;
+import no.asgari.civilization.server.action.AdminAction;
+import no.asgari.civilization.server.email.Notifications;
 import no.asgari.civilization.server.model.Player;
+import no.asgari.civilization.server.repository.Persistence;
+import no.asgari.civilization.server.repository.PlayerRepository;
+import no.asgari.civilization.server.repository.Repositories;
 import no.asgari.civilization.server.resource.*;
 import org.eclipse.jetty.servlets.CrossOriginFilter;
 import org.glassfish.hk2.utilities.Binder;
-import org.mongojack.JacksonDBCollection;
 
 import javax.servlet.DispatcherType;
 import javax.servlet.FilterRegistration;
+import java.time.Duration;
 import java.util.EnumSet;
-import java.util.List;
+import java.util.Map;
 import java.util.Objects;
-import java.util.concurrent.TimeUnit;
 
 import static org.eclipse.jetty.servlets.CrossOriginFilter.*;
 
@@ -68,45 +71,56 @@ public class CivilizationApplication extends Application<CivilizationConfigurati
 
     @Override
     public void run(CivilizationConfiguration configuration, Environment environment) throws Exception {
-        DB db;
-        MongoClient mongo;
-
-        if (!Strings.isNullOrEmpty(configuration.mongouri)) {
-            MongoClientURI clientURI = new MongoClientURI(configuration.mongouri);
-
-            mongo = new MongoClient(clientURI);
-            db = mongo.getDB(Objects.requireNonNull(clientURI.getDatabase()));
+        CivSingleton.instance().setMetrics(environment.metrics());
+        CivSingleton.instance().setSnapshotInterval(configuration.snapshotInterval);
+        Repositories repositories;
+        if (configuration.persistence == Persistence.MEMORY) {
+            log.warn("Using in memory persistence. All data is lost on restart");
+            repositories = Repositories.inMemory();
         } else {
-            mongo = new MongoClient(configuration.mongohost, configuration.mongoport);
-            db = mongo.getDB(configuration.mongodb);
+            repositories = Repositories.mongo(connectToMongo(configuration, environment));
         }
-        MongoManaged mongoManaged = new MongoManaged(mongo);
-        environment.lifecycle().manage(mongoManaged);
 
-        JacksonDBCollection<Player, String> playerCollection = JacksonDBCollection.wrap(db.getCollection(Player.COL_NAME), Player.class, String.class);
-        //JacksonDBCollection<PBF, String> pbfCollection = JacksonDBCollection.wrap(db.getCollection(PBF.COL_NAME), PBF.class, String.class);
-        JacksonDBCollection<Chat, String> chatCollection = JacksonDBCollection.wrap(db.getCollection(Chat.COL_NAME), Chat.class, String.class);
-        createUniqueIndexForPlayer(playerCollection);
-        createUsernameCache(playerCollection);
-        //createUniqueIndexForPBF(pbfCollection);
-        createIndexForChat(chatCollection);
+        repositories.getPlayers().createIndexes();
+        repositories.getChats().createIndexes();
+        repositories.getGameLogs().createIndexes();
+        repositories.getGameEvents().createIndexes();
+        repositories.getSnapshots().createIndexes();
+        repositories.getTurns().createIndexes();
+        repositories.getArchive().createIndexes();
+        repositories.getNotifications().createIndexes();
+        PublicChatBuffer publicChat = PublicChatBuffer.load(repositories.getChats(), configuration.publicChatSize,
+                configuration.publicChatRefreshInterval.toMilliseconds());
+        environment.lifecycle().manage(publicChat);
+        CivSingleton.instance().setPublicChat(publicChat);
+        Notifications notifications = new Notifications(repositories.getNotifications(),
+                Duration.ofMillis(configuration.chatEmailInterval.toMilliseconds()));
+        environment.lifecycle().manage(notifications);
+        CivSingleton.instance().setNotifications(notifications);
+        createUsernameCache(repositories.getPlayers(), configuration.usernameCachePolicy, environment.metrics());
         //createItemCache(); //TODO Have to rewrite the code to make it work, right now everyone gets same number and same draws
 
-        //healtcheck
-        environment.healthChecks().register("MongoHealthCheck", new MongoHealthCheck(mongo));
+        AdminAction adminAction = new AdminAction(repositories);
+        CleanupJob cleanupJob = new CleanupJob("cleanup", stopped -> adminAction.cleanup(configuration.cleanupBatchSize, stopped),
+                configuration.cleanupInterval, repositories.getLeases(), environment.metrics());
+        environment.lifecycle().manage(cleanupJob);
+        CleanupJob archiveJob = new CleanupJob("archive", stopped -> adminAction.archiveFinishedGames(configuration.archiveBatchSize, stopped),
+                configuration.archiveInterval, repositories.getLeases(), environment.metrics());
+        environment.lifecycle().manage(archiveJob);
 
         //Resources
-        environment.jersey().register(new GameResource(db));
-        environment.jersey().register(new AuthResource(db));
-        environment.jersey().register(new PlayerResource(db));
-        environment.jersey().register(new DrawResource(db));
-        environment.jersey().register(new AdminResource(db));
-        environment.jersey().register(new TournamentResource(db));
+        environment.jersey().register(new GameResource(repositories));
+        environment.jersey().register(new AuthResource(repositories));
+        environment.jersey().register(new PlayerResource(repositories));
+        environment.jersey().register(new DrawResource(repositories));
+        environment.jersey().register(new AdminResource(adminAction, repositories, cleanupJob, archiveJob));
+        environment.jersey().register(new TournamentResource(repositories));
+        environment.jersey().register(new RequestMetricsFilter(environment.metrics()));
 
         //Authenticator
         CachingAuthenticator<BasicCredentials, Player> cachingAuthenticator = new CachingAuthenticator<>(
-                new MetricRegistry(),
-                new CivAuthenticator(db),
+                environment.metrics(),
+                new CivAuthenticator(repositories),
                 CacheBuilderSpec.parse("expireAfterWrite=120m")
         );
 
@@ -127,37 +141,55 @@ public class CivilizationApplication extends Application<CivilizationConfigurati
         filter.setInitParameter(EXPOSED_HEADERS_PARAM, "Content-Type,Authorization,X-Requested-With,Content-Length,Accept,Origin,Location,Accept-Content-Encoding");
     }
 
-    private void createUsernameCache(JacksonDBCollection<Player, String> playerCollection) {
-        LoadingCache<String, String> usernameCache = CacheBuilder.newBuilder()
-                .expireAfterWrite(2, TimeUnit.HOURS)
-                .maximumSize(100)
+    /**
+     * Connects to mongo, and manages the client and its health check
+     */
+    private DB connectToMongo(CivilizationConfiguration configuration, Environment environment) {
+        DB db;
+        MongoClient mongo;
+        CivSingleton.instance().setReadRouting(configuration.mongoClient.toReadRouting());
+        MongoPoolMetrics poolMetrics = new MongoPoolMetrics(MetricRegistry.name(MongoClient.class, "pool"));
+        environment.metrics().registerAll(poolMetrics);
+        MongoClientOptions.Builder mongoOptions = configuration.mongoClient.toOptionsBuilder()
+                .addConnectionPoolListener(poolMetrics)
+                .addCommandListener(new MongoCommandListener(environment.metrics(), configuration.slowMongoCommandThreshold.toMilliseconds()));
+
+        if (!Strings.isNullOrEmpty(configuration.mongouri)) {
+            MongoClientURI clientURI = new MongoClientURI(configuration.mongouri, mongoOptions);
+
+            mongo = new MongoClient(clientURI);
+            db = mongo.getDB(Objects.requireNonNull(clientURI.getDatabase()));
+        } else {
+            mongo = new MongoClient(new ServerAddress(configuration.mongohost, configuration.mongoport), mongoOptions.build());
+            db = mongo.getDB(configuration.mongodb);
+        }
+        MongoManaged mongoManaged = new MongoManaged(mongo);
+        environment.lifecycle().manage(mongoManaged);
+
+        //healtcheck
+        environment.healthChecks().register("MongoHealthCheck", new MongoHealthCheck(mongo));
+        return db;
+    }
+
+    private void createUsernameCache(PlayerRepository playerRepository, CacheBuilderSpec cachePolicy, MetricRegistry metrics) {
+        LoadingCache<String, String> usernameCache = CacheBuilder.from(cachePolicy)
+                .recordStats()
                 .removalListener(lis -> log.debug("Removing " + lis.toString() + " from the usernameCache"))
                 .build(new CacheLoader<String, String>() {
                     public String load(String playerId) {
-                        return playerCollection.findOneById(playerId).getUsername();
+                        return playerRepository.findUsernameById(playerId);
                     }
                 });
 
-        CivSingleton.instance().setPlayerCache(usernameCache);
-    }
-
-    private void createUniqueIndexForPlayer(JacksonDBCollection<Player, String> playerCollection) {
-        List<DBObject> indexInfos = playerCollection.getIndexInfo();
-        if (indexInfos.isEmpty()) {
-            playerCollection.createIndex(new BasicDBObject(Player.USERNAME, 1), new BasicDBObject("unique", true));
-            playerCollection.createIndex(new BasicDBObject(Player.EMAIL, 1), new BasicDBObject("unique", true));
+        //Preload all the usernames with one query, so that creating logs doesn't have to go to the database
+        Map<String, String> usernames = playerRepository.findAllUsernames();
+        usernameCache.putAll(usernames);
+        log.info("Preloaded " + usernames.size() + " usernames into the usernameCache");
+        if (usernameCache.size() < usernames.size()) {
+            log.warn("The usernameCache only holds " + usernameCache.size() + " of " + usernames.size() + " usernames. Raise maximumSize of usernameCachePolicy");
         }
-    }
 
-    /*private void createUniqueIndexForPBF(JacksonDBCollection<PBF, String> pbfCollection) {
-        if (pbfCollection.getIndexInfo().isEmpty()) {
-            pbfCollection.createIndex(new BasicDBObject(PBF.NAME, 1), new BasicDBObject("unique", true));
-        }
-    }*/
-
-    private void createIndexForChat(JacksonDBCollection<Chat, String> chatCollection) {
-        if (chatCollection.getIndexInfo().isEmpty()) {
-            chatCollection.createIndex(new BasicDBObject(Chat.PBFID, 1));
-        }
+        metrics.registerAll(new CacheMetricSet(MetricRegistry.name(CivSingleton.class, "usernameCache"), usernameCache));
+        CivSingleton.instance().setPlayerCache(usernameCache);
     }
 }
@@ -16,12 +16,29 @@
 package no.asgari.civilization.server.application;
 
 import com.fasterxml.jackson.annotation.JsonProperty;
+import com.google.common.cache.CacheBuilderSpec;
 import io.dropwizard.Configuration;
+import io.dropwizard.util.Duration;
+import io.dropwizard.validation.MaxDuration;
+import io.dropwizard.validation.MinDuration;
+import no.asgari.civilization.server.repository.Persistence;
 import org.hibernate.validator.constraints.NotEmpty;
 
+import javax.validation.Valid;
+import javax.validation.constraints.Min;
+import javax.validation.constraints.NotNull;
+import java.util.concurrent.TimeUnit;
+
 public class CivilizationConfiguration extends Configuration {
     public static final String CIVILIZATION = "playciv";
 
+    /**
+     * MONGO, or MEMORY to run without a database
+     */
+    @JsonProperty
+    @NotNull
+    public Persistence persistence = Persistence.MONGO;
+
     @JsonProperty
     @NotEmpty
     public String mongouri = System.getenv("ATLAS_URI") == null ? "localhost" : System.getenv("ATLAS_URI");
@@ -35,4 +52,81 @@ public class CivilizationConfiguration extends Configuration {
     @JsonProperty
     public String mongodb = System.getenv("MONGODB_NAME") == null ? CIVILIZATION : System.getenv("MONGODB_NAME");
 
+    @JsonProperty
+    @Valid
+    @NotNull
+    public MongoClientConfiguration mongoClient = new MongoClientConfiguration();
+
+    /**
+     * Cache policy for playerId -> username. Should be larger than the number of players, since all are preloaded on startup.
+     * Don't let entries expire: they are only loaded once, and creating a player checks the cache for taken usernames
+     */
+    @JsonProperty
+    public CacheBuilderSpec usernameCachePolicy = CacheBuilderSpec.parse("maximumSize=10000");
+
+    /**
+     * A snapshot of the game is taken every this many events. 0 turns snapshots off
+     */
+    @JsonProperty
+    @Min(0)
+    public int snapshotInterval = 50;
+
+    /**
+     * Number of the newest public chat messages kept in memory and shown in the public chat
+     */
+    @JsonProperty
+    @Min(1)
+    public int publicChatSize = 50;
+
+    /**
+     * How often the public chat is read again from the database, to show messages written on the other servers
+     */
+    @JsonProperty
+    @NotNull
+    @MinDuration(value = 1, unit = TimeUnit.MILLISECONDS)
+    public Duration publicChatRefreshInterval = Duration.seconds(5);
+
+    /**
+     * A player is emailed about new chat in a game at most once every this long. At most a day, which is how long
+     * the time of the last email is kept
+     */
+    @JsonProperty
+    @NotNull
+    @MaxDuration(value = 1, unit = TimeUnit.DAYS)
+    public Duration chatEmailInterval = Duration.minutes(30);
+
+    /**
+     * Mongo commands slower than this are logged with their filter
+     */
+    @JsonProperty
+    public Duration slowMongoCommandThreshold = Duration.milliseconds(100);
+
+    /**
+     * How often aborted games are deleted. 0 only deletes them when an admin asks for it
+     */
+    @JsonProperty
+    @NotNull
+    public Duration cleanupInterval = Duration.hours(24);
+
+    /**
+     * Number of aborted games deleted in each batch of the cleanup
+     */
+    @JsonProperty
+    @Min(1)
+    public int cleanupBatchSize = 100;
+
+    /**
+     * How often finished games are moved to the archive. 0 only archives them when an admin asks for it
+     */
+    @JsonProperty
+    @NotNull
+    public Duration archiveInterval = Duration.hours(24);
+
+    /**
+     * Number of finished games archived in each batch
+     */
+    @JsonProperty
+    @Min(1)
+    public int archiveBatchSize = 100;
+
 }
\ No newline at end of file
@@ -0,0 +1,120 @@
+/*
+ * Copyright (c) 2015 Shervin Asgari
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package no.asgari.civilization.server.application;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import io.dropwizard.lifecycle.Managed;
+import io.dropwizard.util.Duration;
+import lombok.extern.log4j.Log4j;
+import no.asgari.civilization.server.repository.LeaseRepository;
+
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+
+/**
+ * Runs a batched cleanup, like deleting aborted games or archiving finished ones, in the background,
+ * every interval and when an admin asks for it.
+ * Only one run of a job happens at a time across all the servers, by holding a lease while running.
+ * A running job stops after its current batch on shutdown, or when it can't renew its lease
+ */
+@Log4j
+public class CleanupJob implements Managed {
+    /**
+     * Renewed between each batch, so it only runs out if a server dies while running the job
+     */
+    private static final java.time.Duration LEASE = java.time.Duration.ofMinutes(30);
+
+    private final String name;
+    private final Consumer<BooleanSupplier> task;
+    private final Duration interval;
+    private final Timer timer;
+    private final ScheduledExecutorService executor;
+    private final LeaseRepository leases;
+    private final String owner = UUID.randomUUID().toString();
+    private final AtomicBoolean running = new AtomicBoolean();
+    private volatile boolean stopped;
+
+    /**
+     * @param task     - given a check of whether the job is stopped, to do between its batches
+     * @param interval - 0 only runs the job when asked to
+     * @param leases   - where the servers agree on who runs the job
+     */
+    public CleanupJob(String name, Consumer<BooleanSupplier> task, Duration interval, LeaseRepository leases, MetricRegistry metrics) {
+        this.name = name;
+        this.leases = leases;
+        this.task = task;
+        this.interval = interval;
+        this.executor = Executors.newSingleThreadScheduledExecutor(
+                new ThreadFactoryBuilder().setNameFormat(name + "-%d").setDaemon(true).build());
+        this.timer = metrics.timer(MetricRegistry.name(CleanupJob.class, name, "run"));
+        metrics.register(MetricRegistry.name(CleanupJob.class, name, "running"), (Gauge<Boolean>) running::get);
+    }
+
+    @Override
+    public void start() throws Exception {
+        long millis = interval.toMilliseconds();
+        if (millis > 0) {
+            executor.scheduleWithFixedDelay(this::run, millis, millis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    @Override
+    public void stop() throws Exception {
+        stopped = true;
+        executor.shutdown();
+        executor.awaitTermination(30, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Starts the job in the background
+     *
+     * @return false if the job is already running
+     */
+    public boolean runNow() {
+        if (running.get() || stopped) {
+            return false;
+        }
+        executor.execute(this::run);
+        return true;
+    }
+
+    private void run() {
+        if (!running.compareAndSet(false, true)) {
+            return;
+        }
+        if (!leases.acquire(name, owner, LEASE)) {
+            log.info(name + " is already running on another server");
+            running.set(false);
+            return;
+        }
+        try (Timer.Context ignored = timer.time()) {
+            task.accept(() -> stopped || !leases.acquire(name, owner, LEASE));
+        } catch (Exception e) {
+            log.error(name + " failed, the rest is done the next time it runs", e);
+        } finally {
+            leases.release(name, owner);
+            running.set(false);
+        }
+    }
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright (c) 2015 Shervin Asgari
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package no.asgari.civilization.server.application;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.mongodb.MongoClientOptions;
+import com.mongodb.ReadPreference;
+import com.mongodb.WriteConcern;
+import io.dropwizard.util.Duration;
+import org.hibernate.validator.constraints.NotEmpty;
+
+import javax.validation.constraints.Min;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Connection pool, timeouts, read preference and write concern for the MongoClient.
+ * Options given in the mongouri take precedence
+ */
+public class MongoClientConfiguration {
+    @JsonProperty
+    @Min(1)
+    public int maxPoolSize = 100;
+
+    @JsonProperty
+    @Min(0)
+    public int minPoolSize = 0;
+
+    /**
+     * Maximum number of threads waiting for a connection before the driver fails fast
+     */
+    @JsonProperty
+    @Min(0)
+    public int maxWaitQueueSize = 500;
+
+    @JsonProperty
+    public Duration maxWaitTime = Duration.seconds(10);
+
+    @JsonProperty
+    public Duration connectTimeout = Duration.seconds(10);
+
+    /**
+     * 0 means no timeout
+     */
+    @JsonProperty
+    public Duration socketTimeout = Duration.seconds(0);
+
+    @JsonProperty
+    public Duration serverSelectionTimeout = Duration.seconds(30);
+
+    /**
+     * One of primary, primaryPreferred, secondary, secondaryPreferred or nearest
+     */
+    @JsonProperty
+    @NotEmpty
+    public String readPreference = "primary";
+
+    /**
+     * One of the constants in {@link WriteConcern}, ie ACKNOWLEDGED, MAJORITY or W1
+     */
+    @JsonProperty
+    @NotEmpty
+    public String writeConcern = "ACKNOWLEDGED";
+
+    /**
+     * Send read-only queries to secondaries when available
+     */
+    @JsonProperty
+    public boolean secondaryReads = false;
+
+    /**
+     * How far behind the primary a secondary may be to serve read-only queries. Mongo requires at least 90 seconds.
+     * Data written within this window is read from the primary
+     */
+    @JsonProperty
+    public Duration maxStaleness = Duration.seconds(90);
+
+    public ReadRouting toReadRouting() {
+        if (!secondaryReads) {
+            return ReadRouting.primaryOnly();
+        }
+        return new ReadRouting(ReadPreference.secondaryPreferred(maxStaleness.toSeconds(), TimeUnit.SECONDS), maxStaleness.toMilliseconds());
+    }
+
+    public MongoClientOptions.Builder toOptionsBuilder() {
+        WriteConcern concern = WriteConcern.valueOf(writeConcern.toUpperCase());
+        if (concern == null) {
+            throw new IllegalArgumentException("Unknown write concern " + writeConcern);
+        }
+
+        return MongoClientOptions.builder()
+                .connectionsPerHost(maxPoolSize)
+                .minConnectionsPerHost(minPoolSize)
+                .threadsAllowedToBlockForConnectionMultiplier(Math.max(1, (maxWaitQueueSize + maxPoolSize - 1) / maxPoolSize))
+                .maxWaitTime((int) maxWaitTime.toMilliseconds())
+                .connectTimeout((int) connectTimeout.toMilliseconds())
+                .socketTimeout((int) socketTimeout.toMilliseconds())
+                .serverSelectionTimeout((int) serverSelectionTimeout.toMilliseconds())
+                .readPreference(ReadPreference.valueOf(readPreference))
+                .writeConcern(concern);
+    }
+}
@@ -0,0 +1,154 @@
+/*
+ * Copyright (c) 2015 Shervin Asgari
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package no.asgari.civilization.server.application;
+
+import com.codahale.metrics.MetricRegistry;
+import com.mongodb.event.CommandFailedEvent;
+import com.mongodb.event.CommandListener;
+import com.mongodb.event.CommandStartedEvent;
+import com.mongodb.event.CommandSucceededEvent;
+import lombok.extern.log4j.Log4j;
+import org.bson.BsonArray;
+import org.bson.BsonDocument;
+import org.bson.BsonValue;
+import org.bson.RawBsonDocument;
+import org.bson.codecs.BsonDocumentCodec;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.codahale.metrics.MetricRegistry.name;
+
+/**
+ * Publishes latency per collection and per command, response sizes and logs slow commands.
+ * Also counts the commands sent to mongo by the current request thread.
+ * The driver is synchronous, so the events are published on the same thread that issued the command
+ */
+@Log4j
+public class MongoCommandListener implements CommandListener {
+    private static final ThreadLocal<AtomicInteger> commandsInRequest = ThreadLocal.withInitial(AtomicInteger::new);
+    private static final int MAX_LOGGED_FILTER_LENGTH = 500;
+
+    private final MetricRegistry metrics;
+    private final long slowCommandThresholdNanos;
+    private final Map<Integer, StartedCommand> inFlight = new ConcurrentHashMap<>();
+
+    public MongoCommandListener(MetricRegistry metrics, long slowCommandThresholdMillis) {
+        this.metrics = metrics;
+        this.slowCommandThresholdNanos = TimeUnit.MILLISECONDS.toNanos(slowCommandThresholdMillis);
+    }
+
+    public static void resetCommandCount() {
+        commandsInRequest.get().set(0);
+    }
+
+    public static int getCommandCount() {
+        return commandsInRequest.get().get();
+    }
+
+    @Override
+    public void commandStarted(CommandStartedEvent event) {
+        commandsInRequest.get().incrementAndGet();
+        inFlight.put(event.getRequestId(), new StartedCommand(collectionName(event), filter(event.getCommand())));
+    }
+
+    @Override
+    public void commandSucceeded(CommandSucceededEvent event) {
+        StartedCommand started = inFlight.remove(event.getRequestId());
+        if (started == null) {
+            return;
+        }
+        long elapsed = event.getElapsedTime(TimeUnit.NANOSECONDS);
+        metrics.timer(name(MongoCommandListener.class, "collection", started.collection)).update(elapsed, TimeUnit.NANOSECONDS);
+        metrics.timer(name(MongoCommandListener.class, "command", event.getCommandName())).update(elapsed, TimeUnit.NANOSECONDS);
+
+        BsonDocument response = event.getResponse();
+        if (response != null) {
+            metrics.histogram(name(MongoCommandListener.class, "responseBytes", started.collection)).update(sizeOf(response));
+            int documents = documentsReturned(response);
+            if (documents >= 0) {
+                metrics.histogram(name(MongoCommandListener.class, "responseDocuments", started.collection)).update(documents);
+            }
+        }
+
+        if (elapsed >= slowCommandThresholdNanos) {
+            metrics.meter(name(MongoCommandListener.class, "slow", started.collection)).mark();
+            log.warn("Slow mongo command " + event.getCommandName() + " on " + started.collection
+                    + " took " + TimeUnit.NANOSECONDS.toMillis(elapsed) + " ms. Filter: " + started.filter);
+        }
+    }
+
+    @Override
+    public void commandFailed(CommandFailedEvent event) {
+        StartedCommand started = inFlight.remove(event.getRequestId());
+        String collection = started == null ? "unknown" : started.collection;
+        metrics.meter(name(MongoCommandListener.class, "failed", collection)).mark();
+        log.warn("Mongo command " + event.getCommandName() + " on " + collection + " failed after "
+                + event.getElapsedTime(TimeUnit.MILLISECONDS) + " ms", event.getThrowable());
+    }
+
+    /**
+     * Most commands have the collection name as the value of the command name, ie {find: "pbf", filter: {...}}
+     */
+    private static String collectionName(CommandStartedEvent event) {
+        BsonValue value = event.getCommand().get(event.getCommandName());
+        if (value != null && value.isString()) {
+            return value.asString().getValue();
+        }
+        return event.getCommandName();
+    }
+
+    private static String filter(BsonDocument command) {
+        BsonValue filter = command.containsKey("filter") ? command.get("filter") : command.get("query");
+        if (filter == null || !filter.isDocument()) {
+            return "";
+        }
+        String json = filter.asDocument().toJson();
+        return json.length() > MAX_LOGGED_FILTER_LENGTH ? json.substring(0, MAX_LOGGED_FILTER_LENGTH) + "..." : json;
+    }
+
+    private static int sizeOf(BsonDocument document) {
+        if (document instanceof RawBsonDocument) {
+            return ((RawBsonDocument) document).getByteBuffer().remaining();
+        }
+        return new RawBsonDocument(document, new BsonDocumentCodec()).getByteBuffer().remaining();
+    }
+
+    /**
+     * @return number of documents in the first batch of a cursor reply, or -1 if the reply isn't a cursor
+     */
+    private static int documentsReturned(BsonDocument response) {
+        BsonValue cursor = response.get("cursor");
+        if (cursor == null || !cursor.isDocument()) {
+            return -1;
+        }
+        BsonDocument cursorDocument = cursor.asDocument();
+        BsonValue batch = cursorDocument.containsKey("firstBatch") ? cursorDocument.get("firstBatch") : cursorDocument.get("nextBatch");
+        return batch != null && batch.isArray() ? ((BsonArray) batch).size() : -1;
+    }
+
+    private static class StartedCommand {
+        private final String collection;
+        private final String filter;
+
+        private StartedCommand(String collection, String filter) {
+            this.collection = collection;
+            this.filter = filter;
+        }
+    }
+}
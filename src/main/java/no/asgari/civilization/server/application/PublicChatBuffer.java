@@ -0,0 +1,180 @@
+/*
+ * Copyright (c) 2015 Shervin Asgari
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package no.asgari.civilization.server.application;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import io.dropwizard.lifecycle.Managed;
+import lombok.extern.log4j.Log4j;
+import no.asgari.civilization.server.dto.ChatDTO;
+import no.asgari.civilization.server.model.Chat;
+import no.asgari.civilization.server.repository.ChatRepository;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static java.util.stream.Collectors.toList;
+
+/**
+ * The newest public chat messages, kept in a ring buffer so the public chat is read without going to the database
+ * on every request. Warmed from the database on startup and appended to when someone writes in the public chat.
+ * Messages written on other servers are picked up by reading the newest public chat again in the background,
+ * every refreshMillis once the buffer is started
+ */
+@Log4j
+public class PublicChatBuffer implements Managed {
+    private static final long MAX_AGE = Duration.ofDays(Chat.PUBLIC_CHAT_DAYS).toMillis();
+
+    private final ChatDTO[] ring;
+    private int next;
+    private int size;
+    //Oldest first, replaced on every change so readers never lock
+    private volatile List<ChatDTO> snapshot = Collections.emptyList();
+
+    //Null when the buffer only holds what is added to it
+    private final ChatRepository chatRepository;
+    private final long refreshMillis;
+    private ScheduledExecutorService executor;
+
+    public PublicChatBuffer(int capacity) {
+        this(capacity, null, 0);
+    }
+
+    private PublicChatBuffer(int capacity, ChatRepository chatRepository, long refreshMillis) {
+        Preconditions.checkArgument(capacity > 0);
+        Preconditions.checkArgument(chatRepository == null || refreshMillis > 0);
+        this.ring = new ChatDTO[capacity];
+        this.chatRepository = chatRepository;
+        this.refreshMillis = refreshMillis;
+    }
+
+    /**
+     * A buffer holding the newest public chat in the database, read again every refreshMillis once it is started
+     */
+    public static PublicChatBuffer load(ChatRepository chatRepository, int capacity, long refreshMillis) {
+        PublicChatBuffer publicChat = new PublicChatBuffer(capacity, chatRepository, refreshMillis);
+        publicChat.refresh();
+        return publicChat;
+    }
+
+    @Override
+    public synchronized void start() throws Exception {
+        if (chatRepository != null && executor == null) {
+            executor = Executors.newSingleThreadScheduledExecutor(
+                    new ThreadFactoryBuilder().setNameFormat("public-chat-%d").setDaemon(true).build());
+            executor.scheduleWithFixedDelay(this::refreshInBackground, refreshMillis, refreshMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    @Override
+    public synchronized void stop() throws Exception {
+        if (executor != null) {
+            executor.shutdownNow();
+            executor = null;
+        }
+    }
+
+    public synchronized void add(Chat chat) {
+        append(new ChatDTO(chat.getUsername(), chat.getMessage(), chat.getCreatedInMillis()));
+        snapshot = copy();
+    }
+
+    public synchronized void clear() {
+        next = 0;
+        size = 0;
+        snapshot = Collections.emptyList();
+    }
+
+    /**
+     * @return the newest messages that have not expired, oldest first
+     */
+    public List<ChatDTO> newest() {
+        List<ChatDTO> chats = snapshot;
+        if (!chats.isEmpty() && isExpired(chats.get(0))) {
+            return dropExpired();
+        }
+        return chats;
+    }
+
+    /**
+     * Replaces the buffer with the newest public chat in the database. The database is read without holding the buffer,
+     * and messages added here while it was read are kept, so readers and writers never wait for the database
+     */
+    public void refresh() {
+        long readAt = System.currentTimeMillis();
+        List<ChatDTO> chats = ImmutableList.copyOf(Lists.transform(Lists.reverse(chatRepository.findPublic(ring.length)),
+                chat -> new ChatDTO(chat.getUsername(), chat.getMessage(), chat.getCreatedInMillis())));
+        replace(chats, readAt);
+    }
+
+    private void refreshInBackground() {
+        try {
+            refresh();
+        } catch (Exception e) {
+            log.error("Could not read the public chat, trying again in " + refreshMillis + " ms", e);
+        }
+    }
+
+    private synchronized void replace(List<ChatDTO> chats, long readAt) {
+        List<ChatDTO> addedMeanwhile = snapshot.stream()
+                .filter(chat -> chat.getCreated() >= readAt && !chats.contains(chat))
+                .collect(toList());
+        Arrays.fill(ring, null);
+        next = 0;
+        size = 0;
+        chats.forEach(this::append);
+        addedMeanwhile.forEach(this::append);
+        snapshot = copy();
+    }
+
+    private void append(ChatDTO chat) {
+        ring[next] = chat;
+        next = (next + 1) % ring.length;
+        size = Math.min(size + 1, ring.length);
+    }
+
+    private synchronized List<ChatDTO> dropExpired() {
+        while (size > 0 && isExpired(ring[oldest()])) {
+            ring[oldest()] = null;
+            size--;
+        }
+        snapshot = copy();
+        return snapshot;
+    }
+
+    private int oldest() {
+        return (next - size + ring.length) % ring.length;
+    }
+
+    private List<ChatDTO> copy() {
+        ImmutableList.Builder<ChatDTO> chats = ImmutableList.builder();
+        for (int i = 0; i < size; i++) {
+            chats.add(ring[(oldest() + i) % ring.length]);
+        }
+        return chats.build();
+    }
+
+    private static boolean isExpired(ChatDTO chat) {
+        return chat.getCreated() < System.currentTimeMillis() - MAX_AGE;
+    }
+}
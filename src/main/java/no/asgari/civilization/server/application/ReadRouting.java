@@ -0,0 +1,67 @@
+/*
+ * Copyright (c) 2015 Shervin Asgari
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package no.asgari.civilization.server.application;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.mongodb.ReadPreference;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decides which read preference read-only queries should use.
+ * Keys (usually a pbfId) that were written to within the staleness bound are read from the primary,
+ * so that the acting player always reads their own writes.
+ * <p>
+ * The writes are only remembered by the node that made them. With more than one node, a player only reads
+ * their own writes if the load balancer keeps sending them to the same node (sticky sessions).
+ * Otherwise another node may read from a secondary up to maxStaleness behind, so leave secondaryReads off
+ */
+public class ReadRouting {
+    private final ReadPreference readOnlyPreference;
+    private final Cache<String, Boolean> recentWrites;
+
+    public ReadRouting(ReadPreference readOnlyPreference, long maxStalenessMillis) {
+        this.readOnlyPreference = readOnlyPreference;
+        this.recentWrites = CacheBuilder.newBuilder()
+                .expireAfterWrite(maxStalenessMillis, TimeUnit.MILLISECONDS)
+                .build();
+    }
+
+    /**
+     * Every read goes to the primary
+     */
+    public static ReadRouting primaryOnly() {
+        return new ReadRouting(ReadPreference.primary(), 0);
+    }
+
+    public void wrote(String key) {
+        if (!readOnlyPreference.equals(ReadPreference.primary())) {
+            recentWrites.put(key, Boolean.TRUE);
+        }
+    }
+
+    /**
+     * Read preference for queries that are not tied to anything the caller may just have written, like highscores
+     */
+    public ReadPreference readOnly() {
+        return readOnlyPreference;
+    }
+
+    public ReadPreference readOnly(String key) {
+        return recentWrites.getIfPresent(key) != null ? ReadPreference.primary() : readOnlyPreference;
+    }
+}
@@ -0,0 +1,76 @@
+/*
+ * Copyright (c) 2015 Shervin Asgari
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package no.asgari.civilization.server.application;
+
+import com.google.common.base.Strings;
+import com.google.common.collect.ImmutableList;
+import lombok.Getter;
+import no.asgari.civilization.server.dto.AllTechsDTO;
+import no.asgari.civilization.server.dto.TechDTO;
+import no.asgari.civilization.server.model.PBF;
+import no.asgari.civilization.server.model.Tech;
+import no.asgari.civilization.server.model.TechCatalog;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+
+import static java.util.stream.Collectors.toList;
+
+/**
+ * The techs every player has revealed, as shown on the tech board, for one techsTag of the game.
+ * Built once per tag from a bitset of each player's revealed techs, and then served as it is
+ */
+@Getter
+public class TechBoard {
+    /**
+     * Games that have not changed their techs since techsTag was added have no tag yet
+     */
+    private static final String UNCHANGED = "0";
+
+    private final String tag;
+    private final List<AllTechsDTO> players;
+
+    private TechBoard(String tag, List<AllTechsDTO> players) {
+        this.tag = tag;
+        this.players = players;
+    }
+
+    public static String tagOf(PBF pbf) {
+        return Strings.isNullOrEmpty(pbf.getTechsTag()) ? UNCHANGED : pbf.getTechsTag();
+    }
+
+    public static TechBoard of(PBF pbf) {
+        //The deck first, then the chosen techs in case one of them is not in the deck
+        List<Tech> techs = new ArrayList<>(pbf.getTechs());
+        pbf.getPlayers().forEach(p -> techs.addAll(p.getTechsChosen()));
+        TechCatalog catalog = new TechCatalog(techs);
+
+        List<AllTechsDTO> players = pbf.getPlayers().stream()
+                .filter(p -> p.getCivilization() != null)
+                .map(p -> {
+                    BitSet revealed = catalog.bitsOf(p.getTechsChosen().stream()
+                            .filter(t -> !t.isHidden())
+                            .collect(toList()));
+                    List<TechDTO> revealedTechs = catalog.techs(revealed).stream()
+                            .map(t -> new TechDTO(t.getName(), t.getLevel()))
+                            .collect(toList());
+                    return new AllTechsDTO(p.getCivilization().getName(), p.getColor(), revealedTechs);
+                })
+                .collect(toList());
+        return new TechBoard(tagOf(pbf), ImmutableList.copyOf(players));
+    }
+}
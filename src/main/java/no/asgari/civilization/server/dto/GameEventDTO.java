@@ -0,0 +1,47 @@
+/*
+ * Copyright (c) 2015 Shervin Asgari
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package no.asgari.civilization.server.dto;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonRootName;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import no.asgari.civilization.server.model.GameEvent;
+import no.asgari.civilization.server.model.GameLog;
+
+@JsonRootName("gameEventDTO")
+@Data
+@NoArgsConstructor
+@JsonIgnoreProperties(ignoreUnknown = true)
+public class GameEventDTO {
+    private long sequence;
+    private GameLog.LogType type;
+    private String gameLogId;
+    private String username;
+    private String log;
+    private long created;
+    private DrawDTO draw;
+
+    public GameEventDTO(GameEvent event, String log) {
+        this.sequence = event.getSequence();
+        this.type = event.getType();
+        this.gameLogId = event.getGameLogId();
+        this.username = event.getUsername();
+        this.log = log;
+        this.created = event.getCreatedInMillis();
+        this.draw = new DrawDTO(event.getDraw());
+    }
+}
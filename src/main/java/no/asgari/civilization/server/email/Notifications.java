@@ -0,0 +1,82 @@
+/*
+ * Copyright (c) 2015 Shervin Asgari
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package no.asgari.civilization.server.email;
+
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.base.Preconditions;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import io.dropwizard.lifecycle.Managed;
+import lombok.extern.log4j.Log4j;
+import no.asgari.civilization.server.application.CivSingleton;
+import no.asgari.civilization.server.model.Playerhand;
+import no.asgari.civilization.server.repository.NotificationRepository;
+
+import java.time.Duration;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sends emails about games in the background, so the request that causes them doesn't wait for them.
+ * A player gets at most one email of each kind about a game every interval.
+ * When the last one was sent is stored in the {@link NotificationRepository} and not in the game
+ */
+@Log4j
+public class Notifications implements Managed {
+    private final NotificationRepository notificationRepository;
+    private final Duration interval;
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(
+            new ThreadFactoryBuilder().setNameFormat("notifications-%d").setDaemon(true).build());
+
+    public Notifications(NotificationRepository notificationRepository, Duration interval) {
+        Preconditions.checkArgument(interval.compareTo(NotificationRepository.MAX_INTERVAL) <= 0,
+                "interval can't be longer than " + NotificationRepository.MAX_INTERVAL);
+        this.notificationRepository = notificationRepository;
+        this.interval = interval;
+    }
+
+    /**
+     * Emails the player that someone wrote in the chat of the game, unless the player was told less than interval ago
+     */
+    public void chat(String pbfId, Playerhand recipient, String username, String message) {
+        send("chat", pbfId, recipient, "New Chat", username + " wrote in the chat: " + message
+                + ".\nLogin to " + SendEmail.gamelink(pbfId) + " to see the chat");
+    }
+
+    private void send(String kind, String pbfId, Playerhand recipient, String subject, String text) {
+        MetricRegistry metrics = CivSingleton.instance().metrics();
+        executor.execute(() -> {
+            if (!notificationRepository.claim(kind + ":" + pbfId + ":" + recipient.getPlayerId(), interval)) {
+                metrics.meter(MetricRegistry.name(Notifications.class, kind, "throttled")).mark();
+                return;
+            }
+            metrics.meter(MetricRegistry.name(Notifications.class, kind, "sent")).mark();
+            SendEmail.sendMessage(recipient.getEmail(), subject, text, recipient.getPlayerId());
+        });
+    }
+
+    @Override
+    public void start() throws Exception {
+    }
+
+    @Override
+    public void stop() throws Exception {
+        executor.shutdown();
+        if (!executor.awaitTermination(10, TimeUnit.SECONDS)) {
+            log.warn("Stopped before all notifications were sent");
+        }
+    }
+}
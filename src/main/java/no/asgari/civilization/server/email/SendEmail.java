@@ -15,10 +15,13 @@
 
 package no.asgari.civilization.server.email;
 
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
 import com.google.common.base.Strings;
 import com.sendgrid.SendGrid;
 import com.sendgrid.SendGridException;
 import lombok.extern.log4j.Log4j;
+import no.asgari.civilization.server.application.CivSingleton;
 import no.asgari.civilization.server.model.Player;
 
 /**
@@ -41,6 +44,7 @@ public class SendEmail {
     public static boolean sendYourTurn(String gamename, String emailToo, String pbfId) {
         if (System.getenv(SENDGRID_USERNAME) == null || System.getenv(SENDGRID_PASSWORD) == null) {
             log.error("Missing environment variable for SENDGRID_USERNAME or SENDGRID_PASSWORD");
+            CivSingleton.instance().metrics().meter(MetricRegistry.name(SendEmail.class, "skipped")).mark();
             return false;
         }
         SendGrid.Email email = new SendGrid.Email();
@@ -51,7 +55,7 @@ public class SendEmail {
                 "Go to " + gamelink(pbfId) + " to start your turn");
 
         try {
-            SendGrid.Response response = sendgrid.send(email);
+            SendGrid.Response response = send(email);
             return response.getStatus();
         } catch (SendGridException e) {
             log.error("Error sending email: " + e.getMessage(), e);
@@ -62,6 +66,7 @@ public class SendEmail {
     public static boolean sendMessage(String email, String subject, String message, String playerId) {
         if (System.getenv(SENDGRID_USERNAME) == null || System.getenv(SENDGRID_PASSWORD) == null) {
             log.error("Missing environment variable for SENDGRID_USERNAME or SENDGRID_PASSWORD");
+            CivSingleton.instance().metrics().meter(MetricRegistry.name(SendEmail.class, "skipped")).mark();
             return false;
         }
         SendGrid.Email sendGridEmail = new SendGrid.Email();
@@ -71,7 +76,7 @@ public class SendEmail {
         sendGridEmail.setText(message + UNSUBSCRIBE(playerId));
 
         try {
-            SendGrid.Response response = sendgrid.send(sendGridEmail);
+            SendGrid.Response response = send(sendGridEmail);
             return response.getStatus();
         } catch (SendGridException e) {
             log.error("Error sending sendGridEmail: " + e.getMessage(), e);
@@ -82,6 +87,7 @@ public class SendEmail {
     public static boolean someoneJoinedTournament(Player player) {
         if (System.getenv(SENDGRID_USERNAME) == null || System.getenv(SENDGRID_PASSWORD) == null) {
             log.error("Missing environment variable for SENDGRID_USERNAME or SENDGRID_PASSWORD");
+            CivSingleton.instance().metrics().meter(MetricRegistry.name(SendEmail.class, "skipped")).mark();
             return false;
         }
 
@@ -92,7 +98,7 @@ public class SendEmail {
         sendGridEmail.setText(player.getUsername() + " with email " + player.getEmail() + " joined the tournament");
 
         try {
-            SendGrid.Response response = sendgrid.send(sendGridEmail);
+            SendGrid.Response response = send(sendGridEmail);
             sendConfirmationToPlayer(player);
             return response.getStatus();
         } catch (SendGridException e) {
@@ -112,12 +118,22 @@ public class SendEmail {
                 "Afterwards please reply to this email and let me know that you have donated. Good luck and have fun!");
 
         try {
-            sendgrid.send(sendGridEmail);
+            send(sendGridEmail);
         } catch (SendGridException e) {
             log.error("Error sending sendGridEmail: " + e.getMessage(), e);
         }
     }
 
+    private static SendGrid.Response send(SendGrid.Email email) throws SendGridException {
+        MetricRegistry metrics = CivSingleton.instance().metrics();
+        try (Timer.Context ignored = metrics.timer(MetricRegistry.name(SendEmail.class, "sent")).time()) {
+            return sendgrid.send(email);
+        } catch (SendGridException e) {
+            metrics.meter(MetricRegistry.name(SendEmail.class, "failed")).mark();
+            throw e;
+        }
+    }
+
     private static String UNSUBSCRIBE(String playerId) {
         if (Strings.isNullOrEmpty(playerId)) {
             return "";
@@ -38,7 +38,6 @@ import no.asgari.civilization.server.model.Tech;
 import no.asgari.civilization.server.model.Tile;
 import no.asgari.civilization.server.model.Village;
 import no.asgari.civilization.server.model.Wonder;
-import org.apache.commons.lang3.RandomUtils;
 import org.apache.poi.ss.usermodel.Cell;
 import org.apache.poi.ss.usermodel.Sheet;
 import org.apache.poi.ss.usermodel.Workbook;
@@ -50,7 +49,6 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.LinkedList;
 import java.util.List;
-import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Predicate;
 import java.util.stream.Collectors;
 
@@ -60,7 +58,6 @@ public class ItemReader {
     private static final Predicate<Cell> notRandomPredicate = cell -> !cell.toString().equals("RAND()");
     private static final Predicate<Cell> rowNotZeroPredicate = cell -> cell.getRow().getRowNum() != 0;
     private static final Predicate<Cell> columnIndexZeroPredicate = cell -> cell.getColumnIndex() == 0;
-    public static AtomicInteger itemCounter = new AtomicInteger(RandomUtils.nextInt(1, 20));
     public LinkedList<Civ> shuffledCivs;
     public LinkedList<CultureI> shuffledCultureI;
     public LinkedList<CultureII> shuffledCultureII;
@@ -231,7 +228,7 @@ public class ItemReader {
         for (int i = 0; i < civs.size(); i++) {
             Civ item = civs.get(i);
             item.setDescription(descriptionCells.get(i));
-            item.setStartingTech(new Tech(startingTech.get(i), Tech.LEVEL_1, itemCounter.incrementAndGet()));
+            item.setStartingTech(new Tech(startingTech.get(i), Tech.LEVEL_1, 0));
         }
 
         Collections.shuffle(civs);
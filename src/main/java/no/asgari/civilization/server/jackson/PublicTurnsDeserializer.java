@@ -0,0 +1,48 @@
+package no.asgari.civilization.server.jackson;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.JsonDeserializer;
+import com.google.common.base.Strings;
+import no.asgari.civilization.server.model.PlayerTurn;
+import no.asgari.civilization.server.model.TurnKey;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+/**
+ * Keys the turns by the turnNumber and username of the turn itself. Older games keyed them by the turnNumber
+ * directly followed by the username, which can't be told apart when a username starts with a digit
+ */
+public class PublicTurnsDeserializer extends JsonDeserializer<NavigableMap<TurnKey, PlayerTurn>> {
+
+    @Override
+    public NavigableMap<TurnKey, PlayerTurn> deserialize(JsonParser p, DeserializationContext ctxt) throws IOException, JsonProcessingException {
+        Map<String, PlayerTurn> turns = p.readValueAs(new TypeReference<LinkedHashMap<String, PlayerTurn>>() {
+        });
+        NavigableMap<TurnKey, PlayerTurn> publicTurns = new TreeMap<>();
+        for (Map.Entry<String, PlayerTurn> entry : turns.entrySet()) {
+            TurnKey key = keyOf(entry.getKey(), entry.getValue(), ctxt);
+            if (publicTurns.put(key, entry.getValue()) != null) {
+                throw ctxt.mappingException("Two public turns have the key " + key);
+            }
+        }
+        return publicTurns;
+    }
+
+    private static TurnKey keyOf(String key, PlayerTurn turn, DeserializationContext ctxt) throws IOException {
+        if (turn != null && !Strings.isNullOrEmpty(turn.getUsername())) {
+            return TurnKey.of(turn);
+        }
+        try {
+            return TurnKey.parse(key);
+        } catch (IllegalArgumentException e) {
+            throw ctxt.weirdKeyException(TurnKey.class, key, e.getMessage());
+        }
+    }
+}
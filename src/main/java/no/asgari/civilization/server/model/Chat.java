@@ -31,6 +31,7 @@ import org.mongojack.ObjectId;
 import javax.validation.constraints.NotNull;
 import java.time.LocalDateTime;
 import java.time.ZoneId;
+import java.util.Date;
 
 @Data
 @JsonRootName("chat")
@@ -39,6 +40,11 @@ import java.time.ZoneId;
 public class Chat {
     public static final String COL_NAME = "chat";
     public static final String PBFID = "pbfId";
+    public static final String EXPIRE_AT = "expireAt";
+    /**
+     * Public chat is kept this many days
+     */
+    public static final int PUBLIC_CHAT_DAYS = 14;
 
     @Id
     @ObjectId
@@ -56,6 +62,11 @@ public class Chat {
     @JsonDeserialize(using = LocalDateTimeDeserializer.class)
     private LocalDateTime created = LocalDateTime.now();
 
+    /**
+     * Set on public chat, which mongo deletes when this time has passed
+     */
+    private Date expireAt;
+
     @JsonIgnore
     public long getCreatedInMillis() {
         return created.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
@@ -0,0 +1,100 @@
+/*
+ * Copyright (c) 2015 Shervin Asgari
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package no.asgari.civilization.server.model;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonRootName;
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import com.fasterxml.jackson.datatype.jsr310.deser.LocalDateTimeDeserializer;
+import com.fasterxml.jackson.datatype.jsr310.ser.LocalDateTimeSerializer;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.ToString;
+import org.hibernate.validator.constraints.NotEmpty;
+import org.mongojack.Id;
+import org.mongojack.ObjectId;
+
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+
+/**
+ * One entry in the append-only event stream of a game. Events are never changed after they are written.
+ * Every game has its own sequence, starting at 1 and increasing by one for each event,
+ * so readers can ask for everything after the last sequence they have seen.
+ */
+@JsonRootName("gameEvent")
+@NoArgsConstructor
+@ToString(of = {"pbfId", "sequence", "type"})
+@Data
+@JsonIgnoreProperties(ignoreUnknown = true)
+public class GameEvent {
+    public static final String COL_NAME = "gameevent";
+    public static final String PBFID = "pbfId";
+    public static final String SEQUENCE = "sequence";
+    public static final String GAMELOG_ID = "gameLogId";
+
+    @Id
+    @ObjectId
+    private String id;
+    @NotEmpty
+    private String pbfId;
+    private long sequence;
+    private GameLog.LogType type;
+    private String username;
+    private String publicLog;
+    private String privateLog;
+    /**
+     * The item involved, if any, as it was when the event happened
+     */
+    private Draw draw;
+    /**
+     * The log written together with this event
+     */
+    private String gameLogId;
+    /**
+     * What the event did to the game. Null for events that only inform, like chat and votes
+     */
+    private Move move;
+    @JsonSerialize(using = LocalDateTimeSerializer.class)
+    @JsonDeserialize(using = LocalDateTimeDeserializer.class)
+    private LocalDateTime created;
+
+    public static GameEvent of(GameLog gameLog, GameLog.LogType type, Move move) {
+        GameEvent event = of(gameLog, type);
+        event.setMove(move);
+        return event;
+    }
+
+    public static GameEvent of(GameLog gameLog, GameLog.LogType type) {
+        GameEvent event = new GameEvent();
+        event.setPbfId(gameLog.getPbfId());
+        event.setType(type);
+        event.setUsername(gameLog.getUsername());
+        event.setPublicLog(gameLog.getPublicLog());
+        event.setPrivateLog(gameLog.getPrivateLog());
+        event.setDraw(gameLog.getDraw());
+        event.setGameLogId(gameLog.getId());
+        event.setCreated(gameLog.getCreated());
+        return event;
+    }
+
+    @JsonIgnore
+    public long getCreatedInMillis() {
+        return created.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+}
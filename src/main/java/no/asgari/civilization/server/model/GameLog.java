@@ -16,6 +16,7 @@
 package no.asgari.civilization.server.model;
 
 import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonProperty;
 import com.fasterxml.jackson.annotation.JsonRootName;
 import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
 import com.fasterxml.jackson.databind.annotation.JsonSerialize;
@@ -45,6 +46,11 @@ import java.time.ZoneId;
  * <14.04.2014 - 14:25 - cash1981 drew Infantry
  * <14.04.2014 - 14:25 - cash1981 drew Mounted
  * <14.04.2014 - 14:25 - cash1981 drew Artillery
+ * <p>
+ * Every log is also appended to the event stream of the game as a {@link GameEvent}, which is what replay and
+ * incremental reads use. The logs stay the view the public and private logs are read from, since they change
+ * after they are written and events don't: the undo of a draw is voted on in its log, and changing a user renames
+ * the logs. Games from before the event stream, and archived games, also only have their logs
  */
 @JsonRootName("gameLog")
 @NoArgsConstructor
@@ -52,6 +58,8 @@ import java.time.ZoneId;
 @Data
 public class GameLog {
     public static final String COL_NAME = "gamelog";
+    public static final String PBFID = "pbfId";
+    public static final String UNDO_STATE = "undoState";
     private static final String DELIM = " - ";
     @Id
     @ObjectId
@@ -73,21 +81,31 @@ public class GameLog {
      */
     private Draw draw;
 
-    @JsonIgnore
-    public long getCreatedInMillis() {
-        return created.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    /**
+     * Follows the undo of the draw, and is stored so that undos can be looked up on pbfId and undoState.
+     * Null if no undo has been requested
+     */
+    @JsonProperty(UNDO_STATE)
+    public UndoState getUndoState() {
+        if (draw == null || draw.getUndo() == null) {
+            return null;
+        }
+        return draw.getUndo().isDone() ? UndoState.FINISHED : UndoState.ACTIVE;
+    }
+
+    @JsonProperty(UNDO_STATE)
+    private void setUndoState(UndoState undoState) {
+        //Always derived from the undo of the draw
     }
 
     @JsonIgnore
-    public String uniqueItemNumber(int itemNumber) {
-        int uniqueNrThreeLetters = Integer.valueOf(("" + Math.abs(username.hashCode())).substring(0, 3));
-        return ". Item number #" + (uniqueNrThreeLetters + itemNumber);
+    public long getCreatedInMillis() {
+        return created.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
     }
 
     @JsonIgnore
     public void createAndSetLog(LogType logType, int itemNumber) {
         final String ITEM_NUMBER = ". Item number #" + itemNumber;
-        final String UNIQUE_ITEM_NUMBER = uniqueItemNumber(itemNumber);
         switch (logType) {
             case ITEM:
                 privateLog = username + " drew " + DELIM + draw.getItem().revealAll() + ITEM_NUMBER;
@@ -102,16 +120,16 @@ public class GameLog {
                 publicLog = username + " has received " + DELIM + draw.getItem().revealPublic();
                 break;
             case SOCIAL_POLICY:
-                privateLog = username + " has chosen " + DELIM + draw.getItem().revealAll() + UNIQUE_ITEM_NUMBER;
-                publicLog = username + " has chosen a hidden social policy" + UNIQUE_ITEM_NUMBER;
+                privateLog = username + " has chosen " + DELIM + draw.getItem().revealAll() + ITEM_NUMBER;
+                publicLog = username + " has chosen a hidden social policy" + ITEM_NUMBER;
                 break;
             case TECH:
-                privateLog = username + " has researched " + DELIM + draw.getItem().revealAll() + UNIQUE_ITEM_NUMBER;
-                publicLog = username + " has researched a hidden technology" + UNIQUE_ITEM_NUMBER;
+                privateLog = username + " has researched " + DELIM + draw.getItem().revealAll() + ITEM_NUMBER;
+                publicLog = username + " has researched a hidden technology" + ITEM_NUMBER;
                 break;
             case REMOVED_TECH:
-                privateLog = username + " has removed " + DELIM + draw.getItem().revealAll() + UNIQUE_ITEM_NUMBER;
-                publicLog = username + " has removed a hidden technology" + UNIQUE_ITEM_NUMBER;
+                privateLog = username + " has removed " + DELIM + draw.getItem().revealAll() + ITEM_NUMBER;
+                publicLog = username + " has removed a hidden technology" + ITEM_NUMBER;
                 break;
             case DISCARD:
                 privateLog = username + " has discarded " + DELIM + draw.getItem().revealAll() + ITEM_NUMBER;
@@ -119,8 +137,8 @@ public class GameLog {
                 break;
             case REVEAL:
                 if (draw.getItem() instanceof Tech) {
-                    privateLog = username + " has revealed " + DELIM + draw.getItem().revealAll() + UNIQUE_ITEM_NUMBER;
-                    publicLog = username + " has revealed " + DELIM + draw.getItem().revealAll() + UNIQUE_ITEM_NUMBER;
+                    privateLog = username + " has revealed " + DELIM + draw.getItem().revealAll() + ITEM_NUMBER;
+                    publicLog = username + " has revealed " + DELIM + draw.getItem().revealAll() + ITEM_NUMBER;
                 } else {
                     privateLog = username + " has revealed " + DELIM + draw.getItem().revealAll() + ITEM_NUMBER;
                     publicLog = username + " has revealed " + DELIM + draw.getItem().revealAll() + ITEM_NUMBER;
@@ -167,8 +185,16 @@ public class GameLog {
         return draw != null && draw.getUndo() != null && !draw.getUndo().isDone();
     }
 
+    public enum UndoState {
+        ACTIVE, FINISHED
+    }
+
+    /**
+     * INFO is for messages from the system, and MESSAGE for other free text logs.
+     * END_TURN is only used for events, it has no log
+     */
     public enum LogType {
         TRADE_BETWEEN_PLAYERS, BATTLE, ITEM, TECH, REMOVED_TECH, SHUFFLE, DISCARD, WITHDRAW, JOIN, REVEAL,
-        UNDO, SOCIAL_POLICY, REMOVED_SOCIAL_POLICY, VOTE, SETUP, SOT, TRADE, CM, MOVEMENT, RESEARCH;
+        UNDO, SOCIAL_POLICY, REMOVED_SOCIAL_POLICY, VOTE, SETUP, SOT, TRADE, CM, MOVEMENT, RESEARCH, INFO, MESSAGE, END_TURN;
     }
 }
@@ -0,0 +1,63 @@
+/*
+ * Copyright (c) 2015 Shervin Asgari
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package no.asgari.civilization.server.model;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonRootName;
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import com.fasterxml.jackson.datatype.jsr310.deser.LocalDateTimeDeserializer;
+import com.fasterxml.jackson.datatype.jsr310.ser.LocalDateTimeSerializer;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.ToString;
+import org.hibernate.validator.constraints.NotEmpty;
+import org.mongojack.Id;
+import org.mongojack.ObjectId;
+
+import java.time.LocalDateTime;
+
+/**
+ * The whole game as it was after the event with the given sequence.
+ * The state at a later sequence is this snapshot with the moves of the events after it applied.
+ */
+@JsonRootName("gameSnapshot")
+@NoArgsConstructor
+@ToString(of = {"pbfId", "sequence"})
+@Data
+@JsonIgnoreProperties(ignoreUnknown = true)
+public class GameSnapshot {
+    public static final String COL_NAME = "gamesnapshot";
+    public static final String PBFID = "pbfId";
+    public static final String SEQUENCE = "sequence";
+
+    @Id
+    @ObjectId
+    private String id;
+    @NotEmpty
+    private String pbfId;
+    private long sequence;
+    private PBF pbf;
+    @JsonSerialize(using = LocalDateTimeSerializer.class)
+    @JsonDeserialize(using = LocalDateTimeDeserializer.class)
+    private LocalDateTime created = LocalDateTime.now();
+
+    public GameSnapshot(PBF pbf, long sequence) {
+        this.pbfId = pbf.getId();
+        this.pbf = pbf;
+        this.sequence = sequence;
+    }
+}
@@ -0,0 +1,155 @@
+/*
+ * Copyright (c) 2015 Shervin Asgari
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package no.asgari.civilization.server.model;
+
+import com.google.common.collect.ArrayListMultimap;
+import com.google.common.collect.ListMultimap;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Optional;
+import java.util.RandomAccess;
+import java.util.function.Predicate;
+
+/**
+ * A list of items that also finds them by item number without going through the list.
+ * Jackson reads and writes it as a plain list, and the index is built again when it is read.
+ * The index is kept up to date by every change to the list, so a miss is a real miss.
+ * Items given new numbers while in the list are only found by them after {@link #reindex()}
+ */
+public class ItemList extends AbstractList<Item> implements RandomAccess {
+    private final List<Item> items = new ArrayList<>();
+    private final ListMultimap<Integer, Item> byItemNumber = ArrayListMultimap.create();
+
+    public ItemList() {
+    }
+
+    public ItemList(Collection<? extends Item> items) {
+        addAll(items);
+    }
+
+    /**
+     * The same list if it already is an ItemList, so that code sharing the list keeps sharing it
+     */
+    public static ItemList of(List<Item> items) {
+        if (items instanceof ItemList) {
+            return (ItemList) items;
+        }
+        return items == null ? new ItemList() : new ItemList(items);
+    }
+
+    @Override
+    public Item get(int index) {
+        return items.get(index);
+    }
+
+    @Override
+    public int size() {
+        return items.size();
+    }
+
+    @Override
+    public Item set(int index, Item item) {
+        Item previous = items.set(index, item);
+        unindex(previous);
+        byItemNumber.put(item.getItemNumber(), item);
+        return previous;
+    }
+
+    @Override
+    public void add(int index, Item item) {
+        items.add(index, item);
+        byItemNumber.put(item.getItemNumber(), item);
+    }
+
+    @Override
+    public Item remove(int index) {
+        Item removed = items.remove(index);
+        unindex(removed);
+        return removed;
+    }
+
+    @Override
+    public void clear() {
+        items.clear();
+        byItemNumber.clear();
+    }
+
+    /**
+     * The item with this number that also matches, the one added first if there are more
+     */
+    public Optional<Item> findByItemNumber(int itemNumber, Predicate<Item> matching) {
+        return byItemNumber.get(itemNumber).stream()
+                .filter(it -> it.getItemNumber() == itemNumber)
+                .filter(matching)
+                .findFirst();
+    }
+
+    public Optional<Item> findByItemNumber(int itemNumber) {
+        return findByItemNumber(itemNumber, it -> true);
+    }
+
+    /**
+     * Removes this very item, and not another item that equals it
+     */
+    public boolean removeItem(Item item) {
+        for (int i = 0; i < items.size(); i++) {
+            if (items.get(i) == item) {
+                remove(i);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Removes the item that the copy, like an item read from a log, was made of.
+     * It is found by its number, and by equals for items from before they were numbered
+     *
+     * @return the item that was removed
+     */
+    public Optional<Item> removeCopyOf(Item copy) {
+        Optional<Item> item = findByItemNumber(copy.getItemNumber(), it -> copy.getItemNumber() != 0
+                ? it.getSheetName() == copy.getSheetName()
+                : copy.equals(it));
+        item.ifPresent(this::removeItem);
+        return item;
+    }
+
+    /**
+     * Equal items may share a number, so the index is kept by identity
+     */
+    private void unindex(Item item) {
+        Iterator<Item> indexed = byItemNumber.get(item.getItemNumber()).iterator();
+        while (indexed.hasNext()) {
+            if (indexed.next() == item) {
+                indexed.remove();
+                return;
+            }
+        }
+    }
+
+    /**
+     * Builds the index again, for after the items in the list were given new numbers
+     */
+    public void reindex() {
+        byItemNumber.clear();
+        items.forEach(it -> byItemNumber.put(it.getItemNumber(), it));
+    }
+}
@@ -0,0 +1,107 @@
+/*
+ * Copyright (c) 2015 Shervin Asgari
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package no.asgari.civilization.server.model;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonRootName;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import no.asgari.civilization.server.SheetName;
+
+/**
+ * What an event did to the state of the game. Moves an item from one place to another,
+ * or the turn from one player to the next.
+ * <p>
+ * A null from means the item was not taken from anywhere, like a tech that is chosen.
+ * A null to means the item is gone, like a tech that is removed.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@JsonRootName(value = "move")
+public class Move {
+    public enum Location {
+        DECK, HAND, TECHS, DISCARD, TURN
+    }
+
+    private Location from;
+    private Location to;
+    private String fromPlayerId;
+    private String toPlayerId;
+    /**
+     * Only set when every discarded item of the sheet is moved at once, as in a reshuffle
+     */
+    private SheetName sheetName;
+    /**
+     * Set when the deck was shuffled after the move, so the same order comes out when the move is replayed
+     */
+    private Long seed;
+
+    public static Move draw(String playerId) {
+        return new Move(Location.DECK, Location.HAND, null, playerId, null, null);
+    }
+
+    public static Move discard(String playerId) {
+        return new Move(Location.HAND, Location.DISCARD, playerId, null, null, null);
+    }
+
+    public static Move trade(String fromPlayerId, String toPlayerId) {
+        return new Move(Location.HAND, Location.HAND, fromPlayerId, toPlayerId, null, null);
+    }
+
+    public static Move chooseTech(String playerId) {
+        return new Move(null, Location.TECHS, null, playerId, null, null);
+    }
+
+    public static Move removeTech(String playerId) {
+        return new Move(Location.TECHS, null, playerId, null, null, null);
+    }
+
+    public static Move endTurn(String playerId, String nextPlayerId) {
+        return new Move(Location.TURN, Location.TURN, playerId, nextPlayerId, null, null);
+    }
+
+    public static Move reshuffle(SheetName sheetName, long seed) {
+        return new Move(Location.DISCARD, Location.DECK, null, null, sheetName, seed);
+    }
+
+    /**
+     * An item put back in the deck by an undo, from a hand or the discard pile
+     */
+    public static Move putBackInDeck(Location from, String playerId, long seed) {
+        return new Move(from, Location.DECK, from == Location.HAND ? playerId : null, null, null, seed);
+    }
+
+    /**
+     * An item given back to a player by an undo, from the deck or the discard pile
+     */
+    public static Move giveBack(Location from, String playerId) {
+        return new Move(from, Location.HAND, null, playerId, null, null);
+    }
+
+    /**
+     * The move that takes back this one. The seed of a shuffle that follows it is set by the caller
+     */
+    public Move inverse() {
+        return new Move(to, from, toPlayerId, fromPlayerId, sheetName, null);
+    }
+
+    @JsonIgnore
+    public boolean isUndoable() {
+        return sheetName == null && (from != null || to != null);
+    }
+}
@@ -25,6 +25,9 @@ import com.fasterxml.jackson.datatype.jsr310.deser.LocalDateTimeDeserializer;
 import com.fasterxml.jackson.datatype.jsr310.ser.LocalDateTimeSerializer;
 import com.google.common.collect.Lists;
 import lombok.Data;
+import no.asgari.civilization.server.SheetName;
+import no.asgari.civilization.server.jackson.PublicTurnsDeserializer;
+import no.asgari.civilization.server.jackson.TurnKeySerializer;
 import org.hibernate.validator.constraints.NotBlank;
 import org.mongojack.Id;
 import org.mongojack.ObjectId;
@@ -32,10 +35,15 @@ import org.mongojack.ObjectId;
 import javax.xml.bind.annotation.XmlRootElement;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Comparator;
 import java.util.List;
-import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 /**
  * PBF stands for Play By Forum
@@ -69,23 +77,88 @@ public class PBF {
     private int numOfPlayers;
     private boolean active = true;
     private String winner; //username
-    private List<Item> items = Lists.newArrayList();
+    private ItemList items = new ItemList();
     private List<Playerhand> players = Lists.newArrayList();
     private List<Tech> techs = Lists.newArrayList();
     private List<SocialPolicy> socialPolicies = new ArrayList<>(8);
 
-    //@JsonSerialize(keyUsing=TurnKeySerializer.class)
-    //@JsonDeserialize(keyUsing = TurnKeyDeserializer.class)
-    private Map<String, PlayerTurn> publicTurns = new HashMap<>();
+    /**
+     * Only used by older games until their turns are moved to the playerturn collection
+     */
+    @JsonSerialize(keyUsing = TurnKeySerializer.class)
+    @JsonDeserialize(using = PublicTurnsDeserializer.class)
+    private NavigableMap<TurnKey, PlayerTurn> publicTurns = new TreeMap<>();
 
     //Will use these to reshuffle items which are discarded and can be drawn again
-    private List<Item> discardedItems = new ArrayList<>();
+    private ItemList discardedItems = new ItemList();
 
     //If a player leaves, his items and stuff will be put here
     private List<Playerhand> withdrawnPlayers = new ArrayList<>();
 
     private boolean tournament = false;
 
+    /**
+     * The discarded items and the items the players have revealed, as shown on the game page.
+     * Kept up to date item by item by the actions that change them. Null when they are out of date
+     */
+    private List<Item> revealedItems;
+
+    /**
+     * Changes every time revealedItems may have changed
+     */
+    private String revealedItemsTag;
+
+    /**
+     * The last item number given out in this game. Item numbers are unique within their game only
+     */
+    private int lastItemNumber;
+
+    /**
+     * Changes every time the techs the players have revealed may have changed
+     */
+    private String techsTag;
+
+    /**
+     * Changes on every write of the game. A partial write only goes through when the game still has
+     * the revision it was loaded with, so it can't undo a write it didn't see
+     */
+    private String revision;
+
+    /**
+     * Set when the game was loaded from the archive, where it can no longer be changed
+     */
+    @JsonIgnore
+    private boolean archived;
+
+    public void setItems(List<Item> items) {
+        this.items = ItemList.of(items);
+    }
+
+    public void setDiscardedItems(List<Item> discardedItems) {
+        this.discardedItems = ItemList.of(discardedItems);
+    }
+
+    public int nextItemNumber() {
+        return ++lastItemNumber;
+    }
+
+    /**
+     * Gives the items, techs, social policies and starting techs of a new game their numbers
+     */
+    public void numberItems() {
+        items.forEach(it -> it.setItemNumber(nextItemNumber()));
+        techs.forEach(it -> it.setItemNumber(nextItemNumber()));
+        socialPolicies.forEach(it -> it.setItemNumber(nextItemNumber()));
+        items.stream()
+                .filter(it -> it instanceof Civ)
+                .map(it -> ((Civ) it).getStartingTech())
+                .filter(Objects::nonNull)
+                .forEach(it -> it.setItemNumber(nextItemNumber()));
+        items.reindex();
+        discardedItems.reindex();
+        players.forEach(playerhand -> playerhand.getItems().reindex());
+    }
+
     /**
      * Returns the username of the player who is start of turn
      */
@@ -102,4 +175,124 @@ public class PBF {
         return "";
     }
 
+    /**
+     * The discarded items sorted by sheet, followed by the revealed items of the players sorted by sheet
+     */
+    public List<Item> collectRevealedItems() {
+        Stream<Item> discarded = discardedItems.stream()
+                .sorted(Comparator.comparing(Item::getSheetName));
+        Stream<Item> revealed = players.stream()
+                .flatMap(p -> p.getItems().stream())
+                .filter(it -> !it.isHidden())
+                .sorted(Comparator.comparing(Item::getSheetName));
+        return Stream.concat(discarded, revealed).collect(Collectors.toList());
+    }
+
+    /**
+     * Reveals the item in the hand of its owner, and adds it to the revealed items
+     */
+    public void reveal(Item item) {
+        item.setHidden(false);
+        if (hasRevealedItems()) {
+            insertBySheet(discardedItems.size(), revealedItems.size(), item);
+        }
+        revealedItemsTag = UUID.randomUUID().toString();
+    }
+
+    /**
+     * Puts the item on the discard pile. If it was revealed in a hand it moves to the discarded part of the revealed items
+     */
+    public void discard(Item item) {
+        if (hasRevealedItems()) {
+            int discarded = discardedItems.size();
+            int revealedAt = indexOfRevealed(discarded, item);
+            if (revealedAt >= 0) {
+                revealedItems.remove(revealedAt);
+            }
+            insertBySheet(0, discarded, item);
+        }
+        discardedItems.add(item);
+        revealedItemsTag = UUID.randomUUID().toString();
+    }
+
+    /**
+     * Takes the discarded items of the sheet off the discard pile, and out of the revealed items
+     */
+    public List<Item> takeDiscarded(SheetName sheetName) {
+        List<Item> taken = discardedItems.stream()
+                .filter(it -> it.getSheetName() == sheetName)
+                .collect(Collectors.toList());
+        if (taken.isEmpty()) {
+            return taken;
+        }
+        if (hasRevealedItems()) {
+            revealedItems.subList(0, discardedItems.size()).removeIf(it -> it.getSheetName() == sheetName);
+        }
+        discardedItems.removeIf(it -> it.getSheetName() == sheetName);
+        revealedItemsTag = UUID.randomUUID().toString();
+        return taken;
+    }
+
+    /**
+     * A revealed item in a hand changed, like who owns it or whether it is in battle
+     */
+    public void revealedItemChanged(Item item) {
+        if (hasRevealedItems()) {
+            int revealedAt = indexOfRevealed(discardedItems.size(), item);
+            if (revealedAt >= 0) {
+                revealedItems.set(revealedAt, item);
+            }
+        }
+        revealedItemsTag = UUID.randomUUID().toString();
+    }
+
+    /**
+     * For changes too big to follow item by item, like a player leaving the game. Collects the revealed items again
+     */
+    public void revealedItemsChanged() {
+        revealedItems = collectRevealedItems();
+        revealedItemsTag = UUID.randomUUID().toString();
+    }
+
+    /**
+     * Whether revealedItems can be changed item by item. They start with the discarded items, so they are at least as many
+     */
+    private boolean hasRevealedItems() {
+        if (revealedItems != null && revealedItems.size() < discardedItems.size()) {
+            revealedItems = null;
+        }
+        return revealedItems != null;
+    }
+
+    /**
+     * Between from and to the revealed items are sorted by sheet. The item goes after the others of its sheet
+     */
+    private void insertBySheet(int from, int to, Item item) {
+        int at = from;
+        while (at < to && revealedItems.get(at).getSheetName().compareTo(item.getSheetName()) <= 0) {
+            at++;
+        }
+        revealedItems.add(at, item);
+    }
+
+    /**
+     * The revealed items are copies that may no longer equal the item, so it is found by its number.
+     * Items from before they were numbered are found by equals
+     */
+    private int indexOfRevealed(int from, Item item) {
+        for (int i = from; i < revealedItems.size(); i++) {
+            Item revealed = revealedItems.get(i);
+            boolean same = item.getItemNumber() != 0
+                    ? revealed.getItemNumber() == item.getItemNumber() && revealed.getSheetName() == item.getSheetName()
+                    : revealed.equals(item);
+            if (same) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    public void techsChanged() {
+        techsTag = UUID.randomUUID().toString();
+    }
 }
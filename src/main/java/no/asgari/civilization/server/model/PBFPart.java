@@ -0,0 +1,57 @@
+/*
+ * Copyright (c) 2015 Shervin Asgari
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package no.asgari.civilization.server.model;
+
+import com.google.common.collect.ImmutableList;
+
+import java.util.List;
+
+/**
+ * Parts of a PBF that can be loaded and written on their own, so an action only reads and writes what it touches.
+ * A PBF loaded with only some parts has default values in the rest, and must not be written back whole
+ */
+public enum PBFPart {
+    NAME("name"),
+    STATUS("active", "winner", "numOfPlayers"),
+    ITEMS("items"),
+    DISCARDED_ITEMS("discardedItems"),
+    TECHS("techs"),
+    SOCIAL_POLICIES("socialPolicies"),
+    PLAYERS("players"),
+    REVEALED_ITEMS("revealedItems", "revealedItemsTag"),
+    TECHS_TAG("techsTag"),
+    /**
+     * Who the players are, their colors and emails and whose turn it is, without their hands. Can only be read
+     */
+    PLAYER_NAMES("players.playerId", "players.username", "players.color", "players.email", "players.yourTurn");
+
+    private final List<String> fields;
+
+    PBFPart(String... fields) {
+        this.fields = ImmutableList.copyOf(fields);
+    }
+
+    public List<String> getFields() {
+        return fields;
+    }
+
+    /**
+     * Parts made of whole fields of the PBF can be written back
+     */
+    public boolean isWritable() {
+        return fields.stream().noneMatch(field -> field.contains("."));
+    }
+}
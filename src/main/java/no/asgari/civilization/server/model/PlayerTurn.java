@@ -6,8 +6,11 @@ import lombok.Getter;
 import lombok.NoArgsConstructor;
 import lombok.Setter;
 import lombok.ToString;
+import org.mongojack.Id;
+import org.mongojack.ObjectId;
 
-import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.Objects;
 import java.util.Set;
 
@@ -17,14 +20,28 @@ import java.util.Set;
 @JsonIgnoreProperties(ignoreUnknown = true)
 @NoArgsConstructor
 public class PlayerTurn implements Comparable<PlayerTurn> {
+    public static final String COL_NAME = "playerturn";
+    public static final String PBFID = "pbfId";
+    public static final String USERNAME = "username";
+    public static final String TURN_NUMBER = "turnNumber";
+    /**
+     * Only the newest orders of each phase are kept in its history
+     */
+    public static final int MAX_HISTORY = 10;
+
+    @Id
+    @ObjectId
+    private String id;
+    private String pbfId;
     private int turnNumber = 1;
     private String username = "";
     private boolean disabled;
-    private Set<String> sotHistory = new HashSet<>();
-    private Set<String> tradeHistory = new HashSet<>();
-    private Set<String> cmHistory = new HashSet<>();
-    private Set<String> movementHistory = new HashSet<>();
-    private Set<String> researchHistory = new HashSet<>();
+    //Oldest first
+    private LinkedHashSet<String> sotHistory = new LinkedHashSet<>();
+    private LinkedHashSet<String> tradeHistory = new LinkedHashSet<>();
+    private LinkedHashSet<String> cmHistory = new LinkedHashSet<>();
+    private LinkedHashSet<String> movementHistory = new LinkedHashSet<>();
+    private LinkedHashSet<String> researchHistory = new LinkedHashSet<>();
 
     private String sot = "";
     private String trade = "";
@@ -57,6 +74,19 @@ public class PlayerTurn implements Comparable<PlayerTurn> {
         return Objects.hash(turnNumber, username);
     }
 
+    /**
+     * Adds the order last in the history, and removes the oldest orders above MAX_HISTORY
+     */
+    public static void addToHistory(Set<String> history, String order) {
+        history.remove(order);
+        history.add(order);
+        Iterator<String> oldest = history.iterator();
+        while (history.size() > MAX_HISTORY) {
+            oldest.next();
+            oldest.remove();
+        }
+    }
+
     /**
      * If turn locked, then mark as end and increase turnNumber;
      */
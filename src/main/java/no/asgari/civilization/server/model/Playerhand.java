@@ -72,13 +72,14 @@ public class Playerhand implements Comparable<Playerhand> {
     private int playernumber;
     private boolean gameCreator = false;
 
-    private List<Item> items = new ArrayList<>();
+    private ItemList items = new ItemList();
     private Set<Tech> techsChosen = new TreeSet<>();
     private List<Unit> barbarians = new ArrayList<>(3);
     private List<Unit> battlehand = new ArrayList<>();
     private List<SocialPolicy> socialPolicies = new ArrayList<>();
     /**
-     * Private turns, only made public when they are locked
+     * Private turns, only made public when they are locked.
+     * Stored in the playerturn collection and filled in when the game is read
      */
     private Set<PlayerTurn> playerTurns = new TreeSet<>();
 
@@ -86,6 +87,10 @@ public class Playerhand implements Comparable<Playerhand> {
     @JsonDeserialize(using = LocalDateTimeDeserializer.class)
     private LocalDateTime emailSent;
 
+    public void setItems(List<Item> items) {
+        this.items = ItemList.of(items);
+    }
+
     @JsonIgnore
     public static String green() {
         return "Green";
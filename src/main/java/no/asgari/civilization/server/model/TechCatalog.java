@@ -0,0 +1,84 @@
+/*
+ * Copyright (c) 2015 Shervin Asgari
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package no.asgari.civilization.server.model;
+
+import no.asgari.civilization.server.SheetName;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The techs of a game, each at its position in the deck, with a bitset of positions for every level.
+ * A tech that comes again under the same name keeps its first position.
+ * A set of techs is a bitset over the same positions, so what is left of the deck is a bitwise difference
+ */
+public class TechCatalog {
+    private final List<Tech> techs;
+    private final Map<String, Integer> positions = new HashMap<>();
+    private final EnumMap<SheetName, BitSet> byLevel = new EnumMap<>(SheetName.class);
+
+    public TechCatalog(List<Tech> techs) {
+        this.techs = techs;
+        for (int i = 0; i < techs.size(); i++) {
+            Tech tech = techs.get(i);
+            if (positions.putIfAbsent(tech.getName(), i) == null) {
+                byLevel.computeIfAbsent(tech.getSheetName(), level -> new BitSet(techs.size())).set(i);
+            }
+        }
+    }
+
+    /**
+     * The positions of these techs. Techs that are not in the deck are left out
+     */
+    public BitSet bitsOf(Collection<Tech> chosen) {
+        BitSet bits = new BitSet(techs.size());
+        chosen.forEach(tech -> {
+            Integer position = positions.get(tech.getName());
+            if (position != null) {
+                bits.set(position);
+            }
+        });
+        return bits;
+    }
+
+    /**
+     * The techs at these positions, by level and then in the order of the deck
+     */
+    public List<Tech> techs(BitSet bits) {
+        List<Tech> found = new ArrayList<>(bits.cardinality());
+        byLevel.values().forEach(level -> {
+            BitSet atLevel = (BitSet) level.clone();
+            atLevel.and(bits);
+            atLevel.stream().forEach(i -> found.add(techs.get(i)));
+        });
+        return found;
+    }
+
+    /**
+     * The techs not in chosen, by level and then in the order of the deck
+     */
+    public List<Tech> remaining(BitSet chosen) {
+        BitSet left = new BitSet(techs.size());
+        left.set(0, techs.size());
+        left.andNot(chosen);
+        return techs(left);
+    }
+}
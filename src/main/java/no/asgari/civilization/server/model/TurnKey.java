@@ -1,17 +1,55 @@
 package no.asgari.civilization.server.model;
 
+import com.fasterxml.jackson.annotation.JsonCreator;
 import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.google.common.base.Preconditions;
 import lombok.Data;
 
+/**
+ * Orders turns by turnNumber, then username.
+ * Stored as the map key "turnNumber:username"
+ */
 @JsonIgnoreProperties(ignoreUnknown = true)
 @Data
 public class TurnKey implements Comparable<TurnKey> {
+    private static final char SEPARATOR = ':';
+
     private final int turnNumber;
     private final String username;
 
-    public TurnKey(int turnNumber, String username) {
+    @JsonCreator
+    public TurnKey(@JsonProperty("turnNumber") int turnNumber, @JsonProperty("username") String username) {
         this.turnNumber = turnNumber;
-        this.username = username;
+        this.username = username == null ? "" : username;
+    }
+
+    public static TurnKey of(PlayerTurn turn) {
+        return new TurnKey(turn.getTurnNumber(), turn.getUsername());
+    }
+
+    /**
+     * Sorts before every key of the turn, so turn n of all players is the range [first(n), first(n + 1))
+     */
+    public static TurnKey first(int turnNumber) {
+        return new TurnKey(turnNumber, "");
+    }
+
+    public String asKey() {
+        return turnNumber + String.valueOf(SEPARATOR) + username;
+    }
+
+    /**
+     * Parses the result of asKey. Keys without the separator are from before it was used, and are rejected,
+     * since the turnNumber and a username starting with a digit can't be told apart in them
+     */
+    public static TurnKey parse(String key) {
+        Preconditions.checkNotNull(key);
+        int separator = key.indexOf(SEPARATOR);
+        Preconditions.checkArgument(separator > 0, "Turn key must be the turn number and username separated by " + SEPARATOR + ": " + key);
+        String turnNumber = key.substring(0, separator);
+        Preconditions.checkArgument(turnNumber.chars().allMatch(Character::isDigit), "Turn key must start with the turn number: " + key);
+        return new TurnKey(Integer.parseInt(turnNumber), key.substring(separator + 1));
     }
 
     @Override
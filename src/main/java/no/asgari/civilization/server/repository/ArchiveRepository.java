@@ -0,0 +1,58 @@
+/*
+ * Copyright (c) 2015 Shervin Asgari
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package no.asgari.civilization.server.repository;
+
+import no.asgari.civilization.server.model.Chat;
+import no.asgari.civilization.server.model.GameLog;
+import no.asgari.civilization.server.model.PBF;
+import no.asgari.civilization.server.model.PlayerTurn;
+
+import java.util.List;
+
+/**
+ * Finished games with their logs, chat and turns, moved out of the collections used by the running games
+ */
+public interface ArchiveRepository {
+
+    /**
+     * Stores the game with its logs, chat and turns. Archiving the same documents again replaces them
+     */
+    void archive(PBF pbf, List<GameLog> gameLogs, List<Chat> chats, List<PlayerTurn> turns);
+
+    /**
+     * @return the archived game, or null if it isn't archived
+     */
+    PBF findById(String pbfId);
+
+    List<PBF> findAll();
+
+    /**
+     * The archived games that have a winner, with only what the highscores need: the winner, whether the game is active,
+     * the number of players and the username and civilization of each player
+     */
+    List<PBF> findWinners();
+
+    long count();
+
+    List<GameLog> findGameLogs(String pbfId);
+
+    List<Chat> findChats(String pbfId);
+
+    List<PlayerTurn> findTurns(String pbfId);
+
+    default void createIndexes() {
+    }
+}
@@ -0,0 +1,73 @@
+/*
+ * Copyright (c) 2015 Shervin Asgari
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package no.asgari.civilization.server.repository;
+
+import no.asgari.civilization.server.model.Chat;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Chats are returned newest first
+ */
+public interface ChatRepository {
+
+    List<Chat> findByPbfId(String pbfId);
+
+    /**
+     * A page of the chat of a game, newest first
+     *
+     * @param limit  - at most this many, 0 for all
+     * @param before - only chat written before the chat with this id, null to start with the newest
+     */
+    List<Chat> findByPbfId(String pbfId, int limit, String before);
+
+    /**
+     * The newest chat that doesn't belong to any game and hasn't expired, newest first
+     */
+    List<Chat> findPublic(int limit);
+
+    List<Chat> findAll();
+
+    long count();
+
+    /**
+     * @return the id of the inserted chat
+     */
+    String insert(Chat chat);
+
+    boolean delete(String chatId);
+
+    /**
+     * @return the number of chats deleted
+     */
+    int deleteByPbfIds(Collection<String> pbfIds);
+
+    /**
+     * @return the number of chats deleted
+     */
+    int deleteByIds(Collection<String> chatIds);
+
+    /**
+     * Deletes the chat that doesn't belong to any game
+     *
+     * @return the number of chats deleted
+     */
+    int deletePublic();
+
+    default void createIndexes() {
+    }
+}
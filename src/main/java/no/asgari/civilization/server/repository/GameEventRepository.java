@@ -0,0 +1,60 @@
+/*
+ * Copyright (c) 2015 Shervin Asgari
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package no.asgari.civilization.server.repository;
+
+import no.asgari.civilization.server.model.GameEvent;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Append-only event stream per game
+ */
+public interface GameEventRepository {
+
+    /**
+     * Gives the event the next sequence number of its game, and stores it
+     *
+     * @return the stored event
+     */
+    GameEvent append(GameEvent event);
+
+    /**
+     * Events with sequence higher than afterSequence, in sequence order.
+     * An event is only returned once all events before it are readable, so a reader never skips one
+     */
+    List<GameEvent> findByPbfId(String pbfId, long afterSequence, int limit);
+
+    /**
+     * @return the sequence of the last event appended to the game, or 0 if there are none
+     */
+    long lastSequence(String pbfId);
+
+    /**
+     * The event that was written together with the given log
+     */
+    Optional<GameEvent> findByGameLogId(String pbfId, String gameLogId);
+
+    void deleteByPbfId(String pbfId);
+
+    default void deleteByPbfIds(Collection<String> pbfIds) {
+        pbfIds.forEach(this::deleteByPbfId);
+    }
+
+    default void createIndexes() {
+    }
+}
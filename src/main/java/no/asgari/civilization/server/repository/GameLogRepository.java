@@ -0,0 +1,88 @@
+/*
+ * Copyright (c) 2015 Shervin Asgari
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package no.asgari.civilization.server.repository;
+
+import no.asgari.civilization.server.model.GameLog;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Logs are returned in the order they were inserted
+ */
+public interface GameLogRepository {
+
+    GameLog findById(String gameLogId);
+
+    List<GameLog> findByPbfId(String pbfId);
+
+    /**
+     * Same as {@link #findByPbfId(String)}, but may be served by a secondary unless the game was recently written to
+     */
+    List<GameLog> findByPbfIdReadOnly(String pbfId);
+
+    List<GameLog> findByPbfIdAndUsername(String pbfId, String username);
+
+    /**
+     * Logs of the game whose undo is in the given state. Indexed, so it doesn't read the other logs of the game
+     */
+    List<GameLog> findByPbfIdAndUndoState(String pbfId, GameLog.UndoState undoState);
+
+    List<GameLog> findAll();
+
+    long count();
+
+    /**
+     * @return the id of the inserted log
+     */
+    String insert(GameLog gameLog);
+
+    void update(GameLog gameLog);
+
+    /**
+     * Records the vote of the player atomically, without writing the rest of the log
+     *
+     * @return the log after the vote, or null if it has no active undo
+     */
+    GameLog vote(String gameLogId, String playerId, boolean vote);
+
+    /**
+     * Marks the undo as done
+     *
+     * @return true for only the one caller that finished it
+     */
+    boolean finishUndo(String gameLogId);
+
+    /**
+     * Makes a finished undo active again, for when its item couldn't be put back, so that it can be voted on again
+     */
+    void reopenUndo(String gameLogId);
+
+    boolean delete(String gameLogId);
+
+    /**
+     * @return the number of logs deleted
+     */
+    int deleteByPbfIds(Collection<String> pbfIds);
+
+    /**
+     * @return the number of logs deleted
+     */
+    int deleteByIds(Collection<String> gameLogIds);
+
+    default void createIndexes() {
+    }
+}
@@ -0,0 +1,44 @@
+/*
+ * Copyright (c) 2015 Shervin Asgari
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package no.asgari.civilization.server.repository;
+
+import no.asgari.civilization.server.model.GameSnapshot;
+
+import java.util.Collection;
+import java.util.Optional;
+
+/**
+ * Only the newest snapshots of each game are kept
+ */
+public interface GameSnapshotRepository {
+    int SNAPSHOTS_KEPT = 5;
+
+    void save(GameSnapshot snapshot);
+
+    /**
+     * The newest snapshot taken at or before the given sequence
+     */
+    Optional<GameSnapshot> findLatest(String pbfId, long atOrBeforeSequence);
+
+    void deleteByPbfId(String pbfId);
+
+    default void deleteByPbfIds(Collection<String> pbfIds) {
+        pbfIds.forEach(this::deleteByPbfId);
+    }
+
+    default void createIndexes() {
+    }
+}
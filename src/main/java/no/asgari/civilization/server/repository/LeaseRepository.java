@@ -0,0 +1,38 @@
+/*
+ * Copyright (c) 2015 Shervin Asgari
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package no.asgari.civilization.server.repository;
+
+import java.time.Duration;
+
+/**
+ * Leases that let only one server at a time run a job, like the cleanup
+ */
+public interface LeaseRepository {
+
+    /**
+     * Takes the lease for duration, or extends it when the owner already holds it.
+     * Two servers can't both hold the same lease, and a lease that isn't released runs out by itself
+     *
+     * @param owner - the server and job asking for it
+     * @return true if the owner holds the lease
+     */
+    boolean acquire(String name, String owner, Duration duration);
+
+    /**
+     * Gives up the lease, if the owner holds it
+     */
+    void release(String name, String owner);
+}
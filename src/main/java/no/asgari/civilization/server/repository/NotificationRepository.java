@@ -0,0 +1,41 @@
+/*
+ * Copyright (c) 2015 Shervin Asgari
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package no.asgari.civilization.server.repository;
+
+import java.time.Duration;
+
+/**
+ * When emails were last sent, so that players aren't flooded with them
+ */
+public interface NotificationRepository {
+    /**
+     * When an email was sent is only kept this long, so no interval can be longer
+     */
+    Duration MAX_INTERVAL = Duration.ofDays(1);
+
+    /**
+     * Records that the email with this key is sent now, unless it was already sent less than interval ago.
+     * Two servers can't both claim the same email
+     *
+     * @param key - who the email goes to and what it is about
+     * @param interval - at most {@link #MAX_INTERVAL}
+     * @return true if the email should be sent
+     */
+    boolean claim(String key, Duration interval);
+
+    default void createIndexes() {
+    }
+}
@@ -0,0 +1,98 @@
+/*
+ * Copyright (c) 2015 Shervin Asgari
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package no.asgari.civilization.server.repository;
+
+import no.asgari.civilization.server.model.PBF;
+import no.asgari.civilization.server.model.PBFPart;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Storage of the games. Most methods work on whole PBF documents, the part methods only on the given parts
+ */
+public interface PBFRepository {
+
+    /**
+     * @return the game, or null if it doesn't exist
+     */
+    PBF findById(String pbfId);
+
+    /**
+     * Same as {@link #findById(String)}, but the game may be served by a secondary unless it was recently written to
+     */
+    PBF findByIdReadOnly(String pbfId);
+
+    /**
+     * Loads only the given parts of the game
+     *
+     * @return the game, or null if it doesn't exist
+     */
+    PBF findParts(String pbfId, PBFPart... parts);
+
+    /**
+     * Loads the given parts of the game, and of the players only the one with playerId.
+     * The players are empty if the player is not in the game
+     *
+     * @return the game, or null if it doesn't exist
+     */
+    PBF findWithPlayer(String pbfId, String playerId, PBFPart... parts);
+
+    List<PBF> findAll();
+
+    List<PBF> findAllReadOnly();
+
+    /**
+     * Ids of games that were ended without a winner, at most limit of them
+     */
+    List<String> findAbortedIds(int limit);
+
+    /**
+     * Ids of games that have ended with a winner, at most limit of them
+     */
+    List<String> findFinishedIds(int limit);
+
+    /**
+     * @return the id of the inserted game
+     */
+    String insert(PBF pbf);
+
+    /**
+     * @return false if there is no such game to write, for instance because it was archived after it was loaded
+     */
+    boolean update(PBF pbf);
+
+    /**
+     * Writes back only the given parts of the game
+     *
+     * @return false if the game was written since it was loaded, in which case nothing is written
+     */
+    boolean updateParts(PBF pbf, PBFPart... parts);
+
+    /**
+     * Writes back the playerhand of the player and the given parts of the game in one update
+     *
+     * @return false if the game was written since it was loaded, in which case nothing is written
+     */
+    boolean updatePlayer(PBF pbf, String playerId, PBFPart... parts);
+
+    boolean delete(String pbfId);
+
+    /**
+     * @return the number of games deleted
+     */
+    int deleteAll(Collection<String> pbfIds);
+}
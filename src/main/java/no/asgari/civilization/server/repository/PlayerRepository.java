@@ -0,0 +1,54 @@
+/*
+ * Copyright (c) 2015 Shervin Asgari
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package no.asgari.civilization.server.repository;
+
+import no.asgari.civilization.server.model.Player;
+
+import java.util.List;
+import java.util.Map;
+
+public interface PlayerRepository {
+
+    /**
+     * @return the player, or null if it doesn't exist
+     */
+    Player findById(String playerId);
+
+    Player findByUsername(String username);
+
+    Player findByEmail(String email);
+
+    String findUsernameById(String playerId);
+
+    /**
+     * Key is playerId and value is username
+     */
+    Map<String, String> findAllUsernames();
+
+    List<Player> findAll();
+
+    List<Player> findAllReadOnly();
+
+    /**
+     * @return the id of the inserted player. Usernames and emails are unique
+     */
+    String insert(Player player);
+
+    void update(Player player);
+
+    default void createIndexes() {
+    }
+}
@@ -0,0 +1,91 @@
+/*
+ * Copyright (c) 2015 Shervin Asgari
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package no.asgari.civilization.server.repository;
+
+import com.mongodb.DB;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import no.asgari.civilization.server.repository.memory.InMemoryArchiveRepository;
+import no.asgari.civilization.server.repository.memory.InMemoryChatRepository;
+import no.asgari.civilization.server.repository.memory.InMemoryGameEventRepository;
+import no.asgari.civilization.server.repository.memory.InMemoryGameSnapshotRepository;
+import no.asgari.civilization.server.repository.memory.InMemoryGameLogRepository;
+import no.asgari.civilization.server.repository.memory.InMemoryLeaseRepository;
+import no.asgari.civilization.server.repository.memory.InMemoryNotificationRepository;
+import no.asgari.civilization.server.repository.memory.InMemoryPBFRepository;
+import no.asgari.civilization.server.repository.memory.InMemoryPlayerRepository;
+import no.asgari.civilization.server.repository.memory.InMemoryTournamentRepository;
+import no.asgari.civilization.server.repository.memory.InMemoryTurnRepository;
+import no.asgari.civilization.server.repository.mongo.MongoArchiveRepository;
+import no.asgari.civilization.server.repository.mongo.MongoChatRepository;
+import no.asgari.civilization.server.repository.mongo.MongoGameEventRepository;
+import no.asgari.civilization.server.repository.mongo.MongoGameSnapshotRepository;
+import no.asgari.civilization.server.repository.mongo.MongoGameLogRepository;
+import no.asgari.civilization.server.repository.mongo.MongoLeaseRepository;
+import no.asgari.civilization.server.repository.mongo.MongoNotificationRepository;
+import no.asgari.civilization.server.repository.mongo.MongoPBFRepository;
+import no.asgari.civilization.server.repository.mongo.MongoPlayerRepository;
+import no.asgari.civilization.server.repository.mongo.MongoTournamentRepository;
+import no.asgari.civilization.server.repository.mongo.MongoTurnRepository;
+
+/**
+ * All the repositories of one persistence implementation. Created once on startup and handed to the resources
+ */
+@Getter
+@AllArgsConstructor
+public class Repositories {
+    private final PBFRepository pbfs;
+    private final PlayerRepository players;
+    private final GameLogRepository gameLogs;
+    private final ChatRepository chats;
+    private final TournamentRepository tournaments;
+    private final GameEventRepository gameEvents;
+    private final GameSnapshotRepository snapshots;
+    private final TurnRepository turns;
+    private final ArchiveRepository archive;
+    private final NotificationRepository notifications;
+    private final LeaseRepository leases;
+
+    public static Repositories mongo(DB db) {
+        return new Repositories(
+                new MongoPBFRepository(db),
+                new MongoPlayerRepository(db),
+                new MongoGameLogRepository(db),
+                new MongoChatRepository(db),
+                new MongoTournamentRepository(db),
+                new MongoGameEventRepository(db),
+                new MongoGameSnapshotRepository(db),
+                new MongoTurnRepository(db),
+                new MongoArchiveRepository(db),
+                new MongoNotificationRepository(db),
+                new MongoLeaseRepository(db));
+    }
+
+    public static Repositories inMemory() {
+        return new Repositories(
+                new InMemoryPBFRepository(),
+                new InMemoryPlayerRepository(),
+                new InMemoryGameLogRepository(),
+                new InMemoryChatRepository(),
+                new InMemoryTournamentRepository(),
+                new InMemoryGameEventRepository(),
+                new InMemoryGameSnapshotRepository(),
+                new InMemoryTurnRepository(),
+                new InMemoryArchiveRepository(),
+                new InMemoryNotificationRepository(),
+                new InMemoryLeaseRepository());
+    }
+}
@@ -0,0 +1,71 @@
+/*
+ * Copyright (c) 2015 Shervin Asgari
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package no.asgari.civilization.server.repository;
+
+import no.asgari.civilization.server.model.PlayerTurn;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * The turns of the players, one document per pbfId, username and turnNumber
+ */
+public interface TurnRepository {
+
+    Optional<PlayerTurn> find(String pbfId, String username, int turnNumber);
+
+    /**
+     * Sorted by turnNumber, then username
+     */
+    List<PlayerTurn> findByPbfId(String pbfId);
+
+    /**
+     * Sorted by turnNumber
+     */
+    List<PlayerTurn> findByPbfIdAndUsername(String pbfId, String username);
+
+    /**
+     * The given turn of all players, sorted by username
+     */
+    List<PlayerTurn> findByPbfIdAndTurnNumber(String pbfId, int turnNumber);
+
+    /**
+     * The highest turnNumber of the game, or 0 if no turns are stored
+     */
+    int findLatestTurnNumber(String pbfId);
+
+    /**
+     * Inserts the turn, or replaces the one with the same pbfId, username and turnNumber
+     */
+    void save(PlayerTurn turn);
+
+    void rename(String pbfId, String oldUsername, String newUsername);
+
+    void deleteByPbfId(String pbfId);
+
+    default void deleteByPbfIds(Collection<String> pbfIds) {
+        pbfIds.forEach(this::deleteByPbfId);
+    }
+
+    /**
+     * @return the number of turns deleted
+     */
+    int deleteByIds(Collection<String> turnIds);
+
+    default void createIndexes() {
+    }
+}
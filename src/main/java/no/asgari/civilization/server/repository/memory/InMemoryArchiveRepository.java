@@ -0,0 +1,86 @@
+/*
+ * Copyright (c) 2015 Shervin Asgari
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package no.asgari.civilization.server.repository.memory;
+
+import com.google.common.base.Strings;
+import no.asgari.civilization.server.model.Chat;
+import no.asgari.civilization.server.model.GameLog;
+import no.asgari.civilization.server.model.PBF;
+import no.asgari.civilization.server.model.PlayerTurn;
+import no.asgari.civilization.server.repository.ArchiveRepository;
+
+import java.util.List;
+
+import static java.util.stream.Collectors.toList;
+
+/**
+ * Logs, chat and turns are indexed on pbfId
+ */
+public class InMemoryArchiveRepository implements ArchiveRepository {
+    private final InMemoryRepository<PBF> pbfArchive = new InMemoryRepository<PBF>(PBF.class, PBF::getId, PBF::setId) {
+    };
+    private final InMemoryRepository<GameLog> gameLogArchive = new InMemoryRepository<GameLog>(GameLog.class, GameLog::getId, GameLog::setId, GameLog::getPbfId) {
+    };
+    private final InMemoryRepository<Chat> chatArchive = new InMemoryRepository<Chat>(Chat.class, Chat::getId, Chat::setId, Chat::getPbfId) {
+    };
+    private final InMemoryRepository<PlayerTurn> turnArchive = new InMemoryRepository<PlayerTurn>(PlayerTurn.class, PlayerTurn::getId, PlayerTurn::setId, PlayerTurn::getPbfId) {
+    };
+
+    @Override
+    public void archive(PBF pbf, List<GameLog> gameLogs, List<Chat> chats, List<PlayerTurn> turns) {
+        gameLogs.forEach(gameLogArchive::saveDocument);
+        chats.forEach(chatArchive::saveDocument);
+        turns.forEach(turnArchive::saveDocument);
+        pbfArchive.saveDocument(pbf);
+    }
+
+    @Override
+    public PBF findById(String pbfId) {
+        return pbfArchive.document(pbfId);
+    }
+
+    @Override
+    public List<PBF> findAll() {
+        return pbfArchive.documents().collect(toList());
+    }
+
+    @Override
+    public List<PBF> findWinners() {
+        return pbfArchive.documents()
+                .filter(pbf -> !Strings.isNullOrEmpty(pbf.getWinner()))
+                .collect(toList());
+    }
+
+    @Override
+    public long count() {
+        return pbfArchive.documents().count();
+    }
+
+    @Override
+    public List<GameLog> findGameLogs(String pbfId) {
+        return gameLogArchive.documentsIndexedBy(pbfId).collect(toList());
+    }
+
+    @Override
+    public List<Chat> findChats(String pbfId) {
+        return chatArchive.documentsIndexedBy(pbfId).collect(toList());
+    }
+
+    @Override
+    public List<PlayerTurn> findTurns(String pbfId) {
+        return turnArchive.documentsIndexedBy(pbfId).collect(toList());
+    }
+}
@@ -0,0 +1,105 @@
+/*
+ * Copyright (c) 2015 Shervin Asgari
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package no.asgari.civilization.server.repository.memory;
+
+import com.google.common.base.Strings;
+import no.asgari.civilization.server.model.Chat;
+import no.asgari.civilization.server.repository.ChatRepository;
+
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+
+import static java.util.stream.Collectors.toList;
+
+/**
+ * Chats are indexed on pbfId
+ */
+public class InMemoryChatRepository extends InMemoryRepository<Chat> implements ChatRepository {
+    private static final Comparator<Chat> NEWEST_FIRST = Comparator.comparing(Chat::getCreated).reversed();
+
+    public InMemoryChatRepository() {
+        super(Chat.class, Chat::getId, Chat::setId, Chat::getPbfId);
+    }
+
+    @Override
+    public List<Chat> findByPbfId(String pbfId) {
+        return documentsIndexedBy(pbfId).sorted(NEWEST_FIRST).collect(toList());
+    }
+
+    @Override
+    public List<Chat> findByPbfId(String pbfId, int limit, String before) {
+        return documentsIndexedBy(pbfId)
+                .filter(chat -> before == null || chat.getId().compareTo(before) < 0)
+                .sorted(Comparator.comparing(Chat::getId).reversed())
+                .limit(limit > 0 ? limit : Long.MAX_VALUE)
+                .collect(toList());
+    }
+
+    @Override
+    public List<Chat> findPublic(int limit) {
+        Date now = new Date();
+        return documents()
+                .filter(chat -> chat.getPbfId() == null && chat.getExpireAt() != null && chat.getExpireAt().after(now))
+                .sorted(NEWEST_FIRST)
+                .limit(limit)
+                .collect(toList());
+    }
+
+    @Override
+    public List<Chat> findAll() {
+        return documents().collect(toList());
+    }
+
+    @Override
+    public long count() {
+        return size();
+    }
+
+    @Override
+    public String insert(Chat chat) {
+        return insertDocument(chat);
+    }
+
+    @Override
+    public boolean delete(String chatId) {
+        return deleteDocument(chatId);
+    }
+
+    @Override
+    public int deleteByPbfIds(Collection<String> pbfIds) {
+        return (int) pbfIds.stream()
+                .flatMap(this::documentsIndexedBy)
+                .filter(chat -> deleteDocument(chat.getId()))
+                .count();
+    }
+
+    @Override
+    public int deleteByIds(Collection<String> chatIds) {
+        return (int) chatIds.stream()
+                .filter(this::deleteDocument)
+                .count();
+    }
+
+    @Override
+    public int deletePublic() {
+        return (int) documents()
+                .filter(chat -> Strings.isNullOrEmpty(chat.getPbfId()))
+                .filter(chat -> deleteDocument(chat.getId()))
+                .count();
+    }
+}
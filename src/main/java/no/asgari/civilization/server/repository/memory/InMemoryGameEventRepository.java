@@ -0,0 +1,87 @@
+/*
+ * Copyright (c) 2015 Shervin Asgari
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package no.asgari.civilization.server.repository.memory;
+
+import no.asgari.civilization.server.model.GameEvent;
+import no.asgari.civilization.server.repository.GameEventRepository;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+import static java.util.stream.Collectors.toList;
+import static no.asgari.civilization.server.repository.memory.InMemoryRepository.fromJson;
+import static no.asgari.civilization.server.repository.memory.InMemoryRepository.toJson;
+
+/**
+ * Appends to the same game are serialized, so an event is readable before the next one gets its sequence
+ */
+public class InMemoryGameEventRepository implements GameEventRepository {
+    //Key is pbfId, value is the events of that game by sequence
+    private final ConcurrentMap<String, ConcurrentSkipListMap<Long, byte[]>> streams = new ConcurrentHashMap<>();
+
+    @Override
+    public GameEvent append(GameEvent event) {
+        ConcurrentSkipListMap<Long, byte[]> stream = streams.computeIfAbsent(event.getPbfId(), pbfId -> new ConcurrentSkipListMap<>());
+        synchronized (stream) {
+            event.setSequence(stream.isEmpty() ? 1 : stream.lastKey() + 1);
+            if (event.getCreated() == null) {
+                event.setCreated(LocalDateTime.now());
+            }
+            stream.put(event.getSequence(), toJson(event));
+        }
+        return event;
+    }
+
+    @Override
+    public List<GameEvent> findByPbfId(String pbfId, long afterSequence, int limit) {
+        ConcurrentSkipListMap<Long, byte[]> stream = streams.get(pbfId);
+        if (stream == null) {
+            return new ArrayList<>();
+        }
+        return stream.tailMap(afterSequence, false).values().stream()
+                .limit(limit)
+                .map(json -> fromJson(json, GameEvent.class))
+                .collect(toList());
+    }
+
+    @Override
+    public long lastSequence(String pbfId) {
+        ConcurrentSkipListMap<Long, byte[]> stream = streams.get(pbfId);
+        return stream == null || stream.isEmpty() ? 0 : stream.lastKey();
+    }
+
+    @Override
+    public Optional<GameEvent> findByGameLogId(String pbfId, String gameLogId) {
+        ConcurrentSkipListMap<Long, byte[]> stream = streams.get(pbfId);
+        if (stream == null) {
+            return Optional.empty();
+        }
+        return stream.values().stream()
+                .map(json -> fromJson(json, GameEvent.class))
+                .filter(event -> gameLogId.equals(event.getGameLogId()))
+                .findFirst();
+    }
+
+    @Override
+    public void deleteByPbfId(String pbfId) {
+        streams.remove(pbfId);
+    }
+}
@@ -0,0 +1,168 @@
+/*
+ * Copyright (c) 2015 Shervin Asgari
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package no.asgari.civilization.server.repository.memory;
+
+import no.asgari.civilization.server.model.GameLog;
+import no.asgari.civilization.server.repository.GameLogRepository;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+
+import static java.util.stream.Collectors.toList;
+
+/**
+ * Logs are indexed on pbfId, and logs with an undo also on pbfId and undoState
+ */
+public class InMemoryGameLogRepository extends InMemoryRepository<GameLog> implements GameLogRepository {
+    //Key is pbfId and undoState, value is the ids of the logs
+    private final ConcurrentMap<String, Set<String>> undoIndex = new ConcurrentHashMap<>();
+
+    public InMemoryGameLogRepository() {
+        super(GameLog.class, GameLog::getId, GameLog::setId, GameLog::getPbfId);
+    }
+
+    @Override
+    public GameLog findById(String gameLogId) {
+        return document(gameLogId);
+    }
+
+    @Override
+    public List<GameLog> findByPbfId(String pbfId) {
+        return documentsIndexedBy(pbfId).collect(toList());
+    }
+
+    @Override
+    public List<GameLog> findByPbfIdReadOnly(String pbfId) {
+        return findByPbfId(pbfId);
+    }
+
+    @Override
+    public List<GameLog> findByPbfIdAndUsername(String pbfId, String username) {
+        return documentsIndexedBy(pbfId)
+                .filter(log -> username.equals(log.getUsername()))
+                .collect(toList());
+    }
+
+    @Override
+    public List<GameLog> findByPbfIdAndUndoState(String pbfId, GameLog.UndoState undoState) {
+        return undoIndex.getOrDefault(undoKey(pbfId, undoState), Collections.emptySet()).stream()
+                .map(this::document)
+                .filter(log -> log != null && log.getUndoState() == undoState)
+                .collect(toList());
+    }
+
+    @Override
+    public List<GameLog> findAll() {
+        return documents().collect(toList());
+    }
+
+    @Override
+    public long count() {
+        return size();
+    }
+
+    @Override
+    public String insert(GameLog gameLog) {
+        String id = insertDocument(gameLog);
+        reindexUndo(gameLog);
+        return id;
+    }
+
+    @Override
+    public synchronized void update(GameLog gameLog) {
+        if (replaceDocument(gameLog)) {
+            reindexUndo(gameLog);
+        }
+    }
+
+    @Override
+    public synchronized GameLog vote(String gameLogId, String playerId, boolean vote) {
+        GameLog gameLog = document(gameLogId);
+        if (gameLog == null || !gameLog.hasActiveUndo()) {
+            return null;
+        }
+        gameLog.getDraw().getUndo().vote(playerId, vote);
+        replaceDocument(gameLog);
+        return gameLog;
+    }
+
+    @Override
+    public synchronized boolean finishUndo(String gameLogId) {
+        GameLog gameLog = document(gameLogId);
+        if (gameLog == null || !gameLog.hasActiveUndo()) {
+            return false;
+        }
+        gameLog.getDraw().getUndo().setDone(true);
+        update(gameLog);
+        return true;
+    }
+
+    @Override
+    public synchronized void reopenUndo(String gameLogId) {
+        GameLog gameLog = document(gameLogId);
+        if (gameLog == null || gameLog.getDraw() == null || gameLog.getDraw().getUndo() == null || !gameLog.getDraw().getUndo().isDone()) {
+            return;
+        }
+        gameLog.getDraw().getUndo().setDone(false);
+        update(gameLog);
+    }
+
+    @Override
+    public boolean delete(String gameLogId) {
+        GameLog gameLog = document(gameLogId);
+        boolean deleted = deleteDocument(gameLogId);
+        if (deleted && gameLog.getUndoState() != null) {
+            undoIndex.getOrDefault(undoKey(gameLog.getPbfId(), gameLog.getUndoState()), Collections.emptySet()).remove(gameLogId);
+        }
+        return deleted;
+    }
+
+    @Override
+    public int deleteByPbfIds(Collection<String> pbfIds) {
+        return (int) pbfIds.stream()
+                .flatMap(this::documentsIndexedBy)
+                .filter(gameLog -> delete(gameLog.getId()))
+                .count();
+    }
+
+    @Override
+    public int deleteByIds(Collection<String> gameLogIds) {
+        return (int) gameLogIds.stream()
+                .filter(this::delete)
+                .count();
+    }
+
+    private void reindexUndo(GameLog gameLog) {
+        GameLog.UndoState undoState = gameLog.getUndoState();
+        for (GameLog.UndoState state : GameLog.UndoState.values()) {
+            if (state != undoState) {
+                undoIndex.getOrDefault(undoKey(gameLog.getPbfId(), state), Collections.emptySet()).remove(gameLog.getId());
+            }
+        }
+        if (undoState != null) {
+            undoIndex.computeIfAbsent(undoKey(gameLog.getPbfId(), undoState), key -> new ConcurrentSkipListSet<>()).add(gameLog.getId());
+        }
+    }
+
+    private static String undoKey(String pbfId, GameLog.UndoState undoState) {
+        return pbfId + "/" + undoState;
+    }
+}
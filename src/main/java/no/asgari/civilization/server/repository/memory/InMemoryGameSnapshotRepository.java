@@ -0,0 +1,54 @@
+/*
+ * Copyright (c) 2015 Shervin Asgari
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package no.asgari.civilization.server.repository.memory;
+
+import no.asgari.civilization.server.model.GameSnapshot;
+import no.asgari.civilization.server.repository.GameSnapshotRepository;
+
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+import static no.asgari.civilization.server.repository.memory.InMemoryRepository.fromJson;
+import static no.asgari.civilization.server.repository.memory.InMemoryRepository.toJson;
+
+public class InMemoryGameSnapshotRepository implements GameSnapshotRepository {
+    //Key is pbfId, value is the snapshots of that game by sequence
+    private final ConcurrentMap<String, ConcurrentSkipListMap<Long, byte[]>> snapshots = new ConcurrentHashMap<>();
+
+    @Override
+    public void save(GameSnapshot snapshot) {
+        ConcurrentSkipListMap<Long, byte[]> ofGame = snapshots.computeIfAbsent(snapshot.getPbfId(), pbfId -> new ConcurrentSkipListMap<>());
+        ofGame.put(snapshot.getSequence(), toJson(snapshot));
+        while (ofGame.size() > SNAPSHOTS_KEPT) {
+            ofGame.pollFirstEntry();
+        }
+    }
+
+    @Override
+    public Optional<GameSnapshot> findLatest(String pbfId, long atOrBeforeSequence) {
+        ConcurrentSkipListMap<Long, byte[]> ofGame = snapshots.get(pbfId);
+        Map.Entry<Long, byte[]> entry = ofGame == null ? null : ofGame.floorEntry(atOrBeforeSequence);
+        return entry == null ? Optional.empty() : Optional.of(fromJson(entry.getValue(), GameSnapshot.class));
+    }
+
+    @Override
+    public void deleteByPbfId(String pbfId) {
+        snapshots.remove(pbfId);
+    }
+}
@@ -0,0 +1,56 @@
+/*
+ * Copyright (c) 2015 Shervin Asgari
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package no.asgari.civilization.server.repository.memory;
+
+import no.asgari.civilization.server.repository.LeaseRepository;
+
+import java.time.Duration;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Key is the name of the lease and value is who holds it until when
+ */
+public class InMemoryLeaseRepository implements LeaseRepository {
+    private final ConcurrentMap<String, Lease> leases = new ConcurrentHashMap<>();
+
+    @Override
+    public boolean acquire(String name, String owner, Duration duration) {
+        long now = System.currentTimeMillis();
+        Lease lease = leases.compute(name, (k, held) -> {
+            if (held != null && held.expiresAt > now && !held.owner.equals(owner)) {
+                return held;
+            }
+            return new Lease(owner, now + duration.toMillis());
+        });
+        return lease.owner.equals(owner);
+    }
+
+    @Override
+    public void release(String name, String owner) {
+        leases.computeIfPresent(name, (k, held) -> held.owner.equals(owner) ? null : held);
+    }
+
+    private static class Lease {
+        private final String owner;
+        private final long expiresAt;
+
+        private Lease(String owner, long expiresAt) {
+            this.owner = owner;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
@@ -0,0 +1,44 @@
+/*
+ * Copyright (c) 2015 Shervin Asgari
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package no.asgari.civilization.server.repository.memory;
+
+import no.asgari.civilization.server.repository.NotificationRepository;
+
+import java.time.Duration;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Key is the key of the email and value is when it was last sent, in millis
+ */
+public class InMemoryNotificationRepository implements NotificationRepository {
+    private final ConcurrentMap<String, Long> sentAt = new ConcurrentHashMap<>();
+
+    @Override
+    public boolean claim(String key, Duration interval) {
+        long now = System.currentTimeMillis();
+        AtomicBoolean claimed = new AtomicBoolean();
+        sentAt.compute(key, (k, last) -> {
+            if (last != null && last > now - interval.toMillis()) {
+                return last;
+            }
+            claimed.set(true);
+            return now;
+        });
+        return claimed.get();
+    }
+}
@@ -0,0 +1,211 @@
+/*
+ * Copyright (c) 2015 Shervin Asgari
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package no.asgari.civilization.server.repository.memory;
+
+import com.google.common.base.Preconditions;
+import com.google.common.base.Strings;
+import no.asgari.civilization.server.model.PBF;
+import no.asgari.civilization.server.model.PBFPart;
+import no.asgari.civilization.server.model.Playerhand;
+import no.asgari.civilization.server.repository.PBFRepository;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Objects;
+import java.util.UUID;
+
+import static java.util.stream.Collectors.toList;
+
+public class InMemoryPBFRepository extends InMemoryRepository<PBF> implements PBFRepository {
+
+    public InMemoryPBFRepository() {
+        super(PBF.class, PBF::getId, PBF::setId);
+    }
+
+    @Override
+    public PBF findById(String pbfId) {
+        return document(pbfId);
+    }
+
+    @Override
+    public PBF findByIdReadOnly(String pbfId) {
+        return document(pbfId);
+    }
+
+    @Override
+    public PBF findParts(String pbfId, PBFPart... parts) {
+        PBF pbf = document(pbfId);
+        if (pbf == null) {
+            return null;
+        }
+        PBF loaded = new PBF();
+        loaded.setId(pbf.getId());
+        loaded.setRevision(pbf.getRevision());
+        for (PBFPart part : parts) {
+            copy(part, pbf, loaded);
+        }
+        return loaded;
+    }
+
+    @Override
+    public PBF findWithPlayer(String pbfId, String playerId, PBFPart... parts) {
+        Preconditions.checkArgument(!Arrays.asList(parts).contains(PBFPart.PLAYERS), "The players are already loaded");
+        PBF pbf = document(pbfId);
+        PBF loaded = findParts(pbfId, parts);
+        if (loaded != null) {
+            pbf.getPlayers().stream()
+                    .filter(p -> p.getPlayerId().equals(playerId))
+                    .findFirst()
+                    .ifPresent(loaded.getPlayers()::add);
+        }
+        return loaded;
+    }
+
+    @Override
+    public List<PBF> findAll() {
+        return documents().collect(toList());
+    }
+
+    @Override
+    public List<PBF> findAllReadOnly() {
+        return findAll();
+    }
+
+    @Override
+    public List<String> findAbortedIds(int limit) {
+        return documents()
+                .filter(pbf -> !pbf.isActive() && Strings.isNullOrEmpty(pbf.getWinner()))
+                .limit(limit)
+                .map(PBF::getId)
+                .collect(toList());
+    }
+
+    @Override
+    public List<String> findFinishedIds(int limit) {
+        return documents()
+                .filter(pbf -> !pbf.isActive() && !Strings.isNullOrEmpty(pbf.getWinner()))
+                .limit(limit)
+                .map(PBF::getId)
+                .collect(toList());
+    }
+
+    @Override
+    public String insert(PBF pbf) {
+        pbf.setRevision(UUID.randomUUID().toString());
+        return insertDocument(pbf);
+    }
+
+    @Override
+    public synchronized boolean update(PBF pbf) {
+        pbf.setRevision(UUID.randomUUID().toString());
+        return replaceDocument(pbf);
+    }
+
+    @Override
+    public synchronized boolean updateParts(PBF pbf, PBFPart... parts) {
+        PBF stored = document(pbf.getId());
+        if (stored == null || !Objects.equals(stored.getRevision(), pbf.getRevision())) {
+            return false;
+        }
+        for (PBFPart part : parts) {
+            Preconditions.checkArgument(part.isWritable(), part + " can only be read");
+            copy(part, pbf, stored);
+        }
+        pbf.setRevision(UUID.randomUUID().toString());
+        stored.setRevision(pbf.getRevision());
+        return replaceDocument(stored);
+    }
+
+    @Override
+    public synchronized boolean updatePlayer(PBF pbf, String playerId, PBFPart... parts) {
+        Preconditions.checkArgument(!Arrays.asList(parts).contains(PBFPart.PLAYERS), "The player is already written");
+        Playerhand playerhand = pbf.getPlayers().stream()
+                .filter(p -> p.getPlayerId().equals(playerId))
+                .findFirst()
+                .orElseThrow(() -> new IllegalArgumentException("Player " + playerId + " is not in the game"));
+        PBF stored = document(pbf.getId());
+        if (stored == null || !Objects.equals(stored.getRevision(), pbf.getRevision())) {
+            return false;
+        }
+        stored.getPlayers().replaceAll(p -> p.getPlayerId().equals(playerId) ? playerhand : p);
+        for (PBFPart part : parts) {
+            Preconditions.checkArgument(part.isWritable(), part + " can only be read");
+            copy(part, pbf, stored);
+        }
+        pbf.setRevision(UUID.randomUUID().toString());
+        stored.setRevision(pbf.getRevision());
+        return replaceDocument(stored);
+    }
+
+    private static void copy(PBFPart part, PBF from, PBF to) {
+        switch (part) {
+            case NAME:
+                to.setName(from.getName());
+                break;
+            case STATUS:
+                to.setActive(from.isActive());
+                to.setWinner(from.getWinner());
+                to.setNumOfPlayers(from.getNumOfPlayers());
+                break;
+            case ITEMS:
+                to.setItems(from.getItems());
+                break;
+            case DISCARDED_ITEMS:
+                to.setDiscardedItems(from.getDiscardedItems());
+                break;
+            case TECHS:
+                to.setTechs(from.getTechs());
+                break;
+            case SOCIAL_POLICIES:
+                to.setSocialPolicies(from.getSocialPolicies());
+                break;
+            case PLAYERS:
+                to.setPlayers(from.getPlayers());
+                break;
+            case REVEALED_ITEMS:
+                to.setRevealedItems(from.getRevealedItems());
+                to.setRevealedItemsTag(from.getRevealedItemsTag());
+                break;
+            case TECHS_TAG:
+                to.setTechsTag(from.getTechsTag());
+                break;
+            case PLAYER_NAMES:
+                from.getPlayers().forEach(p -> {
+                    Playerhand playerhand = new Playerhand();
+                    playerhand.setPlayerId(p.getPlayerId());
+                    playerhand.setUsername(p.getUsername());
+                    playerhand.setColor(p.getColor());
+                    playerhand.setEmail(p.getEmail());
+                    playerhand.setYourTurn(p.isYourTurn());
+                    to.getPlayers().add(playerhand);
+                });
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown part " + part);
+        }
+    }
+
+    @Override
+    public boolean delete(String pbfId) {
+        return deleteDocument(pbfId);
+    }
+
+    @Override
+    public int deleteAll(Collection<String> pbfIds) {
+        return (int) pbfIds.stream().filter(this::deleteDocument).count();
+    }
+}
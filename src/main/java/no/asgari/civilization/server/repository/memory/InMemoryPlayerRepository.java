@@ -0,0 +1,84 @@
+/*
+ * Copyright (c) 2015 Shervin Asgari
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package no.asgari.civilization.server.repository.memory;
+
+import no.asgari.civilization.server.model.Player;
+import no.asgari.civilization.server.repository.PlayerRepository;
+
+import java.util.List;
+import java.util.Map;
+
+import static java.util.stream.Collectors.toList;
+import static java.util.stream.Collectors.toMap;
+
+public class InMemoryPlayerRepository extends InMemoryRepository<Player> implements PlayerRepository {
+
+    public InMemoryPlayerRepository() {
+        super(Player.class, Player::getId, Player::setId);
+    }
+
+    @Override
+    public Player findById(String playerId) {
+        return document(playerId);
+    }
+
+    @Override
+    public Player findByUsername(String username) {
+        return documents().filter(p -> username.equals(p.getUsername())).findFirst().orElse(null);
+    }
+
+    @Override
+    public Player findByEmail(String email) {
+        return documents().filter(p -> email.equals(p.getEmail())).findFirst().orElse(null);
+    }
+
+    @Override
+    public String findUsernameById(String playerId) {
+        Player player = document(playerId);
+        return player == null ? null : player.getUsername();
+    }
+
+    @Override
+    public Map<String, String> findAllUsernames() {
+        return documents().collect(toMap(Player::getId, Player::getUsername));
+    }
+
+    @Override
+    public List<Player> findAll() {
+        return documents().collect(toList());
+    }
+
+    @Override
+    public List<Player> findAllReadOnly() {
+        return findAll();
+    }
+
+    /**
+     * Like the unique indexes in mongo, usernames and emails can only be used once
+     */
+    @Override
+    public synchronized String insert(Player player) {
+        if (findByUsername(player.getUsername()) != null || findByEmail(player.getEmail()) != null) {
+            throw new IllegalStateException("Player with username " + player.getUsername() + " or email " + player.getEmail() + " already exists");
+        }
+        return insertDocument(player);
+    }
+
+    @Override
+    public void update(Player player) {
+        replaceDocument(player);
+    }
+}
@@ -0,0 +1,168 @@
+/*
+ * Copyright (c) 2015 Shervin Asgari
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package no.asgari.civilization.server.repository.memory;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.bson.types.ObjectId;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+import java.util.stream.Stream;
+
+/**
+ * Keeps documents as serialized json, so that like with mongo every read gets its own copy,
+ * and changes are not seen by others until they are written back.
+ * Ids are ObjectIds, so iterating in id order is the same as insertion order.
+ * Documents can be indexed on one field, ie pbfId, so that they are found without scanning everything.
+ */
+abstract class InMemoryRepository<T> {
+    private static final ObjectMapper mapper = new ObjectMapper();
+
+    private final Class<T> type;
+    private final Function<T, String> idOf;
+    private final BiConsumer<T, String> setId;
+    private final Function<T, String> indexedField;
+
+    private final ConcurrentNavigableMap<String, byte[]> documents = new ConcurrentSkipListMap<>();
+    //Key is the indexed value, value is the ids having it
+    private final ConcurrentMap<String, Set<String>> index = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, String> indexedValueById = new ConcurrentHashMap<>();
+
+    InMemoryRepository(Class<T> type, Function<T, String> idOf, BiConsumer<T, String> setId) {
+        this(type, idOf, setId, document -> null);
+    }
+
+    InMemoryRepository(Class<T> type, Function<T, String> idOf, BiConsumer<T, String> setId, Function<T, String> indexedField) {
+        this.type = type;
+        this.idOf = idOf;
+        this.setId = setId;
+        this.indexedField = indexedField;
+    }
+
+    /**
+     * Gives the document a new id if it doesn't have one
+     */
+    String insertDocument(T document) {
+        if (idOf.apply(document) == null) {
+            setId.accept(document, new ObjectId().toHexString());
+        }
+        String id = idOf.apply(document);
+        if (documents.putIfAbsent(id, write(document)) != null) {
+            throw new IllegalStateException("Duplicate id " + id);
+        }
+        reindex(id, document);
+        return id;
+    }
+
+    /**
+     * Replaces an existing document. Does nothing if it doesn't exist
+     */
+    boolean replaceDocument(T document) {
+        String id = idOf.apply(document);
+        if (id == null || documents.replace(id, write(document)) == null) {
+            return false;
+        }
+        reindex(id, document);
+        return true;
+    }
+
+    void saveDocument(T document) {
+        if (!replaceDocument(document)) {
+            insertDocument(document);
+        }
+    }
+
+    T document(String id) {
+        if (id == null) {
+            return null;
+        }
+        byte[] json = documents.get(id);
+        return json == null ? null : read(json);
+    }
+
+    boolean deleteDocument(String id) {
+        if (id == null || documents.remove(id) == null) {
+            return false;
+        }
+        String indexedValue = indexedValueById.remove(id);
+        if (indexedValue != null) {
+            index.getOrDefault(indexedValue, Collections.emptySet()).remove(id);
+        }
+        return true;
+    }
+
+    Stream<T> documents() {
+        return documents.values().stream().map(this::read);
+    }
+
+    /**
+     * Documents where the indexed field has this value, in insertion order
+     */
+    Stream<T> documentsIndexedBy(String value) {
+        return index.getOrDefault(value, Collections.emptySet()).stream()
+                .map(documents::get)
+                .filter(json -> json != null)
+                .map(this::read);
+    }
+
+    long size() {
+        return documents.size();
+    }
+
+    private void reindex(String id, T document) {
+        String value = indexedField.apply(document);
+        String previous = value == null ? indexedValueById.remove(id) : indexedValueById.put(id, value);
+        if (previous != null && !previous.equals(value)) {
+            index.getOrDefault(previous, Collections.emptySet()).remove(id);
+        }
+        if (value != null) {
+            index.computeIfAbsent(value, v -> new ConcurrentSkipListSet<>()).add(id);
+        }
+    }
+
+    private byte[] write(T document) {
+        return toJson(document);
+    }
+
+    private T read(byte[] json) {
+        return fromJson(json, type);
+    }
+
+    static byte[] toJson(Object document) {
+        try {
+            return mapper.writeValueAsBytes(document);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    static <D> D fromJson(byte[] json, Class<D> type) {
+        try {
+            return mapper.readValue(json, type);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
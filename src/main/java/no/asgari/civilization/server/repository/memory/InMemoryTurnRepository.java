@@ -0,0 +1,126 @@
+/*
+ * Copyright (c) 2015 Shervin Asgari
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package no.asgari.civilization.server.repository.memory;
+
+import no.asgari.civilization.server.model.PlayerTurn;
+import no.asgari.civilization.server.model.TurnKey;
+import no.asgari.civilization.server.repository.TurnRepository;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.NavigableMap;
+import java.util.Optional;
+import java.util.SortedMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+import static java.util.stream.Collectors.toList;
+
+/**
+ * Turns are indexed on pbfId, and within the game ordered by turnNumber and username,
+ * so the same turn of all players is a range of that index
+ */
+public class InMemoryTurnRepository extends InMemoryRepository<PlayerTurn> implements TurnRepository {
+    //Key is pbfId, value is the ids of the turns
+    private final ConcurrentMap<String, ConcurrentNavigableMap<TurnKey, String>> turnIndex = new ConcurrentHashMap<>();
+
+    public InMemoryTurnRepository() {
+        super(PlayerTurn.class, PlayerTurn::getId, PlayerTurn::setId);
+    }
+
+    @Override
+    public Optional<PlayerTurn> find(String pbfId, String username, int turnNumber) {
+        return Optional.ofNullable(document(turns(pbfId).get(new TurnKey(turnNumber, username))));
+    }
+
+    @Override
+    public List<PlayerTurn> findByPbfId(String pbfId) {
+        return documents(turns(pbfId));
+    }
+
+    @Override
+    public List<PlayerTurn> findByPbfIdAndUsername(String pbfId, String username) {
+        return turns(pbfId).entrySet().stream()
+                .filter(e -> e.getKey().getUsername().equals(username))
+                .map(e -> document(e.getValue()))
+                .filter(turn -> turn != null)
+                .collect(toList());
+    }
+
+    @Override
+    public List<PlayerTurn> findByPbfIdAndTurnNumber(String pbfId, int turnNumber) {
+        return documents(turns(pbfId).subMap(TurnKey.first(turnNumber), TurnKey.first(turnNumber + 1)));
+    }
+
+    @Override
+    public int findLatestTurnNumber(String pbfId) {
+        NavigableMap<TurnKey, String> turns = turns(pbfId);
+        return turns.isEmpty() ? 0 : turns.lastKey().getTurnNumber();
+    }
+
+    @Override
+    public synchronized void save(PlayerTurn turn) {
+        TurnKey key = TurnKey.of(turn);
+        ConcurrentNavigableMap<TurnKey, String> turns = turnIndex.computeIfAbsent(turn.getPbfId(), pbfId -> new ConcurrentSkipListMap<>());
+        turn.setId(turns.get(key));
+        saveDocument(turn);
+        turns.put(key, turn.getId());
+    }
+
+    @Override
+    public synchronized void rename(String pbfId, String oldUsername, String newUsername) {
+        findByPbfIdAndUsername(pbfId, oldUsername).forEach(turn -> {
+            turns(pbfId).remove(TurnKey.of(turn));
+            turn.setUsername(newUsername);
+            replaceDocument(turn);
+            turns(pbfId).put(TurnKey.of(turn), turn.getId());
+        });
+    }
+
+    @Override
+    public synchronized void deleteByPbfId(String pbfId) {
+        ConcurrentNavigableMap<TurnKey, String> turns = turnIndex.remove(pbfId);
+        if (turns != null) {
+            turns.values().forEach(this::deleteDocument);
+        }
+    }
+
+    @Override
+    public synchronized int deleteByIds(Collection<String> turnIds) {
+        int deleted = 0;
+        for (String turnId : turnIds) {
+            PlayerTurn turn = document(turnId);
+            if (turn != null && deleteDocument(turnId)) {
+                turns(turn.getPbfId()).remove(TurnKey.of(turn));
+                deleted++;
+            }
+        }
+        return deleted;
+    }
+
+    private NavigableMap<TurnKey, String> turns(String pbfId) {
+        return turnIndex.getOrDefault(pbfId, new ConcurrentSkipListMap<>());
+    }
+
+    private List<PlayerTurn> documents(SortedMap<TurnKey, String> turns) {
+        return turns.values().stream()
+                .map(this::document)
+                .filter(turn -> turn != null)
+                .collect(toList());
+    }
+}
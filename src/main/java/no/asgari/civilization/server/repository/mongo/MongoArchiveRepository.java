@@ -0,0 +1,131 @@
+/*
+ * Copyright (c) 2015 Shervin Asgari
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package no.asgari.civilization.server.repository.mongo;
+
+import com.mongodb.BasicDBObject;
+import com.mongodb.DB;
+import com.mongodb.MongoException;
+import lombok.extern.log4j.Log4j;
+import no.asgari.civilization.server.model.Chat;
+import no.asgari.civilization.server.model.GameLog;
+import no.asgari.civilization.server.model.PBF;
+import no.asgari.civilization.server.model.PlayerTurn;
+import no.asgari.civilization.server.repository.ArchiveRepository;
+import org.mongojack.DBQuery;
+import org.mongojack.JacksonDBCollection;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Archived documents keep the shape they had in pbf, gamelog, chat and turn, in collections compressed with zlib
+ */
+@Log4j
+public class MongoArchiveRepository implements ArchiveRepository {
+    public static final String PBF_ARCHIVE = "pbf_archive";
+    public static final String GAMELOG_ARCHIVE = "gamelog_archive";
+    public static final String CHAT_ARCHIVE = "chat_archive";
+    public static final String TURN_ARCHIVE = "turn_archive";
+
+    private final DB db;
+    private final JacksonDBCollection<PBF, String> pbfArchive;
+    private final JacksonDBCollection<GameLog, String> gameLogArchive;
+    private final JacksonDBCollection<Chat, String> chatArchive;
+    private final JacksonDBCollection<PlayerTurn, String> turnArchive;
+
+    public MongoArchiveRepository(DB db) {
+        this.db = db;
+        this.pbfArchive = JacksonDBCollection.wrap(db.getCollection(PBF_ARCHIVE), PBF.class, String.class);
+        this.gameLogArchive = JacksonDBCollection.wrap(db.getCollection(GAMELOG_ARCHIVE), GameLog.class, String.class);
+        this.chatArchive = JacksonDBCollection.wrap(db.getCollection(CHAT_ARCHIVE), Chat.class, String.class);
+        this.turnArchive = JacksonDBCollection.wrap(db.getCollection(TURN_ARCHIVE), PlayerTurn.class, String.class);
+    }
+
+    /**
+     * The game is saved last, so a game found in the archive has all of its logs, chat and turns there
+     */
+    @Override
+    public void archive(PBF pbf, List<GameLog> gameLogs, List<Chat> chats, List<PlayerTurn> turns) {
+        gameLogs.forEach(gameLogArchive::save);
+        chats.forEach(chatArchive::save);
+        turns.forEach(turnArchive::save);
+        pbfArchive.save(pbf);
+    }
+
+    @Override
+    public PBF findById(String pbfId) {
+        return pbfArchive.findOneById(pbfId);
+    }
+
+    @Override
+    public List<PBF> findAll() {
+        return pbfArchive.find().toArray();
+    }
+
+    @Override
+    public List<PBF> findWinners() {
+        BasicDBObject hasWinner = new BasicDBObject("winner", new BasicDBObject("$nin", Arrays.asList(null, "")));
+        BasicDBObject fields = new BasicDBObject("winner", 1)
+                .append("active", 1)
+                .append("numOfPlayers", 1)
+                .append("players.username", 1)
+                .append("players.civilization", 1);
+        return pbfArchive.find(hasWinner, fields).toArray();
+    }
+
+    @Override
+    public long count() {
+        return pbfArchive.count();
+    }
+
+    @Override
+    public List<GameLog> findGameLogs(String pbfId) {
+        return gameLogArchive.find(DBQuery.is(GameLog.PBFID, pbfId)).toArray();
+    }
+
+    @Override
+    public List<Chat> findChats(String pbfId) {
+        return chatArchive.find(DBQuery.is(Chat.PBFID, pbfId)).toArray();
+    }
+
+    @Override
+    public List<PlayerTurn> findTurns(String pbfId) {
+        return turnArchive.find(DBQuery.is(PlayerTurn.PBFID, pbfId)).toArray();
+    }
+
+    @Override
+    public void createIndexes() {
+        createCompressed(PBF_ARCHIVE);
+        createCompressed(GAMELOG_ARCHIVE);
+        createCompressed(CHAT_ARCHIVE);
+        createCompressed(TURN_ARCHIVE);
+        gameLogArchive.createIndex(new BasicDBObject(GameLog.PBFID, 1));
+        chatArchive.createIndex(new BasicDBObject(Chat.PBFID, 1));
+        turnArchive.createIndex(new BasicDBObject(PlayerTurn.PBFID, 1));
+    }
+
+    private void createCompressed(String name) {
+        if (db.collectionExists(name)) {
+            return;
+        }
+        try {
+            db.createCollection(name, new BasicDBObject("storageEngine",
+                    new BasicDBObject("wiredTiger", new BasicDBObject("configString", "block_compressor=zlib"))));
+        } catch (MongoException e) {
+            log.warn("Could not create " + name + " with compression, it is created uncompressed when first used: " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,128 @@
+/*
+ * Copyright (c) 2015 Shervin Asgari
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package no.asgari.civilization.server.repository.mongo;
+
+import com.mongodb.BasicDBObject;
+import com.mongodb.DB;
+import com.mongodb.DBCollection;
+import com.mongodb.DBObject;
+import no.asgari.civilization.server.application.CivSingleton;
+import no.asgari.civilization.server.model.Chat;
+import no.asgari.civilization.server.repository.ChatRepository;
+import org.bson.types.ObjectId;
+import org.mongojack.DBQuery;
+import org.mongojack.DBSort;
+import org.mongojack.JacksonDBCollection;
+
+import java.time.temporal.ChronoUnit;
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+
+import static java.util.stream.Collectors.toList;
+
+public class MongoChatRepository implements ChatRepository {
+    private final JacksonDBCollection<Chat, String> chatCollection;
+
+    public MongoChatRepository(DB db) {
+        this.chatCollection = JacksonDBCollection.wrap(db.getCollection(Chat.COL_NAME), Chat.class, String.class);
+    }
+
+    @Override
+    public List<Chat> findByPbfId(String pbfId) {
+        return chatCollection.find(DBQuery.is(Chat.PBFID, pbfId))
+                .setReadPreference(CivSingleton.instance().readRouting().readOnly(pbfId))
+                .sort(DBSort.desc("created")).toArray();
+    }
+
+    @Override
+    public List<Chat> findByPbfId(String pbfId, int limit, String before) {
+        DBQuery.Query query = DBQuery.is(Chat.PBFID, pbfId);
+        if (before != null) {
+            query = query.lessThan("_id", before);
+        }
+        return chatCollection.find(query)
+                .setReadPreference(CivSingleton.instance().readRouting().readOnly(pbfId))
+                .sort(DBSort.desc("_id"))
+                .limit(limit)
+                .toArray();
+    }
+
+    @Override
+    public List<Chat> findPublic(int limit) {
+        return chatCollection.find(DBQuery.notExists(Chat.PBFID).greaterThan(Chat.EXPIRE_AT, new Date()))
+                .sort(DBSort.desc("_id"))
+                .limit(limit)
+                .toArray();
+    }
+
+    @Override
+    public List<Chat> findAll() {
+        return chatCollection.find().toArray();
+    }
+
+    @Override
+    public long count() {
+        return chatCollection.count();
+    }
+
+    @Override
+    public String insert(Chat chat) {
+        String id = chatCollection.insert(chat).getSavedId();
+        if (chat.getPbfId() != null) {
+            CivSingleton.instance().readRouting().wrote(chat.getPbfId());
+        }
+        return id;
+    }
+
+    @Override
+    public boolean delete(String chatId) {
+        return chatCollection.removeById(chatId).getN() > 0;
+    }
+
+    @Override
+    public int deleteByPbfIds(Collection<String> pbfIds) {
+        return chatCollection.remove(DBQuery.in(Chat.PBFID, pbfIds)).getN();
+    }
+
+    @Override
+    public int deleteByIds(Collection<String> chatIds) {
+        return chatCollection.remove(DBQuery.in("_id", chatIds.stream().map(ObjectId::new).collect(toList()))).getN();
+    }
+
+    @Override
+    public int deletePublic() {
+        return chatCollection.remove(DBQuery.or(DBQuery.notExists(Chat.PBFID), DBQuery.is(Chat.PBFID, ""))).getN();
+    }
+
+    /**
+     * Also sets expireAt on public chat from before it was stored, from the time in its id
+     */
+    @Override
+    public void createIndexes() {
+        chatCollection.createIndex(new BasicDBObject(Chat.PBFID, 1).append("_id", -1));
+        chatCollection.createIndex(new BasicDBObject(Chat.EXPIRE_AT, 1), new BasicDBObject("expireAfterSeconds", 0));
+
+        DBCollection collection = chatCollection.getDbCollection();
+        DBObject withoutExpiry = new BasicDBObject(Chat.PBFID, new BasicDBObject("$exists", false))
+                .append(Chat.EXPIRE_AT, new BasicDBObject("$exists", false));
+        for (DBObject chat : collection.find(withoutExpiry, new BasicDBObject("_id", 1))) {
+            Date created = ((ObjectId) chat.get("_id")).getDate();
+            Date expireAt = Date.from(created.toInstant().plus(Chat.PUBLIC_CHAT_DAYS, ChronoUnit.DAYS));
+            collection.update(new BasicDBObject("_id", chat.get("_id")), new BasicDBObject("$set", new BasicDBObject(Chat.EXPIRE_AT, expireAt)));
+        }
+    }
+}
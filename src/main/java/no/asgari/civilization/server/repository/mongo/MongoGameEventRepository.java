@@ -0,0 +1,114 @@
+/*
+ * Copyright (c) 2015 Shervin Asgari
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package no.asgari.civilization.server.repository.mongo;
+
+import com.mongodb.BasicDBObject;
+import com.mongodb.DB;
+import com.mongodb.DBCollection;
+import com.mongodb.DBObject;
+import no.asgari.civilization.server.application.CivSingleton;
+import no.asgari.civilization.server.model.GameEvent;
+import no.asgari.civilization.server.repository.GameEventRepository;
+import org.mongojack.DBQuery;
+import org.mongojack.DBSort;
+import org.mongojack.JacksonDBCollection;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * The sequence of each game is a counter document, incremented with findAndModify before the event is inserted.
+ * Two appends can therefore be inserted in the opposite order of their sequence,
+ * which is why reads stop at the first missing sequence until it is either written or clearly lost.
+ */
+public class MongoGameEventRepository implements GameEventRepository {
+    public static final String SEQUENCE_COL_NAME = "gameevent_sequence";
+    //An append that hasn't been inserted after this long has failed, and its sequence is never used
+    private static final long LOST_SEQUENCE_SECONDS = 10;
+
+    private final JacksonDBCollection<GameEvent, String> eventCollection;
+    private final DBCollection sequenceCollection;
+
+    public MongoGameEventRepository(DB db) {
+        this.eventCollection = JacksonDBCollection.wrap(db.getCollection(GameEvent.COL_NAME), GameEvent.class, String.class);
+        this.sequenceCollection = db.getCollection(SEQUENCE_COL_NAME);
+    }
+
+    @Override
+    public GameEvent append(GameEvent event) {
+        DBObject counter = sequenceCollection.findAndModify(new BasicDBObject("_id", event.getPbfId()), null, null, false,
+                new BasicDBObject("$inc", new BasicDBObject(GameEvent.SEQUENCE, 1L)), true, true);
+        event.setSequence(((Number) counter.get(GameEvent.SEQUENCE)).longValue());
+        if (event.getCreated() == null) {
+            event.setCreated(LocalDateTime.now());
+        }
+        event.setId(eventCollection.insert(event).getSavedId());
+        CivSingleton.instance().readRouting().wrote(event.getPbfId());
+        return event;
+    }
+
+    @Override
+    public List<GameEvent> findByPbfId(String pbfId, long afterSequence, int limit) {
+        List<GameEvent> events = eventCollection.find(DBQuery.is(GameEvent.PBFID, pbfId).greaterThan(GameEvent.SEQUENCE, afterSequence))
+                .setReadPreference(CivSingleton.instance().readRouting().readOnly(pbfId))
+                .sort(DBSort.asc(GameEvent.SEQUENCE))
+                .limit(limit)
+                .toArray();
+
+        List<GameEvent> contiguous = new ArrayList<>(events.size());
+        long expected = afterSequence + 1;
+        for (GameEvent event : events) {
+            if (event.getSequence() != expected && event.getCreated().isAfter(LocalDateTime.now().minusSeconds(LOST_SEQUENCE_SECONDS))) {
+                break;
+            }
+            contiguous.add(event);
+            expected = event.getSequence() + 1;
+        }
+        return contiguous;
+    }
+
+    @Override
+    public long lastSequence(String pbfId) {
+        DBObject counter = sequenceCollection.findOne(new BasicDBObject("_id", pbfId));
+        return counter == null ? 0 : ((Number) counter.get(GameEvent.SEQUENCE)).longValue();
+    }
+
+    @Override
+    public Optional<GameEvent> findByGameLogId(String pbfId, String gameLogId) {
+        return Optional.ofNullable(eventCollection.findOne(DBQuery.is(GameEvent.GAMELOG_ID, gameLogId).is(GameEvent.PBFID, pbfId)));
+    }
+
+    @Override
+    public void deleteByPbfId(String pbfId) {
+        eventCollection.remove(DBQuery.is(GameEvent.PBFID, pbfId));
+        sequenceCollection.remove(new BasicDBObject("_id", pbfId));
+    }
+
+    @Override
+    public void deleteByPbfIds(Collection<String> pbfIds) {
+        eventCollection.remove(DBQuery.in(GameEvent.PBFID, pbfIds));
+        sequenceCollection.remove(new BasicDBObject("_id", new BasicDBObject("$in", pbfIds)));
+    }
+
+    @Override
+    public void createIndexes() {
+        eventCollection.createIndex(new BasicDBObject(GameEvent.PBFID, 1).append(GameEvent.SEQUENCE, 1), new BasicDBObject("unique", true));
+        eventCollection.createIndex(new BasicDBObject(GameEvent.GAMELOG_ID, 1), new BasicDBObject("sparse", true));
+    }
+}
@@ -0,0 +1,147 @@
+/*
+ * Copyright (c) 2015 Shervin Asgari
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package no.asgari.civilization.server.repository.mongo;
+
+import com.mongodb.BasicDBObject;
+import com.mongodb.DB;
+import lombok.extern.log4j.Log4j;
+import no.asgari.civilization.server.application.CivSingleton;
+import no.asgari.civilization.server.model.GameLog;
+import no.asgari.civilization.server.repository.GameLogRepository;
+import org.mongojack.DBQuery;
+import org.mongojack.DBUpdate;
+import org.bson.types.ObjectId;
+import org.mongojack.JacksonDBCollection;
+
+import java.util.Collection;
+import java.util.List;
+
+import static java.util.stream.Collectors.toList;
+
+@Log4j
+public class MongoGameLogRepository implements GameLogRepository {
+    private final JacksonDBCollection<GameLog, String> gameLogCollection;
+
+    public MongoGameLogRepository(DB db) {
+        this.gameLogCollection = JacksonDBCollection.wrap(db.getCollection(GameLog.COL_NAME), GameLog.class, String.class);
+    }
+
+    @Override
+    public GameLog findById(String gameLogId) {
+        return gameLogCollection.findOneById(gameLogId);
+    }
+
+    @Override
+    public List<GameLog> findByPbfId(String pbfId) {
+        return gameLogCollection.find(DBQuery.is("pbfId", pbfId)).toArray();
+    }
+
+    @Override
+    public List<GameLog> findByPbfIdReadOnly(String pbfId) {
+        return gameLogCollection.find(DBQuery.is("pbfId", pbfId))
+                .setReadPreference(CivSingleton.instance().readRouting().readOnly(pbfId))
+                .toArray();
+    }
+
+    @Override
+    public List<GameLog> findByPbfIdAndUsername(String pbfId, String username) {
+        return gameLogCollection.find(DBQuery.is("pbfId", pbfId).is("username", username)).toArray();
+    }
+
+    @Override
+    public List<GameLog> findByPbfIdAndUndoState(String pbfId, GameLog.UndoState undoState) {
+        return gameLogCollection.find(DBQuery.is(GameLog.PBFID, pbfId).is(GameLog.UNDO_STATE, undoState)).toArray();
+    }
+
+    @Override
+    public List<GameLog> findAll() {
+        return gameLogCollection.find().toArray();
+    }
+
+    @Override
+    public long count() {
+        return gameLogCollection.count();
+    }
+
+    @Override
+    public String insert(GameLog gameLog) {
+        String id = gameLogCollection.insert(gameLog).getSavedId();
+        if (gameLog.getPbfId() != null) {
+            CivSingleton.instance().readRouting().wrote(gameLog.getPbfId());
+        }
+        return id;
+    }
+
+    @Override
+    public void update(GameLog gameLog) {
+        gameLogCollection.updateById(gameLog.getId(), gameLog);
+    }
+
+    @Override
+    public GameLog vote(String gameLogId, String playerId, boolean vote) {
+        GameLog gameLog = gameLogCollection.findAndModify(activeUndo(gameLogId), null, null, false,
+                DBUpdate.set("draw.undo.votes." + playerId, vote), true, false);
+        if (gameLog != null) {
+            CivSingleton.instance().readRouting().wrote(gameLog.getPbfId());
+        }
+        return gameLog;
+    }
+
+    @Override
+    public boolean finishUndo(String gameLogId) {
+        return gameLogCollection.update(activeUndo(gameLogId),
+                DBUpdate.set("draw.undo.done", true).set(GameLog.UNDO_STATE, GameLog.UndoState.FINISHED)).getN() == 1;
+    }
+
+    @Override
+    public void reopenUndo(String gameLogId) {
+        gameLogCollection.update(DBQuery.is("_id", new ObjectId(gameLogId)).is("draw.undo.done", true),
+                DBUpdate.set("draw.undo.done", false).set(GameLog.UNDO_STATE, GameLog.UndoState.ACTIVE));
+    }
+
+    private static DBQuery.Query activeUndo(String gameLogId) {
+        return DBQuery.is("_id", new ObjectId(gameLogId)).is("draw.undo.done", false);
+    }
+
+    @Override
+    public boolean delete(String gameLogId) {
+        return gameLogCollection.removeById(gameLogId).getN() > 0;
+    }
+
+    @Override
+    public int deleteByPbfIds(Collection<String> pbfIds) {
+        return gameLogCollection.remove(DBQuery.in(GameLog.PBFID, pbfIds)).getN();
+    }
+
+    @Override
+    public int deleteByIds(Collection<String> gameLogIds) {
+        return gameLogCollection.remove(DBQuery.in("_id", gameLogIds.stream().map(ObjectId::new).collect(toList()))).getN();
+    }
+
+    /**
+     * Also writes undoState to logs from before it was stored, so the index finds them
+     */
+    @Override
+    public void createIndexes() {
+        gameLogCollection.createIndex(new BasicDBObject(GameLog.PBFID, 1).append(GameLog.UNDO_STATE, 1));
+
+        List<GameLog> withoutUndoState = gameLogCollection.find(DBQuery.exists("draw.undo").notExists(GameLog.UNDO_STATE)).toArray();
+        withoutUndoState.forEach(this::update);
+        if (!withoutUndoState.isEmpty()) {
+            log.info("Added undoState to " + withoutUndoState.size() + " game logs");
+        }
+    }
+}
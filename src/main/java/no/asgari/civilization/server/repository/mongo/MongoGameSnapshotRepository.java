@@ -0,0 +1,74 @@
+/*
+ * Copyright (c) 2015 Shervin Asgari
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package no.asgari.civilization.server.repository.mongo;
+
+import com.mongodb.BasicDBObject;
+import com.mongodb.DB;
+import no.asgari.civilization.server.model.GameSnapshot;
+import no.asgari.civilization.server.repository.GameSnapshotRepository;
+import org.mongojack.DBQuery;
+import org.mongojack.DBSort;
+import org.mongojack.JacksonDBCollection;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+public class MongoGameSnapshotRepository implements GameSnapshotRepository {
+    private final JacksonDBCollection<GameSnapshot, String> snapshotCollection;
+
+    public MongoGameSnapshotRepository(DB db) {
+        this.snapshotCollection = JacksonDBCollection.wrap(db.getCollection(GameSnapshot.COL_NAME), GameSnapshot.class, String.class);
+    }
+
+    @Override
+    public void save(GameSnapshot snapshot) {
+        snapshotCollection.insert(snapshot);
+
+        List<GameSnapshot> kept = snapshotCollection.find(DBQuery.is(GameSnapshot.PBFID, snapshot.getPbfId()), new BasicDBObject(GameSnapshot.SEQUENCE, 1))
+                .sort(DBSort.desc(GameSnapshot.SEQUENCE))
+                .limit(SNAPSHOTS_KEPT)
+                .toArray();
+        if (kept.size() == SNAPSHOTS_KEPT) {
+            snapshotCollection.remove(DBQuery.is(GameSnapshot.PBFID, snapshot.getPbfId())
+                    .lessThan(GameSnapshot.SEQUENCE, kept.get(SNAPSHOTS_KEPT - 1).getSequence()));
+        }
+    }
+
+    @Override
+    public Optional<GameSnapshot> findLatest(String pbfId, long atOrBeforeSequence) {
+        return snapshotCollection.find(DBQuery.is(GameSnapshot.PBFID, pbfId).lessThanEquals(GameSnapshot.SEQUENCE, atOrBeforeSequence))
+                .sort(DBSort.desc(GameSnapshot.SEQUENCE))
+                .limit(1)
+                .toArray().stream()
+                .findFirst();
+    }
+
+    @Override
+    public void deleteByPbfId(String pbfId) {
+        snapshotCollection.remove(DBQuery.is(GameSnapshot.PBFID, pbfId));
+    }
+
+    @Override
+    public void deleteByPbfIds(Collection<String> pbfIds) {
+        snapshotCollection.remove(DBQuery.in(GameSnapshot.PBFID, pbfIds));
+    }
+
+    @Override
+    public void createIndexes() {
+        snapshotCollection.createIndex(new BasicDBObject(GameSnapshot.PBFID, 1).append(GameSnapshot.SEQUENCE, -1));
+    }
+}
@@ -0,0 +1,67 @@
+/*
+ * Copyright (c) 2015 Shervin Asgari
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package no.asgari.civilization.server.repository.mongo;
+
+import com.mongodb.BasicDBObject;
+import com.mongodb.DB;
+import com.mongodb.DBCollection;
+import com.mongodb.DuplicateKeyException;
+import no.asgari.civilization.server.repository.LeaseRepository;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Date;
+
+/**
+ * One document per lease, with its owner and when it runs out
+ */
+public class MongoLeaseRepository implements LeaseRepository {
+    public static final String COL_NAME = "lease";
+    private static final String OWNER = "owner";
+    private static final String EXPIRES_AT = "expiresAt";
+
+    private final DBCollection leaseCollection;
+
+    public MongoLeaseRepository(DB db) {
+        this.leaseCollection = db.getCollection(COL_NAME);
+    }
+
+    /**
+     * Upserts only when the lease has run out or is held by the owner.
+     * When another owner holds it, the upsert collides with the existing document and nothing is written
+     */
+    @Override
+    public boolean acquire(String name, String owner, Duration duration) {
+        Date now = new Date();
+        BasicDBObject free = new BasicDBObject("_id", name).append("$or", Arrays.asList(
+                new BasicDBObject(EXPIRES_AT, new BasicDBObject("$lt", now)),
+                new BasicDBObject(OWNER, owner)));
+        try {
+            leaseCollection.update(
+                    free,
+                    new BasicDBObject("$set", new BasicDBObject(OWNER, owner).append(EXPIRES_AT, new Date(now.getTime() + duration.toMillis()))),
+                    true, false);
+            return true;
+        } catch (DuplicateKeyException e) {
+            return false;
+        }
+    }
+
+    @Override
+    public void release(String name, String owner) {
+        leaseCollection.remove(new BasicDBObject("_id", name).append(OWNER, owner));
+    }
+}
@@ -0,0 +1,64 @@
+/*
+ * Copyright (c) 2015 Shervin Asgari
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package no.asgari.civilization.server.repository.mongo;
+
+import com.mongodb.BasicDBObject;
+import com.mongodb.DB;
+import com.mongodb.DBCollection;
+import com.mongodb.DuplicateKeyException;
+import no.asgari.civilization.server.repository.NotificationRepository;
+
+import java.time.Duration;
+import java.util.Date;
+
+/**
+ * One document per key, with the time the email was last sent. Documents expire after {@link NotificationRepository#MAX_INTERVAL}
+ */
+public class MongoNotificationRepository implements NotificationRepository {
+    public static final String COL_NAME = "notification";
+    private static final String SENT_AT = "sentAt";
+
+    private final DBCollection notificationCollection;
+
+    public MongoNotificationRepository(DB db) {
+        this.notificationCollection = db.getCollection(COL_NAME);
+    }
+
+    /**
+     * Upserts only when the last email is older than interval.
+     * When it isn't, the upsert collides with the existing document and nothing is written
+     */
+    @Override
+    public boolean claim(String key, Duration interval) {
+        Date now = new Date();
+        Date sentBefore = new Date(now.getTime() - interval.toMillis());
+        try {
+            notificationCollection.update(
+                    new BasicDBObject("_id", key).append(SENT_AT, new BasicDBObject("$lt", sentBefore)),
+                    new BasicDBObject("$set", new BasicDBObject(SENT_AT, now)),
+                    true, false);
+            return true;
+        } catch (DuplicateKeyException e) {
+            return false;
+        }
+    }
+
+    @Override
+    public void createIndexes() {
+        notificationCollection.createIndex(new BasicDBObject(SENT_AT, 1),
+                new BasicDBObject("expireAfterSeconds", MAX_INTERVAL.getSeconds()));
+    }
+}
@@ -0,0 +1,232 @@
+/*
+ * Copyright (c) 2015 Shervin Asgari
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package no.asgari.civilization.server.repository.mongo;
+
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.base.Preconditions;
+import com.mongodb.BasicDBObject;
+import com.mongodb.DB;
+import com.mongodb.DBObject;
+import com.mongodb.ReadPreference;
+import no.asgari.civilization.server.application.CivSingleton;
+import no.asgari.civilization.server.application.ReadRouting;
+import no.asgari.civilization.server.model.PBF;
+import no.asgari.civilization.server.model.PBFPart;
+import no.asgari.civilization.server.repository.PBFRepository;
+import org.bson.BasicBSONEncoder;
+import org.bson.types.ObjectId;
+import org.mongojack.DBQuery;
+import org.mongojack.JacksonDBCollection;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.UUID;
+
+import static java.util.stream.Collectors.toList;
+
+public class MongoPBFRepository implements PBFRepository {
+    private static final String PLAYERS = "players";
+    private static final String PLAYER_ID = "playerId";
+    private static final String REVISION = "revision";
+
+    private final JacksonDBCollection<PBF, String> pbfCollection;
+
+    public MongoPBFRepository(DB db) {
+        this.pbfCollection = JacksonDBCollection.wrap(db.getCollection(PBF.COL_NAME), PBF.class, String.class);
+    }
+
+    @Override
+    public PBF findById(String pbfId) {
+        return findById(pbfId, ReadPreference.primary());
+    }
+
+    @Override
+    public PBF findByIdReadOnly(String pbfId) {
+        return findById(pbfId, CivSingleton.instance().readRouting().readOnly(pbfId));
+    }
+
+    private PBF findById(String pbfId, ReadPreference readPreference) {
+        DBObject dbObject = pbfCollection.getDbCollection().findOne(new BasicDBObject("_id", new ObjectId(pbfId)), null, readPreference);
+        if (dbObject == null) {
+            return null;
+        }
+        CivSingleton.instance().metrics().histogram(MetricRegistry.name(PBF.class, "size", "load")).update(sizeOf(dbObject));
+        return pbfCollection.convertFromDbObject(dbObject);
+    }
+
+    @Override
+    public PBF findParts(String pbfId, PBFPart... parts) {
+        return findFields(pbfId, fields(parts));
+    }
+
+    @Override
+    public PBF findWithPlayer(String pbfId, String playerId, PBFPart... parts) {
+        Preconditions.checkArgument(!Arrays.asList(parts).contains(PBFPart.PLAYERS), "The players are already loaded");
+        BasicDBObject fields = fields(parts)
+                .append(PLAYERS, new BasicDBObject("$elemMatch", new BasicDBObject(PLAYER_ID, playerId)));
+        return findFields(pbfId, fields);
+    }
+
+    private PBF findFields(String pbfId, DBObject fields) {
+        DBObject dbObject = pbfCollection.getDbCollection().findOne(new BasicDBObject("_id", new ObjectId(pbfId)), fields, ReadPreference.primary());
+        if (dbObject == null) {
+            return null;
+        }
+        CivSingleton.instance().metrics().histogram(MetricRegistry.name(PBF.class, "size", "loadParts")).update(sizeOf(dbObject));
+        return pbfCollection.convertFromDbObject(dbObject);
+    }
+
+    /**
+     * The revision is always loaded, since the partial write checks it
+     */
+    private static BasicDBObject fields(PBFPart... parts) {
+        BasicDBObject fields = new BasicDBObject(REVISION, 1);
+        for (PBFPart part : parts) {
+            part.getFields().forEach(field -> fields.append(field, 1));
+        }
+        return fields;
+    }
+
+    @Override
+    public List<PBF> findAll() {
+        return pbfCollection.find().toArray();
+    }
+
+    @Override
+    public List<PBF> findAllReadOnly() {
+        return pbfCollection.find()
+                .setReadPreference(CivSingleton.instance().readRouting().readOnly(PBF.COL_NAME))
+                .toArray();
+    }
+
+    @Override
+    public List<String> findAbortedIds(int limit) {
+        List<String> ids = new ArrayList<>();
+        pbfCollection.getDbCollection().find(new BasicDBObject("active", false).append("winner", null), new BasicDBObject("_id", 1))
+                .limit(limit)
+                .forEach(dbObject -> ids.add(dbObject.get("_id").toString()));
+        return ids;
+    }
+
+    @Override
+    public List<String> findFinishedIds(int limit) {
+        List<String> ids = new ArrayList<>();
+        BasicDBObject hasWinner = new BasicDBObject("$nin", Arrays.asList(null, ""));
+        pbfCollection.getDbCollection().find(new BasicDBObject("active", false).append("winner", hasWinner), new BasicDBObject("_id", 1))
+                .limit(limit)
+                .forEach(dbObject -> ids.add(dbObject.get("_id").toString()));
+        return ids;
+    }
+
+    @Override
+    public String insert(PBF pbf) {
+        pbf.setRevision(UUID.randomUUID().toString());
+        String id = pbfCollection.insert(pbf).getSavedId();
+        wrote(id);
+        return id;
+    }
+
+    /**
+     * Writes the whole PBF document back
+     */
+    @Override
+    public boolean update(PBF pbf) {
+        pbf.setRevision(UUID.randomUUID().toString());
+        DBObject dbObject = pbfCollection.convertToDbObject(pbf);
+        CivSingleton.instance().metrics().histogram(MetricRegistry.name(PBF.class, "size", "save")).update(sizeOf(dbObject));
+        boolean written = pbfCollection.getDbCollection().update(new BasicDBObject("_id", new ObjectId(pbf.getId())), dbObject).getN() > 0;
+        wrote(pbf.getId());
+        return written;
+    }
+
+    @Override
+    public boolean updateParts(PBF pbf, PBFPart... parts) {
+        String loaded = pbf.getRevision();
+        pbf.setRevision(UUID.randomUUID().toString());
+        DBObject dbObject = pbfCollection.convertToDbObject(pbf);
+        BasicDBObject set = set(dbObject, parts).append(REVISION, pbf.getRevision());
+        boolean written = pbfCollection.getDbCollection().update(new BasicDBObject("_id", new ObjectId(pbf.getId())).append(REVISION, loaded),
+                new BasicDBObject("$set", set)).getN() > 0;
+        wrote(pbf.getId());
+        return written;
+    }
+
+    /**
+     * Sets the element of players matched by the query, so the other players are not touched
+     */
+    @Override
+    public boolean updatePlayer(PBF pbf, String playerId, PBFPart... parts) {
+        Preconditions.checkArgument(!Arrays.asList(parts).contains(PBFPart.PLAYERS), "The player is already written");
+        String loaded = pbf.getRevision();
+        pbf.setRevision(UUID.randomUUID().toString());
+        DBObject dbObject = pbfCollection.convertToDbObject(pbf);
+        DBObject playerhand = ((List<?>) dbObject.get(PLAYERS)).stream()
+                .map(DBObject.class::cast)
+                .filter(p -> playerId.equals(p.get(PLAYER_ID)))
+                .findFirst()
+                .orElseThrow(() -> new IllegalArgumentException("Player " + playerId + " is not in the game"));
+
+        BasicDBObject set = set(dbObject, parts)
+                .append(PLAYERS + ".$", playerhand)
+                .append(REVISION, pbf.getRevision());
+        CivSingleton.instance().metrics().histogram(MetricRegistry.name(PBF.class, "size", "saveParts")).update(sizeOf(set));
+        BasicDBObject query = new BasicDBObject("_id", new ObjectId(pbf.getId()))
+                .append(PLAYERS + "." + PLAYER_ID, playerId)
+                .append(REVISION, loaded);
+        boolean written = pbfCollection.getDbCollection().update(query, new BasicDBObject("$set", set)).getN() > 0;
+        wrote(pbf.getId());
+        return written;
+    }
+
+    private static BasicDBObject set(DBObject dbObject, PBFPart... parts) {
+        BasicDBObject set = new BasicDBObject();
+        for (PBFPart part : parts) {
+            Preconditions.checkArgument(part.isWritable(), part + " can only be read");
+            part.getFields().forEach(field -> set.append(field, dbObject.get(field)));
+        }
+        return set;
+    }
+
+    @Override
+    public boolean delete(String pbfId) {
+        boolean deleted = pbfCollection.removeById(pbfId).getN() > 0;
+        wrote(pbfId);
+        return deleted;
+    }
+
+    @Override
+    public int deleteAll(Collection<String> pbfIds) {
+        List<ObjectId> ids = pbfIds.stream().map(ObjectId::new).collect(toList());
+        int deleted = pbfCollection.getDbCollection().remove(new BasicDBObject("_id", new BasicDBObject("$in", ids))).getN();
+        pbfIds.forEach(MongoPBFRepository::wrote);
+        return deleted;
+    }
+
+    /**
+     * Every write of a game also changes the game list, ie its status, winner or players
+     */
+    private static void wrote(String pbfId) {
+        ReadRouting readRouting = CivSingleton.instance().readRouting();
+        readRouting.wrote(pbfId);
+        readRouting.wrote(PBF.COL_NAME);
+    }
+
+    private static int sizeOf(DBObject dbObject) {
+        return new BasicBSONEncoder().encode(dbObject).length;
+    }
+}
@@ -0,0 +1,100 @@
+/*
+ * Copyright (c) 2015 Shervin Asgari
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package no.asgari.civilization.server.repository.mongo;
+
+import com.mongodb.BasicDBObject;
+import com.mongodb.DB;
+import lombok.Cleanup;
+import no.asgari.civilization.server.application.CivSingleton;
+import no.asgari.civilization.server.model.Player;
+import no.asgari.civilization.server.repository.PlayerRepository;
+import org.mongojack.DBCursor;
+import org.mongojack.DBQuery;
+import org.mongojack.JacksonDBCollection;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+public class MongoPlayerRepository implements PlayerRepository {
+    private final JacksonDBCollection<Player, String> playerCollection;
+
+    public MongoPlayerRepository(DB db) {
+        this.playerCollection = JacksonDBCollection.wrap(db.getCollection(Player.COL_NAME), Player.class, String.class);
+    }
+
+    @Override
+    public Player findById(String playerId) {
+        return playerCollection.findOneById(playerId);
+    }
+
+    @Override
+    public Player findByUsername(String username) {
+        return playerCollection.findOne(DBQuery.is(Player.USERNAME, username));
+    }
+
+    @Override
+    public Player findByEmail(String email) {
+        return playerCollection.findOne(DBQuery.is(Player.EMAIL, email));
+    }
+
+    @Override
+    public String findUsernameById(String playerId) {
+        Player player = playerCollection.findOneById(playerId, new BasicDBObject(Player.USERNAME, 1));
+        return player == null ? null : player.getUsername();
+    }
+
+    /**
+     * One query that only fetches the usernames
+     */
+    @Override
+    public Map<String, String> findAllUsernames() {
+        Map<String, String> usernames = new HashMap<>();
+        @Cleanup DBCursor<Player> players = playerCollection.find(new BasicDBObject(), new BasicDBObject(Player.USERNAME, 1));
+        for (Player player : players) {
+            usernames.put(player.getId(), player.getUsername());
+        }
+        return usernames;
+    }
+
+    @Override
+    public List<Player> findAll() {
+        return playerCollection.find().toArray();
+    }
+
+    @Override
+    public List<Player> findAllReadOnly() {
+        return playerCollection.find().setReadPreference(CivSingleton.instance().readRouting().readOnly()).toArray();
+    }
+
+    @Override
+    public String insert(Player player) {
+        return playerCollection.insert(player).getSavedId();
+    }
+
+    @Override
+    public void update(Player player) {
+        playerCollection.updateById(player.getId(), player);
+    }
+
+    @Override
+    public void createIndexes() {
+        if (playerCollection.getIndexInfo().isEmpty()) {
+            playerCollection.createIndex(new BasicDBObject(Player.USERNAME, 1), new BasicDBObject("unique", true));
+            playerCollection.createIndex(new BasicDBObject(Player.EMAIL, 1), new BasicDBObject("unique", true));
+        }
+    }
+}
@@ -0,0 +1,41 @@
+/*
+ * Copyright (c) 2015 Shervin Asgari
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package no.asgari.civilization.server.repository.mongo;
+
+import com.mongodb.DB;
+import no.asgari.civilization.server.model.tournament.Tournament;
+import no.asgari.civilization.server.repository.TournamentRepository;
+import org.mongojack.JacksonDBCollection;
+
+import java.util.List;
+
+public class MongoTournamentRepository implements TournamentRepository {
+    private final JacksonDBCollection<Tournament, String> tournamentCollection;
+
+    public MongoTournamentRepository(DB db) {
+        this.tournamentCollection = JacksonDBCollection.wrap(db.getCollection(Tournament.COL_NAME), Tournament.class, String.class);
+    }
+
+    @Override
+    public List<Tournament> findAll() {
+        return tournamentCollection.find().toArray();
+    }
+
+    @Override
+    public void save(Tournament tournament) {
+        tournamentCollection.save(tournament);
+    }
+}
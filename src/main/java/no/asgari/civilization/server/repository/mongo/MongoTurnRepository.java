@@ -0,0 +1,133 @@
+/*
+ * Copyright (c) 2015 Shervin Asgari
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package no.asgari.civilization.server.repository.mongo;
+
+import com.mongodb.BasicDBObject;
+import com.mongodb.DB;
+import com.mongodb.DuplicateKeyException;
+import no.asgari.civilization.server.application.CivSingleton;
+import no.asgari.civilization.server.model.PlayerTurn;
+import no.asgari.civilization.server.repository.TurnRepository;
+import org.bson.types.ObjectId;
+import org.mongojack.DBQuery;
+import org.mongojack.DBSort;
+import org.mongojack.DBUpdate;
+import org.mongojack.JacksonDBCollection;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+import static java.util.stream.Collectors.toList;
+
+public class MongoTurnRepository implements TurnRepository {
+    private final JacksonDBCollection<PlayerTurn, String> turnCollection;
+
+    public MongoTurnRepository(DB db) {
+        this.turnCollection = JacksonDBCollection.wrap(db.getCollection(PlayerTurn.COL_NAME), PlayerTurn.class, String.class);
+    }
+
+    @Override
+    public Optional<PlayerTurn> find(String pbfId, String username, int turnNumber) {
+        return Optional.ofNullable(turnCollection.findOne(key(pbfId, username, turnNumber)));
+    }
+
+    @Override
+    public List<PlayerTurn> findByPbfId(String pbfId) {
+        return turnCollection.find(DBQuery.is(PlayerTurn.PBFID, pbfId))
+                .setReadPreference(CivSingleton.instance().readRouting().readOnly(pbfId))
+                .sort(DBSort.asc(PlayerTurn.TURN_NUMBER).asc(PlayerTurn.USERNAME))
+                .toArray();
+    }
+
+    @Override
+    public List<PlayerTurn> findByPbfIdAndUsername(String pbfId, String username) {
+        return turnCollection.find(DBQuery.is(PlayerTurn.PBFID, pbfId).is(PlayerTurn.USERNAME, username))
+                .sort(DBSort.asc(PlayerTurn.TURN_NUMBER))
+                .toArray();
+    }
+
+    @Override
+    public List<PlayerTurn> findByPbfIdAndTurnNumber(String pbfId, int turnNumber) {
+        return turnCollection.find(DBQuery.is(PlayerTurn.PBFID, pbfId).is(PlayerTurn.TURN_NUMBER, turnNumber))
+                .setReadPreference(CivSingleton.instance().readRouting().readOnly(pbfId))
+                .sort(DBSort.asc(PlayerTurn.USERNAME))
+                .toArray();
+    }
+
+    @Override
+    public int findLatestTurnNumber(String pbfId) {
+        //Walks the end of the {pbfId, turnNumber, username} index
+        return turnCollection.find(DBQuery.is(PlayerTurn.PBFID, pbfId), new BasicDBObject(PlayerTurn.TURN_NUMBER, 1))
+                .setReadPreference(CivSingleton.instance().readRouting().readOnly(pbfId))
+                .sort(DBSort.desc(PlayerTurn.TURN_NUMBER))
+                .limit(1)
+                .toArray().stream()
+                .findFirst()
+                .map(PlayerTurn::getTurnNumber)
+                .orElse(0);
+    }
+
+    @Override
+    public void save(PlayerTurn turn) {
+        Optional<PlayerTurn> existing = find(turn.getPbfId(), turn.getUsername(), turn.getTurnNumber());
+        if (existing.isPresent()) {
+            turn.setId(existing.get().getId());
+            turnCollection.updateById(turn.getId(), turn);
+        } else {
+            try {
+                turn.setId(turnCollection.insert(turn).getSavedId());
+            } catch (DuplicateKeyException e) {
+                //Inserted by someone else in the meantime
+                turn.setId(null);
+                save(turn);
+                return;
+            }
+        }
+        CivSingleton.instance().readRouting().wrote(turn.getPbfId());
+    }
+
+    @Override
+    public void rename(String pbfId, String oldUsername, String newUsername) {
+        turnCollection.update(DBQuery.is(PlayerTurn.PBFID, pbfId).is(PlayerTurn.USERNAME, oldUsername),
+                DBUpdate.set(PlayerTurn.USERNAME, newUsername), false, true);
+    }
+
+    @Override
+    public void deleteByPbfId(String pbfId) {
+        turnCollection.remove(DBQuery.is(PlayerTurn.PBFID, pbfId));
+    }
+
+    @Override
+    public void deleteByPbfIds(Collection<String> pbfIds) {
+        turnCollection.remove(DBQuery.in(PlayerTurn.PBFID, pbfIds));
+    }
+
+    @Override
+    public int deleteByIds(Collection<String> turnIds) {
+        return turnCollection.remove(DBQuery.in("_id", turnIds.stream().map(ObjectId::new).collect(toList()))).getN();
+    }
+
+    @Override
+    public void createIndexes() {
+        turnCollection.createIndex(new BasicDBObject(PlayerTurn.PBFID, 1).append(PlayerTurn.TURN_NUMBER, 1).append(PlayerTurn.USERNAME, 1),
+                new BasicDBObject("unique", true));
+    }
+
+    private static DBQuery.Query key(String pbfId, String username, int turnNumber) {
+        return DBQuery.is(PlayerTurn.PBFID, pbfId).is(PlayerTurn.USERNAME, username).is(PlayerTurn.TURN_NUMBER, turnNumber);
+    }
+}
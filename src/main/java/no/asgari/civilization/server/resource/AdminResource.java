@@ -14,14 +14,20 @@
  */
 package no.asgari.civilization.server.resource;
 
-import com.mongodb.DB;
+import com.codahale.metrics.annotation.Timed;
 import io.dropwizard.auth.Auth;
 import lombok.extern.log4j.Log4j;
 import no.asgari.civilization.server.action.AdminAction;
 import no.asgari.civilization.server.action.GameAction;
+import no.asgari.civilization.server.action.GameStateAction;
+import no.asgari.civilization.server.application.CleanupJob;
+import no.asgari.civilization.server.dto.MessageDTO;
+import no.asgari.civilization.server.model.PBF;
 import no.asgari.civilization.server.model.Player;
+import no.asgari.civilization.server.repository.Repositories;
 
 import javax.ws.rs.Consumes;
+import javax.ws.rs.DELETE;
 import javax.ws.rs.GET;
 import javax.ws.rs.POST;
 import javax.ws.rs.PUT;
@@ -43,14 +49,20 @@ import javax.ws.rs.core.UriInfo;
 @Consumes(MediaType.APPLICATION_JSON)
 public class AdminResource {
 
-    private final GameAction gameAction;
     private final AdminAction adminAction;
+    private final GameAction gameAction;
+    private final GameStateAction gameStateAction;
+    private final CleanupJob cleanupJob;
+    private final CleanupJob archiveJob;
     @Context
     private UriInfo uriInfo;
 
-    public AdminResource(DB db) {
-        gameAction = new GameAction(db);
-        adminAction = new AdminAction(db);
+    public AdminResource(AdminAction adminAction, Repositories repositories, CleanupJob cleanupJob, CleanupJob archiveJob) {
+        this.adminAction = adminAction;
+        gameAction = new GameAction(repositories);
+        gameStateAction = new GameStateAction(repositories);
+        this.cleanupJob = cleanupJob;
+        this.archiveJob = archiveJob;
     }
 
     /**
@@ -61,6 +73,7 @@ public class AdminResource {
      */
     @Path("/changeuser")
     @POST
+    @Timed
     //public Response changeUserForGame(@Auth Player admin, @QueryParam("gameid") String gameid,
     public Response changeUserForGame(@QueryParam("gameid") String gameid,
                                       @QueryParam("fromUsername") String fromUsername,
@@ -83,6 +96,7 @@ public class AdminResource {
      */
     @Path("/deletegame")
     @POST
+    @Timed
     public Response deleteGame(@Auth Player admin, @QueryParam("gameid") String gameid) {
         if (!"admin".equals(admin.getUsername())) {
             return Response.status(Response.Status.FORBIDDEN).build();
@@ -96,6 +110,7 @@ public class AdminResource {
 
     @Path("/email/notification/{playerId}/stop")
     @GET
+    @Timed
     @Produces(MediaType.TEXT_HTML)
     @Consumes(MediaType.TEXT_PLAIN)
     public Response stopEmail(@PathParam("playerId") String playerId) {
@@ -117,6 +132,7 @@ public class AdminResource {
 
     @Path("/email/notification/{playerId}/start")
     @GET
+    @Timed
     @Produces(MediaType.TEXT_HTML)
     @Consumes(MediaType.TEXT_PLAIN)
     public Response startEmail(@PathParam("playerId") String playerId) {
@@ -130,14 +146,76 @@ public class AdminResource {
         }
     }
 
+    /**
+     * Starts deleting the aborted games in the background. Progress is in the cleanup metrics
+     */
     @Path("/cleanup")
     @POST
-    public void deleteUnusedLogs() {
-        adminAction.cleanup();
+    @Timed
+    public Response deleteUnusedLogs(@Auth Player admin) {
+        if (!"admin".equals(admin.getUsername())) {
+            return Response.status(Response.Status.FORBIDDEN).build();
+        }
+
+        if (!cleanupJob.runNow()) {
+            return Response.status(Response.Status.CONFLICT)
+                    .entity(new MessageDTO("Cleanup is already running"))
+                    .build();
+        }
+        return Response.accepted().build();
+    }
+
+    /**
+     * Deletes all of the public chat. Not part of the cleanup, since public chat expires by itself
+     */
+    @Path("/chat/public")
+    @DELETE
+    @Timed
+    public Response deletePublicChat(@Auth Player admin) {
+        if (!"admin".equals(admin.getUsername())) {
+            return Response.status(Response.Status.FORBIDDEN).build();
+        }
+
+        adminAction.deletePublicChat();
+        return Response.noContent().build();
+    }
+
+    /**
+     * Starts moving the finished games to the archive in the background. Progress is in the archive metrics
+     */
+    @Path("/archive")
+    @POST
+    @Timed
+    public Response archiveFinishedGames(@Auth Player admin) {
+        if (!"admin".equals(admin.getUsername())) {
+            return Response.status(Response.Status.FORBIDDEN).build();
+        }
+
+        if (!archiveJob.runNow()) {
+            return Response.status(Response.Status.CONFLICT)
+                    .entity(new MessageDTO("Archiving is already running"))
+                    .build();
+        }
+        return Response.accepted().build();
     }
 
+    /**
+     * The game rebuilt from its snapshots and events, as it was after the event with the given sequence
+     */
+    @GET
+    @Timed
+    @Path("/game/{pbfId}/state")
+    public Response getGameState(@Auth Player admin, @PathParam("pbfId") String pbfId, @QueryParam("at") long sequence) {
+        if (!"admin".equals(admin.getUsername())) {
+            return Response.status(Response.Status.FORBIDDEN).build();
+        }
+
+        PBF pbf = gameStateAction.stateAt(pbfId, sequence);
+        return Response.ok().entity(pbf).build();
+    }
 
     @PUT
+    @Timed
     @Path("/mail")
     @Consumes(MediaType.TEXT_PLAIN)
     @Produces(MediaType.TEXT_PLAIN)
@@ -147,6 +225,7 @@ public class AdminResource {
     }
 
     @POST
+    @Timed
     @Path("/taketurn")
     @Consumes(MediaType.TEXT_PLAIN)
     @Produces(MediaType.TEXT_PLAIN)
@@ -19,19 +19,14 @@ import com.codahale.metrics.annotation.Timed;
 import com.google.common.base.CharMatcher;
 import com.google.common.base.Preconditions;
 import com.google.common.html.HtmlEscapers;
-import com.mongodb.BasicDBObject;
-import com.mongodb.DB;
 import io.dropwizard.auth.basic.BasicCredentials;
-import lombok.Cleanup;
 import lombok.extern.log4j.Log4j;
 import no.asgari.civilization.server.action.PlayerAction;
 import no.asgari.civilization.server.application.CivAuthenticator;
 import no.asgari.civilization.server.dto.CheckNameDTO;
 import no.asgari.civilization.server.dto.ForgotpassDTO;
 import no.asgari.civilization.server.model.Player;
-import org.mongojack.DBCursor;
-import org.mongojack.DBQuery;
-import org.mongojack.JacksonDBCollection;
+import no.asgari.civilization.server.repository.Repositories;
 
 import javax.validation.constraints.NotNull;
 import javax.ws.rs.Consumes;
@@ -56,26 +51,25 @@ import java.util.Optional;
 @Consumes(MediaType.APPLICATION_JSON)
 public class AuthResource {
 
-    private final DB db;
-    private final JacksonDBCollection<Player, String> playerCollection;
+    private final Repositories repositories;
 
     @Context
     private UriInfo uriInfo;
 
-    public AuthResource(DB db) {
-        this.db = db;
-        this.playerCollection = JacksonDBCollection.wrap(db.getCollection(Player.COL_NAME), Player.class, String.class);
+    public AuthResource(Repositories repositories) {
+        this.repositories = repositories;
     }
 
     @POST
     @Consumes(value = MediaType.APPLICATION_FORM_URLENCODED)
     @Produces(value = MediaType.APPLICATION_JSON)
     @Path("/login")
+    @Timed
     public Response login(@FormParam("username") @NotNull String username, @FormParam("password") @NotNull String password) {
         Preconditions.checkNotNull(username);
         Preconditions.checkNotNull(password);
 
-        CivAuthenticator auth = new CivAuthenticator(db);
+        CivAuthenticator auth = new CivAuthenticator(repositories);
         Optional<Player> playerOptional = auth.authenticate(new BasicCredentials(username, password));
         if (playerOptional.isPresent()) {
             Player player = playerOptional.get();
@@ -98,12 +92,13 @@ public class AuthResource {
     @POST
     @Consumes(MediaType.APPLICATION_FORM_URLENCODED)
     @Path("/register")
+    @Timed
     public Response register(@FormParam("username") @NotNull String username, @FormParam("password") @NotNull String password, @FormParam("email") @NotNull String email) {
         Preconditions.checkNotNull(username);
         Preconditions.checkNotNull(password);
         Preconditions.checkNotNull(email);
 
-        PlayerAction playerAction = new PlayerAction(db);
+        PlayerAction playerAction = new PlayerAction(repositories);
         try {
             String playerId = playerAction.createPlayer(username, password, email);
             return Response.status(Response.Status.CREATED)
@@ -120,6 +115,7 @@ public class AuthResource {
 
     @POST
     @Path("/register/check/username")
+    @Timed
     public Response checkUsername(CheckNameDTO nameDTO) {
         Preconditions.checkNotNull(nameDTO);
 
@@ -133,10 +129,7 @@ public class AuthResource {
             return Response.status(Response.Status.FORBIDDEN).entity("{\"invalidChars\":\"true\"}").build();
         }
 
-        @Cleanup DBCursor<Player> dbPlayer = playerCollection.find(
-                DBQuery.is("username", nameDTO.getName().trim()), new BasicDBObject());
-
-        if (dbPlayer.hasNext()) {
+        if (repositories.getPlayers().findByUsername(nameDTO.getName().trim()) != null) {
             return Response.status(Response.Status.FORBIDDEN).entity("{\"isTaken\":\"true\"}").build();
         }
 
@@ -148,7 +141,7 @@ public class AuthResource {
     @Path("/newpassword")
     @Timed
     public Response newPassword(ForgotpassDTO forgotpassDTO) {
-        PlayerAction playerAction = new PlayerAction(db);
+        PlayerAction playerAction = new PlayerAction(repositories);
         boolean yes = playerAction.newPassword(forgotpassDTO);
         if (yes) {
             return Response.ok().build();
@@ -160,8 +153,9 @@ public class AuthResource {
     @Path("/verify/{playerId}")
     @GET
     @Produces(MediaType.TEXT_HTML)
+    @Timed
     public Response verifyPassword(@PathParam("playerId") String playerId) {
-        PlayerAction playerAction = new PlayerAction(db);
+        PlayerAction playerAction = new PlayerAction(repositories);
         boolean yes = playerAction.verifyPassword(playerId);
         if (yes) {
             return Response.ok().entity("<html>Your password was correctly changed. <a href=\"http://playciv.com\">Try to login again </a></html>").build();
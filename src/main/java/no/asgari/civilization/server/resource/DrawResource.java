@@ -16,7 +16,6 @@
 package no.asgari.civilization.server.resource;
 
 import com.codahale.metrics.annotation.Timed;
-import com.mongodb.DB;
 import io.dropwizard.auth.Auth;
 import lombok.extern.log4j.Log4j;
 import no.asgari.civilization.server.SheetName;
@@ -26,6 +25,7 @@ import no.asgari.civilization.server.model.GameLog;
 import no.asgari.civilization.server.model.Item;
 import no.asgari.civilization.server.model.Player;
 import no.asgari.civilization.server.model.Unit;
+import no.asgari.civilization.server.repository.Repositories;
 import org.hibernate.validator.constraints.NotEmpty;
 
 import javax.ws.rs.Consumes;
@@ -49,15 +49,15 @@ import java.util.Optional;
 @Log4j
 public class DrawResource {
 
-    private final DB db;
+    private final Repositories repositories;
     private final DrawAction drawAction;
 
     @Context
     private UriInfo uriInfo;
 
-    public DrawResource(DB db) {
-        this.db = db;
-        this.drawAction = new DrawAction(db);
+    public DrawResource(Repositories repositories) {
+        this.repositories = repositories;
+        this.drawAction = new DrawAction(repositories);
     }
 
     /**
@@ -18,7 +18,6 @@ package no.asgari.civilization.server.resource;
 import com.codahale.metrics.annotation.Timed;
 import com.google.common.base.Preconditions;
 import com.google.common.base.Strings;
-import com.mongodb.DB;
 import io.dropwizard.auth.Auth;
 import lombok.extern.log4j.Log4j;
 import no.asgari.civilization.server.action.GameAction;
@@ -31,22 +30,27 @@ import no.asgari.civilization.server.dto.CivHighscoreDTO;
 import no.asgari.civilization.server.dto.CreateNewGameDTO;
 import no.asgari.civilization.server.dto.DrawDTO;
 import no.asgari.civilization.server.dto.GameDTO;
+import no.asgari.civilization.server.dto.GameEventDTO;
 import no.asgari.civilization.server.dto.GameLogDTO;
 import no.asgari.civilization.server.dto.MessageDTO;
 import no.asgari.civilization.server.dto.PbfDTO;
 import no.asgari.civilization.server.dto.PlayerDTO;
 import no.asgari.civilization.server.dto.PlayerHighscoreDTO;
 import no.asgari.civilization.server.model.Chat;
+import no.asgari.civilization.server.model.GameEvent;
 import no.asgari.civilization.server.model.GameLog;
+import no.asgari.civilization.server.model.Item;
 import no.asgari.civilization.server.model.PBF;
 import no.asgari.civilization.server.model.Player;
 import no.asgari.civilization.server.model.PlayerTurn;
 import no.asgari.civilization.server.model.Tech;
+import no.asgari.civilization.server.repository.Repositories;
 import org.hibernate.validator.constraints.NotEmpty;
 
 import javax.validation.Valid;
 import javax.ws.rs.Consumes;
 import javax.ws.rs.DELETE;
+import javax.ws.rs.DefaultValue;
 import javax.ws.rs.FormParam;
 import javax.ws.rs.GET;
 import javax.ws.rs.POST;
@@ -56,7 +60,10 @@ import javax.ws.rs.PathParam;
 import javax.ws.rs.Produces;
 import javax.ws.rs.QueryParam;
 import javax.ws.rs.core.Context;
+import javax.ws.rs.core.EntityTag;
+import javax.ws.rs.core.GenericEntity;
 import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Request;
 import javax.ws.rs.core.Response;
 import javax.ws.rs.core.UriInfo;
 import java.net.URI;
@@ -72,29 +79,29 @@ import static java.util.stream.Collectors.toList;
 @Consumes(MediaType.APPLICATION_JSON)
 @Log4j
 public class GameResource {
-    private final DB db;
+    private final Repositories repositories;
     private final GameAction gameAction;
     private final GameLogAction gameLogAction;
 
     @Context
     private UriInfo uriInfo;
 
-    public GameResource(DB db) {
-        this.db = db;
-        this.gameAction = new GameAction(db);
-        this.gameLogAction = new GameLogAction(db);
+    public GameResource(Repositories repositories) {
+        this.repositories = repositories;
+        this.gameAction = new GameAction(repositories);
+        this.gameLogAction = new GameLogAction(repositories);
     }
 
     /**
      * This is the default method for this resource.
-     * It will return all active games
+     * It will return all running games, and the finished games that are moved to the archive when archived is true
      *
      * @return
      */
     @GET
     @Timed
-    public Response getAllGames() {
-        List<PbfDTO> games = gameAction.getAllGames();
+    public Response getAllGames(@QueryParam("archived") boolean archived) {
+        List<PbfDTO> games = gameAction.getAllGames(archived);
         return Response.ok()
                 .entity(games)
                 .build();
@@ -122,6 +129,27 @@ public class GameResource {
                 .build();
     }
 
+    /**
+     * The discarded and revealed items of the game, as on the game page.
+     * Answers 304 Not Modified when they haven't changed since the ETag in If-None-Match
+     */
+    @Path("/{pbfId}/revealeditems")
+    @GET
+    @Timed
+    public Response getRevealedItems(@PathParam("pbfId") String pbfId, @Context Request request) {
+        PBF pbf = gameAction.getRevealedItems(pbfId);
+        EntityTag tag = new EntityTag(pbf.getRevealedItemsTag());
+        Response.ResponseBuilder notModified = request.evaluatePreconditions(tag);
+        if (notModified != null) {
+            return notModified.build();
+        }
+        return Response.ok()
+                .entity(new GenericEntity<List<Item>>(pbf.getRevealedItems()) {
+                })
+                .tag(tag)
+                .build();
+    }
+
     /**
      * Will return a collection of all pbf ids
      */
@@ -129,7 +157,7 @@ public class GameResource {
     @GET
     @Timed
     public Response getGamesByPlayer(@Auth Player player) {
-        PlayerAction playerAction = new PlayerAction(db);
+        PlayerAction playerAction = new PlayerAction(repositories);
         Set<String> games = playerAction.getGames(player);
         return Response.ok().entity(games).build();
     }
@@ -140,6 +168,7 @@ public class GameResource {
      */
     @GET
     @Path("/{pbfId}/players")
+    @Timed(name = "getOtherPlayersForPBF")
     public Response getAllPlayersForPBF(@NotEmpty @PathParam("pbfId") String pbfId, @Auth(required = false) Player player) {
         List<PlayerDTO> players = gameAction.getAllPlayers(pbfId);
         if (player != null) {
@@ -157,6 +186,7 @@ public class GameResource {
      */
     @GET
     @Path("/{pbfId}/players/all")
+    @Timed
     public Response getAllPlayersForPBF(@NotEmpty @PathParam("pbfId") String pbfId) {
         List<PlayerDTO> players = gameAction.getAllPlayers(pbfId);
         return Response.ok()
@@ -236,7 +266,7 @@ public class GameResource {
     @Timed
     @Path("/{pbfId}/techs")
     public List<Tech> getAvailableTechs(@NotEmpty @PathParam("pbfId") String pbfId, @Auth Player player) {
-        return new PlayerAction(db).getRemaingTechsForPlayer(player.getId(), pbfId);
+        return new PlayerAction(repositories).getRemaingTechsForPlayer(player.getId(), pbfId);
     }
 
     @GET
@@ -269,6 +299,29 @@ public class GameResource {
         return gameLogDTOs;
     }
 
+    /**
+     * Returns the events of the game after the given sequence, oldest first.
+     * The private log is shown to the player the event belongs to, everyone else sees the public log.
+     * Clients keep the sequence of the last event they got and pass it as after on the next call.
+     */
+    @GET
+    @Timed
+    @Path("/{pbfId}/events")
+    public List<GameEventDTO> getEvents(@NotEmpty @PathParam("pbfId") String pbfId, @Auth(required = false) Player player,
+                                        @QueryParam("after") @DefaultValue("0") long after,
+                                        @QueryParam("limit") @DefaultValue("100") int limit) {
+        String username = player != null ? player.getUsername() : null;
+        List<GameEventDTO> events = new ArrayList<>();
+        for (GameEvent event : gameLogAction.getEvents(pbfId, after, limit)) {
+            String log = event.getUsername() != null && event.getUsername().equals(username) && !Strings.isNullOrEmpty(event.getPrivateLog())
+                    ? event.getPrivateLog() : event.getPublicLog();
+            if (!Strings.isNullOrEmpty(log)) {
+                events.add(new GameEventDTO(event, log));
+            }
+        }
+        return events;
+    }
+
     /**
      * Returns a list of all undoes that are currently initiated and still not finished
      *
@@ -279,7 +332,7 @@ public class GameResource {
     @Path("/{pbfId}/undo/active")
     @Timed
     public Response getAllActiveUndosCurrentlyInProgress(@NotEmpty @PathParam("pbfId") String pbfId) {
-        UndoAction undoAction = new UndoAction(db);
+        UndoAction undoAction = new UndoAction(repositories);
         List<GameLog> gamelogs = undoAction.getAllActiveUndos(pbfId);
         return Response.ok().entity(gamelogs).build();
     }
@@ -294,7 +347,7 @@ public class GameResource {
     @Path("/{pbfId}/undo/finished")
     @Timed
     public Response getAllFinishedUndos(@NotEmpty @PathParam("pbfId") String pbfId) {
-        UndoAction undoAction = new UndoAction(db);
+        UndoAction undoAction = new UndoAction(repositories);
         List<GameLog> gamelogs = undoAction.getAllFinishedUndos(pbfId);
         return Response.ok().entity(gamelogs).build();
     }
@@ -314,7 +367,7 @@ public class GameResource {
     @Timed
     public Response undoItem(@Auth Player player, @NotEmpty @PathParam("pbfId") String pbfId, @NotEmpty @PathParam("gameLogId") String gameLogId) {
         GameLog gameLog = gameLogAction.findGameLogById(gameLogId);
-        UndoAction undoAction = new UndoAction(db);
+        UndoAction undoAction = new UndoAction(repositories);
         undoAction.initiateUndo(gameLog, player.getId());
         return Response.ok().build();
     }
@@ -339,7 +392,7 @@ public class GameResource {
             return Response.status(Response.Status.PRECONDITION_FAILED)
                     .build();
         }
-        UndoAction undoAction = new UndoAction(db);
+        UndoAction undoAction = new UndoAction(repositories);
         undoAction.vote(gameLog, player.getId(), true);
         return Response.ok().build();
     }
@@ -364,7 +417,7 @@ public class GameResource {
             return Response.status(Response.Status.PRECONDITION_FAILED)
                     .build();
         }
-        UndoAction undoAction = new UndoAction(db);
+        UndoAction undoAction = new UndoAction(repositories);
         undoAction.vote(gameLog, player.getId(), false);
         return Response.ok().build();
     }
@@ -377,7 +430,7 @@ public class GameResource {
     public Response chat(@Auth Player player, @FormParam("message") String message, @PathParam("pbfId") String pbfId) {
         Preconditions.checkNotNull(message);
         Chat chat = gameAction.chat(pbfId, message, player.getUsername());
-        return Response.created(URI.create(chat.getId())).entity(gameAction.getChat(pbfId)).build();
+        return Response.created(URI.create(chat.getId())).entity(gameAction.getChat(pbfId, GameAction.CHAT_PAGE, null)).build();
     }
 
     @POST
@@ -391,12 +444,25 @@ public class GameResource {
         return Response.created(URI.create(chat.getId())).entity(gameAction.getPublicChat()).build();
     }
 
+    /**
+     * Gets the chat of the game, newest first
+     *
+     * @param limit  - at most this many, 50 if not given and never more than 500
+     * @param before - id of a chat, to get the chat written before it
+     * @param all    - the whole chat, for clients that don't page
+     */
     @GET
     @Timed
     @Path("/{pbfId}/chat")
     @Produces(value = MediaType.APPLICATION_JSON)
-    public Response getChatList(@PathParam("pbfId") String pbfId) {
-        List<ChatDTO> chats = gameAction.getChat(pbfId);
+    public Response getChatList(@PathParam("pbfId") String pbfId, @QueryParam("limit") @DefaultValue("50") int limit,
+                                @QueryParam("before") String before, @QueryParam("all") boolean all) {
+        if (!all && limit < 1) {
+            return Response.status(Response.Status.BAD_REQUEST)
+                    .entity(new MessageDTO("limit must be at least 1. Use all=true to get the whole chat"))
+                    .build();
+        }
+        List<ChatDTO> chats = gameAction.getChat(pbfId, all ? 0 : Math.min(limit, GameAction.MAX_CHAT_PAGE), before);
         return Response.ok().entity(chats).build();
     }
 
@@ -440,6 +506,7 @@ public class GameResource {
     @GET
     @Path("playerhighscore")
     @Produces(value = MediaType.APPLICATION_JSON)
+    @Timed
     public PlayerHighscoreDTO getPlayerHighscores() {
         return gameAction.getPlayerHighScore();
     }
@@ -447,6 +514,7 @@ public class GameResource {
     @GET
     @Path("civhighscore")
     @Produces(value = MediaType.APPLICATION_JSON)
+    @Timed
     public CivHighscoreDTO getCivHighscore() {
         return gameAction.getCivHighscore();
     }
@@ -454,8 +522,33 @@ public class GameResource {
     @GET
     @Path("/{pbfId}/turns")
     @Produces(value = MediaType.APPLICATION_JSON)
+    @Timed
     public List<PlayerTurn> getAllPublicTurns(@PathParam("pbfId") String pbfId) {
-        TurnAction turnAction = new TurnAction(db);
+        TurnAction turnAction = new TurnAction(repositories);
         return turnAction.getAllPublicTurns(pbfId);
     }
+
+    /**
+     * Returns the given turn of all players
+     */
+    @GET
+    @Path("/{pbfId}/turns/{turnNumber: [0-9]+}")
+    @Produces(value = MediaType.APPLICATION_JSON)
+    @Timed
+    public List<PlayerTurn> getPublicTurns(@PathParam("pbfId") String pbfId, @PathParam("turnNumber") int turnNumber) {
+        TurnAction turnAction = new TurnAction(repositories);
+        return turnAction.getPublicTurns(pbfId, turnNumber);
+    }
+
+    /**
+     * Returns the latest turn of all players
+     */
+    @GET
+    @Path("/{pbfId}/turns/latest")
+    @Produces(value = MediaType.APPLICATION_JSON)
+    @Timed
+    public List<PlayerTurn> getLatestPublicTurns(@PathParam("pbfId") String pbfId) {
+        TurnAction turnAction = new TurnAction(repositories);
+        return turnAction.getLatestPublicTurns(pbfId);
+    }
 }
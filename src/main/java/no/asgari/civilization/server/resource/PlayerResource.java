@@ -17,7 +17,6 @@ package no.asgari.civilization.server.resource;
 
 import com.codahale.metrics.annotation.Timed;
 import com.google.common.base.Strings;
-import com.mongodb.DB;
 import io.dropwizard.auth.Auth;
 import lombok.extern.log4j.Log4j;
 import no.asgari.civilization.server.action.DrawAction;
@@ -25,6 +24,7 @@ import no.asgari.civilization.server.action.GameLogAction;
 import no.asgari.civilization.server.action.PlayerAction;
 import no.asgari.civilization.server.action.TurnAction;
 import no.asgari.civilization.server.action.UndoAction;
+import no.asgari.civilization.server.application.TechBoard;
 import no.asgari.civilization.server.dto.AllTechsDTO;
 import no.asgari.civilization.server.dto.ItemDTO;
 import no.asgari.civilization.server.dto.MessageDTO;
@@ -34,6 +34,7 @@ import no.asgari.civilization.server.model.Player;
 import no.asgari.civilization.server.model.PlayerTurn;
 import no.asgari.civilization.server.model.Playerhand;
 import no.asgari.civilization.server.model.Tech;
+import no.asgari.civilization.server.repository.Repositories;
 import org.hibernate.validator.constraints.NotEmpty;
 
 import javax.validation.Valid;
@@ -47,7 +48,10 @@ import javax.ws.rs.PathParam;
 import javax.ws.rs.Produces;
 import javax.ws.rs.QueryParam;
 import javax.ws.rs.core.Context;
+import javax.ws.rs.core.EntityTag;
+import javax.ws.rs.core.GenericEntity;
 import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Request;
 import javax.ws.rs.core.Response;
 import javax.ws.rs.core.UriInfo;
 import java.util.List;
@@ -61,7 +65,7 @@ import java.util.Set;
 @Consumes(value = MediaType.APPLICATION_JSON)
 @Log4j
 public class PlayerResource {
-    private final DB db;
+    private final Repositories repositories;
     private final PlayerAction playerAction;
     private final UndoAction undoAction;
     private final DrawAction drawAction;
@@ -69,11 +73,11 @@ public class PlayerResource {
     @Context
     private UriInfo uriInfo;
 
-    public PlayerResource(DB db) {
-        this.db = db;
-        this.playerAction = new PlayerAction(db);
-        this.undoAction = new UndoAction(db);
-        this.drawAction = new DrawAction(db);
+    public PlayerResource(Repositories repositories) {
+        this.repositories = repositories;
+        this.playerAction = new PlayerAction(repositories);
+        this.undoAction = new UndoAction(repositories);
+        this.drawAction = new DrawAction(repositories);
     }
 
     /**
@@ -140,6 +144,7 @@ public class PlayerResource {
      */
     @GET
     @Path("/tech/{playerId}")
+    @Timed
     public Response getChosenTechFromPlayer(@PathParam("pbfId") String pbfId, @PathParam("playerId") String playerId) {
         Player pl = playerAction.getPlayerById(playerId);
         if (pl == null) {
@@ -158,8 +163,19 @@ public class PlayerResource {
      */
     @GET
     @Path("/tech/all")
-    public List<AllTechsDTO> getChosenTechFromPlayer(@PathParam("pbfId") String pbfId) {
-        return playerAction.getTechsForAllPlayers(pbfId);
+    @Timed(name = "getChosenTechFromAllPlayers")
+    public Response getChosenTechFromPlayer(@PathParam("pbfId") String pbfId, @Context Request request) {
+        TechBoard techBoard = playerAction.getTechsForAllPlayers(pbfId);
+        EntityTag tag = new EntityTag(techBoard.getTag());
+        Response.ResponseBuilder notModified = request.evaluatePreconditions(tag);
+        if (notModified != null) {
+            return notModified.build();
+        }
+        return Response.ok()
+                .entity(new GenericEntity<List<AllTechsDTO>>(techBoard.getPlayers()) {
+                })
+                .tag(tag)
+                .build();
     }
 
     /**
@@ -217,7 +233,7 @@ public class PlayerResource {
     @Path("/tech/reveal/{gameLogId}")
     @Timed
     public Response revealTech(@Auth Player player, @NotEmpty @PathParam("pbfId") String pbfId, @NotEmpty @PathParam("gameLogId") String gameLogId) {
-        GameLogAction gameLogAction = new GameLogAction(db);
+        GameLogAction gameLogAction = new GameLogAction(repositories);
         GameLog gameLog = gameLogAction.findGameLogById(gameLogId);
         playerAction.revealTech(gameLog, pbfId, player.getId());
         return Response.ok().build();
@@ -287,24 +303,26 @@ public class PlayerResource {
     @Path("/undo")
     @Timed
     public Response getAllUndoThatNeedsVoteFromPlayer(@Auth Player player, @NotEmpty @PathParam("pbfId") String pbfId) {
-        UndoAction undoAction = new UndoAction(db);
-        undoAction.getPlayersActiveUndoes(pbfId, player.getUsername());
-        return Response.ok().build();
+        UndoAction undoAction = new UndoAction(repositories);
+        List<GameLog> gamelogs = undoAction.getUndosNeedingVote(pbfId, player.getId());
+        return Response.ok().entity(gamelogs).build();
     }
 
     @GET
     @Path("turn")
+    @Timed
     public Set<PlayerTurn> getPlayersturns(@Auth Player player, @NotEmpty @PathParam("pbfId") String pbfId) {
-        TurnAction turnAction = new TurnAction(db);
+        TurnAction turnAction = new TurnAction(repositories);
         return turnAction.getPlayersTurns(pbfId, player.getId());
     }
 
     @PUT
     @Path("/turn/update")
+    @Timed
     public Response updateTurn(@Auth Player player, @NotEmpty @PathParam("pbfId") String pbfId,
                                @Valid TurnDTO turn) {
 
-        TurnAction turnAction = new TurnAction(db);
+        TurnAction turnAction = new TurnAction(repositories);
         if ("SOT".equalsIgnoreCase(turn.getPhase())) {
             turnAction.updateSOT(pbfId, player.getId(), turn);
         } else if ("Trade".equalsIgnoreCase(turn.getPhase())) {
@@ -322,10 +340,11 @@ public class PlayerResource {
 
     @PUT
     @Path("/turn/lock")
+    @Timed
     public Response lockOrUnlockTurn(@Auth Player player, @NotEmpty @PathParam("pbfId") String pbfId,
                                      @Valid TurnDTO turn) {
 
-        TurnAction turnAction = new TurnAction(db);
+        TurnAction turnAction = new TurnAction(repositories);
         turnAction.lockOrUnlockTurn(pbfId, player.getId(), turn);
 
         return Response.noContent().build();
@@ -333,6 +352,7 @@ public class PlayerResource {
 
     @GET
     @Path("/note")
+    @Timed
     public MessageDTO getnote(@Auth Player player, @NotEmpty @PathParam("pbfId") String pbfId, MessageDTO messageDTO) {
         Playerhand playerhand = playerAction.getPlayerhandByPlayerId(player.getId(), playerAction.findPBFById(pbfId));
         return new MessageDTO(playerhand.getGamenote());
@@ -340,6 +360,7 @@ public class PlayerResource {
 
     @PUT
     @Path("/note/save")
+    @Timed
     public Response saveNote(@Auth Player player, @NotEmpty @PathParam("pbfId") String pbfId, MessageDTO messageDTO) {
         playerAction.saveNote(pbfId, player.getId(), messageDTO);
         return Response.ok().build();
@@ -347,6 +368,7 @@ public class PlayerResource {
 
     @PUT
     @Path("/turn/take")
+    @Timed
     public Response takeTurn(@Auth Player player, @NotEmpty @PathParam("pbfId") String pbfId) {
         playerAction.takeTurnButton(pbfId, player.getId());
         return Response.ok().build();
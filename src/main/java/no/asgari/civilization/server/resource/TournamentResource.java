@@ -1,11 +1,12 @@
 package no.asgari.civilization.server.resource;
 
-import com.mongodb.DB;
+import com.codahale.metrics.annotation.Timed;
 import io.dropwizard.auth.Auth;
 import lombok.extern.log4j.Log4j;
 import no.asgari.civilization.server.action.TournamentAction;
 import no.asgari.civilization.server.model.Player;
 import no.asgari.civilization.server.model.tournament.Tournament;
+import no.asgari.civilization.server.repository.Repositories;
 
 import javax.ws.rs.Consumes;
 import javax.ws.rs.GET;
@@ -24,12 +25,13 @@ import java.util.List;
 public class TournamentResource {
     private final TournamentAction tournamentAction;
 
-    public TournamentResource(DB db) {
-        this.tournamentAction = new TournamentAction(db);
+    public TournamentResource(Repositories repositories) {
+        this.tournamentAction = new TournamentAction(repositories);
     }
 
     @Path("/signup/{tournamentNumber}")
     @PUT
+    @Timed
     public Response signup(@Auth Player player, @PathParam("tournamentNumber") int tournamentNumber) {
         boolean signedup = tournamentAction.signup(player, tournamentNumber);
         if (signedup)
@@ -38,6 +40,7 @@ public class TournamentResource {
     }
 
     @GET
+    @Timed
     public List<Tournament> getTournaments() {
         return tournamentAction.getTournaments();
     }
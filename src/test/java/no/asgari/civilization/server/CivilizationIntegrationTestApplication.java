@@ -18,16 +18,23 @@ import io.dropwizard.java8.auth.CachingAuthenticator;
 import io.dropwizard.java8.auth.basic.BasicAuthFactory;
 import io.dropwizard.setup.Bootstrap;
 import io.dropwizard.setup.Environment;
+import io.dropwizard.util.Duration;
 import lombok.extern.log4j.Log4j;
+import no.asgari.civilization.server.action.AdminAction;
 import no.asgari.civilization.server.action.PBFTestAction;
 import no.asgari.civilization.server.application.CivAuthenticator;
 import no.asgari.civilization.server.application.CivSingleton;
+import no.asgari.civilization.server.application.CleanupJob;
 import no.asgari.civilization.server.application.MongoManaged;
+import no.asgari.civilization.server.application.PublicChatBuffer;
+import no.asgari.civilization.server.email.Notifications;
 import no.asgari.civilization.server.model.Chat;
 import no.asgari.civilization.server.model.GameLog;
 import no.asgari.civilization.server.model.PBF;
 import no.asgari.civilization.server.model.Player;
 import no.asgari.civilization.server.model.Playerhand;
+import no.asgari.civilization.server.repository.Repositories;
+import no.asgari.civilization.server.repository.mongo.MongoArchiveRepository;
 import no.asgari.civilization.server.resource.AdminResource;
 import no.asgari.civilization.server.resource.AuthResource;
 import no.asgari.civilization.server.resource.DrawResource;
@@ -46,6 +53,7 @@ import java.util.concurrent.TimeUnit;
 public class CivilizationIntegrationTestApplication extends Application<CivilizationTestConfiguration> {
 
     public DB db;
+    public Repositories repositories;
     public JacksonDBCollection<PBF, String> pbfCollection;
     public JacksonDBCollection<GameLog, String> gameLogCollection;
     public JacksonDBCollection<Player, String> playerCollection;
@@ -65,6 +73,7 @@ public class CivilizationIntegrationTestApplication extends Application<Civiliza
     public void run(CivilizationTestConfiguration configuration, Environment environment) throws Exception {
         MongoClient mongo = new MongoClient(configuration.mongohost, configuration.mongoport);
         this.db = mongo.getDB(configuration.mongodb);
+        this.repositories = Repositories.mongo(db);
 
         MongoManaged mongoManaged = new MongoManaged(mongo);
         //Database
@@ -79,23 +88,35 @@ public class CivilizationIntegrationTestApplication extends Application<Civiliza
         pbfCollection.drop();
         gameLogCollection.drop();
         chatCollection.drop();
+        db.getCollection(MongoArchiveRepository.PBF_ARCHIVE).drop();
+        db.getCollection(MongoArchiveRepository.GAMELOG_ARCHIVE).drop();
+        db.getCollection(MongoArchiveRepository.CHAT_ARCHIVE).drop();
 
         createIndexForPlayer(playerCollection);
         createUsernameCache(playerCollection);
         createIndexForPBF(pbfCollection);
+        CivSingleton.instance().setPublicChat(PublicChatBuffer.load(repositories.getChats(), 50, 5000));
+        Notifications notifications = new Notifications(repositories.getNotifications(), java.time.Duration.ofMinutes(30));
+        environment.lifecycle().manage(notifications);
+        CivSingleton.instance().setNotifications(notifications);
 //        createItemCache();
 
         //Resources
-        environment.jersey().register(new GameResource(db));
-        environment.jersey().register(new AuthResource(db));
-        environment.jersey().register(new PlayerResource(db));
-        environment.jersey().register(new DrawResource(db));
-        environment.jersey().register(new AdminResource(db));
+        environment.jersey().register(new GameResource(repositories));
+        environment.jersey().register(new AuthResource(repositories));
+        environment.jersey().register(new PlayerResource(repositories));
+        environment.jersey().register(new DrawResource(repositories));
+        AdminAction adminAction = new AdminAction(repositories);
+        CleanupJob cleanupJob = new CleanupJob("cleanup", stopped -> adminAction.cleanup(100, stopped), Duration.seconds(0), repositories.getLeases(), environment.metrics());
+        environment.lifecycle().manage(cleanupJob);
+        CleanupJob archiveJob = new CleanupJob("archive", stopped -> adminAction.archiveFinishedGames(100, stopped), Duration.seconds(0), repositories.getLeases(), environment.metrics());
+        environment.lifecycle().manage(archiveJob);
+        environment.jersey().register(new AdminResource(adminAction, repositories, cleanupJob, archiveJob));
 
         //Authenticator
         CachingAuthenticator<BasicCredentials, Player> cachingAuthenticator = new CachingAuthenticator<>(
                 new MetricRegistry(),
-                new CivAuthenticator(db),
+                new CivAuthenticator(repositories),
                 CacheBuilderSpec.parse("expireAfterWrite=120m")
         );
 
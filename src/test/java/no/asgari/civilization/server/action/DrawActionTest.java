@@ -35,7 +35,7 @@ public class DrawActionTest extends AbstractCivilizationTest {
 
     @Test
     public void drawCivAndMakeSureItsNoLongerInPBFCollection() throws Exception {
-        DrawAction drawAction = new DrawAction(getApp().db);
+        DrawAction drawAction = new DrawAction(getApp().repositories);
         SheetName CIV = SheetName.find("CIV").get();
         Optional<GameLog> gameLogOptional = drawAction.draw(getApp().pbfId, getApp().playerId, CIV);
 
@@ -53,7 +53,7 @@ public class DrawActionTest extends AbstractCivilizationTest {
 
     @Test
     public void drawAircraftAndMakeSureItsNoLongerInPBFCollection() throws Exception {
-        DrawAction drawAction = new DrawAction(getApp().db);
+        DrawAction drawAction = new DrawAction(getApp().repositories);
         //Before draw
         long aircrafts = getApp().pbfCollection.findOneById(getApp().pbfId).getItems().parallelStream()
                 .filter(p -> p.getSheetName() == SheetName.AIRCRAFT)
@@ -69,7 +69,7 @@ public class DrawActionTest extends AbstractCivilizationTest {
 
     @Test
     public void drawArtilleryAndMakeSureItsNoLongerInPBFCollection() throws Exception {
-        DrawAction drawAction = new DrawAction(getApp().db);
+        DrawAction drawAction = new DrawAction(getApp().repositories);
         //Before draw
         long aircrafts = getApp().pbfCollection.findOneById(getApp().pbfId).getItems().parallelStream()
                 .filter(p -> p.getSheetName() == SheetName.ARTILLERY)
@@ -89,7 +89,7 @@ public class DrawActionTest extends AbstractCivilizationTest {
 
     @Test
     public void drawCitystateAndMakeSureItsNoLongerInPBFCollection() throws Exception {
-        DrawAction drawAction = new DrawAction(getApp().db);
+        DrawAction drawAction = new DrawAction(getApp().repositories);
         //Before draw
         long aircrafts = getApp().pbfCollection.findOneById(getApp().pbfId).getItems().parallelStream()
                 .filter(p -> p.getSheetName() == SheetName.CITY_STATES)
@@ -105,7 +105,7 @@ public class DrawActionTest extends AbstractCivilizationTest {
 
     @Test
     public void drawCulture1AndMakeSureItsNoLongerInPBFCollection() throws Exception {
-        DrawAction drawAction = new DrawAction(getApp().db);
+        DrawAction drawAction = new DrawAction(getApp().repositories);
         //Before draw
         long aircrafts = getApp().pbfCollection.findOneById(getApp().pbfId).getItems().parallelStream()
                 .filter(p -> p.getSheetName() == SheetName.CULTURE_1)
@@ -121,7 +121,7 @@ public class DrawActionTest extends AbstractCivilizationTest {
 
     @Test
     public void drawCulture2AndMakeSureItsNoLongerInPBFCollection() throws Exception {
-        DrawAction drawAction = new DrawAction(getApp().db);
+        DrawAction drawAction = new DrawAction(getApp().repositories);
         //Before draw
         long aircrafts = getApp().pbfCollection.findOneById(getApp().pbfId).getItems().parallelStream()
                 .filter(p -> p.getSheetName() == SheetName.CULTURE_2)
@@ -137,7 +137,7 @@ public class DrawActionTest extends AbstractCivilizationTest {
 
     @Test
     public void drawCulture3AndMakeSureItsNoLongerInPBFCollection() throws Exception {
-        DrawAction drawAction = new DrawAction(getApp().db);
+        DrawAction drawAction = new DrawAction(getApp().repositories);
         //Before draw
         long aircrafts = getApp().pbfCollection.findOneById(getApp().pbfId).getItems().parallelStream()
                 .filter(p -> p.getSheetName() == SheetName.CULTURE_3)
@@ -153,7 +153,7 @@ public class DrawActionTest extends AbstractCivilizationTest {
 
     @Test
     public void drawGPAndMakeSureItsNoLongerInPBFCollection() throws Exception {
-        DrawAction drawAction = new DrawAction(getApp().db);
+        DrawAction drawAction = new DrawAction(getApp().repositories);
         //Before draw
         long aircrafts = getApp().pbfCollection.findOneById(getApp().pbfId).getItems().parallelStream()
                 .filter(p -> p.getSheetName() == SheetName.GREAT_PERSON)
@@ -169,7 +169,7 @@ public class DrawActionTest extends AbstractCivilizationTest {
 
     @Test
     public void drawHutAndMakeSureItsNoLongerInPBFCollection() throws Exception {
-        DrawAction drawAction = new DrawAction(getApp().db);
+        DrawAction drawAction = new DrawAction(getApp().repositories);
         //Before draw
         long hut = getApp().pbfCollection.findOneById(getApp().pbfId).getItems().parallelStream()
                 .filter(p -> p.getSheetName() == SheetName.HUTS)
@@ -185,7 +185,7 @@ public class DrawActionTest extends AbstractCivilizationTest {
 
     @Test
     public void drawInfantryAndMakeSureItsNoLongerInPBFCollection() throws Exception {
-        DrawAction drawAction = new DrawAction(getApp().db);
+        DrawAction drawAction = new DrawAction(getApp().repositories);
         //Before draw
         long infantries = getApp().pbfCollection.findOneById(getApp().pbfId).getItems().parallelStream()
                 .filter(p -> p.getSheetName() == SheetName.INFANTRY)
@@ -201,7 +201,7 @@ public class DrawActionTest extends AbstractCivilizationTest {
 
     @Test
     public void drawMountedAndMakeSureItsNoLongerInPBFCollection() throws Exception {
-        DrawAction drawAction = new DrawAction(getApp().db);
+        DrawAction drawAction = new DrawAction(getApp().repositories);
         //Before draw
         long aircrafts = getApp().pbfCollection.findOneById(getApp().pbfId).getItems().parallelStream()
                 .filter(p -> p.getSheetName() == SheetName.MOUNTED)
@@ -217,7 +217,7 @@ public class DrawActionTest extends AbstractCivilizationTest {
 
     @Test
     public void drawTileAndMakeSureItsNoLongerInPBFCollection() throws Exception {
-        DrawAction drawAction = new DrawAction(getApp().db);
+        DrawAction drawAction = new DrawAction(getApp().repositories);
         //Before draw
         long aircrafts = getApp().pbfCollection.findOneById(getApp().pbfId).getItems().parallelStream()
                 .filter(p -> p.getSheetName() == SheetName.TILES)
@@ -233,7 +233,7 @@ public class DrawActionTest extends AbstractCivilizationTest {
 
     @Test
     public void drawVillageAndMakeSureItsNoLongerInPBFCollection() throws Exception {
-        DrawAction drawAction = new DrawAction(getApp().db);
+        DrawAction drawAction = new DrawAction(getApp().repositories);
         //Before draw
         long aircrafts = getApp().pbfCollection.findOneById(getApp().pbfId).getItems().parallelStream()
                 .filter(p -> p.getSheetName() == SheetName.VILLAGES)
@@ -249,7 +249,7 @@ public class DrawActionTest extends AbstractCivilizationTest {
 
     @Test
     public void drawAncientWonderAndMakeSureItsNoLongerInPBFCollection() throws Exception {
-        DrawAction drawAction = new DrawAction(getApp().db);
+        DrawAction drawAction = new DrawAction(getApp().repositories);
         //Before draw
         long aircrafts = getApp().pbfCollection.findOneById(getApp().pbfId).getItems().parallelStream()
                 .filter(p -> p.getSheetName() == SheetName.ANCIENT_WONDERS)
@@ -265,7 +265,7 @@ public class DrawActionTest extends AbstractCivilizationTest {
 
     @Test
     public void drawMedievalWonderAndMakeSureItsNoLongerInPBFCollection() throws Exception {
-        DrawAction drawAction = new DrawAction(getApp().db);
+        DrawAction drawAction = new DrawAction(getApp().repositories);
         //Before draw
         long aircrafts = getApp().pbfCollection.findOneById(getApp().pbfId).getItems().parallelStream()
                 .filter(p -> p.getSheetName() == SheetName.MEDIEVAL_WONDERS)
@@ -281,7 +281,7 @@ public class DrawActionTest extends AbstractCivilizationTest {
 
     @Test
     public void drawModernWonderAndMakeSureItsNoLongerInPBFCollection() throws Exception {
-        DrawAction drawAction = new DrawAction(getApp().db);
+        DrawAction drawAction = new DrawAction(getApp().repositories);
         //Before draw
         long aircrafts = getApp().pbfCollection.findOneById(getApp().pbfId).getItems().parallelStream()
                 .filter(p -> p.getSheetName() == SheetName.MODERN_WONDERS)
@@ -298,14 +298,14 @@ public class DrawActionTest extends AbstractCivilizationTest {
     @Test
     public void drawItemAndMakeSureLogsAreStored() throws Exception {
         long privateLog = getApp().gameLogCollection.count();
-        DrawAction drawAction = new DrawAction(getApp().db);
+        DrawAction drawAction = new DrawAction(getApp().repositories);
         drawAction.draw(getApp().pbfId, getApp().playerId, SheetName.GREAT_PERSON);
         assertThat(getApp().gameLogCollection.count()).isEqualTo(++privateLog);
     }
 
     @Test(expected = NoMoreItemsException.class)
     public void makeSureSystemCorrectlyThrowsExceptionWhenNothingToShuffle() throws Exception {
-        DrawAction drawAction = new DrawAction(getApp().db);
+        DrawAction drawAction = new DrawAction(getApp().repositories);
         //Before draw
         long aircrafts = getApp().pbfCollection.findOneById(getApp().pbfId).getItems().parallelStream()
                 .filter(p -> p.getSheetName() == SheetName.AIRCRAFT)
@@ -328,7 +328,7 @@ public class DrawActionTest extends AbstractCivilizationTest {
 
     @Test
     public void drawAndDiscardBarbarians() throws Exception {
-        DrawAction drawAction = new DrawAction(getApp().db);
+        DrawAction drawAction = new DrawAction(getApp().repositories);
 
         PBF pbf = getApp().pbfCollection.findOneById(getApp().pbfId);
         Playerhand playerhand = pbf.getPlayers().stream().filter(p -> p.getPlayerId().equals(getApp().playerId)).findFirst().get();
@@ -351,7 +351,7 @@ public class DrawActionTest extends AbstractCivilizationTest {
 
     @Test
     public void drawUnitForBattle() throws Exception {
-        DrawAction drawAction = new DrawAction(getApp().db);
+        DrawAction drawAction = new DrawAction(getApp().repositories);
 
         drawAction.draw(getApp().pbfId, getApp().playerId, SheetName.INFANTRY);
         drawAction.draw(getApp().pbfId, getApp().playerId, SheetName.ARTILLERY);
@@ -378,7 +378,7 @@ public class DrawActionTest extends AbstractCivilizationTest {
     public void simulateLoot() throws Exception {
         drawVillageAndMakeSureItsNoLongerInPBFCollection();
 
-        DrawAction drawAction = new DrawAction(getApp().db);
+        DrawAction drawAction = new DrawAction(getApp().repositories);
 
         PBF pbf = getApp().pbfCollection.findOneById(getApp().pbfId);
         long nrOfVillagesP1 = 0L, nrOfVIlagesP2 = 0L;
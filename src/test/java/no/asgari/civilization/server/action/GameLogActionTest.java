@@ -2,11 +2,13 @@ package no.asgari.civilization.server.action;
 
 import no.asgari.civilization.server.SheetName;
 import no.asgari.civilization.server.model.Artillery;
+import no.asgari.civilization.server.model.GameEvent;
 import no.asgari.civilization.server.model.GameLog;
 import no.asgari.civilization.server.model.GreatPerson;
 import no.asgari.civilization.server.mongodb.AbstractCivilizationTest;
 import org.junit.Test;
 
+import java.util.List;
 import java.util.Optional;
 
 import static org.assertj.core.api.Assertions.assertThat;
@@ -16,7 +18,7 @@ public class GameLogActionTest extends AbstractCivilizationTest {
 
     @Test
     public void checkThatPublicLogIsSaved() {
-        DrawAction drawAction = new DrawAction(getApp().db);
+        DrawAction drawAction = new DrawAction(getApp().repositories);
 
         long beforeInsert = getApp().gameLogCollection.count();
         //Make a draw
@@ -32,7 +34,7 @@ public class GameLogActionTest extends AbstractCivilizationTest {
 
     @Test
     public void checkThatPrivateLogIsSaved() {
-        DrawAction drawAction = new DrawAction(getApp().db);
+        DrawAction drawAction = new DrawAction(getApp().repositories);
 
         long beforeInsert = getApp().gameLogCollection.count();
         //Make a draw
@@ -44,4 +46,25 @@ public class GameLogActionTest extends AbstractCivilizationTest {
         assertThat(beforeInsert).isLessThan(afterInsert);
     }
 
+    @Test
+    public void checkThatDrawIsAppendedToEventStream() {
+        DrawAction drawAction = new DrawAction(getApp().repositories);
+        GameLogAction gameLogAction = new GameLogAction(getApp().repositories);
+
+        long lastSequence = getApp().repositories.getGameEvents().lastSequence(getApp().pbfId);
+        Optional<GameLog> gameLogOptional = drawAction.draw(getApp().pbfId, getApp().playerId, SheetName.ARTILLERY);
+        assertTrue(gameLogOptional.isPresent());
+
+        List<GameEvent> events = gameLogAction.getEvents(getApp().pbfId, lastSequence, 100);
+        assertThat(events).isNotEmpty();
+        assertThat(events.get(0).getSequence()).isEqualTo(lastSequence + 1);
+        GameEvent drawEvent = events.get(events.size() - 1);
+        assertThat(drawEvent.getType()).isEqualTo(GameLog.LogType.ITEM);
+        assertThat(drawEvent.getGameLogId()).isEqualTo(gameLogOptional.get().getId());
+        for (int i = 1; i < events.size(); i++) {
+            assertThat(events.get(i).getSequence()).isEqualTo(events.get(i - 1).getSequence() + 1);
+        }
+        assertThat(gameLogAction.getEvents(getApp().pbfId, events.get(events.size() - 1).getSequence(), 100)).isEmpty();
+    }
+
 }
@@ -46,9 +46,7 @@ public class PBFTestAction {
         pbf.getTechs().addAll(items.allTechs);
         pbf.getSocialPolicies().addAll(items.socialPolicies);
 
-        pbf.getItems().forEach(it -> it.setItemNumber(ItemReader.itemCounter.incrementAndGet()));
-        pbf.getTechs().forEach(it -> it.setItemNumber(ItemReader.itemCounter.incrementAndGet()));
-        pbf.getSocialPolicies().forEach(it -> it.setItemNumber(ItemReader.itemCounter.incrementAndGet()));
+        pbf.numberItems();
 
         return pbf;
     }
@@ -3,16 +3,14 @@ package no.asgari.civilization.server.action;
 import no.asgari.civilization.server.dto.TurnDTO;
 import no.asgari.civilization.server.model.PBF;
 import no.asgari.civilization.server.model.PlayerTurn;
-import no.asgari.civilization.server.model.Playerhand;
 import no.asgari.civilization.server.mongodb.AbstractCivilizationTest;
 import org.junit.Test;
 
-import java.util.HashSet;
-import java.util.Iterator;
-import java.util.Set;
+import java.util.List;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 
 public class TurnActionTest extends AbstractCivilizationTest {
 
@@ -24,14 +22,11 @@ public class TurnActionTest extends AbstractCivilizationTest {
         dto.setPhase("Sot");
         dto.setOrder("SOT: Create city @ L4");
 
-        TurnAction turnAction = new TurnAction(getApp().db);
+        TurnAction turnAction = new TurnAction(getApp().repositories);
         turnAction.updateSOT(getApp().pbfId, getApp().playerId, dto);
 
-        PBF pbf = getApp().pbfCollection.findOneById(getApp().pbfId);
-        assertFalse(pbf.getPublicTurns().isEmpty());
-
-        Playerhand playerhand = pbf.getPlayers().stream().filter(p -> p.getPlayerId().equals(getApp().playerId)).findFirst().get();
-        assertEquals(dto.getOrder(), playerhand.getPlayerTurns().iterator().next().getSot());
+        assertFalse(turnAction.getAllPublicTurns(getApp().pbfId).isEmpty());
+        assertEquals(dto.getOrder(), turnAction.getPlayersTurns(getApp().pbfId, getApp().playerId).iterator().next().getSot());
     }
 
     @Test
@@ -42,13 +37,10 @@ public class TurnActionTest extends AbstractCivilizationTest {
         dto.setPhase("trade");
         dto.setOrder("Trade: 6 total");
 
-        TurnAction turnAction = new TurnAction(getApp().db);
+        TurnAction turnAction = new TurnAction(getApp().repositories);
         turnAction.updateTrade(getApp().pbfId, getApp().playerId, dto);
 
-        PBF pbf = getApp().pbfCollection.findOneById(getApp().pbfId);
-
-        Playerhand playerhand = pbf.getPlayers().stream().filter(p -> p.getPlayerId().equals(getApp().playerId)).findFirst().get();
-        assertEquals(dto.getOrder(), playerhand.getPlayerTurns().iterator().next().getTrade());
+        assertEquals(dto.getOrder(), turnAction.getPlayersTurns(getApp().pbfId, getApp().playerId).iterator().next().getTrade());
     }
 
     @Test
@@ -59,13 +51,10 @@ public class TurnActionTest extends AbstractCivilizationTest {
         dto.setPhase("cm");
         dto.setOrder("Trade: 6 total");
 
-        TurnAction turnAction = new TurnAction(getApp().db);
+        TurnAction turnAction = new TurnAction(getApp().repositories);
         turnAction.updateCM(getApp().pbfId, getApp().playerId, dto);
 
-        PBF pbf = getApp().pbfCollection.findOneById(getApp().pbfId);
-
-        Playerhand playerhand = pbf.getPlayers().stream().filter(p -> p.getPlayerId().equals(getApp().playerId)).findFirst().get();
-        assertEquals(dto.getOrder(), playerhand.getPlayerTurns().iterator().next().getCm());
+        assertEquals(dto.getOrder(), turnAction.getPlayersTurns(getApp().pbfId, getApp().playerId).iterator().next().getCm());
     }
 
     @Test
@@ -76,13 +65,10 @@ public class TurnActionTest extends AbstractCivilizationTest {
         dto.setTurnNumber(1);
         dto.setOrder("Movement: A6 -> A5");
 
-        TurnAction turnAction = new TurnAction(getApp().db);
+        TurnAction turnAction = new TurnAction(getApp().repositories);
         turnAction.updateMovement(getApp().pbfId, getApp().playerId, dto);
 
-        PBF pbf = getApp().pbfCollection.findOneById(getApp().pbfId);
-
-        Playerhand playerhand = pbf.getPlayers().stream().filter(p -> p.getPlayerId().equals(getApp().playerId)).findFirst().get();
-        assertEquals(dto.getOrder(), playerhand.getPlayerTurns().iterator().next().getMovement());
+        assertEquals(dto.getOrder(), turnAction.getPlayersTurns(getApp().pbfId, getApp().playerId).iterator().next().getMovement());
     }
 
     @Test
@@ -93,13 +79,52 @@ public class TurnActionTest extends AbstractCivilizationTest {
         dto.setPhase("research");
         dto.setOrder("Research: Done");
 
-        TurnAction turnAction = new TurnAction(getApp().db);
+        TurnAction turnAction = new TurnAction(getApp().repositories);
         turnAction.updateResearch(getApp().pbfId, getApp().playerId, dto);
 
+        assertEquals(dto.getOrder(), turnAction.getPlayersTurns(getApp().pbfId, getApp().playerId).iterator().next().getResearch());
+    }
+
+    @Test
+    public void historyIsCapped() {
+        TurnAction turnAction = new TurnAction(getApp().repositories);
+        for (int i = 0; i < PlayerTurn.MAX_HISTORY + 5; i++) {
+            TurnDTO dto = new TurnDTO();
+            dto.setTurnNumber(2);
+            dto.setPhase("movement");
+            dto.setOrder("Movement: " + i);
+            turnAction.updateMovement(getApp().pbfId, getApp().playerId, dto);
+        }
+
         PBF pbf = getApp().pbfCollection.findOneById(getApp().pbfId);
+        assertTrue(pbf.getPublicTurns().isEmpty());
+
+        PlayerTurn turn = turnAction.getPlayersTurns(getApp().pbfId, getApp().playerId).stream()
+                .filter(t -> t.getTurnNumber() == 2)
+                .findFirst().get();
+        assertEquals(PlayerTurn.MAX_HISTORY, turn.getMovementHistory().size());
+        assertEquals("Movement: " + (PlayerTurn.MAX_HISTORY + 4), turn.getMovement());
+        assertFalse(turn.getMovementHistory().contains("Movement: 0"));
+    }
 
-        Playerhand playerhand = pbf.getPlayers().stream().filter(p -> p.getPlayerId().equals(getApp().playerId)).findFirst().get();
-        assertEquals(dto.getOrder(), playerhand.getPlayerTurns().iterator().next().getResearch());
+    @Test
+    public void getPublicTurnsOfOneTurn() {
+        TurnAction turnAction = new TurnAction(getApp().repositories);
+        for (int turnNumber = 3; turnNumber <= 4; turnNumber++) {
+            TurnDTO dto = new TurnDTO();
+            dto.setTurnNumber(turnNumber);
+            dto.setPhase("trade");
+            dto.setOrder("Trade: " + turnNumber);
+            turnAction.updateTrade(getApp().pbfId, getApp().playerId, dto);
+        }
+
+        List<PlayerTurn> turns = turnAction.getPublicTurns(getApp().pbfId, 3);
+        assertEquals(1, turns.size());
+        assertEquals("Trade: 3", turns.get(0).getTrade());
+        List<PlayerTurn> latest = turnAction.getLatestPublicTurns(getApp().pbfId);
+        assertEquals(1, latest.size());
+        assertEquals(4, latest.get(0).getTurnNumber());
+        assertEquals("Trade: 4", latest.get(0).getTrade());
     }
 
 }
@@ -2,8 +2,10 @@ package no.asgari.civilization.server.action;
 
 import no.asgari.civilization.server.SheetName;
 import no.asgari.civilization.server.model.Civ;
+import no.asgari.civilization.server.model.GameEvent;
 import no.asgari.civilization.server.model.GameLog;
 import no.asgari.civilization.server.model.Item;
+import no.asgari.civilization.server.model.Move;
 import no.asgari.civilization.server.model.PBF;
 import no.asgari.civilization.server.model.Player;
 import no.asgari.civilization.server.model.Playerhand;
@@ -14,17 +16,27 @@ import org.junit.Before;
 import org.junit.Test;
 import org.mongojack.DBQuery;
 
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.Response;
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
+import static java.util.stream.Collectors.toList;
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 @SuppressWarnings("unchecked")
 public class UndoActionTest extends AbstractCivilizationTest {
 
-    private UndoAction undoAction = new UndoAction(getApp().db);
+    private UndoAction undoAction = new UndoAction(getApp().repositories);
 
     @Before
     public void before() {
@@ -41,7 +53,7 @@ public class UndoActionTest extends AbstractCivilizationTest {
         assertThat(pbf).isNotNull();
         assertThat(pbf.getItems()).isNotEmpty();
 
-        DrawAction drawAction = new DrawAction(getApp().db);
+        DrawAction drawAction = new DrawAction(getApp().repositories);
         Optional<GameLog> gameLogOptional = drawAction.draw(getApp().pbfId, getApp().playerId, SheetName.CIV);
         assertTrue(gameLogOptional.isPresent());
         undoAction.initiateUndo(gameLogOptional.get(), getApp().playerId);
@@ -117,7 +129,7 @@ public class UndoActionTest extends AbstractCivilizationTest {
         assertThat(pbf).isNotNull();
         assertThat(pbf.getItems()).isNotEmpty();
 
-        PlayerAction playerAction = new PlayerAction(getApp().db);
+        PlayerAction playerAction = new PlayerAction(getApp().repositories);
         GameLog gameLog = playerAction.chooseTech(getApp().pbfId, "Navy", getApp().playerId);
 
         assertThat(gameLog.getDraw().getUndo()).isNull();
@@ -143,6 +155,15 @@ public class UndoActionTest extends AbstractCivilizationTest {
         assertThat(allActiveUndos).isNotEmpty();
     }
 
+    @Test
+    public void getUndosNeedingVoteFromPlayer() throws Exception {
+        String gameLogId = createADrawAndInitiateAVoteForUndo();
+        assertThat(undoAction.getUndosNeedingVote(getApp().pbfId, getAnotherPlayerId()))
+                .extracting("id").contains(gameLogId);
+        assertThat(undoAction.getUndosNeedingVote(getApp().pbfId, getApp().playerId))
+                .extracting("id").doesNotContain(gameLogId);
+    }
+
     @Test
     public void getAllFinishedUndos() throws Exception {
         allPlayersVoteYesThenPerformUndo();
@@ -150,6 +171,130 @@ public class UndoActionTest extends AbstractCivilizationTest {
         assertThat(allFinishedUndos).isNotEmpty();
     }
 
+    @Test
+    public void undoOfDrawIsTheInverseMoveOfItsEvent() throws Exception {
+        new GameLogAction(getApp().repositories).takeSnapshot(getApp().pbfId);
+        String gameLogId = createADrawAndInitiateAVoteForUndo();
+        final GameLog gameLog = getApp().gameLogCollection.findOneById(gameLogId);
+
+        getApp().pbfCollection.findOneById(getApp().pbfId).getPlayers().stream()
+                .filter(p -> !gameLog.getDraw().getUndo().getVotes().containsKey(p.getPlayerId()))
+                .forEach(p -> undoAction.vote(gameLog, p.getPlayerId(), Boolean.TRUE));
+
+        long lastSequence = getApp().repositories.getGameEvents().lastSequence(getApp().pbfId);
+        GameEvent undoEvent = getApp().repositories.getGameEvents().findByPbfId(getApp().pbfId, lastSequence - 1, 1).get(0);
+        assertThat(undoEvent.getType()).isEqualTo(GameLog.LogType.UNDO);
+        Move putBack = Move.draw(getApp().playerId).inverse();
+        assertNotNull(undoEvent.getMove().getSeed());
+        putBack.setSeed(undoEvent.getMove().getSeed());
+        assertThat(undoEvent.getMove()).isEqualTo(putBack);
+
+        //Replaying the draw and its undo gives the same game as the stored one
+        PBF rebuilt = new GameStateAction(getApp().repositories).stateAt(getApp().pbfId, lastSequence);
+        PBF stored = getApp().pbfCollection.findOneById(getApp().pbfId);
+        assertThat(rebuilt.getItems()).extracting(Item::getItemNumber)
+                .containsExactlyElementsOf(stored.getItems().stream().map(Item::getItemNumber).collect(toList()));
+        assertThat(rebuilt.getPlayers().stream().filter(p -> p.getPlayerId().equals(getApp().playerId)).findFirst().get().getItems())
+                .hasSameSizeAs(stored.getPlayers().stream().filter(p -> p.getPlayerId().equals(getApp().playerId)).findFirst().get().getItems());
+    }
+
+    @Test
+    public void twoFinalVotesAtTheSameTimePutTheItemBackOnce() throws Exception {
+        String gameLogId = createADrawAndInitiateAVoteForUndo();
+        GameLog gameLog = getApp().gameLogCollection.findOneById(gameLogId);
+        Item drawn = (Item) gameLog.getDraw().getItem();
+        List<String> voters = getApp().pbfCollection.findOneById(getApp().pbfId).getPlayers().stream()
+                .map(Playerhand::getPlayerId)
+                .filter(id -> !gameLog.getDraw().getUndo().getVotes().containsKey(id))
+                .collect(toList());
+        assertThat(voters.size()).isGreaterThanOrEqualTo(2);
+        voters.subList(0, voters.size() - 2).forEach(id -> undoAction.vote(gameLog, id, Boolean.TRUE));
+
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        List<Future<GameLog>> lastVotes = voters.subList(voters.size() - 2, voters.size()).stream()
+                .map(id -> executor.submit(() -> {
+                    start.await();
+                    return undoAction.vote(gameLog, id, Boolean.TRUE);
+                }))
+                .collect(toList());
+        start.countDown();
+        for (Future<GameLog> lastVote : lastVotes) {
+            lastVote.get(10, TimeUnit.SECONDS);
+        }
+        executor.shutdown();
+
+        assertThat(getApp().gameLogCollection.findOneById(gameLogId).getDraw().getUndo().isDone()).isTrue();
+        PBF pbf = getApp().pbfCollection.findOneById(getApp().pbfId);
+        assertThat(pbf.getItems().stream().filter(it -> it.getItemNumber() == drawn.getItemNumber()).count()).isEqualTo(1);
+        assertThat(pbf.getPlayers().stream().flatMap(p -> p.getItems().stream()).noneMatch(it -> it.getItemNumber() == drawn.getItemNumber())).isTrue();
+    }
+
+    @Test
+    public void undoThatCouldNotPutTheItemBackCanBeVotedOnAgain() throws Exception {
+        String gameLogId = createADrawAndInitiateAVoteForUndo();
+        GameLog gameLog = getApp().gameLogCollection.findOneById(gameLogId);
+        Item drawn = (Item) gameLog.getDraw().getItem();
+
+        //The item is gone from the hand, so the undo can't put it back
+        PBF pbf = getApp().pbfCollection.findOneById(getApp().pbfId);
+        Playerhand playerhand = pbf.getPlayers().stream().filter(p -> p.getPlayerId().equals(getApp().playerId)).findFirst().get();
+        Item inHand = playerhand.getItems().findByItemNumber(drawn.getItemNumber()).get();
+        playerhand.getItems().removeItem(inHand);
+        getApp().pbfCollection.updateById(getApp().pbfId, pbf);
+
+        List<String> voters = pbf.getPlayers().stream()
+                .map(Playerhand::getPlayerId)
+                .filter(id -> !gameLog.getDraw().getUndo().getVotes().containsKey(id))
+                .collect(toList());
+        String lastVoter = voters.get(voters.size() - 1);
+        voters.subList(0, voters.size() - 1).forEach(id -> undoAction.vote(gameLog, id, Boolean.TRUE));
+        try {
+            undoAction.vote(gameLog, lastVoter, Boolean.TRUE);
+            fail("Should not undo an item that is gone");
+        } catch (WebApplicationException e) {
+            assertThat(e.getResponse().getStatus()).isEqualTo(Response.Status.CONFLICT.getStatusCode());
+        }
+        assertThat(getApp().gameLogCollection.findOneById(gameLogId).getDraw().getUndo().isDone()).isFalse();
+
+        pbf = getApp().pbfCollection.findOneById(getApp().pbfId);
+        pbf.getPlayers().stream().filter(p -> p.getPlayerId().equals(getApp().playerId)).findFirst().get().getItems().add(inHand);
+        getApp().pbfCollection.updateById(getApp().pbfId, pbf);
+        undoAction.vote(gameLog, lastVoter, Boolean.TRUE);
+
+        assertThat(getApp().gameLogCollection.findOneById(gameLogId).getDraw().getUndo().isDone()).isTrue();
+        pbf = getApp().pbfCollection.findOneById(getApp().pbfId);
+        assertThat(pbf.getItems().stream().filter(it -> it.getItemNumber() == drawn.getItemNumber()).count()).isEqualTo(1);
+    }
+
+    @Test
+    public void undoOfLogWithoutEventThatCouldNotPutTheItemBackIsNotDone() throws Exception {
+        GameLog gameLog = getApp().gameLogCollection.findOneById(createADrawAndInitiateAVoteForUndo());
+        Item drawn = (Item) gameLog.getDraw().getItem();
+        //A copy of the log has no event, so the item is looked for where the log says it went
+        gameLog.setId(null);
+        gameLog.setId(getApp().repositories.getGameLogs().insert(gameLog));
+
+        PBF pbf = getApp().pbfCollection.findOneById(getApp().pbfId);
+        Playerhand playerhand = pbf.getPlayers().stream().filter(p -> p.getPlayerId().equals(getApp().playerId)).findFirst().get();
+        Item inHand = playerhand.getItems().findByItemNumber(drawn.getItemNumber()).get();
+        playerhand.getItems().removeItem(inHand);
+        getApp().pbfCollection.updateById(getApp().pbfId, pbf);
+
+        List<String> voters = pbf.getPlayers().stream()
+                .map(Playerhand::getPlayerId)
+                .filter(id -> !gameLog.getDraw().getUndo().getVotes().containsKey(id))
+                .collect(toList());
+        voters.subList(0, voters.size() - 1).forEach(id -> undoAction.vote(gameLog, id, Boolean.TRUE));
+        try {
+            undoAction.vote(gameLog, voters.get(voters.size() - 1), Boolean.TRUE);
+            fail("Should not undo an item that is gone");
+        } catch (WebApplicationException e) {
+            assertThat(e.getResponse().getStatus()).isEqualTo(Response.Status.CONFLICT.getStatusCode());
+        }
+        assertThat(getApp().gameLogCollection.findOneById(gameLog.getId()).getDraw().getUndo().isDone()).isFalse();
+    }
+
     private String getAnotherPlayerId() {
         //Player anotherPlayer = getApp().playerCollection.findOne(DBQuery.notEquals("_id", getApp().playerId));
         Player anotherPlayer = getApp().playerCollection.findOne(DBQuery.is("username", "Itchi"));
@@ -0,0 +1,137 @@
+/*
+ * Copyright (c) 2015 Shervin Asgari
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package no.asgari.civilization.server.load;
+
+import com.codahale.metrics.Timer;
+import com.codahale.metrics.UniformReservoir;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.glassfish.jersey.client.ClientProperties;
+
+import javax.ws.rs.client.Client;
+import javax.ws.rs.client.ClientBuilder;
+import javax.ws.rs.client.Entity;
+import javax.ws.rs.client.Invocation;
+import javax.ws.rs.core.Form;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * Thin client for the REST api that times every call per operation and counts failed calls per status
+ */
+class ApiClient {
+    private static final ObjectMapper mapper = new ObjectMapper();
+
+    private final Client client;
+    private final String baseUrl;
+    private final Map<String, Timer> timers = new ConcurrentHashMap<>();
+    private final Map<String, AtomicLong> errors = new ConcurrentHashMap<>();
+
+    ApiClient(String baseUrl) {
+        this.baseUrl = baseUrl;
+        this.client = ClientBuilder.newClient();
+        this.client.property(ClientProperties.SUPPRESS_HTTP_COMPLIANCE_VALIDATION, true);
+        this.client.property(ClientProperties.CONNECT_TIMEOUT, 10_000);
+        this.client.property(ClientProperties.READ_TIMEOUT, 60_000);
+    }
+
+    static String basicAuth(String username, String password) {
+        return "Basic " + Base64.getEncoder().encodeToString((username + ":" + password).getBytes(StandardCharsets.ISO_8859_1));
+    }
+
+    /**
+     * @return the response if it was successful, otherwise null
+     */
+    Response call(String operation, String path, String auth, Function<Invocation.Builder, Response> method) {
+        Invocation.Builder request = client.target(baseUrl + path).request(MediaType.APPLICATION_JSON);
+        if (auth != null) {
+            request = request.header(HttpHeaders.AUTHORIZATION, auth);
+        }
+        Response response;
+        try (Timer.Context ignored = timer(operation).time()) {
+            response = method.apply(request);
+            response.bufferEntity();
+        } catch (RuntimeException e) {
+            error(operation, e.getClass().getSimpleName());
+            return null;
+        }
+        if (response.getStatusInfo().getFamily() != Response.Status.Family.SUCCESSFUL) {
+            error(operation, String.valueOf(response.getStatus()));
+            response.close();
+            return null;
+        }
+        return response;
+    }
+
+    Response post(String operation, String path, String auth) {
+        return call(operation, path, auth, r -> r.post(null));
+    }
+
+    Response post(String operation, String path, String auth, Form form) {
+        return call(operation, path, auth, r -> r.post(Entity.form(form)));
+    }
+
+    Response postJson(String operation, String path, String auth, Object entity) {
+        return call(operation, path, auth, r -> r.post(Entity.json(entity)));
+    }
+
+    Response put(String operation, String path, String auth) {
+        return call(operation, path, auth, r -> r.put(Entity.json("")));
+    }
+
+    JsonNode get(String operation, String path, String auth) {
+        Response response = call(operation, path, auth, Invocation.Builder::get);
+        if (response == null) {
+            return null;
+        }
+        try {
+            return mapper.readTree(response.readEntity(String.class));
+        } catch (IOException e) {
+            error(operation, "unparseable");
+            return null;
+        }
+    }
+
+    SortedMap<String, Timer> timers() {
+        return new TreeMap<>(timers);
+    }
+
+    SortedMap<String, AtomicLong> errors() {
+        return new TreeMap<>(errors);
+    }
+
+    void close() {
+        client.close();
+    }
+
+    private Timer timer(String operation) {
+        return timers.computeIfAbsent(operation, op -> new Timer(new UniformReservoir(100_000)));
+    }
+
+    private void error(String operation, String reason) {
+        errors.computeIfAbsent(operation + " " + reason, key -> new AtomicLong()).incrementAndGet();
+    }
+}
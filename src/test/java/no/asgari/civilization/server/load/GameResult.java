@@ -0,0 +1,85 @@
+/*
+ * Copyright (c) 2015 Shervin Asgari
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package no.asgari.civilization.server.load;
+
+import lombok.Getter;
+import lombok.Setter;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * What a simulated game did, and what the server ended up with
+ */
+@Getter
+@Setter
+class GameResult {
+    private String pbfId;
+    private String failure;
+
+    private final AtomicInteger successfulDraws = new AtomicInteger();
+    private final AtomicInteger successfulTrades = new AtomicInteger();
+    private final AtomicInteger initiatedUndos = new AtomicInteger();
+    private final AtomicInteger chatsSent = new AtomicInteger();
+    private final AtomicInteger duplicatedItems = new AtomicInteger();
+
+    private int lostJoins;
+    private int itemsInHands;
+    private int finishedUndos;
+    private int activeUndos;
+    private int chatsFound;
+
+    void draw() {
+        successfulDraws.incrementAndGet();
+    }
+
+    void trade() {
+        successfulTrades.incrementAndGet();
+    }
+
+    void undo() {
+        initiatedUndos.incrementAndGet();
+    }
+
+    void chat() {
+        chatsSent.incrementAndGet();
+    }
+
+    void duplicate() {
+        duplicatedItems.incrementAndGet();
+    }
+
+    int getDraws() {
+        return successfulDraws.get();
+    }
+
+    /**
+     * Every drawn item is in a hand, unless its draw was undone
+     */
+    int vanishedItems() {
+        return Math.max(0, successfulDraws.get() - finishedUndos - itemsInHands);
+    }
+
+    /**
+     * Items in hands that no acknowledged draw accounts for
+     */
+    int extraItems() {
+        return Math.max(0, itemsInHands - (successfulDraws.get() - finishedUndos));
+    }
+
+    int lostChats() {
+        return Math.max(0, chatsSent.get() - chatsFound);
+    }
+}
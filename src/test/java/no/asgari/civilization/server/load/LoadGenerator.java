@@ -0,0 +1,183 @@
+/*
+ * Copyright (c) 2015 Shervin Asgari
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package no.asgari.civilization.server.load;
+
+import com.codahale.metrics.Snapshot;
+import com.codahale.metrics.Timer;
+import com.google.common.base.Strings;
+import com.mongodb.MongoClient;
+import com.mongodb.MongoClientURI;
+import no.asgari.civilization.server.model.Civ;
+import no.asgari.civilization.server.model.Item;
+import no.asgari.civilization.server.model.PBF;
+import no.asgari.civilization.server.model.Playerhand;
+import org.mongojack.JacksonDBCollection;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Plays many games concurrently against a running server and reports throughput, latency percentiles
+ * and lost updates.
+ * <p>
+ * Start the server first, ie against a local mongo, then run:
+ * <pre>
+ * mvn test-compile dependency:build-classpath -Dmdep.outputFile=target/cp.txt
+ * java -cp target/classes:target/test-classes:$(cat target/cp.txt) -Dload.games=200 -Dload.concurrency=32 \
+ *     -Dload.mongo=mongodb://localhost:27017/playciv no.asgari.civilization.server.load.LoadGenerator
+ * </pre>
+ * Settings (system properties):
+ * <ul>
+ * <li>load.url - api base url, default http://localhost:8080/api</li>
+ * <li>load.games - number of games, default 100</li>
+ * <li>load.players - players per game, default 3</li>
+ * <li>load.concurrency - games played at the same time, default 16</li>
+ * <li>load.rounds - rounds where every player has a turn, default 3</li>
+ * <li>load.draws - draws per turn, default 3</li>
+ * <li>load.mongo - if set, every game is also checked for items duplicated or lost across the deck, discard pile, hands and techs</li>
+ * </ul>
+ */
+public class LoadGenerator {
+
+    public static void main(String[] args) throws Exception {
+        String url = System.getProperty("load.url", "http://localhost:8080/api");
+        int games = Integer.getInteger("load.games", 100);
+        int players = Integer.getInteger("load.players", 3);
+        int concurrency = Integer.getInteger("load.concurrency", 16);
+        int rounds = Integer.getInteger("load.rounds", 3);
+        int draws = Integer.getInteger("load.draws", 3);
+        String mongo = System.getProperty("load.mongo");
+
+        ApiClient api = new ApiClient(url);
+        ExecutorService gamePool = Executors.newFixedThreadPool(concurrency);
+        ExecutorService burstPool = Executors.newCachedThreadPool();
+        String run = Long.toString(System.currentTimeMillis(), 36);
+
+        System.out.printf("Playing %d games of %d players, %d at a time, against %s%n", games, players, concurrency, url);
+        long start = System.nanoTime();
+        List<Future<GameResult>> futures = new ArrayList<>(games);
+        for (int i = 0; i < games; i++) {
+            futures.add(gamePool.submit(new SimulatedGame(api, burstPool, "load" + run + "g" + i, players, rounds, draws)));
+        }
+        List<GameResult> results = new ArrayList<>(games);
+        long elapsedNanos;
+        try {
+            for (Future<GameResult> future : futures) {
+                results.add(future.get());
+            }
+            elapsedNanos = System.nanoTime() - start;
+        } finally {
+            gamePool.shutdownNow();
+            burstPool.shutdownNow();
+            api.close();
+        }
+
+        report(api, results, elapsedNanos);
+        if (!Strings.isNullOrEmpty(mongo)) {
+            checkDatabase(mongo, results);
+        }
+    }
+
+    private static void report(ApiClient api, List<GameResult> results, long elapsedNanos) {
+        double seconds = elapsedNanos / (double) TimeUnit.SECONDS.toNanos(1);
+        long requests = api.timers().values().stream().mapToLong(Timer::getCount).sum();
+        System.out.printf("%nFinished in %.1f s, %d requests, %.1f requests/s%n%n", seconds, requests, requests / seconds);
+
+        System.out.printf("%-20s %8s %8s %8s %8s %8s %8s%n", "operation", "count", "req/s", "p50 ms", "p95 ms", "p99 ms", "max ms");
+        for (Map.Entry<String, Timer> entry : api.timers().entrySet()) {
+            Snapshot snapshot = entry.getValue().getSnapshot();
+            System.out.printf("%-20s %8d %8.1f %8.1f %8.1f %8.1f %8.1f%n", entry.getKey(), entry.getValue().getCount(),
+                    entry.getValue().getCount() / seconds, millis(snapshot.getMedian()), millis(snapshot.get95thPercentile()),
+                    millis(snapshot.get99thPercentile()), millis(snapshot.getMax()));
+        }
+
+        if (!api.errors().isEmpty()) {
+            System.out.printf("%nFailed requests%n");
+            for (Map.Entry<String, AtomicLong> entry : api.errors().entrySet()) {
+                System.out.printf("%-30s %8d%n", entry.getKey(), entry.getValue().get());
+            }
+        }
+
+        System.out.printf("%nLost updates seen through the api%n");
+        System.out.printf("%-30s %8d%n", "games not played", results.stream().filter(r -> r.getFailure() != null).count());
+        System.out.printf("%-30s %8d%n", "joins lost", results.stream().mapToInt(GameResult::getLostJoins).sum());
+        System.out.printf("%-30s %8d%n", "items duplicated in hands", results.stream().mapToInt(r -> r.getDuplicatedItems().get()).sum());
+        System.out.printf("%-30s %8d%n", "drawn items vanished", results.stream().filter(r -> r.getFailure() == null).mapToInt(GameResult::vanishedItems).sum());
+        System.out.printf("%-30s %8d%n", "unaccounted items in hands", results.stream().filter(r -> r.getFailure() == null).mapToInt(GameResult::extraItems).sum());
+        System.out.printf("%-30s %8d%n", "undos stuck after all votes", results.stream().mapToInt(r -> Math.max(0, r.getActiveUndos())).sum());
+        System.out.printf("%-30s %8d%n", "chat messages lost", results.stream().mapToInt(GameResult::lostChats).sum());
+        results.stream()
+                .filter(r -> r.getFailure() != null)
+                .limit(10)
+                .forEach(r -> System.out.println("  " + r.getPbfId() + ": " + r.getFailure()));
+    }
+
+    /**
+     * Every item of the game is in exactly one place: the deck, the discard pile or a hand.
+     * A new game numbers its items, techs, social policies and starting techs from 1 to lastItemNumber,
+     * and the techs and social policies never leave the game, so every number must still be found
+     */
+    private static void checkDatabase(String uri, List<GameResult> results) throws Exception {
+        MongoClientURI clientURI = new MongoClientURI(uri);
+        MongoClient mongoClient = new MongoClient(clientURI);
+        try {
+            JacksonDBCollection<PBF, String> pbfCollection = JacksonDBCollection.wrap(
+                    mongoClient.getDB(clientURI.getDatabase()).getCollection(PBF.COL_NAME), PBF.class, String.class);
+            int lost = 0;
+            int duplicated = 0;
+            for (GameResult result : results) {
+                if (result.getPbfId() == null) {
+                    continue;
+                }
+                PBF pbf = pbfCollection.findOneById(result.getPbfId());
+                List<Item> all = new ArrayList<>(pbf.getItems());
+                all.addAll(pbf.getDiscardedItems());
+                for (Playerhand playerhand : pbf.getPlayers()) {
+                    all.addAll(playerhand.getItems());
+                }
+                Set<Integer> itemNumbers = new HashSet<>();
+                for (Item item : all) {
+                    if (!itemNumbers.add(item.getItemNumber())) {
+                        duplicated++;
+                    }
+                    if (item instanceof Civ && ((Civ) item).getStartingTech() != null) {
+                        itemNumbers.add(((Civ) item).getStartingTech().getItemNumber());
+                    }
+                }
+                pbf.getTechs().forEach(tech -> itemNumbers.add(tech.getItemNumber()));
+                pbf.getSocialPolicies().forEach(socialPolicy -> itemNumbers.add(socialPolicy.getItemNumber()));
+                lost += Math.max(0, pbf.getLastItemNumber() - itemNumbers.size());
+            }
+            System.out.printf("%nLost updates in the database%n");
+            System.out.printf("%-30s %8d%n", "items duplicated", duplicated);
+            System.out.printf("%-30s %8d%n", "items lost", lost);
+        } finally {
+            mongoClient.close();
+        }
+    }
+
+    private static double millis(double nanos) {
+        return nanos / TimeUnit.MILLISECONDS.toNanos(1);
+    }
+}
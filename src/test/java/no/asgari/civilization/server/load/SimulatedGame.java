@@ -0,0 +1,301 @@
+/*
+ * Copyright (c) 2015 Shervin Asgari
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package no.asgari.civilization.server.load;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import no.asgari.civilization.server.model.GameType;
+
+import javax.ws.rs.core.Form;
+import javax.ws.rs.core.Response;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * One play-by-forum game played through the REST api.
+ * Players that are not in turn act concurrently with the player in turn, like they do on the forum
+ */
+class SimulatedGame implements Callable<GameResult> {
+    private static final ObjectMapper mapper = new ObjectMapper();
+    private static final String PASSWORD = "loadtest";
+    private static final List<String> SHEETS = ImmutableList.of("CULTURE_1", "CULTURE_2", "HUTS", "VILLAGES", "GREAT_PERSON");
+    private static final Set<String> TRADABLE_SHEETS = new HashSet<>(ImmutableList.of("CULTURE_1", "CULTURE_2", "CULTURE_3", "HUTS", "VILLAGES",
+            "Culture I", "Culture II", "Culture III", "Huts", "Villages"));
+
+    private final ApiClient api;
+    private final ExecutorService burst;
+    private final String prefix;
+    private final int numOfPlayers;
+    private final int rounds;
+    private final int drawsPerTurn;
+
+    private final List<String> usernames = new ArrayList<>();
+    private final Map<String, String> playerIds = new HashMap<>();
+    private final GameResult result = new GameResult();
+
+    SimulatedGame(ApiClient api, ExecutorService burst, String prefix, int numOfPlayers, int rounds, int drawsPerTurn) {
+        this.api = api;
+        this.burst = burst;
+        this.prefix = prefix;
+        this.numOfPlayers = numOfPlayers;
+        this.rounds = rounds;
+        this.drawsPerTurn = drawsPerTurn;
+    }
+
+    @Override
+    public GameResult call() {
+        try {
+            play();
+        } catch (Exception e) {
+            result.setFailure(e.toString());
+        }
+        return result;
+    }
+
+    private void play() throws Exception {
+        for (int i = 0; i < numOfPlayers; i++) {
+            String username = prefix + "p" + i;
+            usernames.add(username);
+            register(username);
+        }
+        concurrently(usernames, this::login);
+        if (playerIds.size() != numOfPlayers) {
+            result.setFailure("could not log in all players");
+            return;
+        }
+
+        String pbfId = createGame();
+        if (pbfId == null) {
+            result.setFailure("could not create game");
+            return;
+        }
+        result.setPbfId(pbfId);
+        concurrently(usernames.subList(1, numOfPlayers), username -> api.post("game.join", "/game/" + pbfId + "/join", auth(username)));
+        rejoinLostPlayers(pbfId);
+
+        for (int round = 0; round < rounds * numOfPlayers; round++) {
+            JsonNode game = api.get("game.get", "/game/" + pbfId, auth(usernames.get(0)));
+            if (game == null || game.path("whosTurnIsIt").asText().isEmpty()) {
+                result.setFailure("game did not start");
+                return;
+            }
+            playTurn(pbfId, game.get("whosTurnIsIt").asText());
+        }
+
+        verify(pbfId);
+    }
+
+    /**
+     * Joins that raced each other may have overwritten one another. Count them, then join the missing
+     * players one at a time so the game can still be played
+     */
+    private void rejoinLostPlayers(String pbfId) {
+        JsonNode players = api.get("game.players", "/game/" + pbfId + "/players/all", null);
+        if (players == null) {
+            return;
+        }
+        Set<String> joined = new HashSet<>();
+        players.forEach(player -> joined.add(player.path("username").asText()));
+        List<String> missing = usernames.stream()
+                .filter(username -> !joined.contains(username))
+                .collect(Collectors.toList());
+        result.setLostJoins(missing.size());
+        missing.forEach(username -> api.post("game.join", "/game/" + pbfId + "/join", auth(username)));
+    }
+
+    private void playTurn(String pbfId, String inTurn) throws Exception {
+        String auth = auth(inTurn);
+        List<String> others = usernames.stream().filter(u -> !u.equals(inTurn)).collect(Collectors.toList());
+
+        for (int i = 0; i < drawsPerTurn; i++) {
+            String sheet = SHEETS.get((result.getDraws() + i) % SHEETS.size());
+            if (api.post("draw", "/draw/" + pbfId + "/" + sheet, auth) != null) {
+                result.draw();
+            }
+        }
+
+        //Everyone else reads the game and chats while the player in turn trades
+        List<Callable<Object>> tasks = new ArrayList<>();
+        tasks.add(() -> trade(pbfId, inTurn, others.get(0)));
+        for (String other : others) {
+            tasks.add(() -> api.get("game.get", "/game/" + pbfId, auth(other)));
+            tasks.add(() -> {
+                if (api.post("game.chat", "/game/" + pbfId + "/chat", auth(other), new Form("message", "hello from " + other)) != null) {
+                    result.chat();
+                }
+                return null;
+            });
+        }
+        invokeAll(tasks);
+
+        undoLastDraw(pbfId, inTurn, others);
+        api.post("player.endturn", "/player/" + pbfId + "/endturn", auth);
+    }
+
+    private Object trade(String pbfId, String from, String to) {
+        JsonNode game = api.get("game.get", "/game/" + pbfId, auth(from));
+        if (game == null) {
+            return null;
+        }
+        for (JsonNode item : items(game)) {
+            if (TRADABLE_SHEETS.contains(item.path("sheetName").asText())) {
+                Map<String, Object> dto = ImmutableMap.of(
+                        "itemNumber", item.get("itemNumber").asInt(),
+                        "name", item.get("name").asText(),
+                        "sheetName", item.get("sheetName").asText(),
+                        "ownerId", playerIds.get(to),
+                        "pbfId", pbfId);
+                if (api.postJson("player.trade", "/player/" + pbfId + "/trade", auth(from), dto) != null) {
+                    result.trade();
+                }
+                return null;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * The player in turn asks for undo of the latest draw, and everyone else votes yes at the same time
+     */
+    private void undoLastDraw(String pbfId, String inTurn, List<String> others) throws Exception {
+        JsonNode logs = api.get("game.privatelog", "/game/" + pbfId + "/privatelog", auth(inTurn));
+        if (logs == null) {
+            return;
+        }
+        String gameLogId = null;
+        long newest = Long.MIN_VALUE;
+        for (JsonNode log : logs) {
+            if (log.path("log").asText().contains(" drew ") && log.path("created").asLong() > newest) {
+                newest = log.path("created").asLong();
+                gameLogId = log.get("id").asText();
+            }
+        }
+        if (gameLogId == null || api.put("game.undo", "/game/" + pbfId + "/undo/" + gameLogId, auth(inTurn)) == null) {
+            return;
+        }
+        result.undo();
+        String undoLogId = gameLogId;
+        concurrently(others, username -> api.put("game.vote", "/game/" + pbfId + "/vote/" + undoLogId + "/yes", auth(username)));
+    }
+
+    private void verify(String pbfId) {
+        Set<Integer> seen = new HashSet<>();
+        int handTotal = 0;
+        for (String username : usernames) {
+            JsonNode game = api.get("verify", "/game/" + pbfId, auth(username));
+            if (game == null || !game.path("player").isObject()) {
+                result.setFailure("could not read hand of " + username);
+                return;
+            }
+            for (JsonNode item : items(game)) {
+                handTotal++;
+                if (!seen.add(item.get("itemNumber").asInt())) {
+                    result.duplicate();
+                }
+            }
+        }
+        result.setItemsInHands(handTotal);
+
+        JsonNode finished = api.get("verify", "/game/" + pbfId + "/undo/finished", null);
+        JsonNode active = api.get("verify", "/game/" + pbfId + "/undo/active", null);
+        JsonNode chats = api.get("verify", "/game/" + pbfId + "/chat?all=true", null);
+        result.setFinishedUndos(finished == null ? -1 : finished.size());
+        result.setActiveUndos(active == null ? -1 : active.size());
+        result.setChatsFound(chats == null ? -1 : chats.size());
+    }
+
+    private String createGame() {
+        Map<String, Object> dto = ImmutableMap.of(
+                "name", prefix,
+                "type", GameType.WAW.name(),
+                "numOfPlayers", numOfPlayers,
+                "color", "Green");
+        Response response = api.postJson("game.create", "/game", auth(usernames.get(0)), dto);
+        if (response == null || response.getLocation() == null) {
+            return null;
+        }
+        String location = response.getLocation().getPath();
+        return location.substring(location.lastIndexOf('/') + 1);
+    }
+
+    private void register(String username) {
+        Form form = new Form()
+                .param("username", username)
+                .param("password", Base64.getEncoder().encodeToString(PASSWORD.getBytes(StandardCharsets.UTF_8)))
+                .param("email", username + "@loadtest.playciv.com");
+        api.post("auth.register", "/auth/register", null, form);
+    }
+
+    private Object login(String username) {
+        Response response = api.post("auth.login", "/auth/login", null, new Form().param("username", username).param("password", PASSWORD));
+        if (response != null) {
+            JsonNode player = readTree(response);
+            if (player != null) {
+                synchronized (playerIds) {
+                    playerIds.put(username, player.get("id").asText());
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Items are serialized wrapped in their type name, ie {"cultureI": {...}}
+     */
+    private static List<JsonNode> items(JsonNode game) {
+        List<JsonNode> items = new ArrayList<>();
+        game.path("player").path("items").forEach(item -> items.add(item.elements().next()));
+        return items;
+    }
+
+    private static JsonNode readTree(Response response) {
+        try {
+            return mapper.readTree(response.readEntity(String.class));
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private String auth(String username) {
+        return ApiClient.basicAuth(username, PASSWORD);
+    }
+
+    private void concurrently(List<String> usernames, Function<String, Object> action) throws Exception {
+        invokeAll(usernames.stream()
+                .map(username -> (Callable<Object>) () -> action.apply(username))
+                .collect(Collectors.toList()));
+    }
+
+    private void invokeAll(List<Callable<Object>> tasks) throws Exception {
+        for (Future<Object> future : burst.invokeAll(tasks)) {
+            future.get();
+        }
+    }
+}
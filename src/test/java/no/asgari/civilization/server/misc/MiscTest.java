@@ -1,17 +1,42 @@
 package no.asgari.civilization.server.misc;
 
+import com.fasterxml.jackson.databind.JsonMappingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import no.asgari.civilization.server.application.PublicChatBuffer;
+import no.asgari.civilization.server.dto.ChatDTO;
 import no.asgari.civilization.server.dto.MessageDTO;
+import no.asgari.civilization.server.model.Chat;
+import no.asgari.civilization.server.model.Civ;
+import no.asgari.civilization.server.model.Infantry;
+import no.asgari.civilization.server.model.Item;
+import no.asgari.civilization.server.model.ItemList;
+import no.asgari.civilization.server.model.PBF;
+import no.asgari.civilization.server.model.PlayerTurn;
 import no.asgari.civilization.server.model.Playerhand;
+import no.asgari.civilization.server.model.Tech;
+import no.asgari.civilization.server.model.TechCatalog;
+import no.asgari.civilization.server.model.TurnKey;
+import no.asgari.civilization.server.model.Village;
+import no.asgari.civilization.server.repository.ChatRepository;
+import no.asgari.civilization.server.repository.memory.InMemoryChatRepository;
 import org.junit.Test;
 
 import javax.ws.rs.core.Response;
 import java.net.URLDecoder;
+import java.time.Instant;
 import java.time.LocalDateTime;
 import java.time.ZoneId;
+import java.time.temporal.ChronoUnit;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.stream.Collectors;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 public class MiscTest {
 
@@ -48,6 +73,173 @@ public class MiscTest {
         assertTrue(CivUtil.shouldSendEmailInGame(playerhand));
     }
 
+    @Test
+    public void publicTurnsAreKeyedByTurnThenUsername() throws Exception {
+        PBF pbf = new PBF();
+        pbf.getPublicTurns().put(new TurnKey(12, "bob"), new PlayerTurn("bob", 12));
+        pbf.getPublicTurns().put(new TurnKey(1, "2bob"), new PlayerTurn("2bob", 1));
+        pbf.getPublicTurns().put(new TurnKey(2, "alice"), new PlayerTurn("alice", 2));
+
+        ObjectMapper mapper = new ObjectMapper();
+        PBF read = mapper.readValue(mapper.writeValueAsString(pbf), PBF.class);
+        assertThat(read.getPublicTurns().keySet()).containsExactly(new TurnKey(1, "2bob"), new TurnKey(2, "alice"), new TurnKey(12, "bob"));
+        assertThat(read.getPublicTurns().subMap(TurnKey.first(2), TurnKey.first(3)).values()).containsExactly(new PlayerTurn("alice", 2));
+
+        //Keys written before the separator are taken from the turn, since "1" + "2bob" and "12" + "bob" are both "12bob"
+        String legacy = "{\"publicTurns\":{\"12bob\":{\"username\":\"2bob\",\"turnNumber\":1},\"3alice\":{\"username\":\"alice\",\"turnNumber\":3}}}";
+        assertThat(mapper.readValue(legacy, PBF.class).getPublicTurns().keySet()).containsExactly(new TurnKey(1, "2bob"), new TurnKey(3, "alice"));
+        try {
+            TurnKey.parse("12bob");
+            fail("Should not guess where the turn number ends");
+        } catch (IllegalArgumentException expected) {
+        }
+        try {
+            mapper.readValue("{\"publicTurns\":{\"1:bob\":{\"username\":\"bob\",\"turnNumber\":1},\"1bob\":{\"username\":\"bob\",\"turnNumber\":1}}}", PBF.class);
+            fail("Should not let one turn replace another");
+        } catch (JsonMappingException expected) {
+        }
+    }
+
+
+
+    @Test
+    public void publicChatKeepsTheNewestUnexpiredMessages() {
+        PublicChatBuffer publicChat = new PublicChatBuffer(2);
+        Chat expired = new Chat();
+        expired.setMessage("old");
+        expired.setCreated(LocalDateTime.now().minusDays(Chat.PUBLIC_CHAT_DAYS + 1));
+        publicChat.add(expired);
+        assertThat(publicChat.newest()).isEmpty();
+
+        for (String message : new String[]{"first", "second", "third"}) {
+            Chat chat = new Chat();
+            chat.setMessage(message);
+            publicChat.add(chat);
+        }
+        assertThat(publicChat.newest()).extracting(ChatDTO::getMessage).containsExactly("second", "third");
+    }
 
+    @Test
+    public void publicChatShowsMessagesWrittenOnOtherServers() {
+        ChatRepository chatRepository = new InMemoryChatRepository();
+        PublicChatBuffer publicChat = PublicChatBuffer.load(chatRepository, 2, 5000);
+        assertThat(publicChat.newest()).isEmpty();
+
+        Chat chat = new Chat();
+        chat.setMessage("from another server");
+        chat.setExpireAt(Date.from(Instant.now().plus(Chat.PUBLIC_CHAT_DAYS, ChronoUnit.DAYS)));
+        chatRepository.insert(chat);
+        assertThat(publicChat.newest()).isEmpty();
+        publicChat.refresh();
+        assertThat(publicChat.newest()).extracting(ChatDTO::getMessage).containsExactly("from another server");
+
+        chatRepository.deletePublic();
+        publicChat.refresh();
+        assertThat(publicChat.newest()).isEmpty();
+    }
+
+    @Test
+    public void itemListFindsRenumberedAndEqualItems() {
+        Civ america = new Civ("America");
+        america.setItemNumber(1);
+        Civ sameAmerica = new Civ("America");
+        sameAmerica.setItemNumber(1);
+        ItemList items = new ItemList();
+        items.add(america);
+        items.add(sameAmerica);
+
+        assertTrue(items.removeItem(sameAmerica));
+        assertThat(items).hasSize(1);
+        assertTrue(items.findByItemNumber(1).get() == america);
 
+        america.setItemNumber(42);
+        items.reindex();
+        assertFalse(items.findByItemNumber(1).isPresent());
+        assertTrue(items.findByItemNumber(42).get() == america);
+    }
+
+    @Test
+    public void itemListIsIndexedAgainAfterBeingRead() throws Exception {
+        Playerhand playerhand = new Playerhand();
+        Civ america = new Civ("America");
+        america.setItemNumber(7);
+        Village village = new Village("Village");
+        village.setItemNumber(8);
+        playerhand.getItems().addAll(Arrays.asList(america, village));
+
+        ObjectMapper mapper = new ObjectMapper();
+        String json = mapper.writeValueAsString(playerhand);
+        assertThat(json).contains("\"items\":[{");
+        Playerhand read = mapper.readValue(json, Playerhand.class);
+
+        assertThat(read.getItems()).isInstanceOf(ItemList.class).hasSize(2);
+        Item readVillage = read.getItems().findByItemNumber(8).get();
+        assertThat(readVillage).isEqualTo(village);
+        assertTrue(read.getItems().removeCopyOf(village).get() == readVillage);
+        assertThat(read.getItems()).containsExactly(america);
+        assertFalse(read.getItems().findByItemNumber(8).isPresent());
+    }
+
+    @Test
+    public void remainingTechsAreByLevelWithoutTouchingTheDeck() {
+        List<Tech> deck = Arrays.asList(new Tech("Navigation", Tech.LEVEL_2), new Tech("Pottery", Tech.LEVEL_1),
+                new Tech("Flight", Tech.LEVEL_4), new Tech("Writing", Tech.LEVEL_1));
+        TechCatalog catalog = new TechCatalog(deck);
+
+        List<Tech> remaining = catalog.remaining(catalog.bitsOf(Collections.singleton(new Tech("Pottery", Tech.LEVEL_1))));
+        assertThat(remaining).extracting(Tech::getName).containsExactly("Writing", "Navigation", "Flight");
+        assertThat(deck).hasSize(4);
+    }
+
+    @Test
+    public void revealedItemsAreKeptUpToDateItemByItem() throws Exception {
+        Village village = new Village("Village");
+        Infantry infantry = new Infantry(2, 3);
+        Civ civ = new Civ("America");
+        Playerhand playerhand = new Playerhand();
+        playerhand.getItems().addAll(Arrays.asList(village, infantry, civ));
+        PBF pbf = new PBF();
+        pbf.getPlayers().add(playerhand);
+        pbf.setItems(Arrays.asList(village, infantry, civ));
+        pbf.numberItems();
+        pbf.getItems().clear();
+        pbf.revealedItemsChanged();
+        assertThat(pbf.getRevealedItems()).isEmpty();
+
+        //The revealed items are copies after the game is read again
+        ObjectMapper mapper = new ObjectMapper();
+        pbf = mapper.readValue(mapper.writeValueAsString(pbf), PBF.class);
+        playerhand = pbf.getPlayers().get(0);
+        String tag = pbf.getRevealedItemsTag();
+
+        pbf.reveal(playerhand.getItems().get(1));
+        pbf.reveal(playerhand.getItems().get(0));
+        assertThat(numbers(pbf.getRevealedItems())).isEqualTo(numbers(pbf.collectRevealedItems()));
+        assertThat(pbf.getRevealedItemsTag()).isNotEqualTo(tag);
+
+        pbf = mapper.readValue(mapper.writeValueAsString(pbf), PBF.class);
+        playerhand = pbf.getPlayers().get(0);
+        Infantry inBattle = (Infantry) playerhand.getItems().get(1);
+        inBattle.setInBattle(true);
+        inBattle.setOwnerId("someone else");
+        tag = pbf.getRevealedItemsTag();
+        pbf.revealedItemChanged(inBattle);
+        assertThat(((Infantry) pbf.getRevealedItems().get(0)).isInBattle()).isTrue();
+        assertThat(pbf.getRevealedItems().get(0).getOwnerId()).isEqualTo("someone else");
+        assertThat(pbf.getRevealedItemsTag()).isNotEqualTo(tag);
+
+        Item discarded = playerhand.getItems().get(0);
+        playerhand.getItems().removeItem(discarded);
+        discarded.setHidden(true);
+        pbf.discard(discarded);
+        assertThat(numbers(pbf.getRevealedItems())).isEqualTo(numbers(pbf.collectRevealedItems()));
+
+        pbf.takeDiscarded(discarded.getSheetName());
+        assertThat(numbers(pbf.getRevealedItems())).isEqualTo(numbers(pbf.collectRevealedItems()));
+        assertThat(pbf.getRevealedItems()).hasSize(1);
+    }
+
+    private static List<Integer> numbers(List<Item> items) {
+        return items.stream().map(Item::getItemNumber).collect(Collectors.toList());
+    }
 }
@@ -2,16 +2,31 @@ package no.asgari.civilization.server.mongodb;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
 import lombok.Cleanup;
+import no.asgari.civilization.server.email.Notifications;
+import no.asgari.civilization.server.model.Item;
 import no.asgari.civilization.server.model.PBF;
+import no.asgari.civilization.server.model.PBFPart;
 import no.asgari.civilization.server.model.Player;
+import no.asgari.civilization.server.model.Playerhand;
+import no.asgari.civilization.server.repository.LeaseRepository;
+import no.asgari.civilization.server.repository.NotificationRepository;
+import no.asgari.civilization.server.repository.PBFRepository;
 import org.apache.commons.codec.digest.DigestUtils;
 import org.junit.Test;
 import org.mongojack.DBCursor;
 import org.mongojack.WriteResult;
 
 import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
 
 public class MongoDBTest extends AbstractCivilizationTest {
 
@@ -43,4 +58,98 @@ public class MongoDBTest extends AbstractCivilizationTest {
         createPlayer("cash1981", getApp().pbfId);
     }
 
+    @Test
+    public void loadAndWriteOnlyOnePlayer() {
+        PBFRepository pbfRepository = getApp().repositories.getPbfs();
+        PBF full = pbfRepository.findById(getApp().pbfId);
+
+        PBF pbf = pbfRepository.findWithPlayer(getApp().pbfId, getApp().playerId, PBFPart.NAME);
+        assertEquals(full.getName(), pbf.getName());
+        assertTrue(pbf.getItems().isEmpty());
+        assertEquals(1, pbf.getPlayers().size());
+        assertEquals(getApp().playerId, pbf.getPlayers().get(0).getPlayerId());
+
+        pbf.getPlayers().get(0).setGamenote("partial");
+        assertTrue(pbfRepository.updatePlayer(pbf, getApp().playerId));
+
+        PBF updated = pbfRepository.findById(getApp().pbfId);
+        assertEquals(full.getPlayers().size(), updated.getPlayers().size());
+        assertEquals(full.getItems().size(), updated.getItems().size());
+        assertTrue(updated.getPlayers().stream()
+                .anyMatch(p -> p.getPlayerId().equals(getApp().playerId) && "partial".equals(p.getGamenote())));
+    }
+
+
+    @Test
+    public void partialWriteOfAStaleGameIsRejected() {
+        PBFRepository pbfRepository = getApp().repositories.getPbfs();
+        PBF first = pbfRepository.findWithPlayer(getApp().pbfId, getApp().playerId, PBFPart.ITEMS);
+        PBF second = pbfRepository.findWithPlayer(getApp().pbfId, getApp().playerId, PBFPart.ITEMS);
+
+        Item drawn = first.getItems().remove(0);
+        first.getPlayers().get(0).getItems().add(drawn);
+        assertTrue(pbfRepository.updatePlayer(first, getApp().playerId, PBFPart.ITEMS));
+
+        //Drawing the same item again from the game as it was before is refused
+        second.getItems().remove(0);
+        second.getPlayers().get(0).getItems().add(drawn);
+        assertFalse(pbfRepository.updatePlayer(second, getApp().playerId, PBFPart.ITEMS));
+
+        PBF stored = pbfRepository.findById(getApp().pbfId);
+        long inHands = stored.getPlayers().stream()
+                .flatMap(p -> p.getItems().stream())
+                .filter(it -> it.getItemNumber() == drawn.getItemNumber())
+                .count();
+        assertEquals(1, inHands);
+
+        //A whole write in between also makes the partial write stale
+        PBF partial = pbfRepository.findParts(getApp().pbfId, PBFPart.NAME);
+        pbfRepository.update(stored);
+        assertFalse(pbfRepository.updateParts(partial, PBFPart.NAME));
+    }
+
+    @Test
+    public void notificationIsOnlyClaimedOncePerInterval() {
+        NotificationRepository notifications = getApp().repositories.getNotifications();
+        String key = "chat:" + getApp().pbfId + ":" + System.nanoTime();
+
+        assertTrue(notifications.claim(key, Duration.ofMinutes(30)));
+        assertFalse(notifications.claim(key, Duration.ofMinutes(30)));
+        assertTrue(notifications.claim("other:" + key, Duration.ofMinutes(30)));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void notificationIntervalCanNotOutliveTheClaims() {
+        new Notifications(getApp().repositories.getNotifications(), NotificationRepository.MAX_INTERVAL.plusSeconds(1));
+    }
+
+    @Test
+    public void leaseIsOnlyHeldByOneOwner() {
+        LeaseRepository leases = getApp().repositories.getLeases();
+        String name = "job" + System.nanoTime();
+
+        assertTrue(leases.acquire(name, "node1", Duration.ofMinutes(30)));
+        assertFalse(leases.acquire(name, "node2", Duration.ofMinutes(30)));
+        assertTrue(leases.acquire(name, "node1", Duration.ofMinutes(30)));
+        leases.release(name, "node2");
+        assertFalse(leases.acquire(name, "node2", Duration.ofMinutes(30)));
+        leases.release(name, "node1");
+        assertTrue(leases.acquire(name, "node2", Duration.ofMinutes(30)));
+    }
+
+    @Test
+    public void itemNumbersAreCountedWithinTheGame() {
+        PBF pbf = getApp().repositories.getPbfs().findById(getApp().pbfId);
+        List<Item> all = new ArrayList<>(pbf.getItems());
+        all.addAll(pbf.getDiscardedItems());
+        all.addAll(pbf.getTechs());
+        all.addAll(pbf.getSocialPolicies());
+        for (Playerhand playerhand : pbf.getPlayers()) {
+            all.addAll(playerhand.getItems());
+        }
+
+        Set<Integer> itemNumbers = new HashSet<>();
+        all.forEach(it -> assertTrue(itemNumbers.add(it.getItemNumber())));
+        assertTrue(itemNumbers.stream().allMatch(n -> n > 0 && n <= pbf.getLastItemNumber()));
+    }
 }
@@ -0,0 +1,190 @@
+package no.asgari.civilization.server.repository.memory;
+
+import no.asgari.civilization.server.model.GameLog;
+import no.asgari.civilization.server.model.Infantry;
+import no.asgari.civilization.server.model.PBF;
+import no.asgari.civilization.server.model.PBFPart;
+import no.asgari.civilization.server.model.PlayerTurn;
+import no.asgari.civilization.server.model.Playerhand;
+import no.asgari.civilization.server.model.Tech;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class InMemoryRepositoryTest {
+    private InMemoryPBFRepository pbfRepository;
+    private String pbfId;
+
+    @Before
+    public void createGame() {
+        pbfRepository = new InMemoryPBFRepository();
+        PBF pbf = new PBF();
+        pbf.setName("game");
+        pbf.setNumOfPlayers(2);
+        pbf.getItems().add(new Infantry(1, 3));
+        pbf.getTechs().add(new Tech("Writing", 1));
+        pbf.getPlayers().addAll(Arrays.asList(playerhand("1", "alice"), playerhand("2", "bob")));
+        pbfId = pbfRepository.insert(pbf);
+    }
+
+    private static Playerhand playerhand(String playerId, String username) {
+        Playerhand playerhand = new Playerhand();
+        playerhand.setPlayerId(playerId);
+        playerhand.setUsername(username);
+        playerhand.setColor("Red");
+        playerhand.getItems().add(new Infantry(2, 2));
+        return playerhand;
+    }
+
+    @Test
+    public void everyReadIsItsOwnCopy() {
+        PBF pbf = pbfRepository.findById(pbfId);
+        pbf.setName("changed");
+        pbf.getPlayers().clear();
+
+        PBF read = pbfRepository.findById(pbfId);
+        assertThat(read.getName()).isEqualTo("game");
+        assertThat(read.getPlayers()).hasSize(2);
+        assertThat(read).isNotSameAs(pbfRepository.findById(pbfId));
+    }
+
+    @Test
+    public void findPartsOnlyCopiesTheGivenParts() {
+        PBF stored = pbfRepository.findById(pbfId);
+        PBF pbf = pbfRepository.findParts(pbfId, PBFPart.NAME, PBFPart.ITEMS);
+
+        assertThat(pbf.getId()).isEqualTo(pbfId);
+        assertThat(pbf.getRevision()).isEqualTo(stored.getRevision());
+        assertThat(pbf.getName()).isEqualTo("game");
+        assertThat(pbf.getItems()).hasSize(1);
+        assertThat(pbf.getTechs()).isEmpty();
+        assertThat(pbf.getPlayers()).isEmpty();
+        assertThat(pbf.getNumOfPlayers()).isEqualTo(0);
+        assertThat(pbfRepository.findParts("unknown", PBFPart.NAME)).isNull();
+    }
+
+    @Test
+    public void playerNamesAreCopiedWithoutTheirHands() {
+        PBF pbf = pbfRepository.findParts(pbfId, PBFPart.PLAYER_NAMES);
+
+        assertThat(pbf.getPlayers()).extracting("username").containsExactly("alice", "bob");
+        assertThat(pbf.getPlayers()).extracting("color").containsExactly("Red", "Red");
+        assertTrue(pbf.getPlayers().stream().allMatch(p -> p.getItems().isEmpty()));
+    }
+
+    @Test
+    public void findWithPlayerOnlyHasThatPlayer() {
+        PBF pbf = pbfRepository.findWithPlayer(pbfId, "2", PBFPart.TECHS);
+
+        assertThat(pbf.getPlayers()).extracting("username").containsExactly("bob");
+        assertThat(pbf.getPlayers().get(0).getItems()).hasSize(1);
+        assertThat(pbf.getTechs()).hasSize(1);
+        assertThat(pbf.getItems()).isEmpty();
+    }
+
+    @Test
+    public void updatePartsOnlyWritesTheGivenParts() {
+        PBF pbf = pbfRepository.findById(pbfId);
+        pbf.setName("renamed");
+        pbf.getTechs().clear();
+
+        assertTrue(pbfRepository.updateParts(pbf, PBFPart.NAME));
+
+        PBF stored = pbfRepository.findById(pbfId);
+        assertThat(stored.getName()).isEqualTo("renamed");
+        assertThat(stored.getTechs()).hasSize(1);
+        assertThat(stored.getRevision()).isEqualTo(pbf.getRevision());
+    }
+
+    @Test
+    public void updatePartsOfAStaleGameIsRejected() {
+        PBF first = pbfRepository.findParts(pbfId, PBFPart.NAME);
+        PBF second = pbfRepository.findParts(pbfId, PBFPart.NAME);
+        first.setName("first");
+        second.setName("second");
+
+        assertTrue(pbfRepository.updateParts(first, PBFPart.NAME));
+        assertFalse(pbfRepository.updateParts(second, PBFPart.NAME));
+        assertThat(pbfRepository.findById(pbfId).getName()).isEqualTo("first");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void partsThatCanOnlyBeReadAreNotWritten() {
+        PBF pbf = pbfRepository.findParts(pbfId, PBFPart.PLAYER_NAMES);
+        pbfRepository.updateParts(pbf, PBFPart.PLAYER_NAMES);
+    }
+
+    @Test
+    public void updatePlayerLeavesTheOtherPlayersAlone() {
+        PBF pbf = pbfRepository.findWithPlayer(pbfId, "1", PBFPart.ITEMS);
+        pbf.getPlayers().get(0).getItems().clear();
+        pbf.getItems().clear();
+
+        assertTrue(pbfRepository.updatePlayer(pbf, "1", PBFPart.ITEMS));
+
+        PBF stored = pbfRepository.findById(pbfId);
+        assertThat(stored.getPlayers()).extracting("username").containsExactly("alice", "bob");
+        assertThat(stored.getPlayers().get(0).getItems()).isEmpty();
+        assertThat(stored.getPlayers().get(1).getItems()).hasSize(1);
+        assertThat(stored.getItems()).isEmpty();
+        assertThat(stored.getTechs()).hasSize(1);
+    }
+
+    @Test
+    public void updateOfAMissingGameWritesNothing() {
+        PBF pbf = pbfRepository.findById(pbfId);
+        assertTrue(pbfRepository.delete(pbfId));
+
+        assertFalse(pbfRepository.update(pbf));
+        assertThat(pbfRepository.findById(pbfId)).isNull();
+    }
+
+    @Test
+    public void documentsAreFoundByTheIndexedFieldUntilDeleted() {
+        InMemoryGameLogRepository gameLogRepository = new InMemoryGameLogRepository();
+        GameLog first = gameLog(pbfId);
+        GameLog other = gameLog("other");
+        GameLog second = gameLog(pbfId);
+        gameLogRepository.insert(first);
+        gameLogRepository.insert(other);
+        gameLogRepository.insert(second);
+
+        assertThat(gameLogRepository.findByPbfId(pbfId)).extracting("id").containsExactly(first.getId(), second.getId());
+
+        assertThat(gameLogRepository.deleteByPbfIds(Arrays.asList(pbfId))).isEqualTo(2);
+        assertThat(gameLogRepository.findByPbfId(pbfId)).isEmpty();
+        assertThat(gameLogRepository.findByPbfId("other")).extracting("id").containsExactly(other.getId());
+    }
+
+    private static GameLog gameLog(String pbfId) {
+        GameLog gameLog = new GameLog();
+        gameLog.setPbfId(pbfId);
+        return gameLog;
+    }
+
+    @Test
+    public void turnsAreSavedOncePerPlayerAndTurn() {
+        InMemoryTurnRepository turnRepository = new InMemoryTurnRepository();
+        turnRepository.save(turn("bob", 1, "first"));
+        turnRepository.save(turn("alice", 2, "second"));
+        turnRepository.save(turn("bob", 2, "third"));
+        turnRepository.save(turn("bob", 1, "again"));
+
+        assertThat(turnRepository.findByPbfId(pbfId)).hasSize(3);
+        assertThat(turnRepository.find(pbfId, "bob", 1).get().getSot()).isEqualTo("again");
+        assertThat(turnRepository.findByPbfIdAndTurnNumber(pbfId, 2)).extracting("username").containsExactly("alice", "bob");
+        assertThat(turnRepository.findLatestTurnNumber(pbfId)).isEqualTo(2);
+    }
+
+    private PlayerTurn turn(String username, int turnNumber, String sot) {
+        PlayerTurn turn = new PlayerTurn(username, turnNumber);
+        turn.setPbfId(pbfId);
+        turn.setSot(sot);
+        return turn;
+    }
+}
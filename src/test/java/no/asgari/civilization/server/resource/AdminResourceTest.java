@@ -1,15 +1,30 @@
 package no.asgari.civilization.server.resource;
 
+import no.asgari.civilization.server.action.AdminAction;
+import no.asgari.civilization.server.action.GameAction;
+import no.asgari.civilization.server.action.GameLogAction;
+import no.asgari.civilization.server.action.TurnAction;
+import no.asgari.civilization.server.model.Chat;
+import no.asgari.civilization.server.model.GameEvent;
+import no.asgari.civilization.server.model.GameLog;
+import no.asgari.civilization.server.model.GameSnapshot;
 import no.asgari.civilization.server.model.PBF;
+import no.asgari.civilization.server.model.Player;
+import no.asgari.civilization.server.model.PlayerTurn;
 import no.asgari.civilization.server.mongodb.AbstractCivilizationTest;
+import no.asgari.civilization.server.repository.Repositories;
+import no.asgari.civilization.server.repository.memory.InMemoryArchiveRepository;
 import org.eclipse.jetty.http.HttpStatus;
 import org.junit.Test;
 
+import javax.ws.rs.WebApplicationException;
 import javax.ws.rs.core.HttpHeaders;
 import javax.ws.rs.core.Response;
 import javax.ws.rs.core.UriBuilder;
+import java.util.List;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.fail;
 
 public class AdminResourceTest extends AbstractCivilizationTest {
     protected static String BASE_URL = String.format("http://localhost:%d/api", RULE.getLocalPort());
@@ -40,6 +55,156 @@ public class AdminResourceTest extends AbstractCivilizationTest {
                 .request()
                 .header(HttpHeaders.AUTHORIZATION, getAdminEncoded())
                 .post(null);
-        assertThat(response.getStatus()).isEqualTo(HttpStatus.NO_CONTENT_204);
+        assertThat(response.getStatus()).isIn(HttpStatus.ACCEPTED_202, HttpStatus.CONFLICT_409);
+    }
+
+    @Test
+    public void onlyAdminCanStartTheCleanup() {
+        Response response = client().target(UriBuilder.fromPath(BASE_URL + "/admin/cleanup").build())
+                .request()
+                .post(null);
+        assertThat(response.getStatus()).isEqualTo(HttpStatus.UNAUTHORIZED_401);
+
+        response = client().target(UriBuilder.fromPath(BASE_URL + "/admin/cleanup").build())
+                .request()
+                .header(HttpHeaders.AUTHORIZATION, getUsernameAndPassEncoded())
+                .post(null);
+        assertThat(response.getStatus()).isEqualTo(HttpStatus.FORBIDDEN_403);
+    }
+
+    @Test
+    public void onlyAdminCanStartTheArchiving() {
+        Response response = client().target(UriBuilder.fromPath(BASE_URL + "/admin/archive").build())
+                .request()
+                .post(null);
+        assertThat(response.getStatus()).isEqualTo(HttpStatus.UNAUTHORIZED_401);
+
+        response = client().target(UriBuilder.fromPath(BASE_URL + "/admin/archive").build())
+                .request()
+                .header(HttpHeaders.AUTHORIZATION, getUsernameAndPassEncoded())
+                .post(null);
+        assertThat(response.getStatus()).isEqualTo(HttpStatus.FORBIDDEN_403);
+    }
+
+    @Test
+    public void cleanupDeletesAbortedGamesWithTheirLogsAndChat() {
+        PBF aborted = new PBF();
+        aborted.setName("aborted");
+        aborted.setActive(false);
+        String pbfId = getApp().repositories.getPbfs().insert(aborted);
+        GameLog gameLog = new GameLog();
+        gameLog.setPbfId(pbfId);
+        getApp().repositories.getGameLogs().insert(gameLog);
+        Chat chat = new Chat();
+        chat.setPbfId(pbfId);
+        chat.setMessage("bye");
+        getApp().repositories.getChats().insert(chat);
+
+        new AdminAction(getApp().repositories).cleanup(1, () -> false);
+
+        assertThat(getApp().repositories.getPbfs().findById(pbfId)).isNull();
+        assertThat(getApp().repositories.getGameLogs().findByPbfId(pbfId)).isEmpty();
+        assertThat(getApp().repositories.getChats().findByPbfId(pbfId)).isEmpty();
+        assertThat(getApp().repositories.getPbfs().findById(getApp().pbfId)).isNotNull();
+    }
+
+    @Test
+    public void archivedGameIsStillFoundWithItsLogsAndChat() {
+        PBF finished = new PBF();
+        finished.setName("finished");
+        finished.setActive(false);
+        finished.setWinner("cash1981");
+        String pbfId = getApp().repositories.getPbfs().insert(finished);
+        GameLog gameLog = new GameLog();
+        gameLog.setPbfId(pbfId);
+        getApp().repositories.getGameLogs().insert(gameLog);
+        Chat chat = new Chat();
+        chat.setPbfId(pbfId);
+        chat.setUsername("cash1981");
+        chat.setMessage("gg");
+        getApp().repositories.getChats().insert(chat);
+        PlayerTurn turn = new PlayerTurn("cash1981", 1);
+        turn.setPbfId(pbfId);
+        turn.setSot("Build a city");
+        getApp().repositories.getTurns().save(turn);
+        getApp().repositories.getGameEvents().append(GameEvent.of(gameLog, GameLog.LogType.INFO));
+        getApp().repositories.getSnapshots().save(new GameSnapshot(finished, 1));
+
+        new AdminAction(getApp().repositories).archiveFinishedGames(1, () -> false);
+
+        assertThat(getApp().repositories.getPbfs().findById(pbfId)).isNull();
+        assertThat(getApp().repositories.getGameLogs().findByPbfId(pbfId)).isEmpty();
+        assertThat(getApp().repositories.getChats().findByPbfId(pbfId)).isEmpty();
+        assertThat(new GameAction(getApp().repositories).findPBFById(pbfId).getWinner()).isEqualTo("cash1981");
+        assertThat(new GameLogAction(getApp().repositories).getGameLogs(pbfId)).hasSize(1);
+        assertThat(new GameAction(getApp().repositories).getChat(pbfId)).extracting("message").containsExactly("gg");
+
+        assertThat(getApp().repositories.getTurns().findByPbfId(pbfId)).isEmpty();
+        assertThat(new TurnAction(getApp().repositories).getAllPublicTurns(pbfId)).extracting("sot").containsExactly("Build a city");
+        assertThat(getApp().repositories.getGameEvents().lastSequence(pbfId)).isEqualTo(0);
+        assertThat(getApp().repositories.getSnapshots().findLatest(pbfId, Long.MAX_VALUE).isPresent()).isFalse();
+    }
+
+    @Test
+    public void archivedGameIsOnlyListedWhenAskedForAndCanNotBeChanged() {
+        PBF finished = new PBF();
+        finished.setName("finished");
+        finished.setActive(false);
+        finished.setWinner("cash1981");
+        String pbfId = getApp().repositories.getPbfs().insert(finished);
+        GameAction gameAction = new GameAction(getApp().repositories);
+        int gamesBefore = gameAction.getPlayerHighScore().getTotalNumberOfGames();
+
+        new AdminAction(getApp().repositories).archiveFinishedGames(1, () -> false);
+
+        assertThat(gameAction.getAllGames(false)).extracting("id").doesNotContain(pbfId);
+        assertThat(gameAction.getAllGames(true)).extracting("id").contains(pbfId);
+        assertThat(gameAction.getPlayerHighScore().getTotalNumberOfGames()).isEqualTo(gamesBefore);
+
+        Player admin = new Player();
+        admin.setUsername("admin");
+        try {
+            gameAction.endGame(pbfId, admin, null);
+            fail("Should not change an archived game");
+        } catch (WebApplicationException e) {
+            assertThat(e.getResponse().getStatus()).isEqualTo(Response.Status.CONFLICT.getStatusCode());
+        }
+    }
+
+    @Test
+    public void chatWrittenWhileArchivingIsArchivedToo() {
+        Repositories inMemory = Repositories.inMemory();
+        InMemoryArchiveRepository archive = new InMemoryArchiveRepository() {
+            private boolean chatted;
+
+            @Override
+            public void archive(PBF pbf, List<GameLog> gameLogs, List<Chat> chats, List<PlayerTurn> turns) {
+                super.archive(pbf, gameLogs, chats, turns);
+                if (!chatted) {
+                    chatted = true;
+                    Chat chat = new Chat();
+                    chat.setPbfId(pbf.getId());
+                    chat.setMessage("rematch?");
+                    inMemory.getChats().insert(chat);
+                }
+            }
+        };
+        Repositories repositories = new Repositories(inMemory.getPbfs(), inMemory.getPlayers(), inMemory.getGameLogs(),
+                inMemory.getChats(), inMemory.getTournaments(), inMemory.getGameEvents(), inMemory.getSnapshots(),
+                inMemory.getTurns(), archive, inMemory.getNotifications(), inMemory.getLeases());
+        PBF finished = new PBF();
+        finished.setName("finished");
+        finished.setActive(false);
+        finished.setWinner("cash1981");
+        String pbfId = repositories.getPbfs().insert(finished);
+        Chat chat = new Chat();
+        chat.setPbfId(pbfId);
+        chat.setMessage("gg");
+        repositories.getChats().insert(chat);
+
+        new AdminAction(repositories).archiveFinishedGames(1, () -> false);
+
+        assertThat(repositories.getChats().findByPbfId(pbfId)).isEmpty();
+        assertThat(archive.findChats(pbfId)).extracting("message").containsExactly("gg", "rematch?");
     }
 }
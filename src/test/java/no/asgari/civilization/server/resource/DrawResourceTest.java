@@ -171,7 +171,7 @@ public class DrawResourceTest extends AbstractCivilizationTest {
     }
 
     private void drawCulture() throws Exception {
-        DrawAction drawAction = new DrawAction(getApp().db);
+        DrawAction drawAction = new DrawAction(getApp().repositories);
         Optional<GameLog> gameLogOptional = drawAction.draw(getApp().pbfId, getApp().playerId, SheetName.CULTURE_1);
         Optional<GameLog> gameLogOptional2 = drawAction.draw(getApp().pbfId, getApp().playerId, SheetName.CULTURE_2);
         Optional<GameLog> gameLogOptional3 = drawAction.draw(getApp().pbfId, getApp().playerId, SheetName.CULTURE_3);
@@ -20,6 +20,7 @@ import javax.ws.rs.client.Client;
 import javax.ws.rs.client.ClientBuilder;
 import javax.ws.rs.client.Entity;
 import javax.ws.rs.core.Form;
+import javax.ws.rs.core.GenericType;
 import javax.ws.rs.core.HttpHeaders;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
@@ -261,6 +262,74 @@ public class GameResourceTest extends AbstractCivilizationTest {
     }
 
 
+    @Test
+    public void chatIsPagedNewestFirst() {
+        String pbfId = getApp().pbfId_2;
+        for (String message : new String[]{"first", "second", "third"}) {
+            Chat chat = new Chat();
+            chat.setPbfId(pbfId);
+            chat.setUsername("cash1981");
+            chat.setMessage(message);
+            getApp().repositories.getChats().insert(chat);
+        }
+
+        Response response = client().target(
+                UriBuilder.fromPath(BASE_URL + String.format("/game/%s/chat", pbfId)).build())
+                .queryParam("limit", 2)
+                .request(MediaType.APPLICATION_JSON)
+                .header(HttpHeaders.AUTHORIZATION, getUsernameAndPassEncoded())
+                .get();
+        assertThat(response.getStatus()).isEqualTo(HttpStatus.OK_200);
+        List<ChatDTO> page = response.readEntity(new GenericType<List<ChatDTO>>() {
+        });
+        assertThat(page).extracting("message").containsExactly("third", "second");
+
+        response = client().target(
+                UriBuilder.fromPath(BASE_URL + String.format("/game/%s/chat", pbfId)).build())
+                .queryParam("limit", 2)
+                .queryParam("before", page.get(1).getId())
+                .request(MediaType.APPLICATION_JSON)
+                .header(HttpHeaders.AUTHORIZATION, getUsernameAndPassEncoded())
+                .get();
+        page = response.readEntity(new GenericType<List<ChatDTO>>() {
+        });
+        assertThat(page).extracting("message").containsExactly("first");
+    }
+
+    @Test
+    public void chatIsOnlyReadWholeWhenAskedFor() {
+        PBF chatty = new PBF();
+        chatty.setName("chatty");
+        String pbfId = getApp().repositories.getPbfs().insert(chatty);
+        for (int i = 0; i <= GameAction.CHAT_PAGE; i++) {
+            Chat chat = new Chat();
+            chat.setPbfId(pbfId);
+            chat.setUsername("cash1981");
+            chat.setMessage("message " + i);
+            getApp().repositories.getChats().insert(chat);
+        }
+
+        Response response = client().target(
+                UriBuilder.fromPath(BASE_URL + String.format("/game/%s/chat", pbfId)).build())
+                .request(MediaType.APPLICATION_JSON)
+                .get();
+        assertThat(response.readEntity(List.class)).hasSize(GameAction.CHAT_PAGE);
+
+        response = client().target(
+                UriBuilder.fromPath(BASE_URL + String.format("/game/%s/chat", pbfId)).build())
+                .queryParam("all", true)
+                .request(MediaType.APPLICATION_JSON)
+                .get();
+        assertThat(response.readEntity(List.class)).hasSize(GameAction.CHAT_PAGE + 1);
+
+        response = client().target(
+                UriBuilder.fromPath(BASE_URL + String.format("/game/%s/chat", pbfId)).build())
+                .queryParam("limit", 0)
+                .request(MediaType.APPLICATION_JSON)
+                .get();
+        assertThat(response.getStatus()).isEqualTo(HttpStatus.BAD_REQUEST_400);
+    }
+
     @Test
     public void publicChatTest() throws Exception {
         Form form = new Form("message", "public chat message");
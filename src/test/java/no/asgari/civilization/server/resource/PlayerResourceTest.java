@@ -3,6 +3,7 @@ package no.asgari.civilization.server.resource;
 import no.asgari.civilization.server.SheetName;
 import no.asgari.civilization.server.action.DrawAction;
 import no.asgari.civilization.server.action.PlayerAction;
+import no.asgari.civilization.server.action.UndoAction;
 import no.asgari.civilization.server.dto.ItemDTO;
 import no.asgari.civilization.server.model.Civ;
 import no.asgari.civilization.server.model.GameLog;
@@ -19,6 +20,7 @@ import org.mongojack.DBCursor;
 import org.mongojack.DBQuery;
 
 import javax.ws.rs.client.Entity;
+import javax.ws.rs.core.EntityTag;
 import javax.ws.rs.core.HttpHeaders;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
@@ -26,6 +28,7 @@ import javax.ws.rs.core.UriBuilder;
 import java.net.URI;
 import java.util.Optional;
 import java.util.Set;
+import java.util.UUID;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.junit.Assert.*;
@@ -216,7 +219,7 @@ public class PlayerResourceTest extends AbstractCivilizationTest {
 
     @Test
     public void testRevealItem() throws Exception {
-        DrawAction drawAction = new DrawAction(getApp().db);
+        DrawAction drawAction = new DrawAction(getApp().repositories);
         //Before draw
         Optional<GameLog> gameLogOptional = drawAction.draw(getApp().pbfId, getApp().playerId, SheetName.INFANTRY);
         assertTrue(gameLogOptional.isPresent());
@@ -243,7 +246,7 @@ public class PlayerResourceTest extends AbstractCivilizationTest {
 
     @Test
     public void chooseCiv() throws Exception {
-        DrawAction drawAction = new DrawAction(getApp().db);
+        DrawAction drawAction = new DrawAction(getApp().repositories);
         SheetName CIV = SheetName.find("CIV").get();
         Optional<GameLog> gameLogOptional = drawAction.draw(getApp().pbfId, getApp().playerId, CIV);
 
@@ -260,7 +263,7 @@ public class PlayerResourceTest extends AbstractCivilizationTest {
         assertEquals(HttpStatus.OK_200, response.getStatus());
 
         //Make sure tech is gotten
-        PlayerAction playerAction = new PlayerAction(getApp().db);
+        PlayerAction playerAction = new PlayerAction(getApp().repositories);
         Set<Tech> playersTechs = playerAction.getPlayersTechs(getApp().pbfId, getApp().playerId);
         assertThat(playersTechs).contains(((Civ)gameLogOptional.get().getDraw().getItem()).getStartingTech());
     }
@@ -347,6 +350,135 @@ public class PlayerResourceTest extends AbstractCivilizationTest {
         assertThat(pbf.getDiscardedItems()).isNotEmpty();
     }
 
+    @Test
+    public void revealedItemsChangeTagWhenAnItemIsDiscarded() throws Exception {
+        testDrawVillage();
+        URI revealedUri = UriBuilder.fromPath(String.format(BASE_URL + "/game/%s/revealeditems", getApp().pbfId)).build();
+        Response response = client().target(revealedUri).request(MediaType.APPLICATION_JSON).get();
+        assertEquals(HttpStatus.OK_200, response.getStatus());
+        EntityTag before = response.getEntityTag();
+        assertNotNull(before);
+
+        PBF pbf = getApp().pbfCollection.findOneById(getApp().pbfId);
+        Item village = getItemFromPlayerhand(pbf, SheetName.VILLAGES).get();
+        URI uri = UriBuilder.fromPath(String.format(BASE_URL + "/player/%s/item/discard", getApp().pbfId)).build();
+        response = client().target(uri)
+                .request(MediaType.APPLICATION_JSON)
+                .header(HttpHeaders.AUTHORIZATION, getUsernameAndPassEncoded())
+                .post(Entity.json(createItemDTO(SheetName.VILLAGES, village.getName())), Response.class);
+        assertEquals(HttpStatus.OK_200, response.getStatus());
+
+        response = client().target(revealedUri).request(MediaType.APPLICATION_JSON).get();
+        EntityTag after = response.getEntityTag();
+        assertThat(after).isNotEqualTo(before);
+        assertThat(response.readEntity(String.class)).contains(village.getName());
+
+        response = client().target(revealedUri).request(MediaType.APPLICATION_JSON)
+                .header(HttpHeaders.IF_NONE_MATCH, after)
+                .get();
+        assertEquals(HttpStatus.NOT_MODIFIED_304, response.getStatus());
+
+        pbf = getApp().pbfCollection.findOneById(getApp().pbfId);
+        pbf.getDiscardedItems().clear();
+        pbf.setRevealedItems(null);
+        getApp().pbfCollection.updateById(getApp().pbfId, pbf);
+    }
+
+    @Test
+    public void revealedItemsOfOldGamesAreKeptWithARandomTag() throws Exception {
+        PBF pbf = getApp().pbfCollection.findOneById(getApp().pbfId);
+        pbf.setRevealedItems(null);
+        pbf.setRevealedItemsTag(null);
+        getApp().pbfCollection.updateById(getApp().pbfId, pbf);
+
+        URI revealedUri = UriBuilder.fromPath(String.format(BASE_URL + "/game/%s/revealeditems", getApp().pbfId)).build();
+        Response response = client().target(revealedUri).request(MediaType.APPLICATION_JSON).get();
+        assertEquals(HttpStatus.OK_200, response.getStatus());
+        EntityTag tag = response.getEntityTag();
+        assertNotNull(tag);
+        UUID.fromString(tag.getValue());
+
+        pbf = getApp().pbfCollection.findOneById(getApp().pbfId);
+        assertThat(pbf.getRevealedItems()).isNotNull();
+        assertThat(pbf.getRevealedItemsTag()).isEqualTo(tag.getValue());
+
+        response = client().target(revealedUri).request(MediaType.APPLICATION_JSON)
+                .header(HttpHeaders.IF_NONE_MATCH, tag)
+                .get();
+        assertEquals(HttpStatus.NOT_MODIFIED_304, response.getStatus());
+    }
+
+    @Test
+    public void techBoardChangesTagWhenATechIsChosen() throws Exception {
+        URI techBoardUri = UriBuilder.fromPath(String.format(BASE_URL + "/player/%s/tech/all", getApp().pbfId)).build();
+        Response response = client().target(techBoardUri).request(MediaType.APPLICATION_JSON).get();
+        assertEquals(HttpStatus.OK_200, response.getStatus());
+        EntityTag before = response.getEntityTag();
+        assertNotNull(before);
+
+        response = client().target(techBoardUri).request(MediaType.APPLICATION_JSON)
+                .header(HttpHeaders.IF_NONE_MATCH, before)
+                .get();
+        assertEquals(HttpStatus.NOT_MODIFIED_304, response.getStatus());
+
+        URI uri = UriBuilder.fromPath(String.format(BASE_URL + "/player/%s/tech/choose", getApp().pbfId)).build();
+        response = client().target(uri)
+                .queryParam("name", "Writing")
+                .request(MediaType.APPLICATION_JSON)
+                .header(HttpHeaders.AUTHORIZATION, getUsernameAndPassEncoded())
+                .post(null);
+        assertEquals(HttpStatus.NO_CONTENT_204, response.getStatus());
+
+        response = client().target(techBoardUri).request(MediaType.APPLICATION_JSON)
+                .header(HttpHeaders.IF_NONE_MATCH, before)
+                .get();
+        assertEquals(HttpStatus.OK_200, response.getStatus());
+        assertThat(response.getEntityTag()).isNotEqualTo(before);
+
+        uri = UriBuilder.fromPath(String.format(BASE_URL + "/player/%s/tech/remove", getApp().pbfId)).build();
+        response = client().target(uri)
+                .queryParam("name", "Writing")
+                .request()
+                .header(HttpHeaders.AUTHORIZATION, getUsernameAndPassEncoded())
+                .delete(Response.class);
+        assertEquals(HttpStatus.OK_200, response.getStatus());
+
+        //A revealed tech is on the board of a player with a civilization, and is taken off again by an undo
+        PBF pbf = getApp().pbfCollection.findOneById(getApp().pbfId);
+        pbf.getPlayers().stream()
+                .filter(p -> p.getPlayerId().equals(getApp().playerId))
+                .forEach(p -> p.setCivilization(new Civ("America")));
+        pbf.techsChanged();
+        getApp().pbfCollection.updateById(getApp().pbfId, pbf);
+
+        PlayerAction playerAction = new PlayerAction(getApp().repositories);
+        GameLog chosen = playerAction.chooseTech(getApp().pbfId, "Writing", getApp().playerId);
+        playerAction.revealTech(chosen, getApp().pbfId, getApp().playerId);
+        response = client().target(techBoardUri).request(MediaType.APPLICATION_JSON).get();
+        assertEquals(HttpStatus.OK_200, response.getStatus());
+        EntityTag revealed = response.getEntityTag();
+        assertThat(response.readEntity(String.class)).contains("America").contains("Writing");
+
+        UndoAction undoAction = new UndoAction(getApp().repositories);
+        chosen = getApp().gameLogCollection.findOneById(chosen.getId());
+        undoAction.initiateUndo(chosen, getApp().playerId);
+        GameLog undo = getApp().gameLogCollection.findOneById(chosen.getId());
+        pbf.getPlayers().forEach(p -> undoAction.vote(undo, p.getPlayerId(), Boolean.TRUE));
+        assertThat(getApp().gameLogCollection.findOneById(chosen.getId()).getDraw().getUndo().isDone()).isTrue();
+
+        response = client().target(techBoardUri).request(MediaType.APPLICATION_JSON)
+                .header(HttpHeaders.IF_NONE_MATCH, revealed)
+                .get();
+        assertEquals(HttpStatus.OK_200, response.getStatus());
+        assertThat(response.getEntityTag()).isNotEqualTo(revealed);
+        assertThat(response.readEntity(String.class)).contains("America").doesNotContain("Writing");
+
+        pbf = getApp().pbfCollection.findOneById(getApp().pbfId);
+        pbf.getPlayers().forEach(p -> p.setCivilization(null));
+        pbf.techsChanged();
+        getApp().pbfCollection.updateById(getApp().pbfId, pbf);
+    }
+
     @Test
     public void discardUnit() throws Exception {
         testDrawInfantryCard();